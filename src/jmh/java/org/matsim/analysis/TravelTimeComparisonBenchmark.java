@@ -0,0 +1,123 @@
+package org.matsim.analysis;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing of {@link TravelTimeComparison} with a synthetic input similar in size to the reference routes, on a grid network of about 40k nodes.
+ * Compares the previous per row Dijkstra queries with the grouped tree searches.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx8G")
+@State(Scope.Benchmark)
+public class TravelTimeComparisonBenchmark {
+
+	private static final int GRID = 200;
+	private static final int ROWS = 10_000;
+
+	/**
+	 * Number of distinct origins, rows are distributed over these and 24 hours.
+	 */
+	@Param({"100", "2000"})
+	private int origins;
+
+	@Param({"1", "8"})
+	private int threads;
+
+	private Network network;
+	private TravelTime tt;
+	private Node[] from;
+	private Node[] to;
+	private double[] departure;
+
+	@Setup
+	public void setup() {
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		network = NetworkUtils.createNetwork();
+		Node[][] nodes = new Node[GRID][GRID];
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 200, y * 200));
+			}
+		}
+
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				if (x + 1 < GRID) {
+					link(nodes[x][y], nodes[x + 1][y], rnd);
+					link(nodes[x + 1][y], nodes[x][y], rnd);
+				}
+				if (y + 1 < GRID) {
+					link(nodes[x][y], nodes[x][y + 1], rnd);
+					link(nodes[x][y + 1], nodes[x][y], rnd);
+				}
+			}
+		}
+
+		tt = (link, time, person, vehicle) -> {
+			double factor = 1 + ((int) (time / 3600) % 5) * 0.1 * (link.getId().index() % 7) / 7;
+			return link.getLength() / link.getFreespeed() * factor;
+		};
+
+		List<Node> all = new ArrayList<>(network.getNodes().values());
+		List<Node> originNodes = new ArrayList<>();
+		for (int i = 0; i < origins; i++) {
+			originNodes.add(all.get(rnd.nextInt(all.size())));
+		}
+
+		from = new Node[ROWS];
+		to = new Node[ROWS];
+		departure = new double[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			from[i] = originNodes.get(rnd.nextInt(origins));
+			to[i] = all.get(rnd.nextInt(all.size()));
+			departure[i] = rnd.nextInt(24) * 3600;
+		}
+	}
+
+	private void link(Node from, Node to, SplittableRandom rnd) {
+		Id<Link> id = Id.createLinkId(from.getId() + "-" + to.getId());
+		NetworkUtils.createAndAddLink(network, id, from, to, rnd.nextDouble(150, 250), rnd.nextDouble(5, 20), 1000, 1);
+	}
+
+	@Benchmark
+	public TravelTimeComparison.Speeds grouped() {
+		return TravelTimeComparison.computeSpeeds(network, tt, from, to, departure, threads);
+	}
+
+	@Benchmark
+	public double[] perRow() {
+		TravelTime fs = new FreeSpeedTravelTime();
+		LeastCostPathCalculator congestedRouter = new DijkstraFactory(false).createPathCalculator(network, new OnlyTimeDependentTravelDisutility(tt), tt);
+		LeastCostPathCalculator freeflowRouter = new DijkstraFactory(false).createPathCalculator(network, new OnlyTimeDependentTravelDisutility(fs), fs);
+
+		double[] result = new double[ROWS * 2];
+		for (int i = 0; i < ROWS; i++) {
+			LeastCostPathCalculator.Path congested = congestedRouter.calcLeastCostPath(from[i], to[i], departure[i], null, null);
+			result[i] = 3.6 * congested.links.stream().mapToDouble(Link::getLength).sum() / congested.travelTime;
+
+			LeastCostPathCalculator.Path freeflow = freeflowRouter.calcLeastCostPath(from[i], to[i], departure[i], null, null);
+			result[ROWS + i] = 3.6 * freeflow.links.stream().mapToDouble(Link::getLength).sum() / freeflow.travelTime;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,78 @@
+package org.matsim.prepare.opt;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares one iteration of {@link PlanAssignmentProblem#iterate(int, double, double, double, int)} with the full recomputation
+ * of the score that was previously done in each iteration, on a synthetic problem with 500k persons.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx8G")
+@State(Scope.Benchmark)
+public class PlanAssignmentBenchmark {
+
+	private static final int PERSONS = 500_000;
+
+	private static final int COUNTS = 24 * 1500;
+
+	@Param({"1", "4", "8"})
+	private int threads;
+
+	private PlanAssignmentProblem problem;
+	private ScoreCalculator calc;
+	private SplittableRandom rnd;
+
+	@Setup
+	public void setup() {
+
+		SplittableRandom r = new SplittableRandom(0);
+		PlanCounts.Builder builder = PlanCounts.builder();
+
+		for (int i = 0; i < PERSONS; i++) {
+			for (int k = 0; k < 5; k++) {
+				Int2IntMap plan = new Int2IntOpenHashMap();
+				int entries = r.nextInt(8);
+				for (int j = 0; j < entries; j++) {
+					plan.merge(r.nextInt(COUNTS), 4, Integer::sum);
+				}
+				builder.addPlan(plan);
+			}
+		}
+
+		PlanCounts plans = builder.build();
+		List<PlanPerson> persons = new ArrayList<>();
+
+		for (int i = 0; i < plans.size() / 5; i++) {
+			persons.add(new PlanPerson(Id.createPersonId(i), 0, plans, i * 5, 5));
+		}
+
+		problem = new PlanAssignmentProblem(5, ErrorMetric.log_error, persons, r.ints(COUNTS, 0, 500).toArray());
+
+		calc = new ScoreCalculator();
+		calc.resetWorkingSolution(problem);
+		rnd = new SplittableRandom(1);
+	}
+
+	@Benchmark
+	public Object fullRecompute() {
+		calc.resetWorkingSolution(problem);
+		return calc.calculateScore();
+	}
+
+	@Benchmark
+	public int incrementalStep() {
+		return problem.step(calc, rnd, 0.25, 100, 0.01, threads);
+	}
+
+}
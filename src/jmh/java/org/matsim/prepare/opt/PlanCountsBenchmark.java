@@ -0,0 +1,67 @@
+package org.matsim.prepare.opt;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares one hash map per plan with {@link PlanCounts} for a generated population of 1M persons with 5 plans each.
+ * Run with {@code -prof gc}, the allocated bytes per operation approximate the heap usage of each representation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx12G")
+@State(Scope.Benchmark)
+public class PlanCountsBenchmark {
+
+	private static final int PERSONS = 1_000_000;
+
+	private static final int PLANS = 5;
+
+	private static final int COUNTS = 24 * 1500;
+
+	@Benchmark
+	public Int2IntMap[][] maps() {
+
+		SplittableRandom rnd = new SplittableRandom(0);
+		Int2IntMap[][] result = new Int2IntMap[PERSONS][PLANS];
+
+		for (Int2IntMap[] person : result) {
+			for (int k = 0; k < PLANS; k++) {
+				person[k] = new Int2IntOpenHashMap();
+				fillPlan(person[k], rnd);
+			}
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	public PlanCounts csr() {
+
+		SplittableRandom rnd = new SplittableRandom(0);
+		PlanCounts.Builder builder = PlanCounts.builder();
+
+		// Same as in RunCountOptimization, only one map is used while building
+		Int2IntMap plan = new Int2IntOpenHashMap();
+		for (int i = 0; i < PERSONS * PLANS; i++) {
+			plan.clear();
+			fillPlan(plan, rnd);
+			builder.addPlan(plan);
+		}
+
+		return builder.build();
+	}
+
+	private static void fillPlan(Int2IntMap plan, SplittableRandom rnd) {
+		int entries = 1 + rnd.nextInt(8);
+		for (int j = 0; j < entries; j++) {
+			plan.merge(rnd.nextInt(COUNTS), 4, Integer::sum);
+		}
+	}
+}
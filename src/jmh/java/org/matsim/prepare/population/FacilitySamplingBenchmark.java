@@ -0,0 +1,150 @@
+package org.matsim.prepare.population;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.facilities.ActivityFacilitiesFactory;
+import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.prepare.facilities.AttributedActivityFacility;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Compares the sampling methods of {@link FacilityIndex} on a synthetic set of 500k facilities.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4G")
+@State(Scope.Benchmark)
+public class FacilitySamplingBenchmark {
+
+	private static final int SIZE = 500_000;
+
+	/**
+	 * Side length of the area in meters.
+	 */
+	private static final double AREA = 60_000;
+
+	private List<AttributedActivityFacility> facilities;
+	private List<AttributedActivityFacility> query;
+	private STRtree index;
+	private FacilityIndex.Grouping grouping;
+	private AliasTable alias;
+	private Envelope envelope;
+
+	private final SplittableRandom rnd = new SplittableRandom(1);
+
+	@Setup
+	public void setup() {
+
+		ActivityFacilitiesFactory factory = new ActivityFacilitiesFactoryImpl();
+		SplittableRandom r = new SplittableRandom(0);
+
+		facilities = new ArrayList<>();
+		index = new STRtree();
+
+		for (int i = 0; i < SIZE; i++) {
+			ActivityFacility f = factory.createActivityFacility(Id.create(i, ActivityFacility.class), new Coord(r.nextDouble(AREA), r.nextDouble(AREA)));
+			double w = r.nextDouble() < 0.2 ? 0 : Math.exp(r.nextGaussian());
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_WORK, w);
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_OTHER, w);
+			f.getAttributes().putAttribute(Attributes.ZONE, "zone_" + r.nextInt(400));
+
+			AttributedActivityFacility af = new AttributedActivityFacility(f);
+			facilities.add(af);
+			index.insert(new Envelope(f.getCoord().getX(), f.getCoord().getX(), f.getCoord().getY(), f.getCoord().getY()), af);
+		}
+
+		index.build();
+
+		envelope = new Envelope(20_000, 30_000, 20_000, 30_000);
+		query = index.query(envelope);
+		grouping = FacilityIndex.Grouping.of(query, AttributedActivityFacility::getZone);
+
+		// Same table as FacilityIndex#sample for one type
+		alias = AliasTable.of(facilities.stream().mapToDouble(AttributedActivityFacility::getWorkAttraction).toArray());
+	}
+
+	@Benchmark
+	public int cumulative() {
+		return FacilityIndex.sampleByWeight(facilities, AttributedActivityFacility::getWorkAttraction, rnd);
+	}
+
+	@Benchmark
+	public Object aliasTable() {
+		return facilities.get(alias.sample(rnd));
+	}
+
+	@Benchmark
+	public Object envelopeQuery() {
+		List<AttributedActivityFacility> q = index.query(envelope);
+		return q.get(FacilityIndex.sampleByWeight(q, AttributedActivityFacility::getWorkAttraction, rnd));
+	}
+
+	@Benchmark
+	public Object rejectionLinear() {
+		return sampleByWeightWithRejectionLinear(query, f -> f.getId().index() % 10 == 0, rnd);
+	}
+
+	@Benchmark
+	public Object rejectionFenwick() {
+		return FacilityIndex.sampleByWeightWithRejection(query, f -> f.getId().index() % 10 == 0, AttributedActivityFacility::getWorkAttraction, rnd);
+	}
+
+	@Benchmark
+	public Object groupingPerCall() {
+		return FacilityIndex.sampleByWeightWithGrouping(query, AttributedActivityFacility::getZone, e -> (double) e.getValue().size(),
+			AttributedActivityFacility::getWorkAttraction, rnd);
+	}
+
+	@Benchmark
+	public Object groupingReused() {
+		return FacilityIndex.sampleByWeightWithGrouping(grouping, e -> (double) e.getValue().size(),
+			AttributedActivityFacility::getWorkAttraction, rnd);
+	}
+
+	/**
+	 * Previous implementation with a linear update of the cumulative weights after each rejection.
+	 */
+	private static ActivityFacility sampleByWeightWithRejectionLinear(List<AttributedActivityFacility> candidates,
+																	  Predicate<ActivityFacility> filter, SplittableRandom rnd) {
+
+		double totalWeight = 0;
+		double[] weights = new double[candidates.size()];
+
+		for (int i = 0; i < candidates.size(); i++) {
+			totalWeight += candidates.get(i).getWorkAttraction();
+			weights[i] = totalWeight;
+		}
+
+		for (int i = 0; i < candidates.size(); i++) {
+			int idx = Arrays.binarySearch(weights, rnd.nextDouble(0, totalWeight));
+			if (idx < 0) {
+				idx = -idx - 1;
+			}
+
+			AttributedActivityFacility af = candidates.get(idx);
+			if (filter.test(af)) {
+				return af;
+			}
+
+			double w = af.getWorkAttraction();
+			totalWeight -= w;
+			for (int j = idx; j < weights.length; j++) {
+				weights[j] -= w;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,212 @@
+package org.matsim.prepare.population;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.facilities.*;
+import org.matsim.run.OpenBerlinScenario;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of k=5 plans by {@link InitLocationChoice} on a generated population of 50k persons.
+ * Compares the single pass with separate runs for each plan, which read the population from disk every time and merge the plans afterward.
+ * Besides the runtime, the peak heap usage is reported as secondary result.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx8G")
+@State(Scope.Benchmark)
+public class InitLocationChoiceBenchmark {
+
+	private static final int K = 5;
+	private static final int PERSONS = 50_000;
+	private static final int ZONES = 20;
+	private static final double SIZE = 10_000;
+	private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+	private Path dir;
+	private Path populationPath;
+	private Path commuterPath;
+	private Path berlinCommuterPath;
+
+	private Long2ObjectMap<SimpleFeature> zones;
+	private FacilityIndex facilities;
+	private Network network;
+
+	@Setup
+	public void setup() throws IOException {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		dir = Files.createTempDirectory("location-choice");
+
+		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+		typeBuilder.setName("zones");
+		typeBuilder.add("the_geom", Polygon.class);
+		SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+		GeometryFactory gf = new GeometryFactory();
+		zones = new Long2ObjectOpenHashMap<>();
+
+		StringBuilder csv = new StringBuilder("from,to,n\n");
+		for (int i = 0; i < ZONES; i++) {
+			Polygon polygon = (Polygon) gf.toGeometry(new Envelope(i * SIZE, (i + 1) * SIZE, 0, SIZE));
+			zones.put(1000 + i, SimpleFeatureBuilder.build(type, new Object[]{polygon}, "zone" + i));
+
+			for (int j = 0; j < ZONES; j++) {
+				if (i != j)
+					csv.append(1000 + i).append(",").append(1000 + j).append(",").append(rnd.nextInt(100, 2000)).append("\n");
+			}
+		}
+
+		commuterPath = dir.resolve("commuter.csv");
+		Files.writeString(commuterPath, csv.toString());
+
+		berlinCommuterPath = dir.resolve("berlin_commuter.csv");
+		Files.writeString(berlinCommuterPath, "home,work,n\n1,2,10\n");
+
+		ActivityFacilities all = FacilitiesUtils.createActivityFacilities();
+		ActivityFacilitiesFactory factory = all.getFactory();
+		for (int i = 0; i < 100_000; i++) {
+			ActivityFacility f = factory.createActivityFacility(Id.create(i, ActivityFacility.class),
+				new Coord(rnd.nextDouble(0, ZONES * SIZE), rnd.nextDouble(0, SIZE)));
+
+			f.addActivityOption(factory.createActivityOption(i % 2 == 0 ? "work" : "leisure"));
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_WORK, rnd.nextDouble(1, 10));
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_OTHER, rnd.nextDouble(1, 10));
+			all.addActivityFacility(f);
+		}
+
+		Path facilityPath = dir.resolve("facilities.xml.gz");
+		new FacilitiesWriter(all).write(facilityPath.toString());
+		facilities = new FacilityIndex(facilityPath.toString(), OpenBerlinScenario.CRS);
+
+		network = NetworkUtils.createNetwork();
+		List<Node> nodes = new ArrayList<>();
+		for (int x = 0; x <= ZONES * 10; x++) {
+			nodes.add(NetworkUtils.createAndAddNode(network, Id.createNodeId(x), new Coord(x * 1000, SIZE / 2)));
+		}
+		for (int x = 1; x < nodes.size(); x++) {
+			Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(x), nodes.get(x - 1), nodes.get(x), 1000, 10, 1000, 1);
+			NetworkUtils.setType(link, "residential");
+		}
+
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		PopulationFactory f = population.getFactory();
+
+		for (int i = 0; i < PERSONS; i++) {
+			Person person = f.createPerson(Id.createPersonId(i));
+			int zone = i % ZONES;
+			Coord home = new Coord(rnd.nextDouble(zone * SIZE, (zone + 1) * SIZE), rnd.nextDouble(0, SIZE));
+
+			person.getAttributes().putAttribute(Attributes.HOME_X, home.getX());
+			person.getAttributes().putAttribute(Attributes.HOME_Y, home.getY());
+			person.getAttributes().putAttribute(Attributes.ARS, 1000L + zone);
+
+			Plan plan = f.createPlan();
+			plan.addActivity(f.createActivityFromCoord("home", home));
+			for (String act : List.of("work", "leisure", "leisure")) {
+				plan.addLeg(f.createLeg("car"));
+				Activity a = f.createActivityFromLinkId(act, Id.createLinkId("unassigned"));
+				a.getAttributes().putAttribute("orig_dist", rnd.nextDouble(1, 20));
+				plan.addActivity(a);
+			}
+			plan.addLeg(f.createLeg("car"));
+			plan.addActivity(f.createActivityFromCoord("home", home));
+
+			person.addPlan(plan);
+			population.addPerson(person);
+		}
+
+		populationPath = dir.resolve("population.xml.gz");
+		PopulationUtils.writePopulation(population, populationPath.toString());
+	}
+
+	@Benchmark
+	public Population singlePass(Heap heap) {
+		Population population = PopulationUtils.readPopulation(populationPath.toString());
+		new InitLocationChoice(facilities, zones, network, commuterPath, berlinCommuterPath, K, 0.25, 1, THREADS)
+			.assignLocations(population);
+
+		heap.record();
+		return population;
+	}
+
+	@Benchmark
+	public Population perPlan(Heap heap) {
+
+		List<Population> populations = new ArrayList<>();
+		for (int i = 0; i < K; i++) {
+			Population population = PopulationUtils.readPopulation(populationPath.toString());
+			new InitLocationChoice(facilities, zones, network, commuterPath, berlinCommuterPath, 1, 0.25, 1 + i, THREADS)
+				.assignLocations(population);
+			populations.add(population);
+		}
+
+		Population population = populations.get(0);
+		for (int i = 1; i < K; i++) {
+			for (Person p : populations.get(i).getPersons().values()) {
+				population.getPersons().get(p.getId()).addPlan(p.getPlans().get(0));
+			}
+		}
+
+		heap.record();
+		return population;
+	}
+
+	/**
+	 * Peak heap usage during one invocation, summed over all heap memory pools.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Heap {
+
+		public double peakHeapMb;
+
+		@Setup(Level.Invocation)
+		public void reset() {
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP)
+					pool.resetPeakUsage();
+			}
+		}
+
+		void record() {
+			long peak = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP)
+					peak += pool.getPeakUsage().getUsed();
+			}
+
+			peakHeapMb = peak / 1024.0 / 1024.0;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.matsim.prepare.population;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of 4M persons with {@link PersonMatcher#matchPerson(Person, SplittableRandom)}, with 50k synthetic reference persons.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4G")
+@State(Scope.Benchmark)
+public class PersonMatcherBenchmark {
+
+	private static final int CALLS = 4_000_000;
+	private static final List<String> EMPLOYMENT = List.of("unemployed", "job_full_time", "job_part_time", "child", "retiree");
+
+	private PersonMatcher matcher;
+	private Person[] persons;
+
+	@Setup
+	public void setup() throws IOException {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		StringBuilder csv = new StringBuilder("idx,region_type,gender,employment,age\n");
+		for (int i = 0; i < 50_000; i++) {
+			csv.append(i).append(",").append(rnd.nextBoolean() ? 1 : 3).append(",").append(rnd.nextBoolean() ? "m" : "f").append(",")
+				.append(EMPLOYMENT.get(rnd.nextInt(EMPLOYMENT.size()))).append(",").append(rnd.nextInt(0, 95)).append("\n");
+		}
+
+		Path path = Files.createTempFile("persons", ".csv");
+		Files.writeString(path, csv.toString());
+		matcher = new PersonMatcher("idx", path);
+		Files.delete(path);
+
+		// Ages up to 85 always have a group
+		PopulationFactory f = PopulationUtils.getFactory();
+		persons = new Person[10_000];
+		for (int i = 0; i < persons.length; i++) {
+			Person person = f.createPerson(Id.createPersonId(i));
+			PersonUtils.setAge(person, rnd.nextInt(0, 85));
+			PersonUtils.setSex(person, rnd.nextBoolean() ? "m" : "f");
+			PersonUtils.setEmployed(person, rnd.nextBoolean());
+			person.getAttributes().putAttribute(Attributes.RegioStaR7, rnd.nextInt(1, 8));
+			persons[i] = person;
+		}
+	}
+
+	@Benchmark
+	public int matchPerson() {
+		SplittableRandom rnd = new SplittableRandom(1);
+		int hash = 0;
+		for (int i = 0; i < CALLS; i++) {
+			hash += matcher.matchPerson(persons[i % persons.length], rnd).hashCode();
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,130 @@
+package org.matsim.prepare.population;
+
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.facilities.ActivityFacilitiesFactory;
+import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.prepare.facilities.AttributedActivityFacility;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.matsim.prepare.facilities.CreateMATSimFacilities.IGNORED_LINK_TYPES;
+
+/**
+ * Spatial lookups of the location choice on 500k synthetic facilities and a grid network with 40k nodes.
+ * Compares queries with buffer geometries and the ring query, as well as nearest link searches with the {@link NearestLinkFilter}.
+ * Run with {@code -prof gc} to compare the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4G")
+@State(Scope.Benchmark)
+public class SpatialQueryBenchmark {
+
+	private static final int SIZE = 500_000;
+	private static final int GRID = 200;
+
+	/**
+	 * Side length of the area in meters.
+	 */
+	private static final double AREA = 60_000;
+
+	/**
+	 * Target distance of the queries.
+	 */
+	@Param({"1000", "5000"})
+	private double dist;
+
+	private STRtree index;
+	private Network network;
+	private Predicate<Link> filter;
+	private NearestLinkFilter linkFilter;
+
+	private final SplittableRandom rnd = new SplittableRandom(1);
+
+	@Setup
+	public void setup() {
+
+		ActivityFacilitiesFactory factory = new ActivityFacilitiesFactoryImpl();
+		SplittableRandom r = new SplittableRandom(0);
+
+		index = new STRtree();
+		for (int i = 0; i < SIZE; i++) {
+			ActivityFacility f = factory.createActivityFacility(Id.create(i, ActivityFacility.class), new Coord(r.nextDouble(AREA), r.nextDouble(AREA)));
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_WORK, 1.0);
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_OTHER, 1.0);
+			index.insert(MGC.coord2Point(f.getCoord()).getEnvelopeInternal(), new AttributedActivityFacility(f));
+		}
+		index.build();
+
+		// Every tenth row and column is a motorway
+		network = NetworkUtils.createNetwork();
+		double cell = AREA / GRID;
+		Node[][] nodes = new Node[GRID][GRID];
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * cell, y * cell));
+			}
+		}
+
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				if (x + 1 < GRID)
+					link(nodes[x][y], nodes[x + 1][y], y % 10 == 0 ? "motorway" : "residential");
+				if (y + 1 < GRID)
+					link(nodes[x][y], nodes[x][y + 1], x % 10 == 0 ? "motorway" : "residential");
+			}
+		}
+
+		filter = link -> !IGNORED_LINK_TYPES.contains(NetworkUtils.getType(link));
+		linkFilter = new NearestLinkFilter(network, filter);
+	}
+
+	private void link(Node from, Node to, String type) {
+		Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(from.getId() + "-" + to.getId()), from, to, 300, 10, 1000, 1);
+		NetworkUtils.setType(link, type);
+	}
+
+	private Coord center() {
+		return new Coord(rnd.nextDouble(AREA), rnd.nextDouble(AREA));
+	}
+
+	@Benchmark
+	public List<AttributedActivityFacility> bufferQuery() {
+		Coord center = center();
+		List<AttributedActivityFacility> query = index.query(MGC.coord2Point(center).buffer(dist * 1.2).getEnvelopeInternal());
+		return query.stream().filter(f -> {
+			double d = CoordUtils.calcEuclideanDistance(center, f.getCoord());
+			return d >= dist * 0.8 - 50 && d <= dist * 1.15 + 50;
+		}).toList();
+	}
+
+	@Benchmark
+	public List<AttributedActivityFacility> ringQuery() {
+		return FacilityIndex.query(index, center(), dist * 0.8 - 50, dist * 1.15 + 50);
+	}
+
+	@Benchmark
+	public boolean nearestLink() {
+		return filter.test(NetworkUtils.getNearestLink(network, center()));
+	}
+
+	@Benchmark
+	public boolean nearestLinkFilter() {
+		return linkFilter.test(center());
+	}
+}
@@ -0,0 +1,71 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.run.Activities;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares adding all split activity types to the config with creating them on demand.
+ * One operation prepares the config like the Berlin scenario, writes it and creates the scoring parameters.
+ * Run with {@code -prof gc} to see the allocated memory.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActivityParamsBenchmark {
+
+	/**
+	 * Config of the 10pct scenario.
+	 */
+	private static final String CONFIG = "input/v6.4/berlin-v6.4.config.xml";
+
+	@Param({"false", "true"})
+	private boolean lazy;
+
+	private Path output;
+
+	@Setup
+	public void setup() throws IOException {
+		output = Files.createTempFile("config", ".xml");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(output);
+	}
+
+	@Benchmark
+	public ScoringParameters startup() {
+
+		Config config = Files.exists(Path.of(CONFIG)) ?
+			ConfigUtils.loadConfig(CONFIG, new AdvancedScoringConfigGroup()) :
+			ConfigUtils.createConfig(new AdvancedScoringConfigGroup());
+
+		Activities.addScoringParams(config, true, lazy);
+
+		// No income attributes in this benchmark
+		ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class).incomeDependent = AdvancedScoringConfigGroup.IncomeDependentScoring.none;
+		ConfigUtils.writeConfig(config, output.toString());
+
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Person person = scenario.getPopulation().getFactory().createPerson(Id.createPersonId("p"));
+		scenario.getPopulation().addPerson(person);
+
+		IndividualPersonScoringParameters params = new IndividualPersonScoringParameters(scenario);
+		return params.getScoringParameters(person);
+	}
+}
@@ -0,0 +1,72 @@
+package org.matsim.run.scoring;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compiled {@link DistanceUtilityFunction} with a linear scan over the {@link DistanceGroup}s for different numbers of groups.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DistanceUtilityBenchmark {
+
+	private static final int SIZE = 4096;
+
+	@Param({"3", "8", "32"})
+	private int groups;
+
+	private DistanceGroup[] distGroups;
+	private DistanceUtilityFunction function;
+	private double[] dists;
+
+	@Setup
+	public void setup() {
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		List<Integer> bounds = new ArrayList<>();
+		DoubleList utils = new DoubleArrayList();
+		for (int i = 1; i <= groups; i++) {
+			bounds.add(i * 2500);
+			utils.add(rnd.nextDouble(-2, 0));
+		}
+
+		distGroups = IndividualPersonScoringParameters.calcDistanceGroups(bounds, utils);
+		function = DistanceUtilityFunction.of(distGroups);
+		dists = rnd.doubles(SIZE, 0, groups * 3000).toArray();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void compiled(Blackhole bh) {
+		for (double dist : dists) {
+			bh.consume(function.calc(dist));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void linearScan(Blackhole bh) {
+		for (double dist : dists) {
+			DistanceGroup group = distGroups[0];
+			for (int i = 1; i < distGroups.length; i++) {
+				if (distGroups[i].dist() > dist)
+					break;
+
+				group = distGroups[i];
+			}
+
+			bh.consume(group.constant() + group.utilPerM() * (dist - group.dist()));
+		}
+	}
+}
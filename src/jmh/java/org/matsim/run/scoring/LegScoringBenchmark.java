@@ -0,0 +1,65 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures leg scoring with {@link PiecewiseLinearlLegScoring} and the distance utility of {@link DistanceGroupModeUtilityParameters}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LegScoringBenchmark {
+
+	private static final int SIZE = 4096;
+
+	private ScoringParameters params;
+	private DistanceGroupModeUtilityParameters distParams;
+	private Leg[] legs;
+	private double[] dists;
+	private int idx;
+
+	@Setup
+	public void setup() {
+		Scenario scenario = ScoringBenchmarkData.createScenario(SIZE / 4, 1);
+		IndividualPersonScoringParameters p = new IndividualPersonScoringParameters(scenario);
+
+		Person person = scenario.getPopulation().getPersons().values().iterator().next();
+		params = p.getScoringParameters(person);
+		distParams = (DistanceGroupModeUtilityParameters) params.modeParams.get(TransportMode.car);
+
+		legs = scenario.getPopulation().getPersons().values().stream()
+			.flatMap(pp -> TripStructureUtils.getLegs(pp.getSelectedPlan()).stream())
+			.toArray(Leg[]::new);
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		dists = rnd.doubles(SIZE, 0, 80_000).toArray();
+	}
+
+	@Benchmark
+	public double handleLeg() {
+		PiecewiseLinearlLegScoring scoring = new PiecewiseLinearlLegScoring(params, Set.of(TransportMode.pt));
+		idx = (idx + 1) % legs.length;
+		scoring.handleLeg(legs[idx]);
+		return scoring.getScore();
+	}
+
+	@Benchmark
+	public double calcUtilityDistDelta() {
+		idx = (idx + 1) % dists.length;
+		return distParams.calcUtilityDistDelta(dists[idx]);
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares throughput of the available generators in {@link PseudoRandomScorer}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PseudoRandomScorerBenchmark {
+
+	@Param({"xoRoShiRo", "counterBased"})
+	private AdvancedScoringConfigGroup.PseudoRandomGenerator generator;
+
+	@Param({"normal", "gumbel"})
+	private AdvancedScoringConfigGroup.VariationType distribution;
+
+	private PseudoRandomScorer scorer;
+	private Id<Person> person;
+	private long counter;
+
+	@Setup
+	public void setup() {
+		Config config = ConfigUtils.createConfig();
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class);
+		scoring.pseudoRamdomScale = 1;
+		scoring.pseudoRandomDistribution = distribution;
+		scoring.pseudoRandomGenerator = generator;
+
+		// Trip seed only depends on an increasing counter, the trip itself is not needed
+		scorer = new PseudoRandomScorer((personId, mainMode, trip) -> counter++, config);
+		person = Id.createPersonId("benchmark");
+	}
+
+	@Benchmark
+	public double scoreTrip() {
+		return scorer.scoreTrip(person, "car", null);
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.routes.GenericRouteImpl;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.run.Activities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a synthetic scenario and event streams for the scoring benchmarks, without any input files.
+ */
+final class ScoringBenchmarkData {
+
+	static final List<String> MODES = List.of(TransportMode.car, TransportMode.pt, TransportMode.walk, TransportMode.bike, TransportMode.ride);
+
+	private static final List<String> ACTS = List.of("work", "leisure", "shop_daily", "edu_primary", "other");
+
+	private ScoringBenchmarkData() {
+	}
+
+	/**
+	 * Create a config with the split activity types and advanced scoring parameters similar to the Berlin scenario.
+	 */
+	static Config createConfig() {
+
+		Config config = ConfigUtils.createConfig();
+		Activities.addScoringParams(config, true);
+
+		for (String mode : MODES) {
+			config.scoring().getOrCreateModeParams(mode);
+		}
+
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class);
+		scoring.distGroups = List.of(1000, 5000, 10000, 25000, 50000);
+		scoring.pseudoRamdomScale = 1;
+
+		AdvancedScoringConfigGroup.ScoringParameters params = new AdvancedScoringConfigGroup.ScoringParameters();
+		scoring.addParameterSet(params);
+
+		for (String mode : MODES) {
+			AdvancedScoringConfigGroup.ModeParams m = params.getOrCreateModeParams(mode);
+			m.deltaConstant = 0.5;
+			m.varConstant = AdvancedScoringConfigGroup.VariationType.normal;
+			m.deltaDailyConstant = 1;
+			m.varDailyConstant = AdvancedScoringConfigGroup.VariationType.truncatedNormal;
+			m.deltaPerDistGroup = List.of(-0.1, -0.5, -1.0, -1.5, -2.0);
+		}
+
+		return config;
+	}
+
+	/**
+	 * Create a scenario with persons having a single plan with four trips.
+	 */
+	static Scenario createScenario(int n, long seed) {
+
+		Scenario scenario = ScenarioUtils.createScenario(createConfig());
+		Population population = scenario.getPopulation();
+		PopulationFactory f = population.getFactory();
+
+		SplittableRandom rnd = new SplittableRandom(seed);
+
+		for (int i = 0; i < n; i++) {
+			Person person = f.createPerson(Id.createPersonId(i));
+			PersonUtils.setIncome(person, 500 + rnd.nextInt(5000));
+
+			Plan plan = f.createPlan();
+
+			double time = 6 * 3600 + rnd.nextInt(3 * 3600);
+			Activity home = f.createActivityFromCoord("home_" + 43200, randomCoord(rnd));
+			home.setEndTime(time);
+			plan.addActivity(home);
+
+			for (int j = 0; j < 3; j++) {
+				time = addLeg(f, plan, rnd, time);
+
+				int dur = 600 * (1 + rnd.nextInt(30));
+				Activity act = f.createActivityFromCoord(ACTS.get(rnd.nextInt(ACTS.size())) + "_" + dur, randomCoord(rnd));
+				act.setStartTime(time);
+				act.setEndTime(time + dur);
+				plan.addActivity(act);
+				time += dur;
+			}
+
+			time = addLeg(f, plan, rnd, time);
+			Activity last = f.createActivityFromCoord(home.getType(), home.getCoord());
+			last.setStartTime(time);
+			plan.addActivity(last);
+
+			person.addPlan(plan);
+			population.addPerson(person);
+		}
+
+		return scenario;
+	}
+
+	private static Coord randomCoord(SplittableRandom rnd) {
+		return new Coord(rnd.nextDouble(-20000, 20000), rnd.nextDouble(-20000, 20000));
+	}
+
+	private static double addLeg(PopulationFactory f, Plan plan, SplittableRandom rnd, double time) {
+
+		Leg leg = f.createLeg(MODES.get(rnd.nextInt(MODES.size())));
+		leg.setRoutingMode(leg.getMode());
+		double travelTime = 300 + rnd.nextInt(3600);
+		leg.setDepartureTime(time);
+		leg.setTravelTime(travelTime);
+
+		GenericRouteImpl route = new GenericRouteImpl(Id.create("from", Link.class), Id.create("to", Link.class));
+		route.setDistance(rnd.nextDouble(100, 60000));
+		route.setTravelTime(travelTime);
+		leg.setRoute(route);
+
+		plan.addLeg(leg);
+		return time + travelTime;
+	}
+
+	/**
+	 * Create the events a mobsim would produce for executing the given plan, which are relevant for scoring.
+	 */
+	static List<Event> createEvents(Plan plan) {
+
+		List<Event> events = new ArrayList<>();
+		Id<Person> id = plan.getPerson().getId();
+
+		for (PlanElement el : plan.getPlanElements()) {
+			if (el instanceof Activity act && act.getEndTime().isDefined()) {
+				events.add(new ActivityEndEvent(act.getEndTime().seconds(), id, act.getLinkId(), act.getFacilityId(), act.getType(), act.getCoord()));
+			} else if (el instanceof Leg leg) {
+				double dep = leg.getDepartureTime().seconds();
+				events.add(new PersonDepartureEvent(dep, id, leg.getRoute().getStartLinkId(), leg.getMode(), leg.getRoutingMode()));
+				events.add(new PersonArrivalEvent(dep + leg.getTravelTime().seconds(), id, leg.getRoute().getEndLinkId(), leg.getMode()));
+			}
+		}
+
+		return events;
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.router.DefaultAnalysisMainModeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scoring.ScoringFunction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creation of scoring functions with {@link AdvancedScoringFunctionFactory}
+ * and replays a generated event stream through the complete {@link org.matsim.core.scoring.SumScoringFunction}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoringFunctionBenchmark {
+
+	private static final int PERSONS = 10_000;
+
+	private Person[] persons;
+	private List<Event>[] events;
+	private AdvancedScoringFunctionFactory factory;
+	private int idx;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		Scenario scenario = ScoringBenchmarkData.createScenario(PERSONS, 1);
+		persons = scenario.getPopulation().getPersons().values().toArray(new Person[0]);
+
+		events = new List[persons.length];
+		for (int i = 0; i < persons.length; i++) {
+			events[i] = ScoringBenchmarkData.createEvents(persons[i].getSelectedPlan());
+		}
+
+		IndividualPersonScoringParameters params = new IndividualPersonScoringParameters(scenario);
+		factory = new AdvancedScoringFunctionFactory(scenario.getConfig(), new DefaultAnalysisMainModeIdentifier(), params,
+			new PseudoRandomScorer(new DefaultPseudoRandomTripError(), scenario.getConfig()));
+
+		// Parameters are cached in the following
+		for (Person person : persons) {
+			params.getScoringParameters(person);
+		}
+	}
+
+	@Benchmark
+	public ScoringFunction create() {
+		idx = (idx + 1) % persons.length;
+		return factory.createNewScoringFunction(persons[idx]);
+	}
+
+	/**
+	 * Score all persons, one operation is one person.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PERSONS)
+	public double replay() {
+		double sum = 0;
+		for (int i = 0; i < persons.length; i++) {
+			sum += score(persons[i], events[i]);
+		}
+		return sum;
+	}
+
+	private double score(Person person, List<Event> personEvents) {
+
+		ScoringFunction sf = factory.createNewScoringFunction(person);
+		Plan plan = person.getSelectedPlan();
+
+		// Events and plan elements are passed in the same order as produced by the mobsim
+		int e = 0;
+		for (PlanElement el : plan.getPlanElements()) {
+			if (el instanceof Activity act) {
+				if (act.getEndTime().isDefined())
+					sf.handleEvent(personEvents.get(e++));
+				sf.handleActivity(act);
+			} else if (el instanceof Leg leg) {
+				sf.handleEvent(personEvents.get(e++));
+				sf.handleEvent(personEvents.get(e++));
+				sf.handleLeg(leg);
+			}
+		}
+
+		for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(plan)) {
+			sf.handleTrip(trip);
+		}
+
+		sf.finish();
+		return sf.getScore();
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creation and lookup of person specific scoring parameters in {@link IndividualPersonScoringParameters}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoringParametersBenchmark {
+
+	private static final int PERSONS = 10_000;
+
+	private Person[] persons;
+	private Scenario scenario;
+	private IndividualPersonScoringParameters cached;
+	private int idx;
+
+	@Setup
+	public void setup() {
+		scenario = ScoringBenchmarkData.createScenario(PERSONS, 1);
+		persons = scenario.getPopulation().getPersons().values().toArray(new Person[0]);
+
+		cached = new IndividualPersonScoringParameters(scenario);
+		for (Person person : persons) {
+			cached.getScoringParameters(person);
+		}
+	}
+
+	/**
+	 * Builds the parameters of all persons from scratch, one operation is one person.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PERSONS)
+	public ScoringParameters build() {
+		IndividualPersonScoringParameters params = new IndividualPersonScoringParameters(scenario);
+		ScoringParameters last = null;
+		for (Person person : persons) {
+			last = params.getScoringParameters(person);
+		}
+		return last;
+	}
+
+	/**
+	 * Lookup of already computed parameters.
+	 */
+	@Benchmark
+	public ScoringParameters lookup() {
+		idx = (idx + 1) % persons.length;
+		return cached.getScoringParameters(persons[idx]);
+	}
+
+}
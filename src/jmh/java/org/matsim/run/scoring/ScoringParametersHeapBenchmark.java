@@ -0,0 +1,86 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.ConfigUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retained heap of the scoring parameters for a population of 1M persons, reported as secondary result {@code retainedMB}.
+ * With fixed variations, persons with the same category share their mode parameters.
+ * Complete parameters are only shared if the marginal utility of money does not depend on the income.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx16G")
+@State(Scope.Benchmark)
+public class ScoringParametersHeapBenchmark {
+
+	private static final int PERSONS = 1_000_000;
+
+	@Param({"fixed", "normal"})
+	private AdvancedScoringConfigGroup.VariationType variation;
+
+	@Param({"avgByPersonalIncome", "none"})
+	private AdvancedScoringConfigGroup.IncomeDependentScoring income;
+
+	private Scenario scenario;
+	private Person[] persons;
+
+	/**
+	 * Keeps the result reachable until the heap has been measured.
+	 */
+	private IndividualPersonScoringParameters params;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Heap {
+		public double retainedMB;
+	}
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	@Setup
+	public void setup() {
+		scenario = ScoringBenchmarkData.createScenario(PERSONS, 1);
+		persons = scenario.getPopulation().getPersons().values().toArray(new Person[0]);
+
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(scenario.getConfig(), AdvancedScoringConfigGroup.class);
+		scoring.writeUtilVariations = false;
+		scoring.incomeDependent = income;
+		for (AdvancedScoringConfigGroup.ScoringParameters p : scoring.getScoringParameters()) {
+			for (AdvancedScoringConfigGroup.ModeParams m : p.getModeParams().values()) {
+				m.varConstant = variation;
+				m.varDailyConstant = variation;
+			}
+		}
+	}
+
+	@Benchmark
+	public void retained(Heap heap) {
+
+		params = null;
+		for (Person person : persons) {
+			person.getAttributes().removeAttribute(UtilDelta.ATTRIBUTE);
+		}
+
+		long before = usedHeap();
+
+		params = new IndividualPersonScoringParameters(scenario);
+		for (Person person : persons) {
+			params.getScoringParameters(person);
+		}
+
+		heap.retainedMB = (usedHeap() - before) / 1024.0 / 1024.0;
+	}
+}
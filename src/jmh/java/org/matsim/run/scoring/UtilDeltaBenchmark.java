@@ -0,0 +1,51 @@
+package org.matsim.run.scoring;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the scoring parameters for a population of 1M persons, which stores the {@link UtilDelta#ATTRIBUTE} attribute for each of them.
+ * The second invocation loads the stored deltas again. Run with {@code -prof gc} to compare the allocated memory with and without the debug information.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx16G")
+@State(Scope.Benchmark)
+public class UtilDeltaBenchmark {
+
+	private static final int PERSONS = 1_000_000;
+
+	@Param({"true", "false"})
+	private boolean writeUtilVariations;
+
+	private Scenario scenario;
+	private Person[] persons;
+
+	@Setup
+	public void setup() {
+		scenario = ScoringBenchmarkData.createScenario(PERSONS, 1);
+		persons = scenario.getPopulation().getPersons().values().toArray(new Person[0]);
+
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(scenario.getConfig(), AdvancedScoringConfigGroup.class);
+		scoring.writeUtilVariations = writeUtilVariations;
+		scoring.loadPreferences = AdvancedScoringConfigGroup.LoadPreferences.skipMissing;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PERSONS)
+	public ScoringParameters build() {
+		IndividualPersonScoringParameters params = new IndividualPersonScoringParameters(scenario);
+		ScoringParameters last = null;
+		for (Person person : persons) {
+			last = params.getScoringParameters(person);
+		}
+		return last;
+	}
+}
@@ -11,8 +11,6 @@ import org.matsim.application.MATSimAppCommand;
 import org.matsim.application.options.InputOptions;
 import org.matsim.application.options.OutputOptions;
 import org.matsim.application.options.SampleOptions;
-import org.matsim.core.api.experimental.events.EventsManager;
-import org.matsim.core.events.EventsUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.utils.io.IOUtils;
 import picocli.CommandLine;
@@ -47,6 +45,9 @@ public class DTVAnalysis implements MATSimAppCommand {
 	@CommandLine.Option(names = "--input-dtv", description = "Path to the dtv matched file", required = true)
 	private String dtvPath;
 
+	@CommandLine.Option(names = "--threads", description = "Number of threads for reading the events. Defaults to the number of available processors.")
+	private Integer threads;
+
 	public static void main(String[] args) {
 		new DTVAnalysis().execute(args);
 	}
@@ -63,13 +64,10 @@ public class DTVAnalysis implements MATSimAppCommand {
 
 		Network network = input.getNetwork();
 
-		//reading events file & create volumes
-		EventsManager eventsManager = EventsUtils.createEventsManager();
-		VolumesAnalyzer volume = new VolumesAnalyzer(3600, 86400, network, true);
-		eventsManager.addHandler(volume);
-		eventsManager.initProcessing();
-		EventsUtils.readEvents(eventsManager, input.getEventsPath());
-		eventsManager.finishProcessing();
+		//reading events file & create volumes, only car volumes are needed
+		int n = threads != null ? threads : Runtime.getRuntime().availableProcessors();
+		ParallelVolumesReader volume = new ParallelVolumesReader(3600, 86400, network, Set.of(TransportMode.car), n);
+		volume.read(input.getEventsPath());
 
 		Table sim = createSimDtvTable(dtv, network, volume);
 
@@ -104,7 +102,7 @@ public class DTVAnalysis implements MATSimAppCommand {
 		return 0;
 	}
 
-	private Table createSimDtvTable(Table dtv, Network network, VolumesAnalyzer volume) {
+	private Table createSimDtvTable(Table dtv, Network network, ParallelVolumesReader volume) {
 
 		dtv.addColumns(
 			TextColumn.create("link_id"),
@@ -0,0 +1,320 @@
+package org.matsim.analysis;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts link volumes per mode and time bin from an events file, the same way as {@link org.matsim.analysis.VolumesAnalyzer} with observed modes.
+ * <p>
+ * The (usually gzip'd) file is decompressed by one thread and split into chunks of lines, which are parsed in parallel.
+ * This relies on the MATSim events format with one event per line and reads only link enter and vehicle enters traffic events.
+ * Each worker counts into its own primitive array of {@code link x time bin} per mode. Link entries of vehicles that entered traffic in an earlier chunk
+ * are resolved afterward in file order, so that the result is identical to the sequential analysis.
+ * Links that are not part of the network are not counted.
+ */
+public final class ParallelVolumesReader {
+
+	private static final String TYPE = " type=\"";
+	private static final String LINK_ENTER = "entered link";
+	private static final String VEHICLE_ENTERS = "vehicle enters traffic";
+
+	private static final String ATTR_TIME = " time=\"";
+	private static final String ATTR_LINK = " link=\"";
+	private static final String ATTR_VEHICLE = " vehicle=\"";
+	private static final String ATTR_MODE = " networkMode=\"";
+
+	private final int timeBinSize;
+	private final int maxTime;
+	private final int maxSlotIndex;
+	private final int slots;
+	private final int threads;
+	private final int chunkSize;
+
+	private final Object2IntMap<String> links = new Object2IntOpenHashMap<>();
+
+	/**
+	 * Modes to count, null for all.
+	 */
+	private final Set<String> observedModes;
+	private final Map<String, Integer> modes = new ConcurrentHashMap<>();
+	private final AtomicInteger nextMode = new AtomicInteger();
+
+	/**
+	 * Counts of all workers, which are merged at the end.
+	 */
+	private final Queue<Counts> workerCounts = new ConcurrentLinkedQueue<>();
+	private final Counts counts = new Counts();
+
+	/**
+	 * Mode index of each vehicle at the end of the last merged chunk, -1 for modes that are not counted.
+	 */
+	private final Map<String, Integer> vehicleModes = new HashMap<>();
+
+	/**
+	 * Create a new reader.
+	 *
+	 * @param observedModes modes to count, null to count all modes
+	 * @param threads       number of parsing threads
+	 */
+	public ParallelVolumesReader(int timeBinSize, int maxTime, Network network, Set<String> observedModes, int threads) {
+		this(timeBinSize, maxTime, network, observedModes, threads, 65536);
+	}
+
+	ParallelVolumesReader(int timeBinSize, int maxTime, Network network, Set<String> observedModes, int threads, int chunkSize) {
+		this.chunkSize = chunkSize;
+		this.timeBinSize = timeBinSize;
+		this.maxTime = maxTime;
+		this.maxSlotIndex = (maxTime / timeBinSize) + 1;
+		this.slots = maxSlotIndex + 1;
+		this.observedModes = observedModes;
+		this.threads = threads;
+
+		links.defaultReturnValue(-1);
+		int i = 0;
+		for (Id<Link> linkId : network.getLinks().keySet()) {
+			links.put(linkId.toString(), i++);
+		}
+	}
+
+	/**
+	 * Read the events file and count the volumes. Can only be called once.
+	 */
+	public void read(String eventsFile) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ThreadLocal<Counts> local = ThreadLocal.withInitial(() -> {
+			Counts c = new Counts();
+			workerCounts.add(c);
+			return c;
+		});
+
+		// Chunks are merged in file order, the number of chunks in flight is limited to bound the memory
+		Deque<Future<Chunk>> pending = new ArrayDeque<>();
+
+		try (BufferedReader reader = IOUtils.getBufferedReader(eventsFile)) {
+
+			List<String> lines = new ArrayList<>(chunkSize);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+				if (lines.size() == chunkSize) {
+					List<String> chunk = lines;
+					pending.add(executor.submit(() -> process(chunk, local.get())));
+					lines = new ArrayList<>(chunkSize);
+
+					while (pending.size() > threads * 2) {
+						merge(pending.poll().get());
+					}
+				}
+			}
+
+			List<String> chunk = lines;
+			pending.add(executor.submit(() -> process(chunk, local.get())));
+
+			while (!pending.isEmpty()) {
+				merge(pending.poll().get());
+			}
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Could not process events", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (Counts c : workerCounts) {
+			counts.addAll(c);
+		}
+		workerCounts.clear();
+	}
+
+	/**
+	 * Parse one chunk of lines. Link entries are counted directly if the mode of the vehicle is known within the chunk.
+	 */
+	private Chunk process(List<String> lines, Counts local) {
+
+		Chunk chunk = new Chunk();
+
+		for (String line : lines) {
+
+			int typeIdx = line.indexOf(TYPE);
+			if (typeIdx < 0)
+				continue;
+
+			typeIdx += TYPE.length();
+			if (line.startsWith(LINK_ENTER, typeIdx)) {
+				int link = links.getInt(attribute(line, ATTR_LINK));
+				if (link < 0)
+					continue;
+
+				int idx = link * slots + getTimeSlotIndex(Double.parseDouble(attribute(line, ATTR_TIME)));
+				String vehicle = attribute(line, ATTR_VEHICLE);
+
+				Integer mode = chunk.vehicleModes.get(vehicle);
+				if (mode == null)
+					chunk.addUnresolved(vehicle, idx);
+				else if (mode >= 0)
+					local.increment(mode, idx);
+
+			} else if (line.startsWith(VEHICLE_ENTERS, typeIdx)) {
+				String mode = attribute(line, ATTR_MODE);
+				if (mode != null)
+					chunk.vehicleModes.put(attribute(line, ATTR_VEHICLE), getModeIndex(mode));
+			}
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * Resolve the remaining link entries with the vehicle modes from previous chunks.
+	 */
+	private void merge(Chunk chunk) {
+
+		for (int i = 0; i < chunk.size; i++) {
+			Integer mode = vehicleModes.get(chunk.vehicles[i]);
+			if (mode != null && mode >= 0)
+				counts.increment(mode, chunk.indices[i]);
+		}
+
+		vehicleModes.putAll(chunk.vehicleModes);
+	}
+
+	/**
+	 * Index of an observed mode, or -1 if the mode is not counted.
+	 */
+	private int getModeIndex(String mode) {
+		if (observedModes != null && !observedModes.contains(mode))
+			return -1;
+
+		return modes.computeIfAbsent(mode, k -> nextMode.getAndIncrement());
+	}
+
+	private int getTimeSlotIndex(double time) {
+		if (time > maxTime)
+			return maxSlotIndex;
+
+		return (int) time / timeBinSize;
+	}
+
+	/**
+	 * Volumes per time bin for a link and mode.
+	 *
+	 * @return null if the link is not in the network or the mode was not counted
+	 */
+	public int[] getVolumesForLink(Id<Link> linkId, String mode) {
+		int link = links.getInt(linkId.toString());
+		Integer m = modes.get(mode);
+		if (link < 0 || m == null || m >= counts.perMode.length || counts.perMode[m] == null)
+			return null;
+
+		return Arrays.copyOfRange(counts.perMode[m], link * slots, (link + 1) * slots);
+	}
+
+	/**
+	 * Extract the value of an attribute from an event line.
+	 *
+	 * @param prefix attribute name with leading space and opening quote
+	 * @return null if not present
+	 */
+	static String attribute(String line, String prefix) {
+		int start = line.indexOf(prefix);
+		if (start < 0)
+			return null;
+
+		start += prefix.length();
+		int end = line.indexOf('"', start);
+		String value = line.substring(start, end);
+
+		if (value.indexOf('&') < 0)
+			return value;
+
+		return value.replace("&lt;", "<")
+			.replace("&gt;", ">")
+			.replace("&quot;", "\"")
+			.replace("&apos;", "'")
+			.replace("&amp;", "&");
+	}
+
+	/**
+	 * Flat counts of {@code link x time bin} for each mode index.
+	 */
+	private final class Counts {
+
+		private int[][] perMode = new int[0][];
+
+		void increment(int mode, int idx) {
+			if (mode >= perMode.length)
+				perMode = Arrays.copyOf(perMode, mode + 1);
+
+			if (perMode[mode] == null)
+				perMode[mode] = new int[links.size() * slots];
+
+			perMode[mode][idx]++;
+		}
+
+		void addAll(Counts other) {
+			if (other.perMode.length > perMode.length)
+				perMode = Arrays.copyOf(perMode, other.perMode.length);
+
+			for (int m = 0; m < other.perMode.length; m++) {
+				int[] src = other.perMode[m];
+				if (src == null)
+					continue;
+
+				if (perMode[m] == null) {
+					perMode[m] = src;
+					continue;
+				}
+
+				int[] dst = perMode[m];
+				for (int i = 0; i < src.length; i++) {
+					dst[i] += src[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Result of one parsed chunk.
+	 */
+	private static final class Chunk {
+
+		/**
+		 * Last mode index of each vehicle that entered traffic within this chunk.
+		 */
+		private final Map<String, Integer> vehicleModes = new HashMap<>();
+
+		/**
+		 * Link entries of vehicles, whose mode is not known within the chunk.
+		 */
+		private String[] vehicles = new String[256];
+		private int[] indices = new int[256];
+		private int size;
+
+		void addUnresolved(String vehicle, int idx) {
+			if (size == vehicles.length) {
+				vehicles = Arrays.copyOf(vehicles, size * 2);
+				indices = Arrays.copyOf(indices, size * 2);
+			}
+
+			vehicles[size] = vehicle;
+			indices[size++] = idx;
+		}
+	}
+}
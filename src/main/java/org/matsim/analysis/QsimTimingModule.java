@@ -7,8 +7,8 @@ import org.apache.commons.csv.CSVPrinter;
 import org.matsim.core.config.Config;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
-import org.matsim.core.controler.events.BeforeMobsimEvent;
-import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.events.*;
+import org.matsim.core.controler.listener.*;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
 import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
@@ -16,89 +16,193 @@ import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.Duration;
-import java.time.Instant;
+import java.util.List;
 
 /**
- * This module measures the runtime of the QSim and writes it to a CSV file.
+ * This module measures the runtime of the QSim and the other phases of each iteration and writes them to CSV files.
+ * <p>
+ * {@code runtimes.csv} contains the QSim runtime of the last iteration.
+ * {@code runtime_phases.csv} contains wall time, process CPU time, allocated bytes and GC pauses for every iteration and phase in long format.
+ * The phases are separated by the controler and mobsim events, i.e. each phase contains also the listeners of the event that starts it:
+ * <ul>
+ *     <li>{@code replanning}: iteration start and replanning</li>
+ *     <li>{@code mobsim_init}: before mobsim listeners and QSim initialization</li>
+ *     <li>{@code mobsim}: the QSim itself, including event handling during the simulation</li>
+ *     <li>{@code after_mobsim}: QSim cleanup and after mobsim listeners, e.g. finishing the event writing</li>
+ *     <li>{@code scoring}: scoring listeners</li>
+ *     <li>{@code iteration_ends}: analysis listeners and output written at iteration end</li>
+ * </ul>
  */
 public final class QsimTimingModule extends AbstractModule {
 
+	/**
+	 * Phases in the order they occur within one iteration.
+	 */
+	public static final List<String> PHASES = List.of("replanning", "mobsim_init", "mobsim", "after_mobsim", "scoring", "iteration_ends");
+
 	@Override
 	public void install() {
-		// bind the timer, so that it can be injected into CheckForLastIteration
-		// use singleton scope, because, we want the same timer everywhere.
-		bind(Timer.class).in(Singleton.class);
-		addMobsimListenerBinding().to(Timer.class);
-		addControlerListenerBinding().to(CheckForLastIteration.class);
+		// use singleton scope, because, we want the same profiler as mobsim and controler listener.
+		bind(Profiler.class).in(Singleton.class);
+		addMobsimListenerBinding().to(Profiler.class);
+		addControlerListenerBinding().to(Profiler.class);
 	}
 
-	private static final class CheckForLastIteration implements BeforeMobsimListener {
+	private static CSVFormat createWriteFormat(String... header) {
+		return CSVFormat.DEFAULT.builder()
+			.setHeader(header)
+			.setSkipHeaderRecord(false)
+			.build();
+	}
 
-		private final Timer timer;
-		private final Config config;
+	/**
+	 * Snapshot of the accumulated resource usage of the JVM.
+	 *
+	 * @param wall    wall time in ns
+	 * @param cpu     process cpu time in ns, including threads that are already terminated
+	 * @param alloc   allocated heap bytes of all threads
+	 * @param gcTime  accumulated gc pause time in ms
+	 * @param gcCount number of collections
+	 */
+	private record Sample(long wall, long cpu, long alloc, long gcTime, long gcCount) {
 
-		@Inject
-		private CheckForLastIteration(Config config, Timer timer) {
-			this.timer = timer;
-			this.config = config;
-		}
+		private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		private static final com.sun.management.OperatingSystemMXBean OS = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
 
-		@Override
-		public void notifyBeforeMobsim(BeforeMobsimEvent e) {
-			// using e.getIsLastIteration, does not yield the correct result somehow
-			this.timer.setIsLastIteration(config.controller().getLastIteration() == e.getIteration());
+		static Sample now() {
+			long gcTime = 0;
+			long gcCount = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				// ZGC reports the concurrent cycles separately from its pauses
+				if (gc.getName().endsWith("Cycles"))
+					continue;
+
+				gcTime += Math.max(0, gc.getCollectionTime());
+				gcCount += Math.max(0, gc.getCollectionCount());
+			}
+
+			return new Sample(System.nanoTime(), OS.getProcessCpuTime(), THREADS.getTotalThreadAllocatedBytes(), gcTime, gcCount);
 		}
 	}
 
-	private static final class Timer implements MobsimInitializedListener, MobsimBeforeCleanupListener {
-		private Instant start;
-		private boolean isLastIteration;
+	private static final class Profiler implements MobsimInitializedListener, MobsimBeforeCleanupListener,
+		IterationStartsListener, BeforeMobsimListener, ScoringListener, IterationEndsListener, ShutdownListener {
 
 		private final Config config;
 		private final OutputDirectoryHierarchy outDir;
 
+		private CSVPrinter csv;
+		private int iteration;
+		private String phase;
+		private Sample start;
+		private long mobsimTime;
+
 		@Inject
-		private Timer(Config config, OutputDirectoryHierarchy outDir) {
+		private Profiler(Config config, OutputDirectoryHierarchy outDir) {
 			this.config = config;
 			this.outDir = outDir;
 		}
 
-		void setIsLastIteration(boolean isLastIteration) {
-			this.isLastIteration = isLastIteration;
+		@Override
+		public void notifyIterationStarts(IterationStartsEvent e) {
+			// The previous iteration ends with the start of the next one, it needs to be recorded with its own iteration number
+			next("replanning");
+			iteration = e.getIteration();
+		}
+
+		@Override
+		public void notifyBeforeMobsim(BeforeMobsimEvent e) {
+			next("mobsim_init");
 		}
 
 		@Override
 		public void notifyMobsimInitialized(MobsimInitializedEvent e) {
-			if (isLastIteration) {
-				start = Instant.now();
-			}
+			next("mobsim");
 		}
 
 		@Override
 		public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
-			if (isLastIteration) {
-				Instant now = Instant.now();
-				Duration duration = Duration.between(start, now);
-				int size = config.qsim().getNumberOfThreads();
-				Path filename = Paths.get(outDir.getOutputFilename("runtimes.csv"));
-				try (BufferedWriter writer = Files.newBufferedWriter(filename); var p = new CSVPrinter(writer, createWriteFormat("size", "rank", "runtime", "rtr"))) {
-					double rtr = config.qsim().getEndTime().seconds() / duration.toSeconds();
-					p.printRecord(size, 0, duration.toMillis(), rtr);
+			mobsimTime = System.nanoTime() - start.wall;
+			next("after_mobsim");
+
+			// using e.getIsLastIteration, does not yield the correct result somehow
+			if (config.controller().getLastIteration() == iteration) {
+				writeQsimRuntime();
+			}
+		}
+
+		@Override
+		public void notifyScoring(ScoringEvent e) {
+			next("scoring");
+		}
+
+		@Override
+		public void notifyIterationEnds(IterationEndsEvent e) {
+			next("iteration_ends");
+		}
+
+		@Override
+		public void notifyShutdown(ShutdownEvent e) {
+			next(null);
+
+			if (csv != null) {
+				try {
+					csv.close();
 				} catch (IOException ex) {
-					throw new RuntimeException(ex);
+					throw new UncheckedIOException(ex);
 				}
 			}
 		}
 
-		private static CSVFormat createWriteFormat(String... header) {
-			return CSVFormat.DEFAULT.builder()
-				.setHeader(header)
-				.setSkipHeaderRecord(false)
-				.build();
+		/**
+		 * Record the current phase and start the next one. The phase is recorded with the current value of {@link #iteration}.
+		 */
+		private void next(String nextPhase) {
+			Sample now = Sample.now();
+
+			if (phase != null) {
+				try {
+					if (csv == null) {
+						BufferedWriter writer = Files.newBufferedWriter(Path.of(outDir.getOutputFilename("runtime_phases.csv")));
+						csv = new CSVPrinter(writer, createWriteFormat("iteration", "phase", "wall_time", "cpu_time", "alloc_mb", "gc_time", "gc_count"));
+					}
+
+					csv.printRecord(iteration, phase,
+						(now.wall - start.wall) / 1e9,
+						now.cpu >= 0 ? (now.cpu - start.cpu) / 1e9 : Double.NaN,
+						now.alloc >= 0 ? (now.alloc - start.alloc) / 1024d / 1024d : Double.NaN,
+						(now.gcTime - start.gcTime) / 1e3,
+						now.gcCount - start.gcCount);
+
+					// Flush after each iteration, so that the data is available while the simulation is running
+					if (PHASES.get(PHASES.size() - 1).equals(phase))
+						csv.flush();
+
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+
+			phase = nextPhase;
+			start = now;
+		}
+
+		private void writeQsimRuntime() {
+			int size = config.qsim().getNumberOfThreads();
+			Path filename = Paths.get(outDir.getOutputFilename("runtimes.csv"));
+			try (BufferedWriter writer = Files.newBufferedWriter(filename); var p = new CSVPrinter(writer, createWriteFormat("size", "rank", "runtime", "rtr"))) {
+				long millis = mobsimTime / 1_000_000;
+				double rtr = config.qsim().getEndTime().seconds() / (millis / 1000);
+				p.printRecord(size, 0, millis, rtr);
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
 		}
 	}
 }
@@ -1,5 +1,9 @@
 package org.matsim.analysis;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -10,24 +14,30 @@ import org.matsim.application.options.InputOptions;
 import org.matsim.application.options.OutputOptions;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.events.EventsUtils;
-import org.matsim.core.router.DijkstraFactory;
 import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
-import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.speedy.SpeedyGraphBuilder;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
 import org.matsim.core.trafficmonitoring.TravelTimeCalculator;
 import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.OptionalTime;
 import picocli.CommandLine;
 import tech.tablesaw.api.ColumnType;
 import tech.tablesaw.api.DoubleColumn;
-import tech.tablesaw.api.Row;
 import tech.tablesaw.api.Table;
 import tech.tablesaw.columns.Column;
 import tech.tablesaw.io.csv.CsvReadOptions;
 
 import java.io.BufferedReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static tech.tablesaw.aggregate.AggregateFunctions.mean;
 
@@ -52,6 +62,9 @@ public class TravelTimeComparison implements MATSimAppCommand {
 	@CommandLine.Option(names = "--input-ref", description = "File with reference data", required = true)
 	private String apiFile;
 
+	@CommandLine.Option(names = "--threads", description = "Number of threads for routing. Defaults to the number of available processors.")
+	private Integer threads;
+
 	public static void main(String[] args) {
 		new TravelTimeComparison().execute(args);
 	}
@@ -69,32 +82,26 @@ public class TravelTimeComparison implements MATSimAppCommand {
 
 		Network network = input.getNetwork();
 		TravelTime tt = collectTravelTimes(network).getLinkTravelTimes();
-		TravelTime fs = new FreeSpeedTravelTime();
 
-		OnlyTimeDependentTravelDisutility util = new OnlyTimeDependentTravelDisutility(tt);
+		int n = data.rowCount();
+		Node[] from = new Node[n];
+		Node[] to = new Node[n];
+		double[] departure = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			from[i] = network.getNodes().get(Id.createNodeId(data.stringColumn("from_node").get(i)));
+			to[i] = network.getNodes().get(Id.createNodeId(data.stringColumn("to_node").get(i)));
+			departure[i] = data.intColumn("hour").getInt(i) * 3600;
+		}
 
-		LeastCostPathCalculator congestedRouter = new DijkstraFactory(false).createPathCalculator(network, util, tt);
-		LeastCostPathCalculator freeflowRouter = new DijkstraFactory(false).createPathCalculator(network, new OnlyTimeDependentTravelDisutility(fs), fs);
+		Speeds speeds = computeSpeeds(network, tt, from, to, departure,
+			threads != null ? threads : Runtime.getRuntime().availableProcessors());
 
 		data.addColumns(
-			DoubleColumn.create("simulated", data.rowCount()),
-			DoubleColumn.create("free_flow", data.rowCount())
+			DoubleColumn.create("simulated", speeds.congested),
+			DoubleColumn.create("free_flow", speeds.freeFlow)
 		);
 
-		for (Row row : data) {
-			LeastCostPathCalculator.Path congested = computePath(network, congestedRouter, row);
-			double dist = congested.links.stream().mapToDouble(Link::getLength).sum();
-			double speed = 3.6 * dist / congested.travelTime;
-
-			row.setDouble("simulated", speed);
-
-			LeastCostPathCalculator.Path freeflow = computePath(network, freeflowRouter, row);
-			dist = freeflow.links.stream().mapToDouble(Link::getLength).sum();
-			speed = 3.6 * dist / freeflow.travelTime;
-
-			row.setDouble("free_flow", speed);
-		}
-
 		data.addColumns(
 			data.doubleColumn("simulated").subtract(data.doubleColumn("mean")).setName("bias")
 		);
@@ -118,11 +125,69 @@ public class TravelTimeComparison implements MATSimAppCommand {
 		return 0;
 	}
 
-	private LeastCostPathCalculator.Path computePath(Network network, LeastCostPathCalculator router, Row row) {
-		Node fromNode = network.getNodes().get(Id.createNodeId(row.getString("from_node")));
-		Node toNode = network.getNodes().get(Id.createNodeId(row.getString("to_node")));
+	/**
+	 * Compute the average speed in km/h of the fastest route for each origin, destination and departure time.
+	 * Rows with the same origin and departure time are routed with one tree search, which stops when all their destinations are reached.
+	 * These groups are distributed over multiple threads, the result is in the order of the input.
+	 */
+	static Speeds computeSpeeds(Network network, TravelTime tt, Node[] from, Node[] to, double[] departure, int threads) {
+
+		// Travel time data may be consolidated lazily on first access, which is not thread-safe
+		for (Link link : network.getLinks().values()) {
+			tt.getLinkTravelTime(link, 0, null, null);
+		}
+
+		SpeedyGraph graph = SpeedyGraphBuilder.build(network);
+		TravelTime fs = new FreeSpeedTravelTime();
+
+		ThreadLocal<LeastCostPathTree> congestedTree = ThreadLocal.withInitial(() -> new LeastCostPathTree(graph, tt, new OnlyTimeDependentTravelDisutility(tt)));
+		ThreadLocal<LeastCostPathTree> freeFlowTree = ThreadLocal.withInitial(() -> new LeastCostPathTree(graph, fs, new OnlyTimeDependentTravelDisutility(fs)));
+
+		Map<Departure, IntList> groups = new LinkedHashMap<>();
+		for (int i = 0; i < from.length; i++) {
+			groups.computeIfAbsent(new Departure(from[i], departure[i]), k -> new IntArrayList()).add(i);
+		}
+
+		Speeds speeds = new Speeds(new double[from.length], new double[from.length]);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for (Map.Entry<Departure, IntList> e : groups.entrySet()) {
+				futures.add(CompletableFuture.runAsync(() -> {
+					route(congestedTree.get(), e.getKey(), e.getValue(), to, speeds.congested);
+					route(freeFlowTree.get(), e.getKey(), e.getValue(), to, speeds.freeFlow);
+				}, executor));
+			}
+
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		} finally {
+			executor.shutdown();
+		}
+
+		return speeds;
+	}
+
+	/**
+	 * Route from one origin to all destinations of the given rows and store the speeds at the row indices.
+	 */
+	private static void route(LeastCostPathTree tree, Departure dep, IntList rows, Node[] to, double[] speeds) {
+
+		IntSet remaining = new IntOpenHashSet();
+		for (int i = 0; i < rows.size(); i++) {
+			remaining.add(to[rows.getInt(i)].getId().index());
+		}
 
-		return router.calcLeastCostPath(fromNode, toNode, row.getInt("hour") * 3600, null, null);
+		tree.calculate(dep.from, dep.time, null, null,
+			(nodeIndex, arrivalTime, travelCost, distance, departureTime) -> remaining.remove(nodeIndex) && remaining.isEmpty());
+
+		for (int i = 0; i < rows.size(); i++) {
+			int row = rows.getInt(i);
+			int idx = to[row].getId().index();
+
+			OptionalTime arrival = tree.getTime(idx);
+			speeds[row] = arrival.isDefined() ? 3.6 * tree.getDistance(idx) / (arrival.seconds() - dep.time) : Double.NaN;
+		}
 	}
 
 	private TravelTimeCalculator collectTravelTimes(Network network) {
@@ -144,4 +209,16 @@ public class TravelTimeComparison implements MATSimAppCommand {
 		return travelTimes;
 	}
 
+	/**
+	 * Origin and departure time of a group of routes.
+	 */
+	private record Departure(Node from, double time) {
+	}
+
+	/**
+	 * Speeds in km/h for each row, with congested and free flow travel times.
+	 */
+	record Speeds(double[] congested, double[] freeFlow) {
+	}
+
 }
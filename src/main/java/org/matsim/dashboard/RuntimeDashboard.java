@@ -0,0 +1,61 @@
+package org.matsim.dashboard;
+
+import org.matsim.analysis.QsimTimingModule;
+import org.matsim.simwrapper.Dashboard;
+import org.matsim.simwrapper.Data;
+import org.matsim.simwrapper.Header;
+import org.matsim.simwrapper.Layout;
+import org.matsim.simwrapper.viz.Plotly;
+import tech.tablesaw.plotly.components.Axis;
+import tech.tablesaw.plotly.traces.BarTrace;
+
+/**
+ * Dashboard showing the runtime profile of each iteration, as written by {@link QsimTimingModule}.
+ */
+public class RuntimeDashboard implements Dashboard {
+
+	private static final String FILE = "(*.)?runtime_phases.csv";
+
+	@Override
+	public double priority() {
+		return -2;
+	}
+
+	@Override
+	public void configure(Header header, Layout layout) {
+
+		header.title = "Runtime";
+		header.description = "Wall time, CPU time, allocated memory and GC pauses per iteration and phase of the simulation run.";
+
+		layout.row("time")
+			.el(Plotly.class, (viz, data) -> stacked(viz, data, "Wall time", "wall_time", "Time [s]"))
+			.el(Plotly.class, (viz, data) -> stacked(viz, data, "CPU time", "cpu_time", "Time [s]"));
+
+		layout.row("memory")
+			.el(Plotly.class, (viz, data) -> stacked(viz, data, "Allocated memory", "alloc_mb", "Memory [MB]"))
+			.el(Plotly.class, (viz, data) -> stacked(viz, data, "GC pauses", "gc_time", "Time [s]"));
+	}
+
+	/**
+	 * Bar chart with one stacked bar per iteration, split by phase.
+	 */
+	private static void stacked(Plotly viz, Data data, String title, String column, String axis) {
+
+		viz.title = title;
+		viz.description = "per iteration and phase";
+
+		Plotly.DataSet ds = viz.addDataset(data.output(FILE));
+
+		viz.layout = tech.tablesaw.plotly.components.Layout.builder()
+			.barMode(tech.tablesaw.plotly.components.Layout.BarMode.STACK)
+			.xAxis(Axis.builder().title("Iteration").build())
+			.yAxis(Axis.builder().title(axis).build())
+			.build();
+
+		viz.addTrace(BarTrace.builder(Plotly.OBJ_INPUT, Plotly.INPUT).build(), ds.mapping()
+			.x("iteration")
+			.y(column)
+			.name("phase")
+		);
+	}
+}
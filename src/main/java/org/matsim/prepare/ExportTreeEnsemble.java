@@ -0,0 +1,50 @@
+package org.matsim.prepare;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import picocli.CommandLine;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+@CommandLine.Command(
+	name = "export-tree-ensemble",
+	description = "Converts generated tree model classes into flat binary resources for FlatTreeEnsemble."
+)
+public class ExportTreeEnsemble implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(ExportTreeEnsemble.class);
+
+	@CommandLine.Parameters(arity = "1..*", description = "Source files of the generated models.")
+	private List<Path> input;
+
+	@CommandLine.Option(names = "--output", description = "Output directory, file names are derived from the input.", required = true)
+	private Path output;
+
+	public static void main(String[] args) {
+		new ExportTreeEnsemble().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Files.createDirectories(output);
+
+		for (Path path : input) {
+
+			FlatTreeEnsemble ensemble = FlatTreeEnsemble.parseGenerated(path);
+
+			String name = path.getFileName().toString().replace(".java", ".bin");
+			try (OutputStream out = Files.newOutputStream(output.resolve(name))) {
+				ensemble.write(out);
+			}
+
+			log.info("Exported {} with {} trees and {} features to {}", path, ensemble.getNumberOfTrees(), ensemble.getFeatures().length, name);
+		}
+
+		return 0;
+	}
+}
@@ -0,0 +1,517 @@
+package org.matsim.prepare;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates an ensemble of regression trees, which are stored in contiguous primitive arrays.
+ * <p>
+ * The generated model classes consist of deeply nested if-else statements, which are often too large to be compiled by the JIT.
+ * Instead, these models can be converted with {@link #parseGenerated(Path)} and stored as compact binary resource.
+ * Predictions are bit-identical to the generated code.
+ * <p>
+ * All split conditions are normalized to the form {@code x > threshold}, the true branch is stored in {@code left}.
+ * Leaves are marked by a feature index of -1. Each leaf also keeps the index of its value in the parameters of the generated model,
+ * so that predictions with other parameters are possible, see {@link #predict(double[], double[])}.
+ * <p>
+ * Input features may be standardized with {@code (x - center) / scale}, see {@link #getData(Object2DoubleMap)}.
+ * The output is computed as {@code offset + (intercept + sum of trees) * factor}.
+ */
+public final class FlatTreeEnsemble {
+
+	private static final int MAGIC = 0x46544533;
+
+	/**
+	 * Block size for parallel batch predictions.
+	 */
+	private static final int BLOCK_SIZE = 4096;
+
+	private static final Pattern FEATURE = Pattern.compile("data\\[(\\d+)] = \\(?\\w+\\.getDouble\\(\"(\\w+)\"\\)(?: - (\\S+)\\) / (\\S+))?;");
+	private static final Pattern PARAMS = Pattern.compile("DEFAULT_PARAMS = \\{(.+)};");
+	private static final Pattern TREE = Pattern.compile("double var\\d+;");
+	private static final Pattern SPLIT = Pattern.compile("if \\(input\\[(\\d+)] (>|>=|<|<=) (\\S+)\\) \\{");
+	private static final Pattern LEAF = Pattern.compile("var\\d+ = params\\[(\\d+)];");
+	private static final Pattern RETURN = Pattern.compile("return (?:(\\S+) \\+ )?(\\()?(?:(\\S+) \\+ )?(var0(?: \\+ var\\d+)*)\\)?(?: \\* (\\S+))?;");
+
+	private final String[] features;
+	private final double[] center;
+	private final double[] scale;
+	private final int[] roots;
+	private final int[] feature;
+	private final double[] threshold;
+	private final int[] left;
+	private final int[] right;
+	private final double[] value;
+	private final int[] param;
+	private final int numParams;
+
+	private final double intercept;
+	private final double offset;
+	private final double factor;
+
+	FlatTreeEnsemble(String[] features, double[] center, double[] scale, int[] roots,
+					 int[] feature, double[] threshold, int[] left, int[] right, double[] value, int[] param,
+					 double intercept, double offset, double factor) {
+		this.features = features;
+		this.center = center;
+		this.scale = scale;
+		this.roots = roots;
+		this.feature = feature;
+		this.threshold = threshold;
+		this.left = left;
+		this.right = right;
+		this.value = value;
+		this.param = param;
+		this.numParams = Arrays.stream(param).max().orElse(-1) + 1;
+		this.intercept = intercept;
+		this.offset = offset;
+		this.factor = factor;
+	}
+
+	/**
+	 * Load an ensemble from a classpath resource, given as absolute path such as {@code /org/matsim/prepare/facilities/Model.bin}.
+	 */
+	public static FlatTreeEnsemble load(String resource) {
+		try (InputStream in = FlatTreeEnsemble.class.getResourceAsStream(resource)) {
+			if (in == null)
+				throw new IllegalArgumentException("Resource not found: " + resource);
+
+			return read(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Read an ensemble in the binary format written by {@link #write(OutputStream)}.
+	 */
+	public static FlatTreeEnsemble read(InputStream stream) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a tree ensemble file");
+
+		String[] features = new String[in.readInt()];
+		double[] center = new double[features.length];
+		double[] scale = new double[features.length];
+		for (int i = 0; i < features.length; i++) {
+			features[i] = in.readUTF();
+			center[i] = in.readDouble();
+			scale[i] = in.readDouble();
+		}
+
+		int[] roots = new int[in.readInt()];
+		for (int i = 0; i < roots.length; i++) {
+			roots[i] = in.readInt();
+		}
+
+		int n = in.readInt();
+		int[] feature = new int[n];
+		double[] threshold = new double[n];
+		int[] left = new int[n];
+		int[] right = new int[n];
+		double[] value = new double[n];
+		int[] param = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			feature[i] = in.readInt();
+			threshold[i] = in.readDouble();
+			left[i] = in.readInt();
+			right[i] = in.readInt();
+			value[i] = in.readDouble();
+			param[i] = in.readInt();
+		}
+
+		double intercept = in.readDouble();
+		double offset = in.readDouble();
+		double factor = in.readDouble();
+
+		return new FlatTreeEnsemble(features, center, scale, roots, feature, threshold, left, right, value, param, intercept, offset, factor);
+	}
+
+	/**
+	 * Convert the source code of a generated model class into an ensemble.
+	 */
+	public static FlatTreeEnsemble parseGenerated(Path source) throws IOException {
+
+		List<String> lines = Files.readAllLines(source).stream()
+			.map(String::strip)
+			.filter(l -> !l.isEmpty())
+			.toList();
+
+		List<String> features = new ArrayList<>();
+		DoubleArrayList center = new DoubleArrayList();
+		DoubleArrayList scale = new DoubleArrayList();
+		double[] params = null;
+		double[] output = null;
+
+		Builder builder = new Builder();
+		IntArrayList roots = new IntArrayList();
+
+		Iterator<String> it = lines.iterator();
+		while (it.hasNext()) {
+			String line = it.next();
+
+			Matcher m = FEATURE.matcher(line);
+			if (m.matches()) {
+				if (Integer.parseInt(m.group(1)) != features.size())
+					throw new IllegalArgumentException("Features are not in order: " + line);
+
+				features.add(m.group(2));
+				center.add(m.group(3) != null ? Double.parseDouble(m.group(3)) : 0);
+				scale.add(m.group(4) != null ? Double.parseDouble(m.group(4)) : 1);
+				continue;
+			}
+
+			m = PARAMS.matcher(line);
+			if (m.find()) {
+				params = Arrays.stream(m.group(1).split(",")).mapToDouble(s -> Double.parseDouble(s.strip())).toArray();
+				continue;
+			}
+
+			if (TREE.matcher(line).matches()) {
+				if (params == null)
+					throw new IllegalArgumentException("Params must be defined before the trees.");
+
+				roots.add(builder.parseNode(it, params));
+			} else if (line.contains("var0")) {
+				output = parseReturn(line, roots.size());
+			}
+		}
+
+		if (roots.isEmpty())
+			throw new IllegalArgumentException("No trees found in " + source);
+
+		if (output == null)
+			throw new IllegalArgumentException("No return statement found in " + source);
+
+		return builder.build(features.toArray(new String[0]), center.toDoubleArray(), scale.toDoubleArray(), roots.toIntArray(), output);
+	}
+
+	/**
+	 * Parse the return statement of the score function.
+	 *
+	 * @return intercept, offset and factor
+	 */
+	private static double[] parseReturn(String line, int trees) {
+
+		Matcher m = RETURN.matcher(line);
+		if (!m.matches())
+			throw new IllegalArgumentException("Unsupported return statement: " + line);
+
+		StringBuilder sum = new StringBuilder("var0");
+		for (int i = 1; i < trees; i++) {
+			sum.append(" + var").append(i);
+		}
+
+		if (!m.group(4).contentEquals(sum))
+			throw new IllegalArgumentException("Return statement does not sum up all trees: " + line);
+
+		boolean braces = m.group(2) != null;
+
+		// Without braces, a leading constant is part of the sum
+		if (!braces && m.group(1) != null && m.group(3) != null)
+			throw new IllegalArgumentException("Unsupported return statement: " + line);
+
+		String intercept = braces ? m.group(3) : m.group(1);
+		String offset = braces ? m.group(1) : null;
+
+		return new double[]{
+			intercept != null ? Double.parseDouble(intercept) : 0,
+			offset != null ? Double.parseDouble(offset) : 0,
+			m.group(5) != null ? Double.parseDouble(m.group(5)) : 1
+		};
+	}
+
+	/**
+	 * Write the ensemble in a compact binary format.
+	 */
+	public void write(OutputStream stream) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+
+		out.writeInt(features.length);
+		for (int i = 0; i < features.length; i++) {
+			out.writeUTF(features[i]);
+			out.writeDouble(center[i]);
+			out.writeDouble(scale[i]);
+		}
+
+		out.writeInt(roots.length);
+		for (int root : roots) {
+			out.writeInt(root);
+		}
+
+		out.writeInt(feature.length);
+		for (int i = 0; i < feature.length; i++) {
+			out.writeInt(feature[i]);
+			out.writeDouble(threshold[i]);
+			out.writeInt(left[i]);
+			out.writeInt(right[i]);
+			out.writeDouble(value[i]);
+			out.writeInt(param[i]);
+		}
+
+		out.writeDouble(intercept);
+		out.writeDouble(offset);
+		out.writeDouble(factor);
+
+		out.flush();
+	}
+
+	/**
+	 * Names of the features in the order expected by {@link #predict(double[])}.
+	 */
+	public String[] getFeatures() {
+		return features.clone();
+	}
+
+	/**
+	 * Number of parameters, i.e. leaf values, of the generated model.
+	 */
+	public int getNumberOfParams() {
+		return numParams;
+	}
+
+	/**
+	 * Number of trees in this ensemble.
+	 */
+	public int getNumberOfTrees() {
+		return roots.length;
+	}
+
+	/**
+	 * Create the model input from a feature map. Missing features are 0.
+	 */
+	public double[] getData(Object2DoubleMap<String> ft) {
+		double[] data = new double[features.length];
+		for (int i = 0; i < features.length; i++) {
+			data[i] = ft.getDouble(features[i]);
+		}
+		return standardize(data);
+	}
+
+	/**
+	 * Standardize raw feature values in place, if the model requires it.
+	 *
+	 * @return the same array
+	 */
+	public double[] standardize(double[] raw) {
+		for (int i = 0; i < raw.length; i++) {
+			if (center[i] != 0 || scale[i] != 1)
+				raw[i] = (raw[i] - center[i]) / scale[i];
+		}
+		return raw;
+	}
+
+	/**
+	 * Predict the value for one row of (standardized) features.
+	 */
+	public double predict(double[] row) {
+		checkRow(row, 0);
+
+		// Same summation order as the generated code
+		double sum = intercept != 0 ? intercept + value[leaf(roots[0], row)] : value[leaf(roots[0], row)];
+		for (int i = 1; i < roots.length; i++) {
+			sum += value[leaf(roots[i], row)];
+		}
+
+		return offset + sum * factor;
+	}
+
+	/**
+	 * Predict the value for one row of (standardized) features, using other leaf values than the ones of the ensemble.
+	 *
+	 * @param params leaf values in the same order as the parameters of the generated model
+	 */
+	public double predict(double[] row, double[] params) {
+		checkRow(row, 0);
+
+		if (params.length != numParams)
+			throw new IllegalArgumentException("Expected %d params, got %d".formatted(numParams, params.length));
+
+		double sum = intercept != 0 ? intercept + params[param[leaf(roots[0], row)]] : params[param[leaf(roots[0], row)]];
+		for (int i = 1; i < roots.length; i++) {
+			sum += params[param[leaf(roots[i], row)]];
+		}
+
+		return offset + sum * factor;
+	}
+
+	/**
+	 * Predict the values for multiple rows. Rows are split into blocks that are processed in parallel.
+	 * Within a block, trees are evaluated one after another for all rows, so that the nodes of the current tree stay in cache.
+	 * The result does not depend on the number of threads.
+	 */
+	public double[] predict(double[][] rows) {
+		return predictBatch(rows, null);
+	}
+
+	/**
+	 * Predict the values for multiple rows in parallel, using other leaf values than the ones of the ensemble.
+	 *
+	 * @see #predict(double[][])
+	 * @see #predict(double[], double[])
+	 */
+	public double[] predict(double[][] rows, double[] params) {
+		if (params.length != numParams)
+			throw new IllegalArgumentException("Expected %d params, got %d".formatted(numParams, params.length));
+
+		return predictBatch(rows, params);
+	}
+
+	private double[] predictBatch(double[][] rows, double[] params) {
+
+		for (int i = 0; i < rows.length; i++) {
+			checkRow(rows[i], i);
+		}
+
+		double[] result = new double[rows.length];
+		int blocks = (rows.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+		IntStream.range(0, blocks).parallel()
+			.forEach(b -> predictBlock(rows, params, result, b * BLOCK_SIZE, Math.min(rows.length, (b + 1) * BLOCK_SIZE)));
+
+		return result;
+	}
+
+	private void predictBlock(double[][] rows, double[] params, double[] result, int from, int to) {
+
+		for (int i = from; i < to; i++) {
+			double v = leafValue(leaf(roots[0], rows[i]), params);
+			result[i] = intercept != 0 ? intercept + v : v;
+		}
+
+		for (int t = 1; t < roots.length; t++) {
+			int root = roots[t];
+			for (int i = from; i < to; i++) {
+				result[i] += leafValue(leaf(root, rows[i]), params);
+			}
+		}
+
+		for (int i = from; i < to; i++) {
+			result[i] = offset + result[i] * factor;
+		}
+	}
+
+	private double leafValue(int node, double[] params) {
+		return params == null ? value[node] : params[param[node]];
+	}
+
+	/**
+	 * Find the leaf node of a tree for the given row.
+	 */
+	private int leaf(int root, double[] row) {
+		int n = root;
+		int f;
+		while ((f = feature[n]) >= 0) {
+			n = row[f] > threshold[n] ? left[n] : right[n];
+		}
+		return n;
+	}
+
+	private void checkRow(double[] row, int idx) {
+		if (row.length != features.length)
+			throw new IllegalArgumentException("Row %d has %d features, expected %d".formatted(idx, row.length, features.length));
+
+		for (int i = 0; i < row.length; i++) {
+			if (Double.isNaN(row[i]))
+				throw new IllegalArgumentException("Invalid data at index: " + i);
+		}
+	}
+
+	/**
+	 * Collects nodes while parsing generated code.
+	 */
+	private static final class Builder {
+
+		private final IntArrayList feature = new IntArrayList();
+		private final DoubleArrayList threshold = new DoubleArrayList();
+		private final IntArrayList left = new IntArrayList();
+		private final IntArrayList right = new IntArrayList();
+		private final DoubleArrayList value = new DoubleArrayList();
+		private final IntArrayList param = new IntArrayList();
+
+		private int add(int f, double t, double v, int p) {
+			feature.add(f);
+			threshold.add(t);
+			left.add(-1);
+			right.add(-1);
+			value.add(v);
+			param.add(p);
+			return feature.size() - 1;
+		}
+
+		/**
+		 * Parse one node and all of its children recursively.
+		 */
+		private int parseNode(Iterator<String> it, double[] params) {
+
+			String line = it.next();
+
+			Matcher m = LEAF.matcher(line);
+			if (m.matches()) {
+				int p = Integer.parseInt(m.group(1));
+				return add(-1, Double.NaN, params[p], p);
+			}
+
+			m = SPLIT.matcher(line);
+			if (!m.matches())
+				throw new IllegalArgumentException("Unexpected line: " + line);
+
+			int f = Integer.parseInt(m.group(1));
+			double t = Double.parseDouble(m.group(3));
+
+			// Conditions are transformed to x > t, which is equivalent for all non NaN values
+			boolean swap = false;
+			switch (m.group(2)) {
+				case ">" -> {
+				}
+				case ">=" -> t = Math.nextDown(t);
+				case "<" -> {
+					t = Math.nextDown(t);
+					swap = true;
+				}
+				case "<=" -> swap = true;
+				default -> throw new IllegalStateException("Unknown operator: " + m.group(2));
+			}
+
+			int node = add(f, t, Double.NaN, -1);
+
+			int trueBranch = parseNode(it, params);
+			expect(it, "} else {");
+			int falseBranch = parseNode(it, params);
+			expect(it, "}");
+
+			left.set(node, swap ? falseBranch : trueBranch);
+			right.set(node, swap ? trueBranch : falseBranch);
+
+			return node;
+		}
+
+		private void expect(Iterator<String> it, String expected) {
+			String line = it.next();
+			if (!line.equals(expected))
+				throw new IllegalArgumentException("Expected '%s' but got '%s'".formatted(expected, line));
+		}
+
+		FlatTreeEnsemble build(String[] features, double[] center, double[] scale, int[] roots, double[] output) {
+			return new FlatTreeEnsemble(features, center, scale, roots, feature.toIntArray(), threshold.toDoubleArray(),
+				left.toIntArray(), right.toIntArray(), value.toDoubleArray(), param.toIntArray(), output[0], output[1], output[2]);
+		}
+	}
+
+}
@@ -1,11 +1,14 @@
 package org.matsim.prepare.choices;
 
 import com.google.inject.Injector;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
@@ -21,8 +24,8 @@ import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.population.PersonUtils;
 import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils;
 import org.matsim.core.population.algorithms.PermissibleModesCalculator;
-import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.router.*;
+import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.timing.TimeInterpretation;
 import org.matsim.modechoice.*;
 import org.matsim.modechoice.constraints.RelaxedMassConservationConstraint;
@@ -34,11 +37,11 @@ import org.matsim.simwrapper.SimWrapperConfigGroup;
 import picocli.CommandLine;
 
 import javax.annotation.Nullable;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 
@@ -46,14 +49,14 @@ import java.util.regex.Pattern;
 	name = "compute-plan-choices",
 	description = "Computes multiple plan choices for a whole day."
 )
-public class ComputePlanChoices implements MATSimAppCommand, PersonAlgorithm {
+public class ComputePlanChoices implements MATSimAppCommand {
 
 	// TODO: move whole class to contrib when done, can probably go into imc
 	private static final Logger log = LogManager.getLogger(ComputePlanChoices.class);
 	/**
-	 * Rows for the result table.
+	 * Number of persons that may be buffered ahead of the written output.
 	 */
-	private final Queue<List<Object>> rows = new ConcurrentLinkedQueue<>();
+	private static final int BUFFER_SIZE = 4096;
 	private final MainModeIdentifier mmi = new DefaultAnalysisMainModeIdentifier();
 
 	@CommandLine.Mixin
@@ -80,11 +83,13 @@ public class ComputePlanChoices implements MATSimAppCommand, PersonAlgorithm {
 	@CommandLine.Option(names = "--max-plan-length", description = "Maximum plan length", defaultValue = "7")
 	private int maxPlanLength;
 
-	@CommandLine.Option(names = "--output", description = "Path to output csv.", defaultValue = "plan-choices.csv")
+	@CommandLine.Option(names = "--output", description = "Path to output csv, may end with .csv.gz for compressed output.", defaultValue = "plan-choices.csv")
 	private Path output;
 
+	@CommandLine.Option(names = "--threads", description = "Number of threads to use. Defaults to the number of available processors.")
+	private Integer threads;
+
 	private ThreadLocal<Ctx> thread;
-	private ProgressBar pb;
 	private double globalAvgIncome;
 	/**
 	 * Maximum numbers of plan options generated.
@@ -184,21 +189,15 @@ public class ComputePlanChoices implements MATSimAppCommand, PersonAlgorithm {
 			.average()
 			.orElse(Double.NaN);
 
-		pb = new ProgressBar("Computing plan choices", population.getPersons().size());
-
-		ParallelPersonAlgorithmUtils.run(population, Runtime.getRuntime().availableProcessors(), this);
-
-		pb.close();
-
 		String out = output.toString().replace(".csv", "-%s_%d.csv".formatted(planCandidates, topK));
 
 		if (timeUtil && (planCandidates == PlanCandidates.bestK || planCandidates == PlanCandidates.diverse)) {
 			out = out.replace(".csv", "-tt-only.csv");
 		}
 
-		log.info("Writing {} choices to {}", rows.size(), out);
+		log.info("Writing choices to {}", out);
 
-		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(Path.of(out)), CSVFormat.DEFAULT.builder().setCommentMarker('#').build())) {
+		try (CSVPrinter csv = new CSVPrinter(IOUtils.getBufferedWriter(out), CSVFormat.DEFAULT.builder().setCommentMarker('#').build())) {
 
 			// header
 			List<Object> header = new ArrayList<>();
@@ -228,38 +227,84 @@ public class ComputePlanChoices implements MATSimAppCommand, PersonAlgorithm {
 			}
 
 			csv.printComment("Average global income: " + globalAvgIncome);
-			csv.printComment("Max number of plan options: " + maxK.get());
 
 			csv.printRecord(header);
 
-			for (List<Object> row : rows) {
-				csv.printRecord(row);
+			long n;
+			try (ProgressBar pb = new ProgressBar("Computing plan choices", population.getPersons().size())) {
+				n = writeRows(population, this::createRow, csv, threads != null ? threads : Runtime.getRuntime().availableProcessors(), pb);
 			}
-		}
 
+			// Only known after all persons have been processed
+			csv.printComment("Max number of plan options: " + maxK.get());
+
+			log.info("Written {} choices to {}", n, out);
+		}
 
 		return 0;
 	}
 
-	@Override
-	public void run(Person person) {
+	/**
+	 * Compute the rows of all persons in parallel. Rows are written in the order of the population, independent of thread scheduling.
+	 * If computing a row fails, the remaining persons are skipped and the error is thrown.
+	 *
+	 * @param rows function creating the row of one person, which may return null if the person is not considered
+	 * @return number of written rows
+	 */
+	static long writeRows(Population population, Function<Person, List<Object>> rows, CSVPrinter csv, int threads,
+						  @Nullable ProgressBar pb) throws IOException, InterruptedException {
+
+		Object2IntMap<Id<Person>> index = new Object2IntOpenHashMap<>();
+		for (Person person : population.getPersons().values()) {
+			index.put(person.getId(), index.size());
+		}
+
+		OrderedRowWriter writer = new OrderedRowWriter(csv, index.size(), BUFFER_SIZE);
+
+		try {
+			ParallelPersonAlgorithmUtils.run(population, threads, person -> {
+
+				List<Object> row;
+				try {
+					row = rows.apply(person);
+				} catch (RuntimeException e) {
+					writer.abort(e);
+					throw e;
+				}
+
+				writer.add(index.getInt(person.getId()), row == null ? List.of() : List.of(row));
+
+				if (pb != null)
+					pb.step();
+			});
+		} catch (RuntimeException e) {
+			// Make sure the writer does not wait for missing rows
+			writer.abort(e);
+			throw e;
+		}
+
+		return writer.join();
+	}
+
+	/**
+	 * Create the result row for one person, or null if the person is not considered.
+	 */
+	@Nullable
+	private List<Object> createRow(Person person) {
 
 		if (person.getAttributes().getAttribute(Attributes.REF_MODES) == null) {
-			pb.step();
-			return;
+			return null;
 		}
 
 		if (idFilter != null && !idFilter.matcher(person.getId().toString()).matches()) {
-			pb.step();
-			return;
+			return null;
 		}
 
 		Plan plan = person.getSelectedPlan();
 		PlanModel model = PlanModel.newInstance(plan);
 
 		if (model.trips() > maxPlanLength) {
-			pb.step();
-			return;
+			return null;
 		}
 
 		String refModes = (String) person.getAttributes().getAttribute(TripAnalysis.ATTR_REF_MODES);
@@ -267,16 +312,14 @@ public class ComputePlanChoices implements MATSimAppCommand, PersonAlgorithm {
 		String[] currentModes = model.getCurrentModesMutable();
 
 		if (refModes.isBlank()) {
-			pb.step();
-			return;
+			return null;
 		}
 
 		if (split.length != currentModes.length) {
 			if (log.isWarnEnabled())
 				log.warn("Number of trips ref/current do not match: {} / {}", Arrays.toString(split), Arrays.toString(currentModes));
 
-			pb.step();
-			return;
+			return null;
 		}
 
 		// Put reference modes into the current modes
@@ -299,8 +342,7 @@ public class ComputePlanChoices implements MATSimAppCommand, PersonAlgorithm {
 
 		// skip possible error cases
 		if (candidates == null) {
-			pb.step();
-			return;
+			return null;
 		}
 
 		int i = 0;
@@ -326,9 +368,7 @@ public class ComputePlanChoices implements MATSimAppCommand, PersonAlgorithm {
 			row.add(0);
 		}
 
-		rows.add(row);
-
-		pb.step();
+		return row;
 	}
 
 	/**
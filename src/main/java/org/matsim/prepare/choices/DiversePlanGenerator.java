@@ -15,7 +15,6 @@ public class DiversePlanGenerator implements ChoiceGenerator {
 
 	private final int topK;
 	private final TopKChoicesGenerator gen;
-	private final SplittableRandom rnd = new SplittableRandom(0);
 
 	DiversePlanGenerator(int topK, TopKChoicesGenerator generator) {
 		this.topK = topK;
@@ -31,6 +30,9 @@ public class DiversePlanGenerator implements ChoiceGenerator {
 		// Chosen candidate from data
 		PlanCandidate existing = gen.generatePredefined(planModel, chosen).get(0);
 
+		// Seeded by person, so that the result does not depend on the order persons are processed in
+		SplittableRandom rnd = new SplittableRandom(planModel.getPerson().getId().toString().hashCode());
+
 		List<PlanCandidate> candidates = new ArrayList<>();
 		boolean carUser = PersonUtils.canUseCar(planModel.getPerson());
 		Set<String> modes = new HashSet<>(consideredModes);
@@ -47,17 +49,17 @@ public class DiversePlanGenerator implements ChoiceGenerator {
 		candidates.addFirst(existing);
 
 		// Add combination of modes as well
-		addToCandidates(candidates, gen.generate(planModel, modes, null), carUser ? "car" : "ride", 1);
-		addToCandidates(candidates, gen.generate(planModel, consideredModes, null), null, 1);
+		addToCandidates(rnd, candidates, gen.generate(planModel, modes, null), carUser ? "car" : "ride", 1);
+		addToCandidates(rnd, candidates, gen.generate(planModel, consideredModes, null), null, 1);
 
 		// Remove the primary mode to generate remaining alternatives
 		modes.remove(carUser ? "car" : "ride");
-		addToCandidates(candidates, gen.generate(planModel, modes, null), null, 2);
+		addToCandidates(rnd, candidates, gen.generate(planModel, modes, null), null, 2);
 
 		return candidates.stream().distinct().limit(this.topK).toList();
 	}
 
-	private void addToCandidates(List<PlanCandidate> candidates, List<PlanCandidate> topK, String requireMode, int n) {
+	private static void addToCandidates(SplittableRandom rnd, List<PlanCandidate> candidates, List<PlanCandidate> topK, String requireMode, int n) {
 
 		topK.removeIf(candidates::contains);
 
@@ -0,0 +1,154 @@
+package org.matsim.prepare.choices;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes blocks of csv rows produced by multiple threads in the order of their index, using a separate writer thread.
+ * Each index from 0 until {@code total} needs to be added exactly once, possibly with an empty block.
+ * At most {@code capacity} blocks ahead of the next block to write are buffered, threads adding further blocks are blocked until these are written.
+ * To avoid deadlocks, each thread needs to add its blocks in ascending order.
+ * If a block can not be computed, {@link #abort(Throwable)} must be called, otherwise the writer would wait for it forever.
+ */
+final class OrderedRowWriter {
+
+	private final CSVPrinter printer;
+	private final int total;
+	private final int capacity;
+
+	private final Int2ObjectMap<List<? extends Iterable<?>>> pending = new Int2ObjectOpenHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition ready = lock.newCondition();
+	private final Condition space = lock.newCondition();
+	private final Thread thread;
+
+	/**
+	 * Index of the next block to write.
+	 */
+	private int next;
+	private long rows;
+	private IOException error;
+
+	OrderedRowWriter(CSVPrinter printer, int total, int capacity) {
+		this.printer = printer;
+		this.total = total;
+		this.capacity = capacity;
+		this.thread = new Thread(this::write, "OrderedRowWriter");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Add the rows for the given index. This method blocks if the block is too far ahead of the written output.
+	 */
+	void add(int index, List<? extends Iterable<?>> block) {
+
+		if (index < 0 || index >= total)
+			throw new IllegalArgumentException("Index %d out of range [0, %d)".formatted(index, total));
+
+		lock.lock();
+		try {
+			while (index >= next + capacity && error == null)
+				space.await();
+
+			if (error != null)
+				throw new IllegalStateException("Writing rows failed", error);
+
+			if (index < next || pending.putIfAbsent(index, block) != null)
+				throw new IllegalStateException("Rows for index %d were already added".formatted(index));
+
+			if (index == next)
+				ready.signal();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the writer", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stop writing because a block could not be computed. Threads waiting in {@link #add(int, List)} will fail
+	 * and {@link #join()} will throw the error.
+	 */
+	void abort(Throwable cause) {
+		lock.lock();
+		try {
+			if (error == null)
+				error = new IOException("Computing rows failed", cause);
+
+			ready.signalAll();
+			space.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wait until all blocks are written.
+	 *
+	 * @return number of written rows
+	 */
+	long join() throws IOException, InterruptedException {
+
+		thread.join();
+
+		if (error != null)
+			throw error;
+
+		return rows;
+	}
+
+	private void write() {
+
+		while (true) {
+
+			List<? extends Iterable<?>> block;
+
+			lock.lock();
+			try {
+				if (next >= total)
+					return;
+
+				while (!pending.containsKey(next) && error == null)
+					ready.await();
+
+				if (error != null)
+					return;
+
+				block = pending.remove(next++);
+				space.signalAll();
+
+			} catch (InterruptedException e) {
+				error = new IOException("Writer was interrupted", e);
+				space.signalAll();
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			try {
+				for (Iterable<?> row : block) {
+					printer.printRecord(row);
+					rows++;
+				}
+			} catch (IOException e) {
+				lock.lock();
+				try {
+					error = e;
+					space.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+		}
+	}
+}
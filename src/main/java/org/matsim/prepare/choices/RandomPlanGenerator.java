@@ -16,7 +16,6 @@ public class RandomPlanGenerator implements ChoiceGenerator {
 
 	private final int topK;
 	private final TopKChoicesGenerator gen;
-	private final SplittableRandom rnd = new SplittableRandom(0);
 
 	public RandomPlanGenerator(int topK, TopKChoicesGenerator generator) {
 		this.topK = topK;
@@ -32,6 +31,9 @@ public class RandomPlanGenerator implements ChoiceGenerator {
 		// Chosen candidate from data
 		PlanCandidate existing = gen.generatePredefined(planModel, chosen).get(0);
 
+		// Seeded by person, so that the result does not depend on the order persons are processed in
+		SplittableRandom rnd = new SplittableRandom(planModel.getPerson().getId().toString().hashCode());
+
 		// This changes the internal state to randomize the estimates
 		// random selection is biased because of mass conservation
 		// due to that, this class should not be used
@@ -3,12 +3,11 @@ package org.matsim.prepare.facilities;
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.TopologyException;
@@ -24,6 +23,7 @@ import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
 import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.facilities.*;
+import org.matsim.prepare.FlatTreeEnsemble;
 import org.matsim.prepare.population.Attributes;
 import org.matsim.run.OpenBerlinScenario;
 import picocli.CommandLine;
@@ -64,6 +64,11 @@ public class CreateMATSimFacilities implements MATSimAppCommand {
 
 	private MappingConfig config;
 
+	/**
+	 * Attribute index for each model feature, -1 if not present.
+	 */
+	private int[] featureIdx;
+
 	public static void main(String[] args) {
 		new CreateMATSimFacilities().execute(args);
 	}
@@ -115,19 +120,28 @@ public class CreateMATSimFacilities implements MATSimAppCommand {
 
 		List<SimpleFeature> fts = shp.readFeatures();
 
+		FlatTreeEnsemble workModel = FlatTreeEnsemble.load("/org/matsim/prepare/facilities/FacilityAttractionModelWork.bin");
+		FlatTreeEnsemble otherModel = FlatTreeEnsemble.load("/org/matsim/prepare/facilities/FacilityAttractionModelOther.bin");
+
+		if (!Arrays.equals(workModel.getFeatures(), otherModel.getFeatures()))
+			throw new IllegalStateException("Attraction models must use the same features.");
+
+		if (!fts.isEmpty())
+			featureIdx = featureIndex(fts.get(0).getFeatureType(), workModel.getFeatures());
+
 		List<Holder> data = fts.parallelStream()
 			.map(ft -> processFeature(ft, carOnlyNetwork))
 			.filter(Objects::nonNull)
 			.toList();
 
-		// Compute statistics on the attraction values
-		DescriptiveStatistics work = new DescriptiveStatistics();
-		DescriptiveStatistics other = new DescriptiveStatistics();
+		double[][] rows = data.stream().map(Holder::features).toArray(double[][]::new);
 
-		for (Holder d : data) {
-			work.addValue(d.attractionWork);
-			other.addValue(d.attractionOther);
-		}
+		double[] attractionWork = workModel.predict(rows);
+		double[] attractionOther = otherModel.predict(rows);
+
+		// Compute statistics on the attraction values
+		DescriptiveStatistics work = new DescriptiveStatistics(attractionWork);
+		DescriptiveStatistics other = new DescriptiveStatistics(attractionOther);
 
 		// Upper bounds for attraction
 		double workUpper = work.getPercentile(99.99);
@@ -141,7 +155,9 @@ public class CreateMATSimFacilities implements MATSimAppCommand {
 		SplittableRandom rnd = new SplittableRandom();
 		ActivityFacilitiesFactory f = facilities.getFactory();
 
-		for (Holder h : data) {
+		for (int i = 0; i < data.size(); i++) {
+
+			Holder h = data.get(i);
 
 			// Create mean coordinate
 			OptionalDouble x = h.coords.stream().mapToDouble(Coord::getX).average();
@@ -161,10 +177,10 @@ public class CreateMATSimFacilities implements MATSimAppCommand {
 
 			// Filter outliers from the attraction
 			facility.getAttributes().putAttribute(Attributes.ATTRACTION_WORK,
-				round(Math.min(Math.max(h.attractionWork, 5), workUpper))
+				round(Math.min(Math.max(attractionWork[i], 5), workUpper))
 			);
 			facility.getAttributes().putAttribute(Attributes.ATTRACTION_OTHER,
-				round(Math.min(Math.max(h.attractionOther, 5), otherUpper))
+				round(Math.min(Math.max(attractionOther[i], 5), otherUpper))
 			);
 
 			if (zones != null) {
@@ -207,23 +223,13 @@ public class CreateMATSimFacilities implements MATSimAppCommand {
 		if (map.isEmpty())
 			return null;
 
-		Object2DoubleMap<String> features = new Object2DoubleOpenHashMap<>();
-		for (int i = 0; i < ft.getAttributeCount(); i++) {
-			if (ft.getAttribute(i) instanceof Number number) {
-				features.put(ft.getFeatureType().getDescriptor(i).getLocalName(), number.doubleValue());
-			}
-		}
-
 		List<Map.Entry<Id<Link>, Long>> counts = map.entrySet().stream().sorted(Map.Entry.comparingByValue())
 			.toList();
 
 		// The "main" link of the facility
 		Id<Link> link = counts.get(counts.size() - 1).getKey();
 
-		Holder holder = new Holder(link, activities, new ArrayList<>(),
-			FacilityAttractionModelWork.INSTANCE.predict(features, null),
-			FacilityAttractionModelOther.INSTANCE.predict(features, null)
-		);
+		Holder holder = new Holder(link, activities, new ArrayList<>(), extractFeatures(ft));
 
 		// Search for the original drawn coordinate of the associated link
 		for (int i = 0; i < links.size(); i++) {
@@ -236,6 +242,29 @@ public class CreateMATSimFacilities implements MATSimAppCommand {
 		return holder;
 	}
 
+	/**
+	 * Map model features to attribute indices of the feature type.
+	 */
+	private static int[] featureIndex(SimpleFeatureType type, String[] features) {
+		int[] idx = new int[features.length];
+		for (int i = 0; i < features.length; i++) {
+			idx[i] = type.indexOf(features[i]);
+		}
+		return idx;
+	}
+
+	/**
+	 * Extract model input directly from the attributes. Missing or non-numeric attributes are 0, same as in the generated models.
+	 */
+	private double[] extractFeatures(SimpleFeature ft) {
+		double[] row = new double[featureIdx.length];
+		for (int i = 0; i < featureIdx.length; i++) {
+			if (featureIdx[i] >= 0 && ft.getAttribute(featureIdx[i]) instanceof Number number)
+				row[i] = number.doubleValue();
+		}
+		return row;
+	}
+
 	/**
 	 * Sample coordinates within polygon.
 	 */
@@ -286,8 +315,7 @@ public class CreateMATSimFacilities implements MATSimAppCommand {
 	/**
 	 * Temporary data holder for facilities.
 	 */
-	private record Holder(Id<Link> linkId, Set<String> activities, List<Coord> coords,
-						  double attractionWork, double attractionOther) {
+	private record Holder(Id<Link> linkId, Set<String> activities, List<Coord> coords, double[] features) {
 	}
 
 	/**
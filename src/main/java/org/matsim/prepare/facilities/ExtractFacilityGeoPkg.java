@@ -4,11 +4,11 @@ import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Iterables;
-import com.slimjars.dist.gnu.trove.iterator.TLongObjectIterator;
 import de.topobyte.osm4j.core.dataset.InMemoryMapDataSet;
 import de.topobyte.osm4j.core.dataset.MapDataSetLoader;
 import de.topobyte.osm4j.core.model.iface.*;
 import de.topobyte.osm4j.core.resolve.EntityNotFoundException;
+import de.topobyte.osm4j.core.resolve.OsmEntityProvider;
 import de.topobyte.osm4j.geometry.GeometryBuilder;
 import de.topobyte.osm4j.pbf.seq.PbfIterator;
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
@@ -45,10 +45,12 @@ import org.matsim.run.OpenBerlinScenario;
 import picocli.CommandLine;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @CommandLine.Command(
 	name = "facility-shp",
@@ -75,7 +77,7 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 	 */
 	private static final double INTERSECT_THRESHOLD = 0.2;
 
-	private final GeometryBuilder geometryBuilder = new GeometryBuilder();
+	private final ThreadLocal<GeometryBuilder> geometryBuilder = ThreadLocal.withInitial(GeometryBuilder::new);
 	@CommandLine.Option(names = "--input", description = "Path to input .pbf file", required = true)
 	private Path pbf;
 	@CommandLine.Option(names = "--output", description = "Path to output .gpkg file", required = true)
@@ -84,6 +86,8 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 	private Path mappingPath;
 	@CommandLine.Option(names = "--exclude", description = "Exclude these activities types from the output", split = ",", defaultValue = "")
 	private Set<String> exclude;
+	@CommandLine.Option(names = "--streaming", description = "Read the input in multiple passes instead of loading it completely into memory", defaultValue = "false")
+	private boolean streaming;
 
 	@CommandLine.Mixin
 	private CrsOptions crs = new CrsOptions("EPSG:4326", OpenBerlinScenario.CRS);
@@ -97,8 +101,7 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 	private Long2ObjectMap<Feature> landuse;
 	private Long2ObjectMap<Feature> entities;
 	private MathTransform transform;
-	private InMemoryMapDataSet data;
-	private int ignored;
+	private final AtomicInteger ignored = new AtomicInteger();
 
 	public static void main(String[] args) {
 		new ExtractFacilityGeoPkg().execute(args);
@@ -107,8 +110,6 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 	@Override
 	public Integer call() throws Exception {
 
-		PbfIterator reader = new PbfIterator(Files.newInputStream(pbf), true);
-
 		config = new ObjectMapper().readerFor(ActivityMapping.class).readValue(mappingPath.toFile());
 
 		CRSAuthorityFactory cFactory = CRS.getAuthorityFactory(true);
@@ -144,35 +145,34 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 		entities = new Long2ObjectLinkedOpenHashMap<>();
 		landuse = new Long2ObjectLinkedOpenHashMap<>();
 
-		data = MapDataSetLoader.read(reader, true, true, true);
-
-		log.info("Finished loading pbf file.");
+		if (streaming) {
+			try (StreamingOsmData data = StreamingOsmData.read(pbf, e -> classify(e) != null)) {
 
-		TLongObjectIterator<OsmNode> it = data.getNodes().iterator();
-		while (it.hasNext()) {
-			it.advance();
-			process(it.value());
-		}
+				log.info("Finished reading pbf file.");
 
-		log.info("Collected {} POIs", pois.size());
+				collect(sorted(data.getNodes()), data);
+				collect(sorted(data.getWays()), data);
+				collect(sorted(data.getRelations()), data);
+			}
+		} else {
+			InMemoryMapDataSet data;
+			try (InputStream in = Files.newInputStream(pbf)) {
+				data = MapDataSetLoader.read(new PbfIterator(in, true), true, true, true);
+			}
 
-		TLongObjectIterator<OsmWay> it2 = data.getWays().iterator();
-		while (it2.hasNext()) {
-			it2.advance();
-			process(it2.value());
-		}
+			log.info("Finished loading pbf file.");
 
-		TLongObjectIterator<OsmRelation> it3 = data.getRelations().iterator();
-		while (it3.hasNext()) {
-			it3.advance();
-			process(it3.value());
+			collect(sorted(data.getNodes().valueCollection()), data);
+			collect(sorted(data.getWays().valueCollection()), data);
+			collect(sorted(data.getRelations().valueCollection()), data);
 		}
 
+		log.info("Collected {} POIs", pois.size());
 		log.info("Collected {} landuse shapes", landuse.size());
 		log.info("Collected {} other entities", entities.size());
 
-		if (ignored > 0)
-			log.warn("Ignored {} invalid geometries", ignored);
+		if (ignored.get() > 0)
+			log.warn("Ignored {} invalid geometries", ignored.get());
 
 		FacilityFeatureExtractor ft = new FacilityFeatureExtractor(crs.getTargetCRS(), types, entities, pois, landuse);
 
@@ -358,9 +358,46 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 	}
 
 	/**
-	 * Stores entities and geometries as necessary.
+	 * Entities ordered by id, so that the output does not depend on how the input was read.
+	 */
+	private static <T extends OsmEntity> List<T> sorted(Collection<T> entities) {
+		List<T> list = new ArrayList<>(entities);
+		list.sort(Comparator.comparingLong(OsmEntity::getId));
+		return list;
+	}
+
+	/**
+	 * Creates the features of all entities in parallel and stores them as necessary.
+	 */
+	private void collect(List<? extends OsmEntity> list, OsmEntityProvider provider) {
+
+		List<Feature> features = list.parallelStream()
+			.map(e -> createFeature(e, provider))
+			.toList();
+
+		// toList retains the original order
+		for (Feature ft : features) {
+			if (ft == null)
+				continue;
+
+			if (ft.entity instanceof OsmNode) {
+				pois.put(ft.entity.getId(), ft);
+			} else if (ft.isLanduse) {
+				landuse.put(ft.entity.getId(), ft);
+			} else {
+				// some non landuse shapes might be too large
+				if (ft.geometry.getArea() < MAX_AREA)
+					entities.put(ft.entity.getId(), ft);
+			}
+		}
+	}
+
+	/**
+	 * Determine whether an entity is needed and how it is tagged.
+	 *
+	 * @return null if the entity is not needed
 	 */
-	private void process(OsmEntity entity) {
+	private Tags classify(OsmEntity entity) {
 		boolean filtered = true;
 		boolean isBuilding = false;
 		boolean isUnspecific = false;
@@ -404,60 +441,70 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 		}
 
 		if (filtered)
-			return;
+			return null;
+
+		return new Tags(isBuilding, isUnspecific, isBusStop, isTrainStation);
+	}
+
+	/**
+	 * Creates the feature with its geometry. This method is thread-safe.
+	 *
+	 * @return null if the entity is not needed or has an invalid geometry
+	 */
+	private Feature createFeature(OsmEntity entity, OsmEntityProvider provider) {
+
+		Tags tags = classify(entity);
+		if (tags == null)
+			return null;
+
+		GeometryBuilder builder = geometryBuilder.get();
 
 		if (entity instanceof OsmNode node) {
 
-			Point p = geometryBuilder.build(node);
+			Point p = builder.build(node);
 			MultiPolygon geometry;
 			try {
 				Polygon polygon = (Polygon) JTS.transform(p, transform).buffer(POI_BUFFER);
-				geometry = geometryBuilder.getGeometryFactory().createMultiPolygon(new Polygon[]{polygon});
+				geometry = builder.getGeometryFactory().createMultiPolygon(new Polygon[]{polygon});
 			} catch (TransformException e) {
-				ignored++;
-				return;
+				ignored.incrementAndGet();
+				return null;
 			}
 
-			Feature ft = new Feature(entity, types, geometry, false, isUnspecific, false, isBusStop, isTrainStation);
+			Feature ft = new Feature(entity, types, geometry, false, tags.isUnspecific(), false, tags.isBusStop(), tags.isTrainStation());
 			parse(ft, entity);
-			pois.put(entity.getId(), ft);
-		} else {
-			boolean landuse = false;
-			for (int i = 0; i < n; i++) {
-				if (entity.getTag(i).getKey().equals("landuse")) {
-					landuse = true;
-					break;
-				}
-			}
+			return ft;
+		}
 
-			MultiPolygon geometry;
-			try {
-				geometry = createPolygon(entity);
-				if (geometry == null) {
-					ignored++;
-					return;
-				}
-				geometry = (MultiPolygon) JTS.transform(geometry, transform);
-			} catch (TransformException e) {
-				// Will be ignored
-				geometry = null;
+		boolean landuse = false;
+		for (int i = 0; i < entity.getNumberOfTags(); i++) {
+			if (entity.getTag(i).getKey().equals("landuse")) {
+				landuse = true;
+				break;
 			}
+		}
 
+		MultiPolygon geometry;
+		try {
+			geometry = createPolygon(entity, provider);
 			if (geometry == null) {
-				ignored++;
-				return;
+				ignored.incrementAndGet();
+				return null;
 			}
+			geometry = (MultiPolygon) JTS.transform(geometry, transform);
+		} catch (TransformException e) {
+			// Will be ignored
+			geometry = null;
+		}
 
-			Feature ft = new Feature(entity, types, geometry, isBuilding, isUnspecific, landuse, isBusStop, isTrainStation);
-			parse(ft, entity);
-			if (landuse) {
-				this.landuse.put(ft.entity.getId(), ft);
-			} else {
-				// some non landuse shapes might be too large
-				if (ft.geometry.getArea() < MAX_AREA)
-					entities.put(ft.entity.getId(), ft);
-			}
+		if (geometry == null) {
+			ignored.incrementAndGet();
+			return null;
 		}
+
+		Feature ft = new Feature(entity, types, geometry, tags.isBuilding(), tags.isUnspecific(), landuse, tags.isBusStop(), tags.isTrainStation());
+		parse(ft, entity);
+		return ft;
 	}
 
 	/**
@@ -486,13 +533,14 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 		}
 	}
 
-	private MultiPolygon createPolygon(OsmEntity entity) {
+	private MultiPolygon createPolygon(OsmEntity entity, OsmEntityProvider provider) {
+		GeometryBuilder geometryBuilder = this.geometryBuilder.get();
 		Geometry geom = null;
 		try {
 			if (entity instanceof OsmWay) {
-				geom = geometryBuilder.build((OsmWay) entity, data);
+				geom = geometryBuilder.build((OsmWay) entity, provider);
 			} else if (entity instanceof OsmRelation) {
-				geom = geometryBuilder.build((OsmRelation) entity, data);
+				geom = geometryBuilder.build((OsmRelation) entity, provider);
 			}
 		} catch (EntityNotFoundException e) {
 			return null;
@@ -511,6 +559,12 @@ public class ExtractFacilityGeoPkg implements MATSimAppCommand {
 		return null;
 	}
 
+	/**
+	 * Tags relevant for the classification of an entity.
+	 */
+	private record Tags(boolean isBuilding, boolean isUnspecific, boolean isBusStop, boolean isTrainStation) {
+	}
+
 	private static final class ActivityMapping {
 		private final Map<String, MappingConfig> types = new HashMap<>();
 
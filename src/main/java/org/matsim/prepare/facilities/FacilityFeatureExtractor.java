@@ -8,26 +8,57 @@ import org.geotools.api.referencing.FactoryException;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.TopologyException;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.locationtech.jts.index.strtree.STRtree;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.OptionalDouble;
 import java.util.function.Predicate;
 
 /**
  * Class to extract more features / columns for the facility shape file.
+ * <p>
+ * Candidates are queried with the envelope of the circle around the centroid. Areas are only intersected with the circle
+ * if a candidate is neither completely inside nor outside of it.
  */
 final class FacilityFeatureExtractor {
 
+	/**
+	 * Radii for the search of the nearest stops.
+	 */
+	private static final double[] NEAREST_RADII = {500, 5000, 20000};
+
+	/**
+	 * Circles are approximated by buffers with this many segments per quadrant, the default of JTS.
+	 */
+	private static final int QUADRANT_SEGMENTS = 8;
+
+	/**
+	 * Ratio of the inner radius of the approximated circle to its radius.
+	 */
+	private static final double INNER_RADIUS = Math.cos(Math.PI / (4 * QUADRANT_SEGMENTS));
+
 	final STRtree entities;
 	final STRtree pois;
 	final STRtree landuse;
 
+	/**
+	 * Subsets of the pois, which are used for the nearest search.
+	 */
+	private final STRtree busStops;
+	private final STRtree trainStations;
+
+	/**
+	 * Reusable list for query results.
+	 */
+	private final ThreadLocal<List<Feature>> candidates = ThreadLocal.withInitial(ArrayList::new);
+
 	final SimpleFeatureType featureType;
 
 	final ThreadLocal<SimpleFeatureBuilder> featureBuilder;
@@ -38,9 +69,11 @@ final class FacilityFeatureExtractor {
 									Long2ObjectMap<Feature> entities, Long2ObjectMap<Feature> pois,
 									Long2ObjectMap<Feature> landuse) throws FactoryException {
 
-		this.entities = createIndex(entities);
-		this.pois = createIndex(pois);
-		this.landuse = createIndex(landuse);
+		this.entities = createIndex(entities, f -> true);
+		this.pois = createIndex(pois, f -> true);
+		this.landuse = createIndex(landuse, f -> true);
+		this.busStops = createIndex(pois, f -> f.isBusStop);
+		this.trainStations = createIndex(pois, f -> f.isTrainStop);
 		this.types = types;
 
 		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
@@ -81,15 +114,23 @@ final class FacilityFeatureExtractor {
 		this.featureBuilder = ThreadLocal.withInitial(() -> new SimpleFeatureBuilder(featureType));
 	}
 
-	private static STRtree createIndex(Long2ObjectMap<Feature> entities) {
+	private static STRtree createIndex(Long2ObjectMap<Feature> entities, Predicate<Feature> filter) {
 		STRtree index = new STRtree();
 		for (Feature entity : entities.values()) {
-			index.insert(entity.geometry.getBoundary().getEnvelopeInternal(), entity);
+			if (filter.test(entity))
+				index.insert(entity.geometry.getBoundary().getEnvelopeInternal(), entity);
 		}
 		index.build();
 		return index;
 	}
 
+	/**
+	 * Round to the given number of decimal places, with ties to even.
+	 */
+	static double round(double value, double scale) {
+		return Math.rint(value * scale) / scale;
+	}
+
 	/**
 	 * Create features for one facility.
 	 */
@@ -98,32 +139,34 @@ final class FacilityFeatureExtractor {
 		// feature building is thread safe
 		SimpleFeatureBuilder b = featureBuilder.get();
 
+		Point centroid = ft.geometry.getCentroid();
+
 		b.add(ft.entity.getId());
 		b.add(ft.osmType.toString());
 		b.add(ft.geometry);
-		b.add(BigDecimal.valueOf(ft.geometry.getArea()).setScale(2, RoundingMode.HALF_EVEN).doubleValue());
+		b.add(round(ft.geometry.getArea(), 100));
 		b.add(ft.getLevels());
 		b.add(ft.hasLanduse(null));
 		b.add(ft.isBuilding);
 		b.add(ft.isResidentialOnly());
 
-		b.add(calcLanduse("residential", ft, 500));
-		b.add(calcLanduse("residential", ft, 1500));
-		b.add(calcLanduse("retail", ft, 500));
-		b.add(calcLanduse("retail", ft, 1500));
-		b.add(calcLanduse("commercial", ft, 500));
-		b.add(calcLanduse("commercial", ft, 1500));
-		b.add(calcLanduse("recreation_ground", ft, 1500));
-		b.add(calcArea("parking", ft, 500));
-		b.add(findNearest(ft, f -> f.isBusStop));
-		b.add(findNearest(ft, f -> f.isTrainStop));
+		b.add(calcLanduse("residential", ft, centroid, 500));
+		b.add(calcLanduse("residential", ft, centroid, 1500));
+		b.add(calcLanduse("retail", ft, centroid, 500));
+		b.add(calcLanduse("retail", ft, centroid, 1500));
+		b.add(calcLanduse("commercial", ft, centroid, 500));
+		b.add(calcLanduse("commercial", ft, centroid, 1500));
+		b.add(calcLanduse("recreation_ground", ft, centroid, 1500));
+		b.add(calcArea("parking", ft, centroid, 500));
+		b.add(findNearest(ft, centroid, busStops));
+		b.add(findNearest(ft, centroid, trainStations));
 
 		b.add(countPOIs("leisure", ft));
-		b.add(countPOIs("leisure", ft, 250));
+		b.add(countPOIs("leisure", ft, centroid, 250));
 		b.add(countPOIs("shop", ft));
-		b.add(countPOIs("shop", ft, 250));
+		b.add(countPOIs("shop", ft, centroid, 250));
 		b.add(countPOIs("dining", ft));
-		b.add(countPOIs("dining", ft, 250));
+		b.add(countPOIs("dining", ft, centroid, 250));
 
 		for (int i = 0; i < types.size(); i++) {
 			b.add(ft.bits.get(i));
@@ -132,81 +175,118 @@ final class FacilityFeatureExtractor {
 	}
 
 	/**
-	 * Calculate the area of landuse within a given radius.
+	 * Query all entries of the index, whose envelope intersects the envelope of the circle.
+	 * The returned list is reused by the next query of the same thread.
 	 */
 	@SuppressWarnings("unchecked")
-	private double calcLanduse(String type, Feature ft, double radius) {
+	private List<Feature> query(STRtree index, Point center, double radius) {
+		List<Feature> result = candidates.get();
+		result.clear();
+		index.query(new Envelope(center.getX() - radius, center.getX() + radius, center.getY() - radius, center.getY() + radius),
+			item -> result.add((Feature) item));
+		return result;
+	}
+
+	/**
+	 * Calculate the area of landuse within a given radius.
+	 */
+	private double calcLanduse(String type, Feature ft, Point centroid, double radius) {
 
 		if (ft.isResidentialOnly()) {
 			return 0;
 		}
 
-		MultiPolygon geometry = ft.geometry;
-		Geometry bbox = geometry.getCentroid().buffer(radius);
-
-		double res = 0;
-		List<Feature> query = landuse.query(bbox.getEnvelopeInternal());
-		for (Feature q : query) {
-
-			if (!q.geomIssues && q.hasLanduse(type)) {
-				try {
-					res += q.geometry.intersection(bbox).getArea();
-				} catch (TopologyException e) {
-					q.geomIssues = true;
-				}
-			}
-		}
+		double res = calcArea(landuse, centroid, radius, q -> q.hasLanduse(type));
 
 		// convert to square kilometers
-		return BigDecimal.valueOf(res / 1_000_000).setScale(4, RoundingMode.HALF_EVEN).doubleValue();
+		return round(res / 1_000_000, 10_000);
 	}
 
-	private double calcArea(String activityType, Feature ft, double radius) {
+	private double calcArea(String activityType, Feature ft, Point centroid, double radius) {
 
 		if (ft.isResidentialOnly()) {
 			return 0;
 		}
 
-		MultiPolygon geometry = ft.geometry;
-		Geometry bbox = geometry.getCentroid().buffer(radius);
+		double res = calcArea(entities, centroid, radius, q -> q.hasType(activityType));
+
+		return round(res / 1_000, 10_000);
+	}
+
+	/**
+	 * Sum the area of all matching entries within the circle.
+	 * Entries completely inside or outside are determined by their envelope, or by the prepared circle geometry.
+	 * Only the remaining entries are intersected with the circle.
+	 */
+	private double calcArea(STRtree index, Point centroid, double radius, Predicate<Feature> filter) {
+
+		double x = centroid.getX();
+		double y = centroid.getY();
+		double inner = radius * INNER_RADIUS;
+
+		// Created only when needed
+		Geometry circle = null;
+		PreparedGeometry prepared = null;
 
 		double res = 0;
-		List<Feature> query = entities.query(bbox.getEnvelopeInternal());
-		for (Feature q : query) {
-			if (!q.geomIssues && q.hasType(activityType)) {
-				try {
-					res += q.geometry.intersection(bbox).getArea();
-				} catch (TopologyException e) {
-					q.geomIssues = true;
-				}
+		for (Feature q : query(index, centroid, radius)) {
+
+			if (q.geomIssues || !filter.test(q))
+				continue;
+
+			Envelope env = q.geometry.getEnvelopeInternal();
+
+			// Envelope outside the circle
+			if (env.distance(centroid.getEnvelopeInternal()) > radius)
+				continue;
+
+			// Farthest corner of the envelope within the approximated circle
+			double dx = Math.max(x - env.getMinX(), env.getMaxX() - x);
+			double dy = Math.max(y - env.getMinY(), env.getMaxY() - y);
+			if (dx * dx + dy * dy <= inner * inner) {
+				res += q.geometry.getArea();
+				continue;
+			}
+
+			if (circle == null) {
+				circle = centroid.buffer(radius, QUADRANT_SEGMENTS);
+				prepared = PreparedGeometryFactory.prepare(circle);
+			}
+
+			try {
+				if (prepared.contains(q.geometry))
+					res += q.geometry.getArea();
+				else if (prepared.intersects(q.geometry))
+					res += q.geometry.intersection(circle).getArea();
+			} catch (TopologyException e) {
+				q.geomIssues = true;
 			}
 		}
 
-		return BigDecimal.valueOf(res / 1_000).setScale(4, RoundingMode.HALF_EVEN).doubleValue();
+		return res;
 	}
 
-	private double findNearest(Feature ft, Predicate<Feature> filter) {
+	/**
+	 * Distance to the nearest entry of the index, which is searched within increasing radii around the centroid.
+	 */
+	private double findNearest(Feature ft, Point centroid, STRtree index) {
 
 		if (ft.isResidentialOnly()) {
 			return 0;
 		}
 
-		MultiPolygon geometry = ft.geometry;
-		for (Integer radius : List.of(500, 5000, 20000)) {
+		for (double radius : NEAREST_RADII) {
 
-			Geometry bbox = geometry.getCentroid().buffer(radius);
+			List<Feature> query = query(index, centroid, radius);
 
-			List<Feature> query = pois.query(bbox.getEnvelopeInternal());
-
-			OptionalDouble dist = query.stream()
-				.filter(filter)
-				.mapToDouble(a -> a.geometry.distance(geometry))
-				.min();
+			if (!query.isEmpty()) {
+				double dist = Double.POSITIVE_INFINITY;
+				for (Feature q : query) {
+					dist = Math.min(dist, q.geometry.distance(ft.geometry));
+				}
 
-			if (dist.isPresent()) {
-				return dist.getAsDouble();
+				return dist;
 			}
-
 		}
 
 		return 20000;
@@ -231,8 +311,7 @@ final class FacilityFeatureExtractor {
 		return count;
 	}
 
-	@SuppressWarnings("unchecked")
-	private int countPOIs(String type, Feature ft, double radius) {
+	private int countPOIs(String type, Feature ft, Point centroid, double radius) {
 
 		if (ft.isResidentialOnly()) {
 			return 0;
@@ -241,12 +320,14 @@ final class FacilityFeatureExtractor {
 		// Base count
 		int count = countPOIs(type, ft);
 
-		Geometry bbox = ft.geometry.getCentroid().buffer(radius);
+		for (Feature q : query(entities, centroid, radius)) {
+
+			// The distance to the envelope is a lower bound of the distance to the geometry
+			if (q.geomIssues || q == ft || q.geometry.getEnvelopeInternal().distance(centroid.getEnvelopeInternal()) >= radius)
+				continue;
 
-		Iterable<Feature> query = entities.query(bbox.getEnvelopeInternal());
-		for (Feature q : query) {
 			try {
-				if (!q.geomIssues && q.geometry.distance(ft.geometry.getCentroid()) < radius && q != ft) {
+				if (q.geometry.distance(centroid) < radius) {
 					count += countPOIs(type, q);
 				}
 			} catch (TopologyException e) {
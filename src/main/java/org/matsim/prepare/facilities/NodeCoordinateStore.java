@@ -0,0 +1,102 @@
+package org.matsim.prepare.facilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Coordinates for a fixed set of node ids. Ids are kept in a sorted array, the coordinates are stored off-heap in a memory-mapped temporary file.
+ */
+final class NodeCoordinateStore implements Closeable {
+
+	/**
+	 * Bytes per entry, longitude and latitude.
+	 */
+	private static final int ENTRY = 16;
+
+	/**
+	 * Entries per mapped buffer, which can not be larger than 2GB.
+	 */
+	private static final int CHUNK = 1 << 26;
+
+	private final long[] ids;
+	private final BitSet present;
+	private final Path file;
+	private final MappedByteBuffer[] buffers;
+
+	/**
+	 * Create a store for the given ids, which must be sorted and unique.
+	 */
+	NodeCoordinateStore(long[] ids) throws IOException {
+		this.ids = ids;
+		this.present = new BitSet(ids.length);
+		this.file = Files.createTempFile("node-coords", ".bin");
+		this.buffers = new MappedByteBuffer[(ids.length + CHUNK - 1) / CHUNK];
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			for (int i = 0; i < buffers.length; i++) {
+				long size = (long) Math.min(CHUNK, ids.length - i * CHUNK) * ENTRY;
+				buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * CHUNK * ENTRY, size);
+			}
+		}
+	}
+
+	/**
+	 * Number of stored ids.
+	 */
+	int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Index of an id, or a negative value if it is not contained.
+	 */
+	int indexOf(long id) {
+		return Arrays.binarySearch(ids, id);
+	}
+
+	/**
+	 * Set the coordinate of a node.
+	 *
+	 * @return whether the id is part of this store
+	 */
+	boolean put(long id, double lon, double lat) {
+		int idx = indexOf(id);
+		if (idx < 0)
+			return false;
+
+		MappedByteBuffer buffer = buffers[idx / CHUNK];
+		int pos = (idx % CHUNK) * ENTRY;
+		buffer.putDouble(pos, lon);
+		buffer.putDouble(pos + 8, lat);
+		present.set(idx);
+		return true;
+	}
+
+	/**
+	 * Whether a coordinate was set for the index.
+	 */
+	boolean isPresent(int idx) {
+		return idx >= 0 && present.get(idx);
+	}
+
+	double getLon(int idx) {
+		return buffers[idx / CHUNK].getDouble((idx % CHUNK) * ENTRY);
+	}
+
+	double getLat(int idx) {
+		return buffers[idx / CHUNK].getDouble((idx % CHUNK) * ENTRY + 8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		Arrays.fill(buffers, null);
+		Files.deleteIfExists(file);
+	}
+}
@@ -0,0 +1,198 @@
+package org.matsim.prepare.facilities;
+
+import de.topobyte.osm4j.core.model.iface.*;
+import de.topobyte.osm4j.core.model.impl.Node;
+import de.topobyte.osm4j.core.resolve.EntityNotFoundException;
+import de.topobyte.osm4j.core.resolve.OsmEntityProvider;
+import de.topobyte.osm4j.pbf.seq.PbfIterator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads the relevant entities of a pbf file without loading the whole file into memory.
+ * <ol>
+ *     <li>The first pass keeps all relations and the nodes and ways matching the filter.</li>
+ *     <li>Ways that are members of relevant relations are read in a second pass, only if they were not already kept.</li>
+ *     <li>The last pass stores the coordinates of all nodes referenced by the kept ways in a {@link NodeCoordinateStore}.</li>
+ * </ol>
+ */
+final class StreamingOsmData implements OsmEntityProvider, Closeable {
+
+	private static final Logger log = LogManager.getLogger(StreamingOsmData.class);
+
+	private final List<OsmNode> nodes = new ArrayList<>();
+	private final List<OsmWay> ways = new ArrayList<>();
+	private final List<OsmRelation> relations = new ArrayList<>();
+
+	private final Long2ObjectMap<OsmWay> wayById = new Long2ObjectOpenHashMap<>();
+	private final Long2ObjectMap<OsmRelation> relationById = new Long2ObjectOpenHashMap<>();
+
+	private NodeCoordinateStore coords;
+
+	private StreamingOsmData() {
+	}
+
+	/**
+	 * Read all entities matching the filter and everything needed to build their geometries.
+	 */
+	static StreamingOsmData read(Path pbf, Predicate<OsmEntity> filter) throws IOException {
+
+		StreamingOsmData data = new StreamingOsmData();
+
+		iterate(pbf, container -> {
+			OsmEntity entity = container.getEntity();
+			switch (container.getType()) {
+				case Node -> {
+					if (filter.test(entity))
+						data.nodes.add((OsmNode) entity);
+				}
+				case Way -> {
+					if (filter.test(entity)) {
+						data.ways.add((OsmWay) entity);
+						data.wayById.put(entity.getId(), (OsmWay) entity);
+					}
+				}
+				case Relation -> {
+					// Relations are few, but may be needed as members of other relations
+					data.relationById.put(entity.getId(), (OsmRelation) entity);
+					if (filter.test(entity))
+						data.relations.add((OsmRelation) entity);
+				}
+			}
+		});
+
+		log.info("First pass: {} nodes, {} ways and {} relations", data.nodes.size(), data.ways.size(), data.relations.size());
+
+		LongSet missingWays = new LongOpenHashSet();
+		LongSet visited = new LongOpenHashSet();
+		for (OsmRelation relation : data.relations) {
+			data.collectMemberWays(relation, missingWays, visited);
+		}
+
+		if (!missingWays.isEmpty()) {
+			iterate(pbf, container -> {
+				if (container.getType() == EntityType.Way && missingWays.contains(container.getEntity().getId()))
+					data.wayById.put(container.getEntity().getId(), (OsmWay) container.getEntity());
+			});
+
+			log.info("Second pass: {} member ways", missingWays.size());
+		}
+
+		LongOpenHashSet nodeIds = new LongOpenHashSet();
+		for (OsmWay way : data.wayById.values()) {
+			for (int i = 0; i < way.getNumberOfNodes(); i++) {
+				nodeIds.add(way.getNodeId(i));
+			}
+		}
+
+		long[] ids = nodeIds.toLongArray();
+		Arrays.sort(ids);
+
+		data.coords = new NodeCoordinateStore(ids);
+
+		iterate(pbf, container -> {
+			if (container.getType() == EntityType.Node) {
+				OsmNode node = (OsmNode) container.getEntity();
+				data.coords.put(node.getId(), node.getLongitude(), node.getLatitude());
+			}
+		});
+
+		log.info("Last pass: stored coordinates of {} nodes", ids.length);
+
+		return data;
+	}
+
+	private static void iterate(Path pbf, Consumer<EntityContainer> consumer) throws IOException {
+		try (InputStream in = Files.newInputStream(pbf)) {
+			for (EntityContainer container : new PbfIterator(in, false)) {
+				consumer.accept(container);
+			}
+		}
+	}
+
+	private void collectMemberWays(OsmRelation relation, LongSet missing, LongSet visited) {
+
+		if (!visited.add(relation.getId()))
+			return;
+
+		for (int i = 0; i < relation.getNumberOfMembers(); i++) {
+			OsmRelationMember member = relation.getMember(i);
+			if (member.getType() == EntityType.Way && !wayById.containsKey(member.getId())) {
+				missing.add(member.getId());
+			} else if (member.getType() == EntityType.Relation) {
+				OsmRelation other = relationById.get(member.getId());
+				if (other != null)
+					collectMemberWays(other, missing, visited);
+			}
+		}
+	}
+
+	/**
+	 * Nodes matching the filter, in file order.
+	 */
+	List<OsmNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Ways matching the filter, in file order.
+	 */
+	List<OsmWay> getWays() {
+		return ways;
+	}
+
+	/**
+	 * Relations matching the filter, in file order.
+	 */
+	List<OsmRelation> getRelations() {
+		return relations;
+	}
+
+	@Override
+	public OsmNode getNode(long id) throws EntityNotFoundException {
+		int idx = coords.indexOf(id);
+		if (!coords.isPresent(idx))
+			throw new EntityNotFoundException("Node " + id + " not found");
+
+		return new Node(id, coords.getLon(idx), coords.getLat(idx));
+	}
+
+	@Override
+	public OsmWay getWay(long id) throws EntityNotFoundException {
+		OsmWay way = wayById.get(id);
+		if (way == null)
+			throw new EntityNotFoundException("Way " + id + " not found");
+
+		return way;
+	}
+
+	@Override
+	public OsmRelation getRelation(long id) throws EntityNotFoundException {
+		OsmRelation relation = relationById.get(id);
+		if (relation == null)
+			throw new EntityNotFoundException("Relation " + id + " not found");
+
+		return relation;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (coords != null)
+			coords.close();
+	}
+}
@@ -0,0 +1,65 @@
+package org.matsim.prepare.network;
+
+import org.matsim.application.prepare.network.params.NetworkModel;
+import org.matsim.prepare.FlatTreeEnsemble;
+
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Same models as {@link BerlinNetworkParams}, but evaluated with {@link FlatTreeEnsemble}s loaded from resources.
+ * Can be used with ApplyNetworkParams by passing {@code --model org.matsim.prepare.network.BerlinFlatNetworkParams}.
+ * The returned {@link FlatTreePredictor}s can also evaluate all links of a junction type in one batch.
+ */
+@SuppressWarnings("unused")
+public class BerlinFlatNetworkParams implements NetworkModel {
+
+	private static final String RESOURCE = "/org/matsim/prepare/network/BerlinNetworkParams_%s_%s.bin";
+
+	private final Map<String, FlatTreePredictor> capacity = Map.of(
+		"traffic_light", load("capacity", "traffic_light", BerlinFlatNetworkParams::trafficLightScale),
+		"right_before_left", load("capacity", "right_before_left", null),
+		"priority", load("capacity", "priority", null)
+	);
+
+	private final Map<String, FlatTreePredictor> speedFactor = Map.of(
+		"traffic_light", load("speedRelative", "traffic_light", null),
+		"right_before_left", load("speedRelative", "right_before_left", null),
+		"priority", load("speedRelative", "priority", null)
+	);
+
+	private static FlatTreePredictor load(String target, String junctionType, FlatTreePredictor.Scale scale) {
+		return new FlatTreePredictor(FlatTreeEnsemble.load(RESOURCE.formatted(target, junctionType)), scale);
+	}
+
+	/**
+	 * Same scaling as in {@link BerlinNetworkParams_capacity_traffic_light}. The reference simulation is performed with equal green split,
+	 * which is usually not the case for major roads with higher priority.
+	 */
+	private static double trafficLightScale(ToDoubleFunction<String> features) {
+		if (features.applyAsDouble("is_primary_or_higher") == 1)
+			return 1.5;
+		else if (features.applyAsDouble("is_secondary_or_higher") == 1)
+			return 1.3;
+
+		return 1;
+	}
+
+	private static FlatTreePredictor get(Map<String, FlatTreePredictor> models, String junctionType) {
+		FlatTreePredictor p = models.get(junctionType);
+		if (p == null)
+			throw new IllegalArgumentException("Unknown type: " + junctionType);
+
+		return p;
+	}
+
+	@Override
+	public FlatTreePredictor capacity(String junctionType, String highwayType) {
+		return get(capacity, junctionType);
+	}
+
+	@Override
+	public FlatTreePredictor speedFactor(String junctionType, String highwayType) {
+		return get(speedFactor, junctionType);
+	}
+}
@@ -0,0 +1,107 @@
+package org.matsim.prepare.network;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
+import org.matsim.application.prepare.Predictor;
+import org.matsim.prepare.FlatTreeEnsemble;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Predictor backed by a {@link FlatTreeEnsemble}, with an optional feature dependent scaling of the result.
+ * <p>
+ * Besides the per link {@link Predictor} interface, all links of one junction type can be evaluated in one batched call,
+ * see {@link #predict(double[][])}.
+ */
+public final class FlatTreePredictor implements Predictor {
+
+	private final FlatTreeEnsemble ensemble;
+	private final Scale scale;
+
+	/**
+	 * Raw feature names, in the column order of the batch predictions.
+	 */
+	private final List<String> features;
+
+	FlatTreePredictor(FlatTreeEnsemble ensemble, Scale scale) {
+		this.ensemble = ensemble;
+		this.scale = scale;
+		this.features = List.of(ensemble.getFeatures());
+	}
+
+	@Override
+	public double predict(Object2DoubleMap<String> features, Object2ObjectMap<String, String> categories) {
+		double value = ensemble.predict(ensemble.getData(features));
+		return scale != null ? value * scale.apply(features::getDouble) : value;
+	}
+
+	@Override
+	public double[] getData(Object2DoubleMap<String> features, Object2ObjectMap<String, String> categories) {
+		return ensemble.getData(features);
+	}
+
+	@Override
+	public double predict(Object2DoubleMap<String> features, Object2ObjectMap<String, String> categories, double[] params) {
+		double value = ensemble.predict(ensemble.getData(features), params);
+		return scale != null ? value * scale.apply(features::getDouble) : value;
+	}
+
+	/**
+	 * Names of the raw input features, in the column order expected by {@link #predict(double[][])}.
+	 */
+	public String[] getFeatures() {
+		return ensemble.getFeatures();
+	}
+
+	/**
+	 * Predict the values of many links at once, usually all links of one junction type.
+	 * The trees are evaluated in parallel, the result is in the order of the rows and does not depend on the number of threads.
+	 *
+	 * @param rows raw, not standardized, feature values of each link in the order of {@link #getFeatures()}, which are not modified
+	 */
+	public double[] predict(double[][] rows) {
+		return scale(rows, ensemble.predict(standardize(rows)));
+	}
+
+	/**
+	 * Batch prediction with other leaf values than the ones of the model.
+	 *
+	 * @see #predict(double[][])
+	 */
+	public double[] predict(double[][] rows, double[] params) {
+		return scale(rows, ensemble.predict(standardize(rows), params));
+	}
+
+	private double[][] standardize(double[][] rows) {
+		double[][] data = new double[rows.length][];
+		for (int i = 0; i < rows.length; i++) {
+			data[i] = ensemble.standardize(Arrays.copyOf(rows[i], rows[i].length));
+		}
+		return data;
+	}
+
+	private double[] scale(double[][] rows, double[] result) {
+		if (scale != null) {
+			for (int i = 0; i < result.length; i++) {
+				double[] row = rows[i];
+				result[i] *= scale.apply(name -> {
+					int idx = features.indexOf(name);
+					return idx >= 0 ? row[idx] : 0;
+				});
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Scaling of a prediction, depending on the raw feature values.
+	 */
+	@FunctionalInterface
+	interface Scale {
+
+		double apply(ToDoubleFunction<String> feature);
+
+	}
+}
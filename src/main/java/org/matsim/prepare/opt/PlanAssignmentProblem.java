@@ -11,6 +11,7 @@ import org.optaplanner.core.api.score.buildin.simplebigdecimal.SimpleBigDecimalS
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Planning problem containing all entities and information.
@@ -18,6 +19,11 @@ import java.util.*;
 @PlanningSolution(solutionCloner = PlanAssignmentProblem.Cloner.class)
 public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 
+	/**
+	 * Number of persons sharing one random generator during {@link #iterate(int, double, double, double, int)}.
+	 */
+	private static final int BLOCK_SIZE = 1024;
+
 	final int[] counts;
 	final ErrorMetric metric;
 	private final int maxK;
@@ -77,15 +83,24 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 	}
 
 	/**
-	 * Iterative pre optimization using change plan exp beta logic.
+	 * Iterative pre optimization using change plan exp beta logic, using all available processors.
 	 */
 	public void iterate(int n, double prob, double beta, double w) {
+		iterate(n, prob, beta, w, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Iterative pre optimization using change plan exp beta logic.
+	 * Only the count changes of persons that switched their plan are applied to the score after each iteration.
+	 * The result is the same for any number of threads.
+	 */
+	public void iterate(int n, double prob, double beta, double w, int threads) {
 
 		ScoreCalculator calc = new ScoreCalculator();
 		calc.resetWorkingSolution(this);
 		score = calc.calculateScore();
 
-		RunCountOptimization.log.info("Iterating {} iters with prob {} and beta {}", n, prob, beta);
+		RunCountOptimization.log.info("Iterating {} iters with prob {} and beta {} using {} threads", n, prob, beta, threads);
 
 		SplittableRandom rnd = new SplittableRandom(0);
 
@@ -96,7 +111,6 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 
 		for (int i = 0; i < n; i++) {
 
-			calc.resetWorkingSolution(this);
 			score = calc.calculateScore();
 
 			if (i % 100 == 0)
@@ -118,14 +132,68 @@ public final class PlanAssignmentProblem implements Iterable<PlanPerson> {
 			double p = prob - step * i;
 			double b = beta - (beta / n) * i;
 
-			for (PlanPerson person : persons) {
+			step(calc, rnd, p, b, w, threads);
+		}
+
+		score = calc.calculateScore();
+	}
+
+	/**
+	 * Perform one iteration. All persons are scored against the counts at the start of the iteration.
+	 * Persons are processed in fixed size blocks, each with its own random generator, and the blocks are partitioned among threads.
+	 * Changes of the observed counts are collected per thread and merged before they are applied to the calculator.
+	 *
+	 * @return number of persons that changed their plan
+	 */
+	int step(ScoreCalculator calc, SplittableRandom rnd, double p, double beta, double w, int threads) {
+
+		int blocks = (persons.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		long[] seeds = rnd.longs(blocks).toArray();
+
+		int partitions = Math.max(1, Math.min(threads, blocks));
+		int[][] deltas = new int[partitions][];
+		int[] changed = new int[partitions];
+
+		IntStream.range(0, partitions).parallel().forEach(t -> {
+
+			int[] delta = new int[counts.length];
+
+			for (int block = t * blocks / partitions; block < (t + 1) * blocks / partitions; block++) {
+
+				SplittableRandom r = new SplittableRandom(seeds[block]);
+				int end = Math.min(persons.size(), (block + 1) * BLOCK_SIZE);
+
+				for (int i = block * BLOCK_SIZE; i < end; i++) {
+
+					PlanPerson person = persons.get(i);
+					if (r.nextDouble() >= p)
+						continue;
 
-				if (rnd.nextDouble() < p) {
 					person.setScore(calc);
-					person.setK(person.changePlanExpBeta(b, w, rnd));
+					int k = person.changePlanExpBeta(beta, w, r);
+
+					if (k != person.getK()) {
+						person.getPlans().addTo(delta, person.selected(), -1);
+						person.setK(k);
+						person.getPlans().addTo(delta, person.selected(), 1);
+						changed[t]++;
+					}
 				}
 			}
+
+			deltas[t] = delta;
+		});
+
+		int[] delta = deltas[0];
+		for (int t = 1; t < partitions; t++) {
+			for (int j = 0; j < delta.length; j++) {
+				delta[j] += deltas[t][j];
+			}
 		}
+
+		calc.applyDelta(delta);
+
+		return Arrays.stream(changed).sum();
 	}
 
 	/**
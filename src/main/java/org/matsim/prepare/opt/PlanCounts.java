@@ -0,0 +1,134 @@
+package org.matsim.prepare.opt;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Count increments of all plans, stored in compressed sparse row format.
+ * The entries of plan {@code p} are located at {@code offsets[p]} until {@code offsets[p + 1]}.
+ */
+public final class PlanCounts {
+
+	/**
+	 * Start of each plan, with one additional entry marking the end of the last plan.
+	 */
+	final int[] offsets;
+
+	/**
+	 * Index of the affected count.
+	 */
+	final int[] countIdx;
+
+	/**
+	 * Increment of the count.
+	 */
+	final short[] values;
+
+	private PlanCounts(int[] offsets, int[] countIdx, short[] values) {
+		this.offsets = offsets;
+		this.countIdx = countIdx;
+		this.values = values;
+	}
+
+	/**
+	 * Create a new builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Number of plans.
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Total number of entries of all plans.
+	 */
+	public int entries() {
+		return countIdx.length;
+	}
+
+	/**
+	 * Sum of all increments of a plan.
+	 */
+	public int impact(int plan) {
+		int sum = 0;
+		for (int i = offsets[plan]; i < offsets[plan + 1]; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Add the increments of a plan multiplied by sign to the given array.
+	 */
+	void addTo(int[] target, int plan, int sign) {
+		for (int i = offsets[plan]; i < offsets[plan + 1]; i++) {
+			target[countIdx[i]] += sign * values[i];
+		}
+	}
+
+	/**
+	 * Estimated heap size in bytes.
+	 */
+	public long memoryUsage() {
+		return 4L * offsets.length + 4L * countIdx.length + 2L * values.length;
+	}
+
+	/**
+	 * Builder collecting plans one after another.
+	 */
+	public static final class Builder {
+
+		private final IntArrayList offsets = new IntArrayList();
+		private final IntArrayList countIdx = new IntArrayList();
+		private final ShortArrayList values = new ShortArrayList();
+
+		private Builder() {
+			offsets.add(0);
+		}
+
+		/**
+		 * Append a plan. Entries are sorted by count index.
+		 *
+		 * @return index of the added plan
+		 */
+		public int addPlan(Int2IntMap plan) {
+
+			int[] keys = plan.keySet().toIntArray();
+			Arrays.sort(keys);
+
+			for (int key : keys) {
+				int v = plan.get(key);
+				if (v > Short.MAX_VALUE || v < Short.MIN_VALUE)
+					throw new IllegalArgumentException("Count increment %d for index %d does not fit into a short.".formatted(v, key));
+
+				countIdx.add(key);
+				values.add((short) v);
+			}
+
+			offsets.add(countIdx.size());
+			return offsets.size() - 2;
+		}
+
+		/**
+		 * Number of plans added so far.
+		 */
+		public int size() {
+			return offsets.size() - 1;
+		}
+
+		/**
+		 * Create the immutable plan counts.
+		 */
+		public PlanCounts build() {
+			return new PlanCounts(offsets.toIntArray(), countIdx.toIntArray(), values.toShortArray());
+		}
+	}
+}
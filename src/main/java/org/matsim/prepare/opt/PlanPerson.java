@@ -1,7 +1,5 @@
 package org.matsim.prepare.opt;
 
-import it.unimi.dsi.fastutil.ints.Int2IntMap;
-import it.unimi.dsi.fastutil.ints.Int2IntMaps;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.optaplanner.core.api.domain.entity.PlanningEntity;
@@ -18,11 +16,6 @@ import java.util.SplittableRandom;
 @PlanningEntity(difficultyComparatorClass = PlanPerson.DifficultyComparator.class)
 public final class PlanPerson {
 
-	/**
-	 * A plan that does not affect any count stations.
-	 */
-	public static final Int2IntMap NOOP_PLAN = Int2IntMaps.EMPTY_MAP;
-
 	@PlanningId
 	private final Id<Person> id;
 
@@ -38,9 +31,14 @@ public final class PlanPerson {
 	private Integer k;
 
 	/**
-	 * Plans and their count increment.
+	 * Count increments of all plans.
+	 */
+	private final PlanCounts plans;
+
+	/**
+	 * Index of the first plan of this person in {@link #plans}.
 	 */
-	private final Int2IntMap[] plans;
+	private final int start;
 
 	/**
 	 * Scores of each plan.
@@ -52,17 +50,21 @@ public final class PlanPerson {
 	 */
 	final int maxImpact;
 
-	public PlanPerson(Id<Person> id, int offset, Int2IntMap[] plans) {
+	/**
+	 * Create a person whose plans are stored in {@code plans} from index {@code start} to {@code start + n}.
+	 */
+	public PlanPerson(Id<Person> id, int offset, PlanCounts plans, int start, int n) {
 		this.id = id;
 		this.offset = offset;
 		this.plans = plans;
+		this.start = start;
 		this.k = 0;
 
 		int max = 0;
-		for (Int2IntMap plan : plans) {
-			max = Math.max(max, plan.values().intStream().sum());
+		for (int i = 0; i < n; i++) {
+			max = Math.max(max, plans.impact(start + i));
 		}
-		this.scores = new double[plans.length];
+		this.scores = new double[n];
 		Arrays.fill(scores, Float.NaN);
 
 		this.maxImpact = max;
@@ -71,11 +73,12 @@ public final class PlanPerson {
 	/**
 	 * Constructor for cloning.
 	 */
-	private PlanPerson(Integer k, Id<Person> id, int offset, Int2IntMap[] plans, double[] scores, int maxImpact) {
+	private PlanPerson(Integer k, Id<Person> id, int offset, PlanCounts plans, int start, double[] scores, int maxImpact) {
 		this.k = k;
 		this.id = id;
 		this.offset = offset;
 		this.plans = plans;
+		this.start = start;
 		this.scores = scores;
 		this.maxImpact = maxImpact;
 	}
@@ -92,14 +95,24 @@ public final class PlanPerson {
 	}
 
 	/**
-	 * Counts of selected maps.
+	 * Count increments of all plans.
 	 */
-	public Int2IntMap selected() {
-		return plans[k];
+	public PlanCounts getPlans() {
+		return plans;
 	}
 
-	public Int2IntMap get(int idx) {
-		return plans[idx];
+	/**
+	 * Index of the selected plan in {@link #getPlans()}.
+	 */
+	public int selected() {
+		return start + k;
+	}
+
+	/**
+	 * Index of the plan {@code idx} of this person in {@link #getPlans()}.
+	 */
+	public int get(int idx) {
+		return start + idx;
 	}
 
 	public void setK(int k) {
@@ -113,14 +126,14 @@ public final class PlanPerson {
 	public void setScore(ScoreCalculator calc) {
 
 
-		for (int i = 0; i < plans.length; i++) {
+		int[] offsets = plans.offsets;
 
-			double score = 0;
+		for (int i = 0; i < scores.length; i++) {
 
-			Int2IntMap p = plans[i];
+			double score = 0;
 
-			for (Int2IntMap.Entry e : p.int2IntEntrySet()) {
-				score += calc.scoreEntry(e);
+			for (int j = offsets[start + i]; j < offsets[start + i + 1]; j++) {
+				score += calc.scoreEntry(plans.countIdx[j], plans.values[j]);
 			}
 
 			scores[i] = score;
@@ -156,7 +169,7 @@ public final class PlanPerson {
 	}
 
 	PlanPerson copy() {
-		return new PlanPerson(k, id, offset, plans, scores, maxImpact);
+		return new PlanPerson(k, id, offset, plans, start, scores, maxImpact);
 	}
 
 	/**
@@ -140,24 +140,29 @@ public class RunCountOptimization implements MATSimAppCommand {
 	}
 
 	/**
-	 * Create an array for each person.
+	 * Collect the count increments of all plans and create the relevant persons.
 	 */
 	private List<PlanPerson> processPopulation(Path input, Network network, Counts<Link> linkCounts) {
 
 		Population population = PopulationUtils.readPopulation(input.toString());
-		List<PlanPerson> persons = new ArrayList<>();
 
 		Set<Id<Link>> links = linkCounts.getMeasureLocations().keySet();
 
-		SplittableRandom rnd = new SplittableRandom(0);
+		PlanCounts.Builder builder = PlanCounts.builder();
+		List<Id<Person>> ids = new ArrayList<>();
+
+		// Maps are only used while processing one person
+		Int2IntMap[] plans = new Int2IntMap[maxK];
+		for (int i = 0; i < plans.length; i++) {
+			plans[i] = new Int2IntOpenHashMap();
+		}
 
 		for (Person person : population.getPersons().values()) {
 
 			int scale = (int) (1 / sampleSize);
 
-			Int2IntMap[] plans = new Int2IntMap[maxK];
-			for (int i = 0; i < plans.length; i++) {
-				plans[i] = new Int2IntOpenHashMap();
+			for (Int2IntMap plan : plans) {
+				plan.clear();
 			}
 
 			boolean keep = false;
@@ -228,15 +233,23 @@ public class RunCountOptimization implements MATSimAppCommand {
 			}
 
 			if (keep) {
-				for (int i = 0; i < plans.length; i++) {
-					if (plans[i].isEmpty())
-						plans[i] = PlanPerson.NOOP_PLAN;
+				for (Int2IntMap plan : plans) {
+					builder.addPlan(plan);
 				}
 
-				persons.add(new PlanPerson(person.getId(), offset, plans));
+				ids.add(person.getId());
 			}
 		}
 
+		PlanCounts counts = builder.build();
+
+		log.info("Plan counts with {} plans and {} entries use {} MB", counts.size(), counts.entries(), counts.memoryUsage() / 1024 / 1024);
+
+		List<PlanPerson> persons = new ArrayList<>();
+		for (int i = 0; i < ids.size(); i++) {
+			persons.add(new PlanPerson(ids.get(i), 0, counts, i * maxK, maxK));
+		}
+
 		return persons;
 	}
 
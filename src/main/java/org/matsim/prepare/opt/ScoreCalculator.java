@@ -1,7 +1,6 @@
 package org.matsim.prepare.opt;
 
 
-import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import org.apache.commons.math3.util.FastMath;
 import org.optaplanner.core.api.score.buildin.simplebigdecimal.SimpleBigDecimalScore;
 import org.optaplanner.core.api.score.calculator.IncrementalScoreCalculator;
@@ -52,9 +51,7 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 		metric = problem.metric;
 
 		for (PlanPerson person : problem) {
-			for (Int2IntMap.Entry e : person.selected().int2IntEntrySet()) {
-				observed[e.getIntKey()] += e.getIntValue();
-			}
+			person.getPlans().addTo(observed, person.selected(), 1);
 		}
 
 		calcScoreInternal();
@@ -92,13 +89,7 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 		PlanPerson person = (PlanPerson) entity;
 
 		// remove this persons plan from the calculation
-		for (Int2IntMap.Entry e : person.selected().int2IntEntrySet()) {
-
-			int old = observed[e.getIntKey()];
-			int update = observed[e.getIntKey()] -= e.getIntValue();
-
-			error += diffChange(metric, counts[e.getIntKey()], old, update);
-		}
+		update(person, -1);
 
 	}
 
@@ -109,15 +100,38 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 		PlanPerson person = (PlanPerson) entity;
 
 		// add this persons contribution to the score
-		for (Int2IntMap.Entry e : person.selected().int2IntEntrySet()) {
+		update(person, 1);
+	}
 
-			int old = observed[e.getIntKey()];
-			int update = observed[e.getIntKey()] += e.getIntValue();
+	/**
+	 * Apply accumulated changes of the observed counts. Entries are processed in index order,
+	 * so the resulting error does not depend on how the changes were collected.
+	 */
+	void applyDelta(int[] delta) {
+		for (int j = 0; j < delta.length; j++) {
+			if (delta[j] != 0)
+				update(j, delta[j]);
+		}
+	}
 
-			error += diffChange(metric, counts[e.getIntKey()], old, update);
+	private void update(PlanPerson person, int sign) {
+
+		PlanCounts plans = person.getPlans();
+		int plan = person.selected();
+
+		for (int i = plans.offsets[plan]; i < plans.offsets[plan + 1]; i++) {
+			update(plans.countIdx[i], sign * plans.values[i]);
 		}
 	}
 
+	private void update(int idx, int change) {
+
+		int old = observed[idx];
+		int update = observed[idx] += change;
+
+		error += diffChange(metric, counts[idx], old, update);
+	}
+
 	@Override
 	public void beforeEntityRemoved(Object entity) {
 	}
@@ -132,13 +146,11 @@ public final class ScoreCalculator implements IncrementalScoreCalculator<PlanAss
 		return SimpleBigDecimalScore.of(BigDecimal.valueOf(-error));
 	}
 
-	double scoreEntry(Int2IntMap.Entry e) {
-
-		int idx = e.getIntKey();
+	double scoreEntry(int idx, int value) {
 
 		// Calculate impact compared to a plan without the observations of this plan
 		// old can not get negative
 
-		return -diffChange(metric, counts[idx], Math.max(0, observed[idx] - e.getIntValue()), observed[idx]);
+		return -diffChange(metric, counts[idx], Math.max(0, observed[idx] - value), observed[idx]);
 	}
 }
@@ -0,0 +1,201 @@
+package org.matsim.prepare.population;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Activities from the survey, which are parsed once and stored in columns.
+ * The activities of each person are stored consecutively, activity types and leg modes are dictionary encoded.
+ */
+public final class ActivityTable {
+
+	private static final Logger log = LogManager.getLogger(ActivityTable.class);
+
+	/**
+	 * Maps person id to person index.
+	 */
+	private final Object2IntMap<String> persons;
+
+	/**
+	 * Index of the first activity for each person index, with one additional entry for the end.
+	 */
+	private final int[] offsets;
+
+	private final String[] typeNames;
+	private final String[] modeNames;
+
+	private final int[] types;
+	private final int[] durations;
+	private final double[] legDurations;
+	private final double[] legDists;
+	private final int[] legModes;
+
+	private ActivityTable(Builder b) {
+		this.persons = b.persons;
+		this.offsets = b.offsets.toIntArray();
+		this.typeNames = b.typeNames.toArray(String[]::new);
+		this.modeNames = b.modeNames.toArray(String[]::new);
+		this.types = b.types.toIntArray();
+		this.durations = b.durations.toIntArray();
+		this.legDurations = b.legDurations.toDoubleArray();
+		this.legDists = b.legDists.toDoubleArray();
+		this.legModes = b.legModes.toIntArray();
+	}
+
+	/**
+	 * Read activities from csv. Consecutive rows with the same person id are grouped together.
+	 */
+	public static ActivityTable read(Path csv) throws IOException {
+
+		Builder b = new Builder();
+		try (CSVParser parser = CSVParser.parse(csv, StandardCharsets.UTF_8,
+			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
+
+			String currentId = null;
+			for (CSVRecord r : parser) {
+				String pId = r.get("p_id");
+				if (!Objects.equals(pId, currentId)) {
+					b.addPerson(pId);
+					currentId = pId;
+				}
+
+				b.addActivity(r);
+			}
+		}
+
+		ActivityTable table = b.build();
+		log.info("Read {} activities for {} persons", table.types.length, table.persons.size());
+
+		return table;
+	}
+
+	/**
+	 * Create table from activities already grouped by person id.
+	 */
+	public static ActivityTable of(Map<String, List<CSVRecord>> activities) {
+
+		Builder b = new Builder();
+		for (Map.Entry<String, List<CSVRecord>> e : activities.entrySet()) {
+			b.addPerson(e.getKey());
+			e.getValue().forEach(b::addActivity);
+		}
+
+		return b.build();
+	}
+
+	/**
+	 * Get the index of a person.
+	 *
+	 * @return -1 if there are no activities for this person
+	 */
+	public int getPerson(String personId) {
+		return persons.getInt(personId);
+	}
+
+	/**
+	 * Index of the first activity of a person.
+	 */
+	public int start(int person) {
+		return offsets[person];
+	}
+
+	/**
+	 * Index after the last activity of a person.
+	 */
+	public int end(int person) {
+		return offsets[person + 1];
+	}
+
+	public String getType(int act) {
+		return typeNames[types[act]];
+	}
+
+	/**
+	 * Duration in minutes.
+	 */
+	public int getDuration(int act) {
+		return durations[act];
+	}
+
+	/**
+	 * Duration of the leg leading to this activity in minutes.
+	 */
+	public double getLegDuration(int act) {
+		return legDurations[act];
+	}
+
+	/**
+	 * Distance of the leg leading to this activity in km.
+	 */
+	public double getLegDist(int act) {
+		return legDists[act];
+	}
+
+	public String getLegMode(int act) {
+		return modeNames[legModes[act]];
+	}
+
+	private static final class Builder {
+
+		private final Object2IntMap<String> persons = new Object2IntOpenHashMap<>();
+		private final IntArrayList offsets = new IntArrayList();
+
+		private final Object2IntMap<String> typeIndex = new Object2IntOpenHashMap<>();
+		private final Object2IntMap<String> modeIndex = new Object2IntOpenHashMap<>();
+		private final List<String> typeNames = new ArrayList<>();
+		private final List<String> modeNames = new ArrayList<>();
+
+		private final IntArrayList types = new IntArrayList();
+		private final IntArrayList durations = new IntArrayList();
+		private final DoubleArrayList legDurations = new DoubleArrayList();
+		private final DoubleArrayList legDists = new DoubleArrayList();
+		private final IntArrayList legModes = new IntArrayList();
+
+		private Builder() {
+			persons.defaultReturnValue(-1);
+		}
+
+		private static int encode(String value, Object2IntMap<String> index, List<String> names) {
+			return index.computeIfAbsent(value, k -> {
+				names.add(value);
+				return names.size() - 1;
+			});
+		}
+
+		/**
+		 * Start a new person. If the id was already present, the new entry will be used.
+		 */
+		void addPerson(String personId) {
+			persons.put(personId, offsets.size());
+			offsets.add(types.size());
+		}
+
+		void addActivity(CSVRecord r) {
+			types.add(encode(r.get("type"), typeIndex, typeNames));
+			durations.add((int) Double.parseDouble(r.get("duration")));
+			legDurations.add(Double.parseDouble(r.get("leg_duration")));
+			legDists.add(Double.parseDouble(r.get("leg_dist")));
+			legModes.add(encode(r.get("leg_mode"), modeIndex, modeNames));
+		}
+
+		ActivityTable build() {
+			offsets.add(types.size());
+			return new ActivityTable(this);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package org.matsim.prepare.population;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples indices proportional to fixed weights in constant time, using the alias method by Vose.
+ * Construction is linear in the number of weights, so this is only worthwhile if many samples are drawn from the same weights.
+ */
+public final class AliasTable {
+
+	private final double[] prob;
+	private final int[] alias;
+	private final double total;
+
+	private AliasTable(double[] prob, int[] alias, double total) {
+		this.prob = prob;
+		this.alias = alias;
+		this.total = total;
+	}
+
+	/**
+	 * Create a table for the given weights. Weights must be non-negative and at least one weight must be positive.
+	 */
+	public static AliasTable of(double[] weights) {
+
+		int n = weights.length;
+		if (n == 0)
+			throw new IllegalArgumentException("At least one weight is required.");
+
+		double total = 0;
+		for (double w : weights) {
+			if (!(w >= 0) || Double.isInfinite(w))
+				throw new IllegalArgumentException("Invalid weight: " + w);
+
+			total += w;
+		}
+
+		if (total <= 0)
+			throw new IllegalArgumentException("Sum of weights must be positive.");
+
+		double[] prob = new double[n];
+		int[] alias = new int[n];
+
+		// Scaled weights, with mean of one
+		double[] p = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int ns = 0;
+		int nl = 0;
+
+		for (int i = 0; i < n; i++) {
+			p[i] = weights[i] * n / total;
+			if (p[i] < 1)
+				small[ns++] = i;
+			else
+				large[nl++] = i;
+		}
+
+		while (ns > 0 && nl > 0) {
+			int s = small[--ns];
+			int l = large[--nl];
+
+			prob[s] = p[s];
+			alias[s] = l;
+
+			p[l] = (p[l] + p[s]) - 1;
+			if (p[l] < 1)
+				small[ns++] = l;
+			else
+				large[nl++] = l;
+		}
+
+		// Remaining entries are one, up to rounding errors
+		while (nl > 0) {
+			int l = large[--nl];
+			prob[l] = 1;
+			alias[l] = l;
+		}
+
+		while (ns > 0) {
+			int s = small[--ns];
+			prob[s] = 1;
+			alias[s] = s;
+		}
+
+		return new AliasTable(prob, alias, total);
+	}
+
+	/**
+	 * Sample an index.
+	 */
+	public int sample(SplittableRandom rnd) {
+		int i = rnd.nextInt(prob.length);
+		return rnd.nextDouble() < prob[i] ? i : alias[i];
+	}
+
+	/**
+	 * Number of entries.
+	 */
+	public int size() {
+		return prob.length;
+	}
+
+	/**
+	 * Sum of all weights.
+	 */
+	public double getTotal() {
+		return total;
+	}
+}
@@ -1,6 +1,7 @@
 package org.matsim.prepare.population;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.logging.log4j.LogManager;
@@ -52,6 +53,9 @@ public class AssignReferencePopulation implements MATSimAppCommand {
 	@CommandLine.Option(names = "--output", description = "Output population path.", required = true)
 	private Path output;
 
+	@CommandLine.Option(names = "--zone-cache", description = "Path to cache the facilities within each zone. Will be recomputed if the inputs change.")
+	private Path zoneCache;
+
 	@CommandLine.Mixin
 	private ShpOptions shp;
 
@@ -82,7 +86,7 @@ public class AssignReferencePopulation implements MATSimAppCommand {
 		persons = new PersonMatcher("idx", personsPath);
 		facilities = new FacilityIndex(facilityPath.toString(), OpenBerlinScenario.CRS);
 
-		PlanBuilder planBuilder = new PlanBuilder(shp, facilities, activityPath);
+		PlanBuilder planBuilder = new PlanBuilder(shp, facilities, activityPath, zoneCache);
 
 		Long2ObjectMap<List<Person>> homeIndex = planBuilder.createHomeIndex(population);
 
@@ -91,7 +95,10 @@ public class AssignReferencePopulation implements MATSimAppCommand {
 			list.removeIf(p -> TripStructureUtils.getLegs(p.getSelectedPlan()).isEmpty());
 		}
 
-		RunActivitySampling sampling = new RunActivitySampling(persons, planBuilder.getActivities(), population.getFactory(), 1);
+		// Group codes of the persons are computed once per zone, when it is first needed
+		Long2ObjectMap<PersonMatcher.Candidates> candidates = new Long2ObjectOpenHashMap<>();
+
+		RunActivitySampling sampling = new RunActivitySampling(persons, ActivityTable.of(planBuilder.getActivities()), population.getFactory(), 1);
 
 		int i = 0;
 		outer:
@@ -113,11 +120,11 @@ public class AssignReferencePopulation implements MATSimAppCommand {
 			if (zone < 0)
 				continue;
 
-			List<Person> refPersons = homeIndex.get(zone);
-
-			if (refPersons == null)
+			if (!homeIndex.containsKey(zone))
 				continue;
 
+			PersonMatcher.Candidates refPersons = candidates.computeIfAbsent(zone, z -> persons.candidates(homeIndex.get(z)));
+
 
 			// try matching several persons in case it fails
 			for (int j = 0; j < 10; j++) {
@@ -132,7 +139,9 @@ public class AssignReferencePopulation implements MATSimAppCommand {
 				Coord homeCoord = Attributes.getHomeCoord(person);
 				Plan plan = sampling.createPlan(homeCoord, e.getKey(), rnd);
 
-				boolean success = planBuilder.assignLocationsFromZones(e.getKey(), plan, homeCoord);
+				// Locations only depend on the reference person and the attempt
+				SplittableRandom locRnd = new SplittableRandom(e.getKey().hashCode() * 31L + j);
+				boolean success = planBuilder.assignLocationsFromZones(e.getKey(), plan, homeCoord, locRnd);
 
 				if (success) {
 					sampling.copyAttributes(p, person);
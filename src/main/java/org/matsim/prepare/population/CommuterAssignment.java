@@ -1,9 +1,6 @@
 package org.matsim.prepare.population;
 
-import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.*;
 import it.unimi.dsi.fastutil.longs.*;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -19,22 +16,24 @@ import org.matsim.facilities.ActivityFacility;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.util.Map;
-import java.util.SplittableRandom;
+import java.util.*;
 
 /**
  * Helper class for commuter assignment.
+ * <p>
+ * Commute targets are assigned in rounds, so that the result does not depend on the number of threads or the order in which persons are processed.
+ * During a round, {@link #propose(SplittableRandom, long, double, Point, Sampler)} can be called concurrently and does not modify any state.
+ * Afterward, {@link #resolve(Map)} accepts the proposals ordered by their key, as long as commuters are left between the zones.
+ * Rejected proposals need to be made again in the next round, where the exhausted targets are not available anymore.
  */
 public class CommuterAssignment {
 
 	private static final Logger log = LogManager.getLogger(CommuterAssignment.class);
 
-	private final Map<Long, SimpleFeature> zones;
-
 	/**
 	 * Outgoing commuter from ars to ars. This is german wide with quite large zones.
 	 */
-	private final Long2ObjectMap<Long2DoubleMap> commuter;
+	private final Long2ObjectMap<Origin> commuter;
 
 	/**
 	 * Maps home district to probabilities of commuting to other districts.
@@ -48,8 +47,7 @@ public class CommuterAssignment {
 		this.sample = sample;
 
 		// outgoing commuters
-		this.commuter = new Long2ObjectOpenHashMap<>();
-		this.zones = zones;
+		Long2ObjectMap<Long2DoubleMap> outgoing = new Long2ObjectOpenHashMap<>();
 
 		// read commuters
 		try (CSVParser parser = csv.createParser(commuterPath)) {
@@ -64,13 +62,20 @@ public class CommuterAssignment {
 				}
 
 				String n = row.get("n");
-				commuter.computeIfAbsent(from, k -> Long2DoubleMaps.synchronize(new Long2DoubleOpenHashMap()))
+				outgoing.computeIfAbsent(from, k -> new Long2DoubleOpenHashMap())
 					.mergeDouble(to, Integer.parseInt(n), Double::sum);
 			}
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 
+		this.commuter = new Long2ObjectOpenHashMap<>();
+		for (Long2ObjectMap.Entry<Long2DoubleMap> kv : outgoing.long2ObjectEntrySet()) {
+			Origin origin = new Origin(kv.getValue(), zones);
+			if (origin.alias != null)
+				commuter.put(kv.getLongKey(), origin);
+		}
+
 		this.berlinCommuter = new Int2ObjectOpenHashMap<>();
 
 		try (CSVParser parser = csv.createParser(berlinCommuterPath)) {
@@ -96,66 +101,115 @@ public class CommuterAssignment {
 
 	}
 
-		/**
-	 * Select and return a commute target.
+	/**
+	 * Propose a commute target. Targets are drawn proportional to the commuters left at the start of the round.
+	 * This method is thread-safe, but must not be called concurrently with {@link #resolve(Map)}.
 	 *
 	 * @param f   sampler producing target locations
 	 * @param ars origin zone
+	 * @return null if no target is available
 	 */
-	public ActivityFacility selectTarget(SplittableRandom rnd, long ars, double dist, Point refPoint, Sampler f) {
+	public Proposal propose(SplittableRandom rnd, long ars, double dist, Point refPoint, Sampler f) {
 
-		// Commute in same zone
-		Long2DoubleMap comms = commuter.get(ars);
-		if (!commuter.containsKey(ars) || comms.isEmpty())
+		Origin o = commuter.get(ars);
+		AliasTable alias = o != null ? o.alias : null;
+		if (alias == null)
 			return null;
 
-		LongList entries;
-		synchronized (comms) {
-			entries = new LongArrayList(comms.keySet());
-		}
+		int n = o.targets.length;
 
-		while (!entries.isEmpty()) {
-			long key = entries.removeLong(rnd.nextInt(entries.size()));
+		// Zones that are too far away or without facility are not tried twice
+		IntSet tried = null;
 
-			SimpleFeature ft = zones.get(key);
-
-			// TODO: should maybe not be allowed
-			if (ft == null)
+		for (int i = 0; i < 2 * n; i++) {
+			int idx = alias.sample(rnd);
+			if (o.remaining[idx] <= 0 || (tried != null && tried.contains(idx)))
 				continue;
 
-			Geometry zone = (Geometry) ft.getDefaultGeometry();
+			ActivityFacility res = sample(o, idx, dist, refPoint, f);
+			if (res != null)
+				return new Proposal(ars, o.targets[idx], res);
+
+			if (tried == null)
+				tried = new IntOpenHashSet();
+
+			tried.add(idx);
+		}
 
-			// Zones too far away don't need to be considered
-			if (zone.distance(refPoint) > dist * 1.2)
+		// Check all remaining targets, if none could be drawn
+		int offset = rnd.nextInt(n);
+		for (int i = 0; i < n; i++) {
+			int idx = (offset + i) % n;
+			if (o.remaining[idx] <= 0 || (tried != null && tried.contains(idx)))
 				continue;
 
-			ActivityFacility res = f.sample(zone);
+			ActivityFacility res = sample(o, idx, dist, refPoint, f);
+			if (res != null)
+				return new Proposal(ars, o.targets[idx], res);
+		}
+
+		return null;
+	}
+
+	private static ActivityFacility sample(Origin o, int idx, double dist, Point refPoint, Sampler f) {
 
-			if (res != null) {
-				synchronized (comms) {
-					double old = comms.get(key);
+		Geometry zone = o.zones[idx];
 
-					// Check if other thread reduced the counter while computing
-					// result needs to be thrown away
-					if (old <= 0) {
-						comms.remove(key);
-						continue;
-					}
+		// Zones too far away don't need to be considered
+		if (zone.distance(refPoint) > dist * 1.2)
+			return null;
 
-					// subtract available commuters
-					double newValue = old - (1 / sample);
-					comms.put(key, newValue);
+		return f.sample(zone);
+	}
 
-					if (newValue <= 0)
-						comms.remove(key);
-				}
+	/**
+	 * Accept proposals in the order of their keys and subtract the available commuters.
+	 * A proposal is rejected if no commuters are left for its relation. Such targets are not proposed anymore in the next round.
+	 *
+	 * @return keys of the rejected proposals, in order
+	 */
+	public <K extends Comparable<? super K>> List<K> resolve(Map<K, Proposal> proposals) {
 
-				return res;
+		List<K> keys = new ArrayList<>(proposals.keySet());
+		Collections.sort(keys);
+
+		List<K> rejected = new ArrayList<>();
+		Set<Origin> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (K key : keys) {
+			Proposal p = proposals.get(key);
+			Origin o = commuter.get(p.origin);
+			int idx = Arrays.binarySearch(o.targets, p.target);
+
+			if (o.remaining[idx] <= 0) {
+				rejected.add(key);
+				continue;
 			}
+
+			// subtract available commuters
+			o.remaining[idx] -= 1 / sample;
+			changed.add(o);
 		}
 
+		// Sampling weights for the next round
+		changed.forEach(Origin::update);
 
-		return null;
+		if (!rejected.isEmpty())
+			log.info("Rejected {} out of {} commute proposals", rejected.size(), proposals.size());
+
+		return rejected;
+	}
+
+	/**
+	 * Number of commuters left between two zones.
+	 */
+	public double getRemaining(long from, long to) {
+		Origin o = commuter.get(from);
+		if (o == null)
+			return 0;
+
+		int idx = Arrays.binarySearch(o.targets, to);
+		return idx >= 0 ? Math.max(0, o.remaining[idx]) : 0;
 	}
 
 	/**
@@ -174,4 +228,65 @@ public class CommuterAssignment {
 
 	}
 
+	/**
+	 * Proposed commute.
+	 *
+	 * @param origin   origin zone
+	 * @param target   target zone
+	 * @param facility sampled location within the target zone
+	 */
+	public record Proposal(long origin, long target, ActivityFacility facility) {
+	}
+
+	/**
+	 * Targets of one origin zone, sorted by their ars. Targets without zone geometry are not included.
+	 */
+	private static final class Origin {
+
+		private final long[] targets;
+		private final Geometry[] zones;
+
+		/**
+		 * Number of commuters left, only modified in {@link #resolve(Map)}.
+		 */
+		private final double[] remaining;
+
+		/**
+		 * Samples targets by remaining commuters, replaced after each round. Null if there are none left.
+		 */
+		private AliasTable alias;
+
+		Origin(Long2DoubleMap outgoing, Long2ObjectMap<SimpleFeature> features) {
+
+			LongList keys = new LongArrayList();
+			for (long key : outgoing.keySet()) {
+				// TODO: should maybe not be allowed
+				if (features.containsKey(key) && outgoing.get(key) > 0)
+					keys.add(key);
+			}
+
+			targets = keys.toLongArray();
+			Arrays.sort(targets);
+
+			zones = new Geometry[targets.length];
+			remaining = new double[targets.length];
+			for (int i = 0; i < targets.length; i++) {
+				zones[i] = (Geometry) features.get(targets[i]).getDefaultGeometry();
+				remaining[i] = outgoing.get(targets[i]);
+			}
+
+			update();
+		}
+
+		void update() {
+			double[] weights = new double[remaining.length];
+			double total = 0;
+			for (int i = 0; i < remaining.length; i++) {
+				weights[i] = Math.max(0, remaining[i]);
+				total += weights[i];
+			}
+
+			alias = total > 0 ? AliasTable.of(weights) : null;
+		}
+	}
 }
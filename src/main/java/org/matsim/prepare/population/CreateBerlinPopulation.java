@@ -28,13 +28,17 @@ import org.matsim.prepare.RunOpenBerlinCalibration;
 import org.matsim.run.OpenBerlinScenario;
 import picocli.CommandLine;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.*;
-import java.util.stream.IntStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @CommandLine.Command(
 	name = "berlin-population",
@@ -42,10 +46,19 @@ import java.util.stream.IntStream;
 )
 public class CreateBerlinPopulation implements MATSimAppCommand {
 
-	private static final NumberFormat FMT = NumberFormat.getInstance(Locale.GERMAN);
+	/**
+	 * Number formats are not thread-safe.
+	 */
+	private static final ThreadLocal<NumberFormat> FMT = ThreadLocal.withInitial(() -> NumberFormat.getInstance(Locale.GERMAN));
+
+	private static final String TOTAL = "Einwohnerinnen und Einwohner (EW) insgesamt";
 
 	private static final Logger log = LogManager.getLogger(CreateBerlinPopulation.class);
-	private final CoordinateTransformation ct = new GeotoolsTransformation("EPSG:25833", "EPSG:25832");
+
+	/**
+	 * Transformations are not necessarily thread-safe, so each thread uses its own instance.
+	 */
+	private final ThreadLocal<CoordinateTransformation> ct = ThreadLocal.withInitial(() -> new GeotoolsTransformation("EPSG:25833", "EPSG:25832"));
 	@CommandLine.Option(names = "--input", description = "Path to input csv data", required = true)
 	private Path input;
 	@CommandLine.Mixin
@@ -58,9 +71,17 @@ public class CreateBerlinPopulation implements MATSimAppCommand {
 	private int year;
 	@CommandLine.Option(names = "--sample", description = "Sample size to generate", defaultValue = "0.25")
 	private double sample;
-	private Map<String, MultiPolygon> lors;
-	private SplittableRandom rnd;
-	private Population population;
+	@CommandLine.Option(names = "--threads", description = "Number of threads to use. Defaults to the number of available processors.")
+	private Integer threads;
+
+	public CreateBerlinPopulation() {
+	}
+
+	CreateBerlinPopulation(FacilityOptions facilities, double sample, int threads) {
+		this.facilities = facilities;
+		this.sample = sample;
+		this.threads = threads;
+	}
 
 	public static void main(String[] args) {
 		new CreateBerlinPopulation().execute(args);
@@ -82,6 +103,23 @@ public class CreateBerlinPopulation implements MATSimAppCommand {
 		return id;
 	}
 
+	/**
+	 * Generate an id from a unique running number. The number is scrambled with a bijective hash function,
+	 * so that ids look random, but never collide and do not depend on the order of generation.
+	 */
+	public static Id<Person> generateId(String prefix, int n) {
+
+		// Finalization step of murmur3, each operation is invertible
+		int h = n;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+
+		return Id.createPersonId(prefix + "_" + HexFormat.of().toHexDigits(h));
+	}
+
 	/**
 	 * Samples a home coordinates from geometry and landuse.
 	 */
@@ -107,8 +145,20 @@ public class CreateBerlinPopulation implements MATSimAppCommand {
 		return RunOpenBerlinCalibration.roundCoord(coord);
 	}
 
+	/**
+	 * Samples a home coordinate uniformly within the zone, preferring points within the landuse.
+	 * All points lie within the geometry, so no further checks are needed.
+	 *
+	 * @param facilities landuse options, if null the point is drawn from the whole zone
+	 */
+	public static Coord sampleHomeCoordinate(PolygonSampler sampler, String crs, @Nullable FacilityOptions facilities, SplittableRandom rnd) {
+
+		Coord coord = facilities != null ? facilities.select(crs, () -> sampler.sample(rnd)) : sampler.sample(rnd);
+
+		return RunOpenBerlinCalibration.roundCoord(coord);
+	}
+
 	@Override
-	@SuppressWarnings("IllegalCatch")
 	public Integer call() throws Exception {
 
 		if (!shp.isDefined()) {
@@ -118,9 +168,7 @@ public class CreateBerlinPopulation implements MATSimAppCommand {
 
 		List<SimpleFeature> fts = shp.readFeatures();
 
-		rnd = new SplittableRandom(0);
-		lors = new HashMap<>();
-		population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		Map<String, MultiPolygon> lors = new HashMap<>();
 
 		// Collect all LORs
 		for (SimpleFeature ft : fts) {
@@ -132,97 +180,132 @@ public class CreateBerlinPopulation implements MATSimAppCommand {
 
 		log.info("Found {} LORs", lors.size());
 
+		Population population = createPopulation(readRows(input, year), lors);
+
+		log.info("Generated {} persons", population.getPersons().size());
+
+		PopulationUtils.sortPersons(population);
+
+		ProjectionUtils.putCRS(population, OpenBerlinScenario.CRS);
+		PopulationUtils.writePopulation(population, output.toString());
+
+		return 0;
+	}
+
+	/**
+	 * Read the statistics of all LORs for one year.
+	 */
+	static List<CSVRecord> readRows(Path input, int year) throws IOException {
+
 		CSVFormat.Builder format = CSVFormat.DEFAULT.builder().setDelimiter(';').setHeader().setSkipHeaderRecord(true);
 
 		try (CSVParser reader = new CSVParser(Files.newBufferedReader(input, Charset.forName("windows-1252")), format.build())) {
+			return reader.stream()
+				.filter(row -> Integer.parseInt(row.get("Jahr")) == year)
+				.toList();
+		}
+	}
 
-			for (CSVRecord row : ProgressBar.wrap(reader.getRecords(), "Processing LORs")) {
+	/**
+	 * Generate the persons of all LORs in parallel.
+	 * Each LOR uses its own random generator and a fixed range of ids, so the result does not depend on the number of threads.
+	 */
+	@SuppressWarnings("IllegalCatch")
+	Population createPopulation(List<CSVRecord> rows, Map<String, MultiPolygon> lors) {
 
-				int year = Integer.parseInt(row.get("Jahr"));
-				if (this.year != year)
-					continue;
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		PopulationFactory f = population.getFactory();
 
-				try {
-					processLOR(row);
-				} catch (RuntimeException e) {
-					log.error("Error processing lor", e);
-					log.error(row.toString());
-				}
-			}
+		// Running number of the first person in each LOR
+		int[] offsets = new int[rows.size() + 1];
+		for (int i = 0; i < rows.size(); i++) {
+			offsets[i + 1] = offsets[i] + (int) Math.ceil(Integer.parseInt(rows.get(i).get(TOTAL)) * sample);
 		}
 
-		log.info("Generated {} persons", population.getPersons().size());
+		List<CompletableFuture<List<Person>>> futures = new ArrayList<>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads != null ? threads : Runtime.getRuntime().availableProcessors());
+		try (ProgressBar pb = new ProgressBar("Processing LORs", rows.size())) {
+			for (int i = 0; i < rows.size(); i++) {
+				CSVRecord row = rows.get(i);
+				int offset = offsets[i];
+
+				futures.add(CompletableFuture.supplyAsync(() -> {
+					try {
+						return processLOR(row, lors.get(row.get("RaumID")), offset, f);
+					} catch (ParseException | RuntimeException e) {
+						log.error("Error processing lor", e);
+						log.error(row.toString());
+						return List.of();
+					} finally {
+						pb.step();
+					}
+				}, executor));
+			}
 
-		PopulationUtils.sortPersons(population);
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		} finally {
+			executor.shutdown();
+		}
 
-		ProjectionUtils.putCRS(population, OpenBerlinScenario.CRS);
-		PopulationUtils.writePopulation(population, output.toString());
+		for (CompletableFuture<List<Person>> future : futures) {
+			future.join().forEach(population::addPerson);
+		}
 
-		return 0;
+		return population;
 	}
 
-	private void processLOR(CSVRecord row) throws ParseException {
+	private List<Person> processLOR(CSVRecord row, MultiPolygon geom, int offset, PopulationFactory f) throws ParseException {
 
 		String raumID = row.get("RaumID");
-		int n = Integer.parseInt(row.get("Einwohnerinnen und Einwohner (EW) insgesamt"));
+		int n = Integer.parseInt(row.get(TOTAL));
 
-		double young = FMT.parse(row.get("Anteil der unter 18-Jährigen an Einwohnerinnen und Einwohner (EW) gesamt")).doubleValue() / 100;
-		double old = FMT.parse(row.get("Anteil der 65-Jährigen und älter an Einwohnerinnen und Einwohner (EW) gesamt")).doubleValue() / 100;
+		double young = FMT.get().parse(row.get("Anteil der unter 18-Jährigen an Einwohnerinnen und Einwohner (EW) gesamt")).doubleValue() / 100;
+		double old = FMT.get().parse(row.get("Anteil der 65-Jährigen und älter an Einwohnerinnen und Einwohner (EW) gesamt")).doubleValue() / 100;
 
 		// x women for 100 men
-		double women = FMT.parse(row.get("Geschlechterverteilung")).doubleValue();
+		double women = FMT.get().parse(row.get("Geschlechterverteilung")).doubleValue();
 		double quota = women / (100 + women);
 
 		// sometimes this entry is not set
 		double unemployed;
 		try {
-			unemployed = FMT.parse(row.get("Anteil Arbeitslose nach SGB II und SGB III an Einwohnerinnen und Einwohner (EW) im Alter von 15 bis unter 65 Jahren")).doubleValue() / 100;
+			unemployed = FMT.get().parse(row.get("Anteil Arbeitslose nach SGB II und SGB III an Einwohnerinnen und Einwohner (EW) im Alter von 15 bis unter 65 Jahren")).doubleValue() / 100;
 		} catch (ParseException e) {
 			unemployed = 0;
 			log.warn("LOR {} {} has no unemployment", raumID, row.get(1));
 		}
 
-		var sex = new EnumeratedAttributeDistribution<>(Map.of("f", quota, "m", 1 - quota));
-		var employment = new EnumeratedAttributeDistribution<>(Map.of(true, 1 - unemployed, false, unemployed));
-		var ageGroup = new EnumeratedAttributeDistribution<>(Map.of(
-			AgeGroup.YOUNG, young,
-			AgeGroup.MIDDLE, 1.0 - young - old,
-			AgeGroup.OLD, old
-		));
-
-		if (!lors.containsKey(raumID)) {
+		if (geom == null) {
 			log.warn("LOR {} not found", raumID);
-			return;
+			return List.of();
 		}
 
-		MultiPolygon geom = lors.get(raumID);
-
-		PopulationFactory f = population.getFactory();
-
-		var youngDist = new UniformAttributeDistribution<>(IntStream.range(1, 18).boxed().toList());
-		var middleDist = new UniformAttributeDistribution<>(IntStream.range(18, 65).boxed().toList());
-		var oldDist = new UniformAttributeDistribution<>(IntStream.range(65, 100).boxed().toList());
+		// All attributes are drawn from one generator per LOR, which does not depend on the processing order
+		SplittableRandom rnd = new SplittableRandom(raumID.hashCode());
+		PolygonSampler sampler = PolygonSampler.of(geom);
 
+		List<Person> persons = new ArrayList<>();
 		for (int i = 0; i < n * sample; i++) {
 
-			Person person = f.createPerson(generateId(population, "berlin", rnd));
-			PersonUtils.setSex(person, sex.sample());
+			Person person = f.createPerson(generateId("berlin", offset + i));
+			PersonUtils.setSex(person, rnd.nextDouble() < quota ? "f" : "m");
 			PopulationUtils.putSubpopulation(person, "person");
 
-			AgeGroup group = ageGroup.sample();
+			double group = rnd.nextDouble();
 
-			if (group == AgeGroup.MIDDLE) {
-				PersonUtils.setAge(person, middleDist.sample());
-				PersonUtils.setEmployed(person, employment.sample());
-			} else if (group == AgeGroup.YOUNG) {
-				PersonUtils.setAge(person, youngDist.sample());
+			if (group < young) {
+				PersonUtils.setAge(person, rnd.nextInt(1, 18));
 				PersonUtils.setEmployed(person, false);
-			} else if (group == AgeGroup.OLD) {
-				PersonUtils.setAge(person, oldDist.sample());
+			} else if (group < 1 - old) {
+				PersonUtils.setAge(person, rnd.nextInt(18, 65));
+				PersonUtils.setEmployed(person, rnd.nextDouble() >= unemployed);
+			} else {
+				PersonUtils.setAge(person, rnd.nextInt(65, 100));
 				PersonUtils.setEmployed(person, false);
 			}
 
-			Coord coord = ct.transform(sampleHomeCoordinate(geom, "EPSG:25833", facilities, rnd, 1500));
+			Coord coord = ct.get().transform(sampleHomeCoordinate(sampler, "EPSG:25833", facilities, rnd));
 
 			person.getAttributes().putAttribute(Attributes.HOME_X, coord.getX());
 			person.getAttributes().putAttribute(Attributes.HOME_Y, coord.getY());
@@ -238,14 +321,10 @@ public class CreateBerlinPopulation implements MATSimAppCommand {
 			person.addPlan(plan);
 			person.setSelectedPlan(plan);
 
-			population.addPerson(person);
+			persons.add(person);
 		}
-	}
 
-	private enum AgeGroup {
-		YOUNG,
-		MIDDLE,
-		OLD
+		return persons;
 	}
 
 }
@@ -2,7 +2,9 @@ package org.matsim.prepare.population;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.facilities.ActivityFacilities;
@@ -12,6 +14,7 @@ import org.matsim.facilities.MatsimFacilitiesReader;
 import org.matsim.prepare.facilities.AttributedActivityFacility;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -28,6 +31,16 @@ public final class FacilityIndex {
 	public final Map<String, STRtree> index = new HashMap<>();
 	final ActivityFacilities all = FacilitiesUtils.createActivityFacilities();
 
+	/**
+	 * Facilities in the index for each activity type.
+	 */
+	private final Map<String, List<AttributedActivityFacility>> facilities = new HashMap<>();
+
+	/**
+	 * Alias tables over all facilities of an activity type, for each attraction. Created on first use, empty if all weights are zero.
+	 */
+	private final Map<Attraction, Map<String, Optional<AliasTable>>> tables = new EnumMap<>(Attraction.class);
+
 	public FacilityIndex(String facilityPath, String crs) {
 		this(facilityPath, f -> true, crs);
 	}
@@ -53,12 +66,85 @@ public final class FacilityIndex {
 			NavigableMap<Id<ActivityFacility>, ActivityFacility> afs = all.getFacilitiesForActivityType(act);
 			for (ActivityFacility af : afs.values()) {
 				STRtree idx = this.index.computeIfAbsent(act, k -> new STRtree());
-				idx.insert(MGC.coord2Point(af.getCoord()).getEnvelopeInternal(), new AttributedActivityFacility(af));
+				AttributedActivityFacility f = new AttributedActivityFacility(af);
+				idx.insert(MGC.coord2Point(af.getCoord()).getEnvelopeInternal(), f);
+				facilities.computeIfAbsent(act, k -> new ArrayList<>()).add(f);
 			}
 		}
 
 		// Build all trees
 		index.values().forEach(STRtree::build);
+
+		for (Attraction attraction : Attraction.values()) {
+			tables.put(attraction, new ConcurrentHashMap<>());
+		}
+	}
+
+	/**
+	 * Sample a facility of an activity type, weighted by its attraction. This has the same distribution as
+	 * {@link #sampleByWeight(List, Function, SplittableRandom)} over all facilities of the type, but the alias table
+	 * is only computed once per type and attraction. Each sample then takes constant time.
+	 *
+	 * @return null if there are no facilities for this type, or all of them have zero weight
+	 */
+	public AttributedActivityFacility sample(String type, Attraction attraction, SplittableRandom rnd) {
+
+		List<AttributedActivityFacility> list = facilities.get(type);
+		if (list == null)
+			return null;
+
+		Optional<AliasTable> table = tables.get(attraction).computeIfAbsent(type, k -> {
+			double[] weights = new double[list.size()];
+			double total = 0;
+			for (int i = 0; i < weights.length; i++) {
+				weights[i] = attraction.get(list.get(i));
+				total += weights[i];
+			}
+
+			return total > 0 ? Optional.of(AliasTable.of(weights)) : Optional.empty();
+		});
+
+		if (table.isEmpty())
+			return null;
+
+		return list.get(table.get().sample(rnd));
+	}
+
+	/**
+	 * Query facilities of an activity type, whose distance to the center is between the minimum and maximum radius.
+	 *
+	 * @return empty list if there are no facilities for this type
+	 */
+	public List<AttributedActivityFacility> query(String type, Coord center, double minRadius, double maxRadius) {
+
+		STRtree idx = index.get(type);
+		if (idx == null)
+			return new ArrayList<>();
+
+		return query(idx, center, minRadius, maxRadius);
+	}
+
+	/**
+	 * Query facilities from a spatial index within a ring. The envelope is computed directly from the center, without creating any geometries.
+	 */
+	public static List<AttributedActivityFacility> query(STRtree index, Coord center, double minRadius, double maxRadius) {
+
+		double x = center.getX();
+		double y = center.getY();
+
+		List<AttributedActivityFacility> result = new ArrayList<>();
+		index.query(new Envelope(x - maxRadius, x + maxRadius, y - maxRadius, y + maxRadius), item -> {
+			AttributedActivityFacility f = (AttributedActivityFacility) item;
+
+			double dx = f.getCoord().getX() - x;
+			double dy = f.getCoord().getY() - y;
+			double dist = Math.sqrt(dx * dx + dy * dy);
+
+			if (dist >= minRadius && dist <= maxRadius)
+				result.add(f);
+		});
+
+		return result;
 	}
 
 	/**
@@ -101,35 +187,31 @@ public final class FacilityIndex {
 	public static ActivityFacility sampleByWeightWithRejection(List<AttributedActivityFacility> candidates, Predicate<ActivityFacility> filter,
 															   Function<AttributedActivityFacility, Double> getter, SplittableRandom rnd) {
 
-		double totalWeight = 0;
 		double[] weights = new double[candidates.size()];
-
 		for (int i = 0; i < candidates.size(); i++) {
-			double w = getter.apply(candidates.get(i));
-			totalWeight += w;
-			weights[i] = totalWeight;
+			weights[i] = getter.apply(candidates.get(i));
 		}
 
-		for (int i = 0; i < candidates.size(); i++) {
-			double r = rnd.nextDouble(0, totalWeight);
-			int idx = Arrays.binarySearch(weights, r);
+		// Rejected weights are removed from the tree in log time
+		FenwickTree tree = new FenwickTree(weights);
+		double totalWeight = tree.total();
 
-			if (idx < 0) {
-				idx = -idx - 1;
-			}
+		for (int i = 0; i < candidates.size() && totalWeight > 0; i++) {
+
+			int idx = tree.find(rnd.nextDouble(0, totalWeight));
+
+			// May only happen due to rounding errors
+			if (weights[idx] == 0)
+				continue;
 
 			AttributedActivityFacility af = candidates.get(idx);
 			if (filter.test(af)) {
 				return af;
-			} else {
-				double w = getter.apply(af);
-				totalWeight -= w;
-
-				// Update weights
-				for (int j = idx; j < weights.length; j++) {
-					weights[j] -= w;
-				}
 			}
+
+			tree.add(idx, -weights[idx]);
+			weights[idx] = 0;
+			totalWeight = tree.total();
 		}
 
 		return null;
@@ -147,36 +229,27 @@ public final class FacilityIndex {
 		if (candidates.isEmpty())
 			return null;
 
-		// Entries which produce a null key are discarded
-		Map<String, List<AttributedActivityFacility>> map = candidates.stream()
-			.filter(af -> classifier.apply(af) != null)
-			.collect(Collectors.groupingBy(classifier));
+		return sampleByWeightWithGrouping(Grouping.of(candidates, classifier), groupWeight, facilityWeight, rnd);
+	}
 
-		List<Map.Entry<String, List<AttributedActivityFacility>>> grouped = map.entrySet().stream().toList();
+	/**
+	 * Same as {@link #sampleByWeightWithGrouping(List, Function, Function, Function, SplittableRandom)}, but using groups that can be reused for multiple samples.
+	 */
+	public static ActivityFacility sampleByWeightWithGrouping(Grouping grouping,
+															  Function<Map.Entry<String, List<AttributedActivityFacility>>, Double> groupWeight,
+															  Function<AttributedActivityFacility, Double> facilityWeight, SplittableRandom rnd) {
 
-		double totalWeight = 0.0;
-		double[] weights = new double[grouped.size()];
+		if (grouping.isEmpty())
+			return null;
 
-		for (int i = 0; i < grouped.size(); ++i) {
-			double w = groupWeight.apply(grouped.get(i));
-			totalWeight += w;
-			weights[i] = totalWeight;
-		}
+		int idx = grouping.sampleGroup(groupWeight, rnd);
 
 		// No weights, sample uniformly
-		if (totalWeight == 0.0) {
-			List<AttributedActivityFacility> list = grouped.get(rnd.nextInt(grouped.size())).getValue();
-			return list.get(rnd.nextInt(list.size()));
-		}
-
-		double r = rnd.nextDouble(0.0, totalWeight);
-		int idx = Arrays.binarySearch(weights, r);
-		if (idx < 0) {
-			idx = -idx - 1;
-		}
+		if (idx < 0)
+			return grouping.sampleUniform(rnd);
 
 		// First get the samples group
-		List<AttributedActivityFacility> list = grouped.get(idx).getValue();
+		List<AttributedActivityFacility> list = grouping.groups.get(idx).getValue();
 
 		double totalGroupWeight = 0;
 		double[] groupWeights = new double[list.size()];
@@ -208,37 +281,121 @@ public final class FacilityIndex {
 		if (candidates.isEmpty())
 			return null;
 
-		Map<String, List<AttributedActivityFacility>> map = candidates.stream()
-			.collect(Collectors.groupingBy(classifier));
+		return sampleWithGrouping(Grouping.of(candidates, classifier), groupWeight, rnd);
+	}
 
-		List<Map.Entry<String, List<AttributedActivityFacility>>> grouped = map.entrySet().stream().toList();
+	/**
+	 * Same as {@link #sampleWithGrouping(List, Function, Function, SplittableRandom)}, but using groups that can be reused for multiple samples.
+	 */
+	public static ActivityFacility sampleWithGrouping(Grouping grouping,
+													  Function<Map.Entry<String, List<AttributedActivityFacility>>, Double> groupWeight,
+													  SplittableRandom rnd) {
 
-		double totalWeight = 0.0;
-		double[] weights = new double[grouped.size()];
+		if (grouping.isEmpty())
+			return null;
 
-		for (int i = 0; i < grouped.size(); ++i) {
-			double w = groupWeight.apply(grouped.get(i));
-			totalWeight += w;
-			weights[i] = totalWeight;
-		}
+		int idx = grouping.sampleGroup(groupWeight, rnd);
 
 		// No weights, sample uniformly
-		if (totalWeight == 0.0) {
-			List<AttributedActivityFacility> list = grouped.get(rnd.nextInt(grouped.size())).getValue();
-			return list.get(rnd.nextInt(list.size()));
-		}
-
-		double r = rnd.nextDouble(0.0, totalWeight);
-		int idx = Arrays.binarySearch(weights, r);
-		if (idx < 0) {
-			idx = -idx - 1;
-		}
+		if (idx < 0)
+			return grouping.sampleUniform(rnd);
 
 		// First sample a random group.
-		List<AttributedActivityFacility> list = grouped.get(idx).getValue();
+		List<AttributedActivityFacility> list = grouping.groups.get(idx).getValue();
 
 		// Sample random facility from the zone
 		return list.get(rnd.nextInt(list.size()));
 	}
 
+	/**
+	 * Weight attributes of facilities.
+	 */
+	public enum Attraction {
+		work, other;
+
+		/**
+		 * Get the attraction of a facility.
+		 */
+		public double get(AttributedActivityFacility f) {
+			return this == work ? f.getWorkAttraction() : f.getOtherAttraction();
+		}
+	}
+
+	/**
+	 * Candidates grouped by a classifier, which can be reused for multiple samples.
+	 * Entries which produce a null key are discarded.
+	 */
+	public static final class Grouping {
+
+		private final List<Map.Entry<String, List<AttributedActivityFacility>>> groups;
+
+		private Grouping(List<Map.Entry<String, List<AttributedActivityFacility>>> groups) {
+			this.groups = groups;
+		}
+
+		/**
+		 * Group the candidates.
+		 */
+		public static Grouping of(List<AttributedActivityFacility> candidates, Function<AttributedActivityFacility, String> classifier) {
+
+			Map<String, List<AttributedActivityFacility>> map = new HashMap<>();
+			for (AttributedActivityFacility af : candidates) {
+				String key = classifier.apply(af);
+				if (key != null)
+					map.computeIfAbsent(key, k -> new ArrayList<>()).add(af);
+			}
+
+			return new Grouping(List.copyOf(map.entrySet()));
+		}
+
+		/**
+		 * All groups.
+		 */
+		public List<Map.Entry<String, List<AttributedActivityFacility>>> getGroups() {
+			return groups;
+		}
+
+		/**
+		 * Whether there are no groups.
+		 */
+		public boolean isEmpty() {
+			return groups.isEmpty();
+		}
+
+		/**
+		 * Sample the index of a group by weight.
+		 *
+		 * @return -1 if all weights are zero
+		 */
+		private int sampleGroup(Function<Map.Entry<String, List<AttributedActivityFacility>>, Double> groupWeight, SplittableRandom rnd) {
+
+			double totalWeight = 0.0;
+			double[] weights = new double[groups.size()];
+
+			for (int i = 0; i < groups.size(); ++i) {
+				double w = groupWeight.apply(groups.get(i));
+				totalWeight += w;
+				weights[i] = totalWeight;
+			}
+
+			if (totalWeight == 0.0)
+				return -1;
+
+			int idx = Arrays.binarySearch(weights, rnd.nextDouble(0.0, totalWeight));
+			if (idx < 0) {
+				idx = -idx - 1;
+			}
+
+			return idx;
+		}
+
+		/**
+		 * Select a random facility from a random group.
+		 */
+		private AttributedActivityFacility sampleUniform(SplittableRandom rnd) {
+			List<AttributedActivityFacility> list = groups.get(rnd.nextInt(groups.size())).getValue();
+			return list.get(rnd.nextInt(list.size()));
+		}
+	}
+
 }
@@ -0,0 +1,62 @@
+package org.matsim.prepare.population;
+
+/**
+ * Binary indexed tree over weights, allowing to update single weights and to search a cumulative weight in logarithmic time.
+ */
+final class FenwickTree {
+
+	/**
+	 * One-based tree of partial sums.
+	 */
+	private final double[] tree;
+	private final int n;
+
+	FenwickTree(double[] weights) {
+		this.n = weights.length;
+		this.tree = new double[n + 1];
+
+		for (int i = 1; i <= n; i++) {
+			tree[i] += weights[i - 1];
+			int j = i + (i & -i);
+			if (j <= n)
+				tree[j] += tree[i];
+		}
+	}
+
+	/**
+	 * Add delta to the weight at index.
+	 */
+	void add(int idx, double delta) {
+		for (int i = idx + 1; i <= n; i += i & -i) {
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Sum of all weights.
+	 */
+	double total() {
+		double sum = 0;
+		for (int i = n; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Find the first index whose cumulative weight is larger than {@code r}.
+	 */
+	int find(double r) {
+
+		int pos = 0;
+		for (int step = Integer.highestOneBit(n); step > 0; step >>= 1) {
+			int next = pos + step;
+			if (next <= n && tree[next] <= r) {
+				pos = next;
+				r -= tree[next];
+			}
+		}
+
+		return Math.min(pos, n - 1);
+	}
+}
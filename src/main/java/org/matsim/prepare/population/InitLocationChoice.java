@@ -1,15 +1,16 @@
 package org.matsim.prepare.population;
 
-import it.unimi.dsi.fastutil.doubles.DoubleList;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -25,7 +26,6 @@ import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils;
 import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.router.TripStructureUtils;
-import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.prepare.RunOpenBerlinCalibration;
@@ -36,6 +36,8 @@ import picocli.CommandLine;
 import java.math.BigInteger;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
@@ -58,6 +60,11 @@ public class InitLocationChoice implements MATSimAppCommand, PersonAlgorithm {
 	 */
 	private static final double DETOUR_FACTOR_SHORT = 1.3;
 
+	/**
+	 * Factors to increase the distance bounds, if no facility is found.
+	 */
+	private static final double[] BOUNDS = {1, 1.2, 1.5};
+
 	private static final Logger log = LogManager.getLogger(InitLocationChoice.class);
 
 	@CommandLine.Option(names = "--input", description = "Path to input population.")
@@ -87,6 +94,9 @@ public class InitLocationChoice implements MATSimAppCommand, PersonAlgorithm {
 	@CommandLine.Option(names = "--seed", description = "Seed used to sample locations", defaultValue = "1")
 	private long seed;
 
+	@CommandLine.Option(names = "--threads", description = "Number of threads to use. Defaults to the number of available processors minus one.")
+	private Integer threads;
+
 	@CommandLine.Mixin
 	private ShpOptions shp;
 
@@ -94,16 +104,63 @@ public class InitLocationChoice implements MATSimAppCommand, PersonAlgorithm {
 
 	private Long2ObjectMap<SimpleFeature> zones;
 
-	private CommuterAssignment commuter;
+	/**
+	 * Commuter assignment for each plan index, every plan has its own quotas.
+	 */
+	private CommuterAssignment[] commuters;
+
+	/**
+	 * Seed for each plan index, which is the base seed plus the index.
+	 */
+	private long[] seeds;
+
+	/**
+	 * Commute proposals of the current round for each plan index, which are resolved after all persons are processed.
+	 */
+	private List<Map<Id<Person>, CommuterAssignment.Proposal>> proposals;
+
+	/**
+	 * Original state of the assigned activities for persons with a commute proposal, for each plan index.
+	 */
+	private List<Map<Id<Person>, List<Undo>>> undo;
 
 	private Network network;
 
+	/**
+	 * Checks whether the nearest link of a coordinate is not one of the ignored types.
+	 */
+	private NearestLinkFilter linkFilter;
+
 	private AtomicLong total = new AtomicLong();
 
 	private AtomicLong warning = new AtomicLong();
 
 	private ProgressBar pb;
 
+	/**
+	 * Pool used to assign rejected commuters again, limited to the configured number of threads.
+	 */
+	private ForkJoinPool pool;
+
+	public InitLocationChoice() {
+	}
+
+	/**
+	 * Constructor with already loaded inputs, used for testing.
+	 */
+	InitLocationChoice(FacilityIndex facilities, Long2ObjectMap<SimpleFeature> zones, Network network,
+					   Path commuterPath, Path berlinCommuterPath, int k, double sample, long seed, int threads) {
+		this.facilities = facilities;
+		this.zones = zones;
+		this.network = network;
+		this.commuterPath = commuterPath;
+		this.berlinCommuterPath = berlinCommuterPath;
+		this.k = k;
+		this.sample = sample;
+		this.seed = seed;
+		this.threads = threads;
+	}
+
 	public static void main(String[] args) {
 		new InitLocationChoice().execute(args);
 	}
@@ -150,179 +207,239 @@ public class InitLocationChoice implements MATSimAppCommand, PersonAlgorithm {
 
 		log.info("Using input file: {}", input);
 
-		List<Population> populations = new ArrayList<>();
+		Population population = PopulationUtils.readPopulation(input.toString());
 
-		for (int i = 0; i < k; i++) {
+		assignLocations(population);
+
+		PopulationUtils.writePopulation(population, output.toString());
+
+		return 0;
+	}
 
-			log.info("Generating plan {} with seed {}", i, seed);
+	/**
+	 * Generate {@code k} plans with assigned locations for each person of the population.
+	 * All plans of a person are created in one pass, each plan index uses its own random numbers and commuter quotas.
+	 */
+	void assignLocations(Population population) {
+
+		commuters = new CommuterAssignment[k];
+		seeds = new long[k];
+		proposals = new ArrayList<>();
+		undo = new ArrayList<>();
+
+		for (int i = 0; i < k; i++) {
+			commuters[i] = new CommuterAssignment(zones, commuterPath, berlinCommuterPath, sample);
+			seeds[i] = seed + i;
+			proposals.add(new ConcurrentHashMap<>());
+			undo.add(new ConcurrentHashMap<>());
+		}
 
-			commuter = new CommuterAssignment(zones, commuterPath, berlinCommuterPath, sample);
+		linkFilter = new NearestLinkFilter(network, link -> !IGNORED_LINK_TYPES.contains(NetworkUtils.getType(link)));
 
-			Population population = PopulationUtils.readPopulation(input.toString());
+		log.info("Generating {} plans with seeds {}", k, Arrays.toString(seeds));
 
-			pb = new ProgressBar("Performing location choice " + i, population.getPersons().size());
+		int n = threads != null ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
-			ParallelPersonAlgorithmUtils.run(population, Runtime.getRuntime().availableProcessors() - 1, this);
+		pb = new ProgressBar("Performing location choice", population.getPersons().size());
 
-			populations.add(population);
+		ParallelPersonAlgorithmUtils.run(population, n, this);
 
-			log.info("Processed {} activities with {} warnings", total.get(), warning.get());
+		pb.close();
 
-			total.set(0);
-			warning.set(0);
-			seed += i;
+		pool = new ForkJoinPool(n);
+		try {
+			for (int i = 0; i < k; i++) {
+				resolveCommuters(population, i);
+			}
+		} finally {
+			pool.shutdown();
 		}
 
-		Population population = populations.get(0);
+		log.info("Processed {} activities with {} warnings", total.get(), warning.get());
 
-		// Merge all plans into the first population
-		for (int i = 1; i < populations.size(); i++) {
+		total.set(0);
+		warning.set(0);
+	}
 
-			Population pop = populations.get(i);
+	/**
+	 * Resolve the commute proposals of one plan index. Persons whose proposal was rejected are assigned again, until there are no conflicts left.
+	 * The result only depends on the person ids, but not on the order or number of threads.
+	 */
+	private void resolveCommuters(Population population, int idx) {
 
-			for (Person p : pop.getPersons().values()) {
-				Person destPerson = population.getPersons().get(p.getId());
-				if (destPerson == null) {
-					log.warn("Person {} not present in all populations.", p.getId());
-					continue;
-				}
+		Map<Id<Person>, CommuterAssignment.Proposal> proposals = this.proposals.get(idx);
+		Map<Id<Person>, List<Undo>> undo = this.undo.get(idx);
+
+		List<Id<Person>> rejected;
+		while (!(rejected = commuters[idx].resolve(proposals)).isEmpty()) {
 
-				destPerson.addPlan(p.getPlans().get(0));
+			List<Person> persons = new ArrayList<>();
+			for (Id<Person> id : rejected) {
+				undo.get(id).forEach(Undo::restore);
+				persons.add(population.getPersons().get(id));
 			}
-		}
 
-		PopulationUtils.writePopulation(population, output.toString());
+			proposals.clear();
+			undo.clear();
 
-		return 0;
+			pool.submit(() -> persons.parallelStream().forEach(p -> assign(p, idx))).join();
+		}
+
+		proposals.clear();
+		undo.clear();
 	}
 
 	@Override
 	public void run(Person person) {
 
+		// All variants are copied from the input plan, before any location is assigned
+		Plan plan = person.getPlans().get(0);
+		for (int i = 1; i < k; i++) {
+			Plan copy = PopulationUtils.createPlan();
+			PopulationUtils.copyFromTo(plan, copy);
+			person.addPlan(copy);
+		}
+
+		for (int i = 0; i < k; i++) {
+			assign(person, i);
+		}
+
+		pb.step();
+	}
+
+	/**
+	 * Assign locations to all unassigned activities in one plan of a person.
+	 *
+	 * @param idx index of the plan
+	 */
+	private void assign(Person person, int idx) {
+
 		Coord homeCoord = Attributes.getHomeCoord(person);
 		long ars = (long) person.getAttributes().getAttribute(Attributes.ARS);
 
 		// Reference persons are not assigned locations
 		if (person.getAttributes().getAttribute(Attributes.REF_MODES) != null) {
-			pb.step();
 			return;
 		}
 
+		List<Undo> changes = new ArrayList<>();
+
 		// Activities that only occur on one place per person
 		Map<String, ActivityFacility> fixedLocations = new HashMap<>();
 
-		int planNumber = 0;
-		for (Plan plan : person.getPlans()) {
-			List<Activity> acts = TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
+		Plan plan = person.getPlans().get(idx);
 
-			// keep track of the current coordinate
-			Coord lastCoord = homeCoord;
+		List<Activity> acts = TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
 
-			// Person specific rng, increment plan number for each plan
-			SplittableRandom rnd = initRandomNumberGenerator(person, planNumber++);
+		// keep track of the current coordinate
+		Coord lastCoord = homeCoord;
 
-			for (Activity act : acts) {
+		// Person and plan specific rng
+		SplittableRandom rnd = initRandomNumberGenerator(person, seeds[idx]);
 
-				total.incrementAndGet();
+		for (Activity act : acts) {
 
-				if (Attributes.isLinkUnassigned(act.getLinkId())) {
+			total.incrementAndGet();
 
-					String type = act.getType();
+			if (Attributes.isLinkUnassigned(act.getLinkId())) {
 
-					act.setLinkId(null);
-					ActivityFacility location = null;
+				String type = act.getType();
 
-					// target leg distance in km
-					double origDist = (double) act.getAttributes().getAttribute("orig_dist");
+				changes.add(new Undo(act, act.getLinkId(), act.getCoord(), act.getFacilityId()));
+				act.setLinkId(null);
+				ActivityFacility location = null;
 
-					// Distance will be reduced
-					double dist = beelineDist(origDist);
+				// target leg distance in km
+				double origDist = (double) act.getAttributes().getAttribute("orig_dist");
 
-					if (fixedLocations.containsKey(type)) {
-						location = fixedLocations.get(type);
-					}
+				// Distance will be reduced
+				double dist = beelineDist(origDist);
 
-					if (location == null && type.equals("work")) {
-						// sample work commute
-						location = sampleCommute(rnd, dist, lastCoord, (String) person.getAttributes().getAttribute(Attributes.ZONE), ars);
-					}
-
-					if (location == null && facilities.index.containsKey(type)) {
-						// Needed for lambda
-						final Coord refCoord = lastCoord;
+				if (fixedLocations.containsKey(type)) {
+					location = fixedLocations.get(type);
+				}
 
+				if (location == null && type.equals("work")) {
+					// sample work commute
+					location = sampleCommute(person.getId(), idx, rnd, dist, lastCoord, (String) person.getAttributes().getAttribute(Attributes.ZONE), ars);
+				}
 
-						// Try to find a facility within the bounds
-						// increase bounds if no facility is found
-						for (Double b : DoubleList.of(1, 1.2, 1.5)) {
-							List<AttributedActivityFacility> query = facilities.index.get(type).query(MGC.coord2Point(lastCoord).buffer(dist * (b + 0.2)).getEnvelopeInternal());
-							// Distance should be within the bounds
-							List<AttributedActivityFacility> res = query.stream().filter(f -> checkDistanceBound(dist, refCoord, f.getCoord(), b)).toList();
+				if (location == null && facilities.index.containsKey(type)) {
+					// Try to find a facility within the bounds
+					// increase bounds if no facility is found
+					for (double b : BOUNDS) {
+						List<AttributedActivityFacility> res = facilities.query(type, lastCoord, lowerBound(dist, b), upperBound(dist, b));
 
-							if (!res.isEmpty()) {
-								location = query.get(FacilityIndex.sampleByWeight(query, AttributedActivityFacility::getOtherAttraction, rnd));
-								break;
-							}
+						if (!res.isEmpty()) {
+							location = res.get(FacilityIndex.sampleByWeight(res, AttributedActivityFacility::getOtherAttraction, rnd));
+							break;
 						}
 					}
+				}
 
-					if (location == null) {
-						// sample only coordinate if nothing else is possible
-						// Activities without facility entry, or where no facility could be found
-						Coord c = sampleLink(rnd, dist, lastCoord);
-						act.setCoord(c);
-						lastCoord = c;
-
-						// An activity with type could not be put into correct facility.
-						if (facilities.index.containsKey(type)) {
-							warning.incrementAndGet();
-						}
+				if (location == null) {
+					// sample only coordinate if nothing else is possible
+					// Activities without facility entry, or where no facility could be found
+					Coord c = sampleLink(rnd, dist, lastCoord);
+					act.setCoord(c);
+					lastCoord = c;
 
-						continue;
+					// An activity with type could not be put into correct facility.
+					if (facilities.index.containsKey(type)) {
+						warning.incrementAndGet();
 					}
 
-					if (type.equals("work") || type.startsWith("edu"))
-						fixedLocations.put(type, location);
-
-					act.setFacilityId(location.getId());
+					continue;
 				}
 
-				if (act.getCoord() != null)
-					lastCoord = act.getCoord();
-				else if (act.getFacilityId() != null)
-					lastCoord = facilities.all.getFacilities().get(act.getFacilityId()).getCoord();
+				if (type.equals("work") || type.startsWith("edu"))
+					fixedLocations.put(type, location);
 
+				act.setFacilityId(location.getId());
 			}
+
+			if (act.getCoord() != null)
+				lastCoord = act.getCoord();
+			else if (act.getFacilityId() != null)
+				lastCoord = facilities.all.getFacilities().get(act.getFacilityId()).getCoord();
+
 		}
 
-		pb.step();
+		// Needed if the proposal is rejected
+		if (proposals.get(idx).containsKey(person.getId()))
+			undo.get(idx).put(person.getId(), changes);
 	}
 
 	/**
-	 * Initializes random number generator with person specific seed.
+	 * Initializes random number generator with person and plan specific seed.
 	 */
-	private SplittableRandom initRandomNumberGenerator(Person person, long planNumber) {
+	private static SplittableRandom initRandomNumberGenerator(Person person, long seed) {
 		BigInteger i = new BigInteger(person.getId().toString().getBytes());
-		return new SplittableRandom(i.longValue() + seed * 1000 + planNumber * 10);
+		return new SplittableRandom(i.longValue() + seed * 1000);
 	}
 
 	/**
 	 * Sample work place by using commute and distance information.
 	 */
-	private ActivityFacility sampleCommute(SplittableRandom rnd, double dist, Coord refCoord, String homeZone, long ars) {
+	private ActivityFacility sampleCommute(Id<Person> personId, int idx, SplittableRandom rnd, double dist, Coord refCoord, String homeZone, long ars) {
 
 		STRtree index = facilities.index.get("work");
+		CommuterAssignment commuter = commuters[idx];
 
 		ActivityFacility workPlace = null;
 
 		// Only larger distances can be commuters to other zones
 		if (dist > 3000) {
-			workPlace = commuter.selectTarget(rnd, ars, dist, MGC.coord2Point(refCoord), zone -> sampleZone(index, dist, refCoord, zone, rnd));
+			CommuterAssignment.Proposal p = commuter.propose(rnd, ars, dist, MGC.coord2Point(refCoord), zone -> sampleZone(index, dist, refCoord, zone, rnd));
+			if (p != null) {
+				proposals.get(idx).put(personId, p);
+				workPlace = p.facility();
+			}
 		}
 
 		// Within Berlin, separate data for commute is used
 		if (workPlace == null && ars == 110000000000L && homeZone != null) {
-			workPlace = sampleBerlinWorkPlace(index, dist, refCoord, homeZone, rnd);
+			workPlace = sampleBerlinWorkPlace(commuter, index, dist, refCoord, homeZone, rnd);
 		}
 
 		if (workPlace == null) {
@@ -341,8 +458,7 @@ public class InitLocationChoice implements MATSimAppCommand, PersonAlgorithm {
 		Coord coord = null;
 		for (int i = 0; i < 500; i++) {
 			coord = rndCoord(rnd, dist, origin);
-			Link link = NetworkUtils.getNearestLink(network, coord);
-			if (!IGNORED_LINK_TYPES.contains(NetworkUtils.getType(link)))
+			if (linkFilter.test(coord))
 				break;
 		}
 
@@ -354,24 +470,22 @@ public class InitLocationChoice implements MATSimAppCommand, PersonAlgorithm {
 	 */
 	private ActivityFacility sampleZone(STRtree index, double dist, Coord refCoord, Geometry zone, SplittableRandom rnd) {
 
-		List<AttributedActivityFacility> query = index.query(MGC.coord2Point(refCoord).buffer(dist * 1.2).getEnvelopeInternal());
-
-		query = query.stream().filter(f -> checkDistanceBound(dist, refCoord, f.getCoord(), 1)).collect(Collectors.toList());
+		List<AttributedActivityFacility> query = FacilityIndex.query(index, refCoord, lowerBound(dist, 1), upperBound(dist, 1));
 
-		return FacilityIndex.sampleByWeightWithRejection(query, f -> zone.contains(MGC.coord2Point(f.getCoord())), AttributedActivityFacility::getWorkAttraction, rnd);
+		// Points are only created for facilities within the envelope of the zone
+		Envelope env = zone.getEnvelopeInternal();
+		return FacilityIndex.sampleByWeightWithRejection(query,
+			f -> env.covers(f.getCoord().getX(), f.getCoord().getY()) && zone.contains(MGC.coord2Point(f.getCoord())),
+			AttributedActivityFacility::getWorkAttraction, rnd);
 	}
 
 	/**
 	 * Only samples randomly from the zone, ignoring the distance.
 	 */
-	private ActivityFacility sampleBerlinWorkPlace(STRtree index, double dist, Coord refCoord, String homeZone, SplittableRandom rnd) {
-
-		List<AttributedActivityFacility> query = index.query(MGC.coord2Point(refCoord).buffer(dist * 1.2).getEnvelopeInternal());
+	private ActivityFacility sampleBerlinWorkPlace(CommuterAssignment commuter, STRtree index, double dist, Coord refCoord, String homeZone, SplittableRandom rnd) {
 
-		query = query.stream()
-			.filter(f -> f.getZone() != null)
-			.filter(f -> checkDistanceBound(dist, refCoord, f.getCoord(), 1))
-			.collect(Collectors.toList());
+		List<AttributedActivityFacility> query = FacilityIndex.query(index, refCoord, lowerBound(dist, 1), upperBound(dist, 1));
+		query.removeIf(f -> f.getZone() == null);
 
 		if (query.isEmpty())
 			return null;
@@ -383,19 +497,30 @@ public class InitLocationChoice implements MATSimAppCommand, PersonAlgorithm {
 	}
 
 	/**
-	 * General logic to filter coordinate within target distance.
+	 * General logic to filter coordinates within target distance. Lower bound of the percentage based bounds.
+	 * A constant is added to the bounds, needed for trips with low base distance.
 	 */
-	private boolean checkDistanceBound(double target, Coord refCoord, Coord other, double factor) {
+	private static double lowerBound(double target, double factor) {
+		return target * 0.8 * (2 - factor) - (factor - 0.95) * 1000;
+	}
 
-		// Constant added to the bounds, needed for trips with low base distance
-		double constant = (factor - 0.95) * 1000;
+	/**
+	 * Upper bound of the distance, see {@link #lowerBound(double, double)}.
+	 */
+	private static double upperBound(double target, double factor) {
+		return target * 1.15 * factor + (factor - 0.95) * 1000;
+	}
 
-		// Percentage based bounds
-		double lower = target * 0.8 * (2 - factor) - constant;
-		double upper = target * 1.15 * factor + constant;
+	/**
+	 * Original state of an activity, before a location was assigned.
+	 */
+	private record Undo(Activity act, Id<Link> linkId, Coord coord, Id<ActivityFacility> facilityId) {
 
-		double dist = CoordUtils.calcEuclideanDistance(refCoord, other);
-		return dist >= lower && dist <= upper;
+		void restore() {
+			act.setLinkId(linkId);
+			act.setCoord(coord);
+			act.setFacilityId(facilityId);
+		}
 	}
 
 }
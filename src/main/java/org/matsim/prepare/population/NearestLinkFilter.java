@@ -0,0 +1,71 @@
+package org.matsim.prepare.population;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.function.Predicate;
+
+/**
+ * Tests whether the nearest link of a coordinate is accepted by a link filter.
+ * <p>
+ * The nearest link is always one of the links at the nearest node, see {@link NetworkUtils#getNearestLink(Network, Coord)}.
+ * Nodes where all links are accepted, or all are rejected, are classified in advance. For these, only the nearest node needs to be found.
+ * The nearest link is only searched for nodes with mixed links.
+ */
+final class NearestLinkFilter implements Predicate<Coord> {
+
+	private static final byte MIXED = 0;
+	private static final byte ACCEPTED = 1;
+	private static final byte REJECTED = 2;
+
+	private final Network network;
+	private final Predicate<Link> filter;
+
+	/**
+	 * Classification of each node by its index.
+	 */
+	private final byte[] nodes;
+
+	NearestLinkFilter(Network network, Predicate<Link> filter) {
+		this.network = network;
+		this.filter = filter;
+		this.nodes = new byte[Id.getNumberOfIds(Node.class)];
+
+		for (Node node : network.getNodes().values()) {
+
+			boolean accepted = false;
+			boolean rejected = false;
+
+			for (Link link : node.getInLinks().values()) {
+				if (filter.test(link)) accepted = true;
+				else rejected = true;
+			}
+
+			for (Link link : node.getOutLinks().values()) {
+				if (filter.test(link)) accepted = true;
+				else rejected = true;
+			}
+
+			if (accepted != rejected)
+				nodes[node.getId().index()] = accepted ? ACCEPTED : REJECTED;
+		}
+	}
+
+	@Override
+	public boolean test(Coord coord) {
+
+		Node node = NetworkUtils.getNearestNode(network, coord);
+		byte type = node != null && node.getId().index() < nodes.length ? nodes[node.getId().index()] : MIXED;
+
+		if (type == ACCEPTED)
+			return true;
+		if (type == REJECTED)
+			return false;
+
+		return filter.test(NetworkUtils.getNearestLink(network, coord));
+	}
+}
@@ -1,5 +1,8 @@
 package org.matsim.prepare.population;
 
+import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -14,26 +17,60 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * This class is used to read and match persons from the reference data in csv format.
+ * <p>
+ * Each combination of gender, age, region type and employment is encoded as a dense integer, which is the index of its group of reference persons.
+ * Matching a person therefore only needs a few lookups and one random draw.
  */
 public class PersonMatcher implements Iterable<Map.Entry<String, CSVRecord>> {
 
 	private static final Logger log = LogManager.getLogger(PersonMatcher.class);
 
+	/**
+	 * Number of age values, higher ages never occur in any group.
+	 */
+	private static final int AGES = 100;
+
 	private final String idxColumn;
 
 	private final CsvOptions csv = new CsvOptions(CSVFormat.Predefined.Default);
-	private final Map<Key, List<String>> groups = new HashMap<>();
 	private final Map<String, CSVRecord> persons = new HashMap<>();
 
+	/**
+	 * Encodes gender, code 0 is used for no gender.
+	 */
+	private final Object2IntMap<String> genders = new Object2IntOpenHashMap<>();
+
+	/**
+	 * Encodes the region types.
+	 */
+	private final Int2IntMap regionTypes = new Int2IntOpenHashMap();
+
+	/**
+	 * Reference person ids.
+	 */
+	private String[] ids;
+
+	/**
+	 * Indices into {@link #ids} for each group code, null for empty groups.
+	 */
+	private int[][] groups;
+
+	/**
+	 * Whether a warning about low sample size has been logged for a group. Concurrent access may log a warning more than once.
+	 */
+	private boolean[] warned;
+
 	public PersonMatcher(String idxColumn, Path personsPath) {
 		this.idxColumn = idxColumn;
 
+		genders.defaultReturnValue(-1);
+		regionTypes.defaultReturnValue(-1);
+
 		try (CSVParser parser = csv.createParser(personsPath)) {
 			buildSubgroups(parser);
 		} catch (IOException e) {
@@ -47,42 +84,71 @@ public class PersonMatcher implements Iterable<Map.Entry<String, CSVRecord>> {
 	 */
 	public String matchPerson(Person person, SplittableRandom rnd) {
 
-		Key key = createKey(person);
+		int code = encode(createKey(person));
 
-		List<String> subgroup = groups.get(key);
+		int[] subgroup = code >= 0 ? groups[code] : null;
 		if (subgroup == null) {
-			log.error("No subgroup found for key {}", key);
+			log.error("No subgroup found for key {}", createKey(person));
 			throw new IllegalStateException("Invalid entry");
 		}
 
-		if (subgroup.size() < 30) {
-			log.warn("Group {} has low sample size: {}", key, subgroup.size());
+		if (subgroup.length < 30 && !warned[code]) {
+			warned[code] = true;
+			log.warn("Group {} has low sample size: {}", createKey(person), subgroup.length);
 		}
 
-		return subgroup.get(rnd.nextInt(subgroup.size()));
+		return ids[subgroup[rnd.nextInt(subgroup.length)]];
 	}
 
 	/**
-	 * Matches a person csv entry to one person in a list.
+	 * Create candidates for {@link #matchEntry(CSVRecord, Candidates, SplittableRandom)}, the group code of each person is computed once.
+	 */
+	public Candidates candidates(List<Person> refPersons) {
+		IntArrayList codes = new IntArrayList(refPersons.size());
+		for (Person person : refPersons) {
+			codes.add(encode(createKey(person)));
+		}
+		return new Candidates(new ArrayList<>(refPersons), codes);
+	}
+
+	/**
+	 * Matches a person csv entry to one of the candidates.
 	 * @return null if no match was found
 	 */
-	public Person matchEntry(CSVRecord p, List<Person> refPersons, SplittableRandom rnd) {
+	public Person matchEntry(CSVRecord p, Candidates candidates, SplittableRandom rnd) {
 
 		int regionType = Integer.parseInt(p.get("region_type"));
 		String gender = p.get("gender");
 		String employment = p.get("employment");
 		int age = Integer.parseInt(p.get("age"));
 
-		Set<Key> keys = createKey(gender, age, regionType, employment).collect(Collectors.toSet());
-
-		List<Person> matched = refPersons.stream()
-			.filter(person -> keys.contains(createKey(person)))
-			.toList();
+		// Sorted codes of all keys of this entry
+		int[] codes = createKey(gender, age, regionType, employment)
+			.mapToInt(this::encode)
+			.filter(c -> c >= 0)
+			.sorted()
+			.toArray();
+
+		int[] refCodes = candidates.codes.elements();
+		int size = candidates.codes.size();
+
+		// First count the matching persons, then select one of them
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (Arrays.binarySearch(codes, refCodes[i]) >= 0)
+				n++;
+		}
 
-		if (matched.isEmpty())
+		if (n == 0)
 			return null;
 
-		return matched.get(rnd.nextInt(matched.size()));
+		int selected = rnd.nextInt(n);
+		for (int i = 0; i < size; i++) {
+			if (Arrays.binarySearch(codes, refCodes[i]) >= 0 && selected-- == 0)
+				return candidates.persons.get(i);
+		}
+
+		throw new IllegalStateException("Person could not be selected");
 	}
 
 	/**
@@ -97,23 +163,60 @@ public class PersonMatcher implements Iterable<Map.Entry<String, CSVRecord>> {
 	 */
 	private void buildSubgroups(CSVParser csv) {
 
-		int i = 0;
+		List<CSVRecord> records = csv.getRecords();
+
+		// Dictionaries need to be complete before any key can be encoded
+		genders.put(null, 0);
+		for (CSVRecord r : records) {
+			genders.putIfAbsent(r.get("gender"), genders.size());
+			regionTypes.putIfAbsent(Integer.parseInt(r.get("region_type")), regionTypes.size());
+		}
 
-		for (CSVRecord r : csv) {
+		ids = new String[records.size()];
+		Int2ObjectMap<IntList> members = new Int2ObjectOpenHashMap<>();
 
+		for (int i = 0; i < records.size(); i++) {
+
+			CSVRecord r = records.get(i);
 			String idx = r.get(idxColumn);
 			int regionType = Integer.parseInt(r.get("region_type"));
 			String gender = r.get("gender");
 			String employment = r.get("employment");
 			int age = Integer.parseInt(r.get("age"));
 
-			Stream<Key> keys = createKey(gender, age, regionType, employment);
-			keys.forEach(key -> groups.computeIfAbsent(key, (k) -> new ArrayList<>()).add(idx));
+			int row = i;
+			createKey(gender, age, regionType, employment)
+				.mapToInt(this::encode)
+				.filter(c -> c >= 0)
+				.forEach(c -> members.computeIfAbsent(c, k -> new IntArrayList()).add(row));
+
+			ids[i] = idx;
 			persons.put(idx, r);
-			i++;
 		}
 
-		log.info("Read {} persons from csv.", i);
+		groups = new int[genders.size() * AGES * regionTypes.size() * 3][];
+		warned = new boolean[groups.length];
+		for (Int2ObjectMap.Entry<IntList> e : members.int2ObjectEntrySet()) {
+			groups[e.getIntKey()] = e.getValue().toIntArray();
+		}
+
+		log.info("Read {} persons from csv.", records.size());
+	}
+
+	/**
+	 * Encode a key into its group code.
+	 *
+	 * @return -1 if no reference person can have this key
+	 */
+	private int encode(Key key) {
+
+		int gender = genders.getInt(key.gender());
+		int region = regionTypes.get(key.regionType());
+		if (gender < 0 || region < 0 || key.age() < 0 || key.age() >= AGES)
+			return -1;
+
+		int employed = key.employed() == null ? 0 : key.employed() ? 1 : 2;
+		return ((gender * AGES + key.age()) * regionTypes.size() + region) * 3 + employed;
 	}
 
 	private Stream<Key> createKey(String gender, int age, int regionType, String employment) {
@@ -172,4 +275,35 @@ public class PersonMatcher implements Iterable<Map.Entry<String, CSVRecord>> {
 	public record Key(String gender, int age, int regionType, Boolean employed) {
 	}
 
+	/**
+	 * Persons that can be matched, together with their group codes in the same order.
+	 */
+	public static final class Candidates {
+
+		private final List<Person> persons;
+		private final IntArrayList codes;
+
+		private Candidates(List<Person> persons, IntArrayList codes) {
+			this.persons = persons;
+			this.codes = codes;
+		}
+
+		/**
+		 * Remove a person, so that it can not be matched again. The order of the remaining persons is kept.
+		 */
+		public boolean remove(Person person) {
+			int idx = persons.indexOf(person);
+			if (idx < 0)
+				return false;
+
+			persons.remove(idx);
+			codes.removeInt(idx);
+			return true;
+		}
+
+		public int size() {
+			return persons.size();
+		}
+	}
+
 }
@@ -23,6 +23,7 @@ import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.facilities.ActivityFacility;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
@@ -36,9 +37,9 @@ public class PlanBuilder {
 	private static final CsvOptions csv = new CsvOptions(CSVFormat.Predefined.Default);
 
 	/**
-	 * Maps zone ids to contained facilities.
+	 * Contained facilities for each zone.
 	 */
-	private final Long2ObjectMap<Set<ActivityFacility>> zones = new Long2ObjectOpenHashMap<>();
+	private final ZoneFacilityTable zones;
 
 	private final ShpOptions.Index zoneIndex;
 
@@ -49,24 +50,29 @@ public class PlanBuilder {
 
 	private final Map<String, List<CSVRecord>> activities = new HashMap<>();
 
-	private final SplittableRandom rnd = new SplittableRandom();
+	public PlanBuilder(ShpOptions zones, FacilityIndex facilities, Path activityPath) throws IOException {
+		this(zones, facilities, activityPath, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cache file to store the join of zones and facilities, which is reused as long as the inputs do not change
+	 */
+	public PlanBuilder(ShpOptions zones, FacilityIndex facilities, Path activityPath, @Nullable Path cache) throws IOException {
 
+		List<SimpleFeature> fts = zones.readFeatures();
 
-	public PlanBuilder(ShpOptions zones, FacilityIndex facilities, Path activityPath) throws IOException {
 		// Collect all zones
-		for (SimpleFeature ft : zones.readFeatures()) {
+		for (SimpleFeature ft : fts) {
 			features.put(new Location((String) ft.getAttribute("raum_id"), (String) ft.getAttribute("zone")),
 				(long) ft.getAttribute("id"));
 		}
 
 		zoneIndex = zones.createIndex("id");
 
-		for (ActivityFacility ft : facilities.all.getFacilities().values()) {
-			Long result = zoneIndex.query(ft.getCoord());
-			if (result != null) {
-				this.zones.computeIfAbsent(result, k -> new HashSet<>()).add(ft);
-			}
-		}
+		ActivityFacility[] all = facilities.all.getFacilities().values().toArray(ActivityFacility[]::new);
+		this.zones = ZoneFacilityTable.create(all, zoneIndex::query, cache, cache != null ? ZoneFacilityTable.key(fts, all) : 0);
 
 		try (CSVParser parser = csv.createParser(activityPath)) {
 			readActivities(parser, "p_id");
@@ -150,9 +156,10 @@ public class PlanBuilder {
 	/**
 	 * Assigns location from reference data to a person.
 	 *
+	 * @param rnd random generator, which should be seeded for each person to obtain reproducible results
 	 * @return whether the assignment was successful
 	 */
-	public boolean assignLocationsFromZones(String personId, Plan plan, Coord homeCoord) {
+	public boolean assignLocationsFromZones(String personId, Plan plan, Coord homeCoord, SplittableRandom rnd) {
 
 		List<CSVRecord> acts = activities.get(personId);
 		List<Activity> existing = TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
@@ -162,9 +169,9 @@ public class PlanBuilder {
 		if (acts.size() != existing.size())
 			return false;
 
-		ActLocation home = new ActLocation(null, homeCoord);
-
-		List<List<ActLocation>> possibleLocations = new ArrayList<>();
+		// Possible facilities for each activity, null for home
+		int[][] candidates = new int[acts.size()][];
+		boolean[] useFacility = new boolean[acts.size()];
 
 		// Distances between activities in meter
 		DoubleList dists = new DoubleArrayList();
@@ -178,10 +185,8 @@ public class PlanBuilder {
 
 			dists.add(InitLocationChoice.beelineDist(Double.parseDouble(ref.get("leg_dist"))));
 
-			if (type.equals("home")) {
-				possibleLocations.add(List.of(home));
+			if (type.equals("home"))
 				continue;
-			}
 
 			Location loc = new Location(ref.get("location"), ref.get("zone"));
 			long id = features.getOrDefault(loc, -1);
@@ -189,37 +194,36 @@ public class PlanBuilder {
 				return false;
 			}
 
-			Set<ActivityFacility> facilities = zones.get(id);
-
-			List<ActivityFacility> subSet = facilities.stream().filter(f -> f.getActivityOptions().containsKey(type)).toList();
+			int zone = zones.getZone(id);
+			int[] subSet = zones.getFacilities(zone, type);
 
-			if (subSet.isEmpty()) {
+			if (subSet.length == 0) {
 				// If there is no location with the correct type, choose from all possible coordinates
-				possibleLocations.add(
-					facilities.stream().map(f -> new ActLocation(null, f.getCoord())).toList()
-				);
+				candidates[i] = zones.getFacilities(zone);
+				if (candidates[i].length == 0)
+					return false;
 			} else {
-				possibleLocations.add(
-					subSet.stream().map(f -> new ActLocation(f, f.getCoord())).toList()
-				);
+				candidates[i] = subSet;
+				useFacility[i] = true;
 			}
 		}
 
-		List<ActLocation> chosen = sampleLocation(possibleLocations, dists);
+		int[] chosen = sampleLocation(zones, candidates, homeCoord, dists, rnd);
 
 		// No valid locations or matching error was too large
 		if (chosen == null)
 			return false;
 
-		for (int i = 0; i < chosen.size(); i++) {
-			ActLocation loc = chosen.get(i);
+		for (int i = 0; i < chosen.length; i++) {
 			Activity activity = existing.get(i);
 
 			activity.setLinkId(null);
-			if (loc.facility() != null) {
-				activity.setFacilityId(loc.facility().getId());
+			if (chosen[i] < 0) {
+				activity.setCoord(homeCoord);
+			} else if (useFacility[i]) {
+				activity.setFacilityId(zones.getFacility(chosen[i]).getId());
 			} else {
-				activity.setCoord(loc.coord());
+				activity.setCoord(zones.getFacility(chosen[i]).getCoord());
 			}
 		}
 
@@ -228,33 +232,39 @@ public class PlanBuilder {
 	}
 
 	/**
-	 * Chooses from a list of possible locations such that difference to the references distances is minimized.
+	 * Chooses from the possible facilities such that difference to the references distances is minimized.
+	 *
+	 * @param candidates facility indices for each activity, null for the home location
+	 * @return chosen facility index for each activity, -1 for home, or null if the error is too large
 	 */
-	private List<ActLocation> sampleLocation(List<List<ActLocation>> locations, DoubleList dists) {
+	static int[] sampleLocation(ZoneFacilityTable zones, int[][] candidates, Coord homeCoord, DoubleList dists, SplittableRandom rnd) {
 
 		double err = Double.POSITIVE_INFINITY;
-		List<ActLocation> best = null;
+		int[] best = null;
+		int[] current = new int[candidates.length];
 
 		for (int k = 0; k < 100; k++) {
-			List<ActLocation> current = new ArrayList<>();
-			for (List<ActLocation> locs : locations) {
-				current.add(locs.get(rnd.nextInt(locs.size())));
+			for (int i = 0; i < candidates.length; i++) {
+				int[] c = candidates[i];
+				current[i] = c == null ? -1 : c[rnd.nextInt(c.length)];
 			}
 
 			double currentErr = 0;
-			for (int i = 1; i < current.size(); i++) {
-				double dist = CoordUtils.calcEuclideanDistance(current.get(i - 1).coord(), current.get(i).coord());
-				currentErr += Math.abs(dist - dists.getDouble(i));
+			for (int i = 1; i < current.length; i++) {
+				Coord from = current[i - 1] < 0 ? homeCoord : zones.getFacility(current[i - 1]).getCoord();
+				Coord to = current[i] < 0 ? homeCoord : zones.getFacility(current[i]).getCoord();
+
+				currentErr += Math.abs(CoordUtils.calcEuclideanDistance(from, to) - dists.getDouble(i));
 			}
 
 			if (currentErr < err || best == null) {
 				err = currentErr;
-				best = current;
+				best = current.clone();
 			}
 		}
 
-		double total = dists.doubleStream().sum() / (locations.size() - 1);
-		double perActErr = err / (locations.size() - 1);
+		double total = dists.doubleStream().sum() / (candidates.length - 1);
+		double perActErr = err / (candidates.length - 1);
 
 		// threshold for deviation
 		if (perActErr > Math.max(300, total * 0.03))
@@ -266,7 +276,4 @@ public class PlanBuilder {
 	private record Location(String name, String zone) {
 	}
 
-	private record ActLocation(ActivityFacility facility, Coord coord) {
-	}
-
 }
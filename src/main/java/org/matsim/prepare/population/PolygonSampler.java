@@ -0,0 +1,87 @@
+package org.matsim.prepare.population;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.triangulate.polygon.PolygonTriangulator;
+import org.matsim.api.core.v01.Coord;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples points uniformly within a polygonal geometry.
+ * The geometry is triangulated once, a triangle is then chosen proportional to its area and a uniform point is drawn within it.
+ * In contrast to rejection sampling within the bounding box, every draw produces a valid point.
+ */
+public final class PolygonSampler {
+
+	/**
+	 * Corners of the triangles, stored as x and y for three points per triangle.
+	 */
+	private final double[] corners;
+	private final AliasTable triangles;
+
+	private PolygonSampler(double[] corners, AliasTable triangles) {
+		this.corners = corners;
+		this.triangles = triangles;
+	}
+
+	/**
+	 * Create a sampler for a polygon or multi polygon, holes are respected.
+	 */
+	public static PolygonSampler of(Geometry geometry) {
+
+		Geometry tris = PolygonTriangulator.triangulate(geometry);
+
+		int n = tris.getNumGeometries();
+		double[] corners = new double[n * 6];
+		double[] areas = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			Coordinate[] c = ((Polygon) tris.getGeometryN(i)).getExteriorRing().getCoordinates();
+			for (int j = 0; j < 3; j++) {
+				corners[i * 6 + j * 2] = c[j].x;
+				corners[i * 6 + j * 2 + 1] = c[j].y;
+			}
+
+			areas[i] = Math.abs((c[1].x - c[0].x) * (c[2].y - c[0].y) - (c[2].x - c[0].x) * (c[1].y - c[0].y)) / 2;
+		}
+
+		if (n == 0)
+			throw new IllegalArgumentException("Geometry has no area.");
+
+		return new PolygonSampler(corners, AliasTable.of(areas));
+	}
+
+	/**
+	 * Total area of the geometry.
+	 */
+	public double getArea() {
+		return triangles.getTotal();
+	}
+
+	/**
+	 * Draw a uniformly distributed point within the geometry.
+	 */
+	public Coord sample(SplittableRandom rnd) {
+
+		int i = triangles.sample(rnd) * 6;
+
+		double u = rnd.nextDouble();
+		double v = rnd.nextDouble();
+
+		// Reflect points of the opposite half of the parallelogram into the triangle
+		if (u + v > 1) {
+			u = 1 - u;
+			v = 1 - v;
+		}
+
+		double x0 = corners[i];
+		double y0 = corners[i + 1];
+
+		return new Coord(
+			x0 + u * (corners[i + 2] - x0) + v * (corners[i + 4] - x0),
+			y0 + u * (corners[i + 3] - y0) + v * (corners[i + 5] - y0)
+		);
+	}
+}
@@ -1,12 +1,11 @@
 package org.matsim.prepare.population;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.*;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.core.population.PersonUtils;
@@ -17,11 +16,10 @@ import org.matsim.core.router.TripStructureUtils;
 import org.matsim.prepare.RunOpenBerlinCalibration;
 import picocli.CommandLine;
 
-import java.io.IOException;
 import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.*;
+import java.util.List;
+import java.util.SplittableRandom;
 
 @CommandLine.Command(
 	name = "activity-sampling",
@@ -31,10 +29,7 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 
 	private static final Logger log = LogManager.getLogger(RunActivitySampling.class);
 
-	/**
-	 * Maps person index to list of activities.
-	 */
-	private final Map<String, List<CSVRecord>> activities = new HashMap<>();
+	private static final Id<Link> UNASSIGNED = Id.createLinkId("unassigned");
 
 	@CommandLine.Option(names = "--input", description = "Path to input population", required = true)
 	private Path input;
@@ -46,6 +41,13 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 	private Path activityPath;
 	@CommandLine.Option(names = "--seed", description = "Seed used to sample plans", defaultValue = "1")
 	private long seed;
+	@CommandLine.Option(names = "--threads", description = "Number of threads to use. Defaults to the number of available processors.")
+	private Integer threads;
+
+	/**
+	 * Activities of the survey persons.
+	 */
+	private ActivityTable activities;
 
 	private PopulationFactory factory;
 	private PersonMatcher matcher;
@@ -59,9 +61,9 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 	/**
 	 * Constructor that allows to use the run method directly and not as command.
 	 */
-	RunActivitySampling(PersonMatcher matcher, Map<String, List<CSVRecord>> activities, PopulationFactory factory, long seed) {
+	RunActivitySampling(PersonMatcher matcher, ActivityTable activities, PopulationFactory factory, long seed) {
 		this.matcher = matcher;
-		this.activities.putAll(activities);
+		this.activities = activities;
 		this.factory = factory;
 		this.seed = seed;
 	}
@@ -71,9 +73,11 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 	}
 
 	/**
-	 * Create daily plan from a list of entries.
+	 * Create daily plan from the activities of a person.
+	 *
+	 * @param person index of the person in the activity table
 	 */
-	public static Plan createPlan(Coord homeCoord, List<CSVRecord> activities, SplittableRandom rnd, PopulationFactory factory) {
+	public static Plan createPlan(Coord homeCoord, ActivityTable activities, int person, SplittableRandom rnd, PopulationFactory factory) {
 		Plan plan = factory.createPlan();
 
 		Activity a = null;
@@ -85,24 +89,25 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 		double homeDist = 0;
 		boolean arrivedHome = false;
 
-		for (int i = 0; i < activities.size(); i++) {
+		int start = activities.start(person);
+		int end = activities.end(person);
 
-			CSVRecord act = activities.get(i);
+		for (int i = start; i < end; i++) {
 
-			String actType = act.get("type");
+			String actType = activities.getType(i);
 
 			// First and last activities that are other are changed to home
-			if (actType.equals("other") && (i == 0 || i == activities.size() - 1))
+			if (actType.equals("other") && (i == start || i == end - 1))
 				actType = "home";
 
-			int duration = (int) Double.parseDouble(act.get("duration"));
+			int duration = activities.getDuration(i);
 
 			if (actType.equals("home")) {
 				a = factory.createActivityFromCoord("home", homeCoord);
 			} else
-				a = factory.createActivityFromLinkId(actType, Id.createLinkId("unassigned"));
+				a = factory.createActivityFromLinkId(actType, UNASSIGNED);
 
-			double legDuration = Double.parseDouble(act.get("leg_duration"));
+			double legDuration = activities.getLegDuration(i);
 
 			if (plan.getPlanElements().isEmpty()) {
 				// Add little
@@ -129,15 +134,15 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 				startTime += seconds;
 			}
 
-			double legDist = Double.parseDouble(act.get("leg_dist"));
+			double legDist = activities.getLegDist(i);
 
-			if (i > 0) {
+			if (i > start) {
 				a.getAttributes().putAttribute("orig_dist", legDist);
 				a.getAttributes().putAttribute("orig_duration", legDuration);
 			}
 
 			if (!plan.getPlanElements().isEmpty()) {
-				lastMode = act.get("leg_mode");
+				lastMode = activities.getLegMode(i);
 
 				// other mode is initialized as walk
 				if (lastMode.equals("other"))
@@ -181,45 +186,6 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 		return plan;
 	}
 
-	/**
-	 * Read and group activities by person id.
-	 */
-	public static Map<String, List<CSVRecord>> readActivities(Path csv) throws IOException {
-
-		String currentId = null;
-		List<CSVRecord> current = null;
-		Map<String, List<CSVRecord>> activities = new LinkedHashMap<>();
-		int i = 0;
-
-
-		try (CSVParser parser = CSVParser.parse(csv, StandardCharsets.UTF_8,
-			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
-			for (CSVRecord r : parser) {
-
-				String pId = r.get("p_id");
-
-				if (!Objects.equals(pId, currentId)) {
-					if (current != null)
-						activities.put(currentId, current);
-
-					currentId = pId;
-					current = new ArrayList<>();
-				}
-
-				current.add(r);
-				i++;
-			}
-		}
-
-		if (current != null && !current.isEmpty()) {
-			activities.put(currentId, current);
-		}
-
-		log.info("Read {} activities for {} persons", i, activities.size());
-
-		return activities;
-	}
-
 	/**
 	 * Randomize the duration slightly, depending on total duration.
 	 */
@@ -243,11 +209,11 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 
 		matcher = new PersonMatcher("idx", personsPath);
 
-		activities.putAll(readActivities(activityPath));
+		activities = ActivityTable.read(activityPath);
 
 		factory = population.getFactory();
 
-		ParallelPersonAlgorithmUtils.run(population, 8, this);
+		ParallelPersonAlgorithmUtils.run(population, threads != null ? threads : Runtime.getRuntime().availableProcessors(), this);
 
 		PopulationUtils.writePopulation(population, output.toString());
 
@@ -282,16 +248,16 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 		switch (mobile.toLowerCase()) {
 
 			case "true" -> {
-				List<CSVRecord> activities = this.activities.get(idx);
+				int p = activities.getPerson(idx);
 
-				if (activities == null)
+				if (p < 0)
 					throw new AssertionError("No activities for mobile person " + idx);
 
-				if (activities.size() == 0)
+				if (activities.start(p) == activities.end(p))
 					throw new AssertionError("Activities for mobile agent can not be empty.");
 
 				person.removePlan(person.getSelectedPlan());
-				Plan plan = createPlan(Attributes.getHomeCoord(person), activities, rnd, factory);
+				Plan plan = createPlan(Attributes.getHomeCoord(person), activities, p, rnd, factory);
 
 				person.addPlan(plan);
 				person.setSelectedPlan(plan);
@@ -341,7 +307,11 @@ public final class RunActivitySampling implements MATSimAppCommand, PersonAlgori
 	 */
 	@SuppressWarnings("OverloadMethodsDeclarationOrder")
 	public Plan createPlan(Coord homeCoord, String personId, SplittableRandom rnd) {
-		return createPlan(homeCoord, activities.get(personId), rnd, factory);
+		int p = activities.getPerson(personId);
+		if (p < 0)
+			throw new IllegalArgumentException("No activities for person " + personId);
+
+		return createPlan(homeCoord, activities, p, rnd, factory);
 	}
 
 	private record Context(SplittableRandom rnd) {
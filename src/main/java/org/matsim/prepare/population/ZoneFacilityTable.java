@@ -0,0 +1,279 @@
+package org.matsim.prepare.population;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBWriter;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.facilities.ActivityFacility;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Facilities contained in each zone, grouped by activity type.
+ * Zones and facilities are referred to by dense indices, facility indices are in the order of the given facilities.
+ * <p>
+ * The spatial join of facilities and zones can be stored in a small binary file, together with a key of the inputs.
+ * When the key still matches, the join is not computed again.
+ */
+final class ZoneFacilityTable {
+
+	private static final Logger log = LogManager.getLogger(ZoneFacilityTable.class);
+
+	private static final int MAGIC = 0x5a465431;
+
+	private static final int[] EMPTY = new int[0];
+
+	private final ActivityFacility[] facilities;
+
+	/**
+	 * Original zone id for each zone index.
+	 */
+	private final long[] zoneIds;
+
+	/**
+	 * Maps zone id to zone index.
+	 */
+	private final Long2IntMap zones;
+
+	/**
+	 * Zone index of each facility, -1 if not within any zone.
+	 */
+	private final int[] zoneOf;
+
+	/**
+	 * Facility indices for each zone index.
+	 */
+	private final int[][] all;
+
+	/**
+	 * Facility indices for each zone index, grouped by activity type.
+	 */
+	private final Map<String, int[][]> byType = new HashMap<>();
+
+	private ZoneFacilityTable(ActivityFacility[] facilities, long[] zoneIds, int[] zoneOf) {
+		this.facilities = facilities;
+		this.zoneIds = zoneIds;
+		this.zoneOf = zoneOf;
+
+		zones = new Long2IntOpenHashMap(zoneIds.length);
+		zones.defaultReturnValue(-1);
+		for (int i = 0; i < zoneIds.length; i++) {
+			zones.put(zoneIds[i], i);
+		}
+
+		IntArrayList[] lists = new IntArrayList[zoneIds.length];
+		Map<String, IntArrayList[]> types = new HashMap<>();
+
+		for (int i = 0; i < facilities.length; i++) {
+			int z = zoneOf[i];
+			if (z < 0)
+				continue;
+
+			if (lists[z] == null)
+				lists[z] = new IntArrayList();
+
+			lists[z].add(i);
+
+			for (String type : facilities[i].getActivityOptions().keySet()) {
+				IntArrayList[] l = types.computeIfAbsent(type, k -> new IntArrayList[zoneIds.length]);
+				if (l[z] == null)
+					l[z] = new IntArrayList();
+
+				l[z].add(i);
+			}
+		}
+
+		all = toArrays(lists);
+		types.forEach((type, l) -> byType.put(type, toArrays(l)));
+	}
+
+	private static int[][] toArrays(IntArrayList[] lists) {
+		int[][] result = new int[lists.length][];
+		for (int i = 0; i < lists.length; i++) {
+			result[i] = lists[i] != null ? lists[i].toIntArray() : EMPTY;
+		}
+		return result;
+	}
+
+	/**
+	 * Join facilities with the zones returned by {@code zoneLookup}, which returns null for coordinates outside all zones.
+	 * Zone indices are assigned in the order of the first facility within each zone.
+	 */
+	static ZoneFacilityTable create(ActivityFacility[] facilities, Function<Coord, Long> zoneLookup) {
+
+		Long2IntMap zones = new Long2IntOpenHashMap();
+		zones.defaultReturnValue(-1);
+		LongArrayList zoneIds = new LongArrayList();
+
+		int[] zoneOf = new int[facilities.length];
+		for (int i = 0; i < facilities.length; i++) {
+			Long zone = zoneLookup.apply(facilities[i].getCoord());
+			if (zone == null) {
+				zoneOf[i] = -1;
+				continue;
+			}
+
+			int z = zones.get((long) zone);
+			if (z < 0) {
+				z = zoneIds.size();
+				zones.put((long) zone, z);
+				zoneIds.add((long) zone);
+			}
+
+			zoneOf[i] = z;
+		}
+
+		return new ZoneFacilityTable(facilities, zoneIds.toLongArray(), zoneOf);
+	}
+
+	/**
+	 * Load the join from the cache file if it exists and matches the key, otherwise compute it and write the cache.
+	 *
+	 * @param cache path of the cache file, if null no cache is used
+	 * @param key   key of all inputs, see {@link #key(Iterable, ActivityFacility[])}
+	 */
+	static ZoneFacilityTable create(ActivityFacility[] facilities, Function<Coord, Long> zoneLookup,
+									@Nullable Path cache, long key) throws IOException {
+
+		if (cache != null && Files.exists(cache)) {
+			try (InputStream in = Files.newInputStream(cache)) {
+				ZoneFacilityTable table = read(in, key, facilities);
+				if (table != null) {
+					log.info("Read zone facilities from {}", cache);
+					return table;
+				}
+			}
+
+			log.info("Inputs have changed, ignoring cache {}", cache);
+		}
+
+		ZoneFacilityTable table = create(facilities, zoneLookup);
+
+		if (cache != null) {
+			try (OutputStream out = Files.newOutputStream(cache)) {
+				table.write(out, key);
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * Compute a key of the zones and facilities, which changes whenever the result of the join could change.
+	 */
+	static long key(Iterable<SimpleFeature> zones, ActivityFacility[] facilities) {
+
+		Hasher h = Hashing.murmur3_128().newHasher();
+		WKBWriter wkb = new WKBWriter();
+
+		for (SimpleFeature ft : zones) {
+			h.putUnencodedChars(Objects.toString(ft.getAttribute("id")));
+			h.putBytes(wkb.write((Geometry) ft.getDefaultGeometry()));
+		}
+
+		h.putInt(facilities.length);
+		for (ActivityFacility f : facilities) {
+			h.putUnencodedChars(f.getId().toString());
+			h.putDouble(f.getCoord().getX());
+			h.putDouble(f.getCoord().getY());
+		}
+
+		return h.hash().asLong();
+	}
+
+	/**
+	 * Read a join in the format written by {@link #write(OutputStream, long)}.
+	 *
+	 * @return null if the key or the number of facilities do not match
+	 */
+	static ZoneFacilityTable read(InputStream stream, long key, ActivityFacility[] facilities) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a zone facility file");
+
+		if (in.readLong() != key)
+			return null;
+
+		long[] zoneIds = new long[in.readInt()];
+		for (int i = 0; i < zoneIds.length; i++) {
+			zoneIds[i] = in.readLong();
+		}
+
+		int n = in.readInt();
+		if (n != facilities.length)
+			return null;
+
+		int[] zoneOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			zoneOf[i] = in.readInt();
+		}
+
+		return new ZoneFacilityTable(facilities, zoneIds, zoneOf);
+	}
+
+	/**
+	 * Write the join in a compact binary format.
+	 */
+	void write(OutputStream stream, long key) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeLong(key);
+
+		out.writeInt(zoneIds.length);
+		for (long id : zoneIds) {
+			out.writeLong(id);
+		}
+
+		out.writeInt(zoneOf.length);
+		for (int z : zoneOf) {
+			out.writeInt(z);
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Get the index of a zone.
+	 *
+	 * @return -1 if the zone contains no facilities
+	 */
+	int getZone(long zoneId) {
+		return zones.get(zoneId);
+	}
+
+	/**
+	 * All facilities within a zone.
+	 */
+	int[] getFacilities(int zone) {
+		return zone >= 0 ? all[zone] : EMPTY;
+	}
+
+	/**
+	 * Facilities within a zone, which provide the given activity type.
+	 */
+	int[] getFacilities(int zone, String type) {
+		int[][] f = byType.get(type);
+		return zone >= 0 && f != null ? f[zone] : EMPTY;
+	}
+
+	ActivityFacility getFacility(int idx) {
+		return facilities[idx];
+	}
+}
@@ -29,6 +29,16 @@ public enum Activities {
 	// Commercial traffic types
 	service;
 
+	/**
+	 * Step size in seconds of the typical durations for split activity types, e.g. {@code work_3600}.
+	 */
+	public static final int SPLIT_STEP = 600;
+
+	/**
+	 * Maximum typical duration of split activity types in seconds.
+	 */
+	public static final int SPLIT_MAX = 97200;
+
 	/**
 	 * Start time of an activity in hours, can be -1 if not defined.
 	 */
@@ -62,18 +72,38 @@ public enum Activities {
 		return params;
 	}
 
+	/**
+	 * Create the params of an activity type split by typical duration.
+	 */
+	public ScoringConfigGroup.ActivityParams createSplitParams(long duration) {
+		return apply(new ScoringConfigGroup.ActivityParams(name() + "_" + duration).setTypicalDuration(duration));
+	}
+
 	/**
 	 * Add required activity params for the scenario.
 	 */
 	public static void addScoringParams(Config config, boolean splitTypes) {
+		addScoringParams(config, splitTypes, false);
+	}
+
+	/**
+	 * Add required activity params for the scenario.
+	 *
+	 * @param splitTypes whether activity types split by typical duration are used
+	 * @param lazy       do not add the split types to the config. They are created on demand by the
+	 *                   {@link org.matsim.run.scoring.AdvancedScoringModule}, which is required in this case.
+	 *                   The split types are then also missing in the written output config.
+	 *                   See {@link org.matsim.run.scoring.AdvancedScoringConfigGroup#lazyActivityParams}.
+	 */
+	public static void addScoringParams(Config config, boolean splitTypes, boolean lazy) {
 
 		for (Activities value : Activities.values()) {
 			// Default length if none is given
 			config.scoring().addActivityParams(value.apply(new ScoringConfigGroup.ActivityParams(value.name())).setTypicalDuration(6 * 3600));
 
-			if (splitTypes)
-				for (long ii = 600; ii <= 97200; ii += 600) {
-					config.scoring().addActivityParams(value.apply(new ScoringConfigGroup.ActivityParams(value.name() + "_" + ii).setTypicalDuration(ii)));
+			if (splitTypes && !lazy)
+				for (long ii = SPLIT_STEP; ii <= SPLIT_MAX; ii += SPLIT_STEP) {
+					config.scoring().addActivityParams(value.createSplitParams(ii));
 				}
 		}
 
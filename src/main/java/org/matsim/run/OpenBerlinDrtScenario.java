@@ -54,7 +54,6 @@ import org.matsim.core.population.routes.RouteFactories;
 import org.matsim.core.router.AnalysisMainModeIdentifier;
 import org.matsim.core.router.MainModeIdentifier;
 import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.extensions.pt.fare.intermodalTripFareCompensator.IntermodalTripFareCompensatorConfigGroup;
 import org.matsim.extensions.pt.fare.intermodalTripFareCompensator.IntermodalTripFareCompensatorsConfigGroup;
 import org.matsim.extensions.pt.fare.intermodalTripFareCompensator.IntermodalTripFareCompensatorsModule;
@@ -130,27 +129,22 @@ public class OpenBerlinDrtScenario extends OpenBerlinScenario {
 													 String oldFilterAttribute, String oldFilterValue,
 													 double bufferAroundServiceArea) {
 		log.info("Tagging pt stops marked for intermodal access/egress in the service area.");
-		ShpOptions shp = new ShpOptions(drtServiceAreaShapeFile, null, null);
-		List<Geometry> serviceAreas = new ArrayList<>();
-		for (SimpleFeature ft : shp.readFeatures()) {
-			Geometry geom = (Geometry) ft.getDefaultGeometry();
-			serviceAreas.add(geom.buffer(bufferAroundServiceArea));
-		}
+		ServiceAreaIndex serviceAreas = readServiceAreas(drtServiceAreaShapeFile, bufferAroundServiceArea);
 
 		for (TransitStopFacility stop : transitSchedule.getFacilities().values()) {
 			if (stop.getAttributes().getAttribute(oldFilterAttribute) != null) {
 				if (stop.getAttributes().getAttribute(oldFilterAttribute).equals(oldFilterValue) &&
-					serviceAreas.stream().anyMatch(geom -> geom.contains(MGC.coord2Point(stop.getCoord())))) {
+					serviceAreas.contains(stop.getCoord())) {
 					stop.getAttributes().putAttribute(newAttributeName, newAttributeValue);
 				}
 			}
 		}
 	}
 
-	private static void addDRTMode(Scenario scenario, String drtNetworkMode, String drtServiceAreaShapeFile, double buffer) {
-
-		log.info("Adjusting network...");
-
+	/**
+	 * Read the service areas from a shape file and buffer them by the given distance.
+	 */
+	private static ServiceAreaIndex readServiceAreas(String drtServiceAreaShapeFile, double buffer) {
 		ShpOptions shp = new ShpOptions(drtServiceAreaShapeFile, null, null);
 		List<Geometry> serviceAreas = new ArrayList<>();
 		for (SimpleFeature ft : shp.readFeatures()) {
@@ -158,6 +152,14 @@ public class OpenBerlinDrtScenario extends OpenBerlinScenario {
 			serviceAreas.add(geom.buffer(buffer));
 		}
 
+		return new ServiceAreaIndex(serviceAreas);
+	}
+
+	private static void addDRTMode(Scenario scenario, String drtNetworkMode, String drtServiceAreaShapeFile, double buffer) {
+
+		log.info("Adjusting network...");
+
+		ServiceAreaIndex serviceAreas = readServiceAreas(drtServiceAreaShapeFile, buffer);
 
 		int counter = 0;
 		int counterInside = 0;
@@ -167,8 +169,7 @@ public class OpenBerlinDrtScenario extends OpenBerlinScenario {
 				log.info("link #{}", counter);
 			counter++;
 			if (link.getAllowedModes().contains(TransportMode.car)) {
-				if (serviceAreas.stream().anyMatch(geom -> geom.contains(MGC.coord2Point(link.getFromNode().getCoord())) ||
-					geom.contains(MGC.coord2Point(link.getToNode().getCoord())))) {
+				if (serviceAreas.contains(link.getFromNode().getCoord()) || serviceAreas.contains(link.getToNode().getCoord())) {
 
 					Set<String> allowedModes = new HashSet<>(link.getAllowedModes());
 
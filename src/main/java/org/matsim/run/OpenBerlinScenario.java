@@ -90,7 +90,11 @@ public class OpenBerlinScenario extends MATSimApplication {
 
 		// overwrite ride scoring params with values derived from car
 		RideScoringParamsFromCarParams.setRideScoringParamsBasedOnCarParams(config.scoring(), 1.0);
-		Activities.addScoringParams(config, true);
+		// Split activity types are only created on demand if explicitly enabled, otherwise they would be missing in the output config
+		boolean lazy = ConfigUtils.hasModule(config, AdvancedScoringConfigGroup.class) &&
+			ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class).lazyActivityParams;
+
+		Activities.addScoringParams(config, true, lazy);
 
 		// Required for all calibration strategies
 		for (String subpopulation : List.of("person", "freight", "goodsTraffic", "commercialPersonTraffic", "commercialPersonTraffic_service")) {
@@ -0,0 +1,161 @@
+package org.matsim.run;
+
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Point-in-polygon index for service areas. The bounding box of all areas is covered by a uniform raster,
+ * where each cell is known to be completely inside, completely outside or on the boundary of the areas.
+ * Only points in boundary cells are checked against the prepared geometries.
+ * <p>
+ * Results are the same as checking whether any of the geometries {@link Geometry#contains(Geometry) contains} the point.
+ */
+public final class ServiceAreaIndex {
+
+	/**
+	 * Number of cells along the longer side of the bounding box, if no cell size is given.
+	 */
+	private static final int DEFAULT_RESOLUTION = 256;
+
+	private static final byte OUTSIDE = 0;
+	private static final byte INSIDE = 1;
+	private static final byte BOUNDARY = 2;
+
+	private final GeometryFactory factory = new GeometryFactory();
+	private final STRtree index = new STRtree();
+	private final int size;
+
+	private final Envelope bounds;
+	private final double cellSize;
+	private final int nx;
+	private final int ny;
+	private final byte[] cells;
+
+	/**
+	 * Create an index with a cell size chosen from the extent of the geometries.
+	 */
+	public ServiceAreaIndex(Collection<? extends Geometry> geometries) {
+		this(geometries, defaultCellSize(geometries));
+	}
+
+	/**
+	 * Create an index using the given cell size, in units of the coordinate system.
+	 */
+	public ServiceAreaIndex(Collection<? extends Geometry> geometries, double cellSize) {
+
+		if (!(cellSize > 0))
+			throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+
+		this.bounds = new Envelope();
+		for (Geometry geom : geometries) {
+			if (geom.isEmpty())
+				continue;
+
+			index.insert(geom.getEnvelopeInternal(), PreparedGeometryFactory.prepare(geom));
+			bounds.expandToInclude(geom.getEnvelopeInternal());
+		}
+
+		this.size = index.size();
+		this.cellSize = cellSize;
+
+		if (bounds.isNull()) {
+			this.nx = 0;
+			this.ny = 0;
+			this.cells = new byte[0];
+			return;
+		}
+
+		this.nx = Math.max(1, (int) Math.ceil(bounds.getWidth() / cellSize));
+		this.ny = Math.max(1, (int) Math.ceil(bounds.getHeight() / cellSize));
+		this.cells = new byte[Math.multiplyExact(nx, ny)];
+
+		// Cells are enlarged slightly, so that rounding in the cell lookup can not place a point outside its cell
+		double eps = cellSize * 1e-9;
+
+		for (int y = 0; y < ny; y++) {
+			for (int x = 0; x < nx; x++) {
+				double x0 = bounds.getMinX() + x * cellSize;
+				double y0 = bounds.getMinY() + y * cellSize;
+				Envelope env = new Envelope(x0 - eps, x0 + cellSize + eps, y0 - eps, y0 + cellSize + eps);
+				cells[y * nx + x] = classify(env);
+			}
+		}
+	}
+
+	private static double defaultCellSize(Collection<? extends Geometry> geometries) {
+		Envelope env = new Envelope();
+		geometries.forEach(g -> env.expandToInclude(g.getEnvelopeInternal()));
+
+		double extent = env.isNull() ? 0 : Math.max(env.getWidth(), env.getHeight());
+		return extent > 0 ? extent / DEFAULT_RESOLUTION : 1;
+	}
+
+	private byte classify(Envelope env) {
+
+		@SuppressWarnings("unchecked")
+		List<PreparedGeometry> candidates = index.query(env);
+		if (candidates.isEmpty())
+			return OUTSIDE;
+
+		Geometry cell = factory.toGeometry(env);
+		boolean intersects = false;
+
+		for (PreparedGeometry geom : candidates) {
+			// All points of the cell are in the interior
+			if (geom.containsProperly(cell))
+				return INSIDE;
+
+			if (!intersects && geom.intersects(cell))
+				intersects = true;
+		}
+
+		return intersects ? BOUNDARY : OUTSIDE;
+	}
+
+	/**
+	 * Number of indexed geometries.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether any of the geometries contains the point.
+	 */
+	public boolean contains(double x, double y) {
+
+		if (cells.length == 0 || !bounds.contains(x, y))
+			return false;
+
+		int cx = Math.min(nx - 1, (int) ((x - bounds.getMinX()) / cellSize));
+		int cy = Math.min(ny - 1, (int) ((y - bounds.getMinY()) / cellSize));
+
+		byte cell = cells[cy * nx + cx];
+		if (cell != BOUNDARY)
+			return cell == INSIDE;
+
+		Point p = factory.createPoint(new Coordinate(x, y));
+
+		@SuppressWarnings("unchecked")
+		List<PreparedGeometry> candidates = index.query(p.getEnvelopeInternal());
+		for (PreparedGeometry geom : candidates) {
+			if (geom.contains(p))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Whether any of the geometries contains the coordinate.
+	 */
+	public boolean contains(Coord coord) {
+		return contains(coord.getX(), coord.getY());
+	}
+}
@@ -37,6 +37,19 @@ public final class AdvancedScoringConfigGroup extends ReflectiveConfigGroup {
 	@Comment("Distribution of the random error terms.")
 	public VariationType pseudoRandomDistribution = VariationType.normal;
 
+	@Parameter
+	@Comment("Generator for the pseudo random errors. 'counterBased' derives errors directly from the seeds without allocation.")
+	public PseudoRandomGenerator pseudoRandomGenerator = PseudoRandomGenerator.xoRoShiRo;
+
+	@Parameter
+	@Comment("Collect the person specific parameters and write them to person_util_variations.csv after the first iteration.")
+	public boolean writeUtilVariations = true;
+
+	@Parameter
+	@Comment("Create activity params of types split by duration, e.g. work_3600, on demand during scoring instead of adding them to the config." +
+		" Reduces startup time and memory, but these params are then missing in the output config.")
+	public boolean lazyActivityParams = false;
+
 	private final List<ScoringParameters> scoringParameters = new ArrayList<>();
 
 	public AdvancedScoringConfigGroup() {
@@ -94,6 +107,13 @@ public final class AdvancedScoringConfigGroup extends ReflectiveConfigGroup {
 		fixed, normal, truncatedNormal, gumbel
 	}
 
+	/**
+	 * Random number generator used for pseudo random errors.
+	 */
+	public enum PseudoRandomGenerator {
+		xoRoShiRo, counterBased
+	}
+
 	/**
 	 * Scoring parameters for a specific group of agents.
 	 * This group allows arbitrary attributes to be defined, which are matched against person attributes.
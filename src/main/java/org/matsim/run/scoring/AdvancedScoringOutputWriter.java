@@ -5,6 +5,8 @@ import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.IterationEndsEvent;
 import org.matsim.core.controler.listener.IterationEndsListener;
@@ -23,6 +25,9 @@ public class AdvancedScoringOutputWriter implements IterationEndsListener {
 	@Inject
 	private ScoringParametersForPerson scoring;
 
+	@Inject
+	private Config config;
+
 	private boolean outputWritten = false;
 
 	@Override
@@ -34,6 +39,9 @@ public class AdvancedScoringOutputWriter implements IterationEndsListener {
 		if (!(scoring instanceof IndividualPersonScoringParameters params))
 			return;
 
+		if (!ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class).writeUtilVariations)
+			return;
+
 		OutputDirectoryHierarchy io = event.getServices().getControlerIO();
 
 		String output = io.getOutputFilename("person_util_variations.csv");
@@ -0,0 +1,72 @@
+package org.matsim.run.scoring;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Stateless, counter-based random numbers. Each sample is a pure function of (seed, key, counter),
+ * which are mixed with the SplitMix64 finalizer. No object is allocated and no warmup is needed.
+ */
+final class CounterBasedRandom {
+
+	/**
+	 * Golden ratio increment used by SplitMix64.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Scale to convert the upper 53 bits to a double in [0, 1).
+	 */
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private static final double TWO_PI = 2 * Math.PI;
+
+	private CounterBasedRandom() {
+	}
+
+	/**
+	 * SplitMix64 finalizer, a bijective 64-bit mixing function.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Random 64 bits for the given seed tuple.
+	 */
+	static long nextLong(long seed, long key, int counter) {
+		return mix(mix(seed ^ mix(key)) + GOLDEN_GAMMA * (counter + 1L));
+	}
+
+	/**
+	 * Uniform double in the open interval (0, 1), i.e. never exactly 0 or 1.
+	 */
+	static double nextOpenDouble(long seed, long key, int counter) {
+		return ((nextLong(seed, key, counter) >>> 11) + 0.5) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Sample from a Gumbel distribution.
+	 *
+	 * @param mu   location parameter
+	 * @param beta scale parameter (must be positive)
+	 */
+	static double sampleGumbel(long seed, long key, double mu, double beta) {
+		double v = nextOpenDouble(seed, key, 0);
+		return mu - FastMath.log(-FastMath.log(v)) * beta;
+	}
+
+	/**
+	 * Sample from a normal distribution using the Box-Muller transform.
+	 *
+	 * @param mu    mean
+	 * @param sigma standard deviation
+	 */
+	static double sampleNormal(long seed, long key, double mu, double sigma) {
+		double u1 = nextOpenDouble(seed, key, 0);
+		double u2 = nextOpenDouble(seed, key, 1);
+		return mu + FastMath.sqrt(-2 * FastMath.log(u1)) * FastMath.cos(TWO_PI * u2) * sigma;
+	}
+
+}
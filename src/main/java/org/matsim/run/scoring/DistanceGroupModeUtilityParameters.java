@@ -9,20 +9,37 @@ import org.matsim.core.scoring.functions.ModeUtilityParameters;
  */
 public class DistanceGroupModeUtilityParameters extends ModeUtilityParameters {
 
-	private final DistanceGroup[] groups;
+	/**
+	 * Compiled distance utility, null if there are no deltas.
+	 */
+	private final DistanceUtilityFunction distUtility;
 
 	/**
 	 * Constructor which copies the base params from given modeParams.
 	 */
 	DistanceGroupModeUtilityParameters(ModeUtilityParameters modeParams, DeltaBuilder delta, DistanceGroup[] groups) {
+		this(modeParams, delta.constant, delta.dailyUtilityConstant, groups);
+	}
+
+	/**
+	 * Constructor which copies the base params from given modeParams and adds the deltas.
+	 */
+	DistanceGroupModeUtilityParameters(ModeUtilityParameters modeParams, double deltaConstant, double deltaDailyUtilityConstant, DistanceGroup[] groups) {
+		this(modeParams, deltaConstant, deltaDailyUtilityConstant, DistanceUtilityFunction.of(groups));
+	}
+
+	/**
+	 * Constructor which copies the base params from given modeParams and adds the deltas. The distance utility is shared and not copied.
+	 */
+	DistanceGroupModeUtilityParameters(ModeUtilityParameters modeParams, double deltaConstant, double deltaDailyUtilityConstant, DistanceUtilityFunction distUtility) {
 		super(modeParams.marginalUtilityOfTraveling_s,
 			modeParams.marginalUtilityOfDistance_m,
 			modeParams.monetaryDistanceCostRate,
-			modeParams.constant + delta.constant,
+			modeParams.constant + deltaConstant,
 			modeParams.dailyMoneyConstant,
-			modeParams.dailyUtilityConstant + delta.dailyUtilityConstant);
+			modeParams.dailyUtilityConstant + deltaDailyUtilityConstant);
 
-		this.groups = groups;
+		this.distUtility = distUtility;
 	}
 
 	/**
@@ -30,18 +47,10 @@ public class DistanceGroupModeUtilityParameters extends ModeUtilityParameters {
 	 */
 	public double calcUtilityDistDelta(double dist) {
 
-		if (groups == null)
+		if (distUtility == null)
 			return 0;
 
-		DistanceGroup group = groups[0];
-		for (int i = 1; i < groups.length; i++) {
-			if (groups[i].dist() > dist)
-				break;
-
-			group = groups[i];
-		}
-
-		return group.constant() + group.utilPerM() * (dist - group.dist());
+		return distUtility.calc(dist);
 	}
 
 	static final class DeltaBuilder {
@@ -0,0 +1,81 @@
+package org.matsim.run.scoring;
+
+/**
+ * Piecewise linear distance utility compiled from {@link DistanceGroup}s.
+ * Breakpoints, utilities at the breakpoints and slopes are stored in flat arrays, so that any distance is evaluated with one binary search and without allocation.
+ * Instances are immutable and shared between all persons with the same distance utilities.
+ */
+final class DistanceUtilityFunction {
+
+	private final DistanceGroup[] groups;
+
+	/**
+	 * Sorted lower bounds of the distance groups.
+	 */
+	private final double[] dists;
+
+	/**
+	 * Utility at each breakpoint.
+	 */
+	private final double[] constants;
+
+	/**
+	 * Slope after each breakpoint.
+	 */
+	private final double[] slopes;
+
+	private DistanceUtilityFunction(DistanceGroup[] groups) {
+		this.groups = groups;
+		this.dists = new double[groups.length];
+		this.constants = new double[groups.length];
+		this.slopes = new double[groups.length];
+
+		for (int i = 0; i < groups.length; i++) {
+			if (i > 0 && groups[i].dist() < groups[i - 1].dist())
+				throw new IllegalArgumentException("Distance groups must be sorted by distance.");
+
+			dists[i] = groups[i].dist();
+			constants[i] = groups[i].constant();
+			slopes[i] = groups[i].utilPerM();
+		}
+	}
+
+	/**
+	 * Compile the function for given distance groups.
+	 *
+	 * @return null if there are no groups
+	 */
+	static DistanceUtilityFunction of(DistanceGroup[] groups) {
+		if (groups == null || groups.length == 0)
+			return null;
+
+		return new DistanceUtilityFunction(groups);
+	}
+
+	/**
+	 * Distance groups this function was created from. The array must not be modified.
+	 */
+	DistanceGroup[] groups() {
+		return groups;
+	}
+
+	/**
+	 * Calculate the utility for given distance. Distances below the first breakpoint are extrapolated with the first group.
+	 */
+	double calc(double dist) {
+
+		// Find the last breakpoint <= dist, same as the last group when scanning in ascending order
+		int lo = 1;
+		int hi = dists.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (dists[mid] > dist)
+				hi = mid - 1;
+			else
+				lo = mid + 1;
+		}
+
+		int i = lo - 1;
+		return constants[i] + slopes[i] * (dist - dists[i]);
+	}
+}
@@ -1,6 +1,5 @@
 package org.matsim.run.scoring;
 
-import com.google.common.base.Joiner;
 import com.google.common.primitives.Longs;
 import com.google.inject.Inject;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
@@ -38,6 +37,9 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Scoring parameters for {@link AdvancedScoringConfigGroup}. This makes use of the standard scoring and adds persons specific differences.
+ * Activity and mode parameters without differences are shared by all persons of a subpopulation.
+ * Mode parameters with the same non-random differences are shared as well. Persons without an income dependent
+ * marginal utility of money and with the same non-random differences share the same {@link ScoringParameters} instance.
  */
 public class IndividualPersonScoringParameters implements ScoringParametersForPerson {
 
@@ -47,21 +49,21 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 	 */
 	final Set<String> header = new LinkedHashSet<>();
 	/**
-	 * This map contains debug information to be written out after first iteration.
+	 * This map contains debug information to be written out after first iteration. Only filled if {@link AdvancedScoringConfigGroup#writeUtilVariations} is enabled.
 	 */
 	final Map<Id<Person>, Object2DoubleMap<String>> info = new ConcurrentHashMap<>();
 	/**
-	 * Cache instances of {@link ActivityUtilityParameters} for each subpopulation.
+	 * Shared parameters for each subpopulation.
 	 */
-	private final Map<String, Map<String, ActivityUtilityParameters>> actUtils = new ConcurrentHashMap<>();
+	private final Map<String, Template> templates = new ConcurrentHashMap<>();
 	/**
 	 * Cache instances of {@link ScoringParameters} for each person.
 	 */
 	private final IdMap<Person, ScoringParameters> cache;
 	/**
-	 * Cache and reuse distance group arrays.
+	 * Cache and reuse compiled distance utilities.
 	 */
-	private final Map<DoubleList, DistanceGroup[]> distGroups = new ConcurrentHashMap<>();
+	private final Map<DoubleList, DistanceUtilityFunction> distGroups = new ConcurrentHashMap<>();
 
 	/**
 	 * Categories from config group.
@@ -180,41 +182,16 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 		return this.cache.computeIfAbsent(person.getId(), id -> {
 
 			String subpopulation = PopulationUtils.getSubpopulation(person);
-			ScoringConfigGroup.ScoringParameterSet scoringParameters = basicScoring.getScoringParameters(subpopulation);
-
-			// Activity params can be reused per subpopulation
-			Map<String, ActivityUtilityParameters> activityParams = actUtils.computeIfAbsent(subpopulation, k -> {
-				Map<String, ActivityUtilityParameters> ap = new TreeMap<>();
-				for (ScoringConfigGroup.ActivityParams params : scoringParameters.getActivityParams()) {
-					ActivityUtilityParameters.Builder factory = new ActivityUtilityParameters.Builder(params);
-					ap.put(params.getActivityType(), factory.build());
-				}
-
-				// The code to add this activity type is always copied between different scoring implementations
-				// it might not be actually needed anymore (because default staging activities are also added elsewhere)
-				// but it's not clear if it's safe to remove it.
-				if (transitConfig.isUseTransit()) {
-					ScoringConfigGroup.ActivityParams transitActivityParams = new ScoringConfigGroup.ActivityParams(PtConstants.TRANSIT_ACTIVITY_TYPE);
-					transitActivityParams.setTypicalDuration(120.0);
-					transitActivityParams.setOpeningTime(0.);
-					transitActivityParams.setClosingTime(0.);
-					ActivityUtilityParameters.Builder modeParamsBuilder = new ActivityUtilityParameters.Builder(transitActivityParams);
-					modeParamsBuilder.setScoreAtAll(false);
-					ap.put(PtConstants.TRANSIT_ACTIVITY_TYPE, modeParamsBuilder.build());
-				}
+			Template template = templates.computeIfAbsent(subpopulation == null ? "" : subpopulation, k -> createTemplate(subpopulation));
 
-				return ap;
-			});
-
-			ScoringParameters.Builder builder = new ScoringParameters.Builder(basicScoring,
-				scoringParameters, activityParams, scenario.getConfig().scenario());
+			double marginalUtilityOfMoney = Double.NaN;
 
 			Double personalIncome = PersonUtils.getIncome(person);
 			// Income dependent scoring might be disabled
 			if (!Double.isNaN(globalAvgIncome) && personalIncome != null) {
 				if (personalIncome != 0) {
-					builder.setMarginalUtilityOfMoney(scoringParameters.getMarginalUtilityOfMoney() *
-						Math.pow(globalAvgIncome / personalIncome, this.scoring.incomeExponent));
+					marginalUtilityOfMoney = template.set.getMarginalUtilityOfMoney() *
+						Math.pow(globalAvgIncome / personalIncome, this.scoring.incomeExponent);
 				} else {
 					log.warn("You have set income to {} for person {}. This is invalid and gets ignored.Instead, the marginalUtilityOfMoney is derived from the subpopulation's scoring parameters.", personalIncome, person);
 				}
@@ -222,6 +199,9 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 
 			Map<String, DistanceGroupModeUtilityParameters.DeltaBuilder> deltaParams = new HashMap<>();
 
+			// Random deltas are different for each person and are not worth sharing
+			boolean random = false;
+
 			this.rnd.get().setSeed(person);
 
 			for (AdvancedScoringConfigGroup.ScoringParameters parameter : scoring.getScoringParameters()) {
@@ -234,65 +214,158 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 
 						b.addUtilsDistance(mode.getValue());
 						addDeltaParams(this.rnd.get(), b, mode.getValue());
+
+						random |= isRandom(mode.getValue());
 					}
 				}
 			}
 
-			Object attr = person.getAttributes().getAttribute("utilDelta");
-			Object2DoubleMap<String> existing = new Object2DoubleOpenHashMap<>();
-			if (attr instanceof String s) {
-				String[] split = s.split("\\|");
-				for (String s1 : split) {
-					String[] split1 = s1.split("=");
-					existing.put(split1[0], Double.parseDouble(split1[1]));
-				}
-			}
+			UtilDelta stored = UtilDelta.fromAttribute(person.getAttributes().getAttribute(UtilDelta.ATTRIBUTE));
+			Object2DoubleMap<String> existing = stored.toMap();
+
+			Map<String, ModeDelta> modes = new HashMap<>();
 
 			for (Map.Entry<String, DistanceGroupModeUtilityParameters.DeltaBuilder> mode : deltaParams.entrySet()) {
-				ModeUtilityParameters params = builder.getModeParameters(mode.getKey());
 				DistanceGroupModeUtilityParameters.DeltaBuilder delta = mode.getValue();
 
-				// These arrays are re-used if possible
-				DistanceGroup[] groups = distGroups.computeIfAbsent(delta.getPerDistGroup(), k -> calcDistanceGroups(scoring.distGroups, k));
+				// These functions are re-used if possible
+				DistanceUtilityFunction distUtility = distGroups.computeIfAbsent(delta.getPerDistGroup(),
+					k -> DistanceUtilityFunction.of(calcDistanceGroups(scoring.distGroups, k)));
 
 				// This may overwrite the preferences with the one stored
 				loadPreferences(mode.getKey(), delta, person, existing);
 
-				DistanceGroupModeUtilityParameters p = new DistanceGroupModeUtilityParameters(params, delta, groups);
-				builder.setModeParameters(mode.getKey(), p);
+				modes.put(mode.getKey(), new ModeDelta(delta.constant, delta.dailyUtilityConstant, distUtility));
 
-				// Collect final adjustments information
-				Object2DoubleMap<String> values = info.computeIfAbsent(person.getId(), k -> new Object2DoubleOpenHashMap<>());
-
-				// Write the overall constants, but only if they are different to the base values
-				if (delta.constant != 0) {
-					values.put(mode.getKey() + "_constant", p.constant);
+				// Store the overall constants, but only if they are different to the base values
+				if (delta.constant != 0)
 					existing.put(mode.getKey() + "_constant", delta.constant);
-				}
 
-				if (delta.dailyUtilityConstant != 0) {
-					values.put(mode.getKey() + "_dailyConstant", p.dailyUtilityConstant);
+				if (delta.dailyUtilityConstant != 0)
 					existing.put(mode.getKey() + "_dailyConstant", delta.dailyUtilityConstant);
-				}
-
-				if (groups != null) {
-					for (DistanceGroup group : groups) {
-						values.put("%s_dist_%.0f".formatted(mode.getKey(), group.dist()), group.utilPerM());
-					}
-				}
-
-				header.addAll(values.keySet());
 			}
 
 			if (!existing.isEmpty()) {
-				Joiner.MapJoiner mapJoiner = Joiner.on("|").withKeyValueSeparator("=");
-				person.getAttributes().putAttribute("utilDelta", mapJoiner.join(existing));
+				// Stored as plain string, so that any population reader keeps it. Persons with the same deltas share the string instance.
+				person.getAttributes().putAttribute(UtilDelta.ATTRIBUTE, UtilDelta.of(existing).toString());
 			}
 
-			return builder.build();
+			// Loaded preferences are usually random as well
+			random |= scoring.loadPreferences != AdvancedScoringConfigGroup.LoadPreferences.none && !stored.isEmpty();
+
+			// Persons with the same deltas share the parameters, the income dependent utility of money is different for almost every person
+			PersonDelta delta = new PersonDelta(marginalUtilityOfMoney, modes);
+			ScoringParameters params;
+			if (random)
+				params = build(template, delta, false);
+			else if (Double.isNaN(marginalUtilityOfMoney))
+				params = template.shared.computeIfAbsent(delta, k -> build(template, k, true));
+			else
+				params = build(template, delta, true);
+
+			if (scoring.writeUtilVariations) {
+				for (Map.Entry<String, ModeDelta> mode : modes.entrySet()) {
+					collectInfo(person, mode.getKey(), mode.getValue(), params.modeParams.get(mode.getKey()));
+				}
+			}
+
+			return params;
 		});
 	}
 
+	/**
+	 * Create the parameters shared by all persons of a subpopulation.
+	 */
+	private Template createTemplate(String subpopulation) {
+
+		ScoringConfigGroup.ScoringParameterSet set = basicScoring.getScoringParameters(subpopulation);
+
+		Map<String, ActivityUtilityParameters> ap = new TreeMap<>();
+		for (ScoringConfigGroup.ActivityParams params : set.getActivityParams()) {
+			ActivityUtilityParameters.Builder factory = new ActivityUtilityParameters.Builder(params);
+			ap.put(params.getActivityType(), factory.build());
+		}
+
+		// The code to add this activity type is always copied between different scoring implementations
+		// it might not be actually needed anymore (because default staging activities are also added elsewhere)
+		// but it's not clear if it's safe to remove it.
+		if (transitConfig.isUseTransit()) {
+			ScoringConfigGroup.ActivityParams transitActivityParams = new ScoringConfigGroup.ActivityParams(PtConstants.TRANSIT_ACTIVITY_TYPE);
+			transitActivityParams.setTypicalDuration(120.0);
+			transitActivityParams.setOpeningTime(0.);
+			transitActivityParams.setClosingTime(0.);
+			ActivityUtilityParameters.Builder modeParamsBuilder = new ActivityUtilityParameters.Builder(transitActivityParams);
+			modeParamsBuilder.setScoreAtAll(false);
+			ap.put(PtConstants.TRANSIT_ACTIVITY_TYPE, modeParamsBuilder.build());
+		}
+
+		// Split activity types are created on demand, if they are not present in the config
+		Map<String, ActivityUtilityParameters> activityParams = new SplitActivityUtilityParameters(ap);
+
+		ScoringParameters.Builder builder = new ScoringParameters.Builder(basicScoring, set, activityParams, scenario.getConfig().scenario());
+
+		Map<String, ModeUtilityParameters> modeParams = new HashMap<>();
+		for (String mode : set.getModes().keySet()) {
+			modeParams.put(mode, builder.getModeParameters(mode));
+		}
+
+		return new Template(set, activityParams, modeParams, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * Build parameters from the template and person specific deltas.
+	 *
+	 * @param shareModes whether the mode parameters may be shared with other persons having the same deltas
+	 */
+	private ScoringParameters build(Template template, PersonDelta delta, boolean shareModes) {
+
+		ScoringParameters.Builder builder = new ScoringParameters.Builder(basicScoring,
+			template.set, template.activityParams, scenario.getConfig().scenario());
+
+		if (!Double.isNaN(delta.marginalUtilityOfMoney))
+			builder.setMarginalUtilityOfMoney(delta.marginalUtilityOfMoney);
+
+		// Mode parameters without deltas are the same instances for all persons
+		template.modeParams.forEach(builder::setModeParameters);
+
+		for (Map.Entry<String, ModeDelta> mode : delta.modes.entrySet()) {
+			ModeUtilityParameters base = template.modeParams.get(mode.getKey());
+			ModeDelta d = mode.getValue();
+
+			ModeUtilityParameters p = shareModes ?
+				template.sharedModes.computeIfAbsent(mode.getKey(), k -> new ConcurrentHashMap<>())
+					.computeIfAbsent(d, k -> new DistanceGroupModeUtilityParameters(base, k.constant, k.dailyUtilityConstant, k.distUtility)) :
+				new DistanceGroupModeUtilityParameters(base, d.constant, d.dailyUtilityConstant, d.distUtility);
+
+			builder.setModeParameters(mode.getKey(), p);
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Collect final adjustments information.
+	 */
+	private void collectInfo(Person person, String mode, ModeDelta delta, ModeUtilityParameters p) {
+
+		Object2DoubleMap<String> values = info.computeIfAbsent(person.getId(), k -> new Object2DoubleOpenHashMap<>());
+
+		// Write the overall constants, but only if they are different to the base values
+		if (delta.constant != 0)
+			values.put(mode + "_constant", p.constant);
+
+		if (delta.dailyUtilityConstant != 0)
+			values.put(mode + "_dailyConstant", p.dailyUtilityConstant);
+
+		if (delta.distUtility != null) {
+			for (DistanceGroup group : delta.distUtility.groups()) {
+				values.put("%s_dist_%.0f".formatted(mode, group.dist()), group.utilPerM());
+			}
+		}
+
+		header.addAll(values.keySet());
+	}
+
 	private void loadPreferences(String mode, DistanceGroupModeUtilityParameters.DeltaBuilder delta, Person person, Object2DoubleMap<String> existing) {
 
 		boolean isRefPerson = person.getAttributes().getAttribute(TripAnalysis.ATTR_REF_ID) != null;
@@ -318,6 +391,11 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 			delta.dailyUtilityConstant = existing.getDouble(mode + "_dailyConstant");
 	}
 
+	private static boolean isRandom(AdvancedScoringConfigGroup.ModeParams params) {
+		return (params.deltaConstant != 0 && params.varConstant != AdvancedScoringConfigGroup.VariationType.fixed) ||
+			(params.deltaDailyConstant != 0 && params.varDailyConstant != AdvancedScoringConfigGroup.VariationType.fixed);
+	}
+
 	/**
 	 * Compute or retrieve delta params for person.
 	 */
@@ -341,6 +419,31 @@ public class IndividualPersonScoringParameters implements ScoringParametersForPe
 		}
 	}
 
+	/**
+	 * Parameters shared by all persons of a subpopulation.
+	 *
+	 * @param shared      complete parameters for each distinct combination of person specific deltas, which are not random and not income dependent
+	 * @param sharedModes mode parameters for each mode and distinct non-random delta
+	 */
+	private record Template(ScoringConfigGroup.ScoringParameterSet set, Map<String, ActivityUtilityParameters> activityParams,
+							Map<String, ModeUtilityParameters> modeParams, Map<PersonDelta, ScoringParameters> shared,
+							Map<String, Map<ModeDelta, ModeUtilityParameters>> sharedModes) {
+	}
+
+	/**
+	 * Person specific deltas to the subpopulation template.
+	 *
+	 * @param marginalUtilityOfMoney income dependent value, NaN if the one of the subpopulation is used
+	 */
+	private record PersonDelta(double marginalUtilityOfMoney, Map<String, ModeDelta> modes) {
+	}
+
+	/**
+	 * Deltas for one mode. The distance utilities are cached instances and are compared by identity.
+	 */
+	private record ModeDelta(double constant, double dailyUtilityConstant, DistanceUtilityFunction distUtility) {
+	}
+
 	/**
 	 * Thread-local context for random number generation. This makes generation thread-safe and consistent independently of threads and order of persons.
 	 */
@@ -28,12 +28,15 @@ public final class PseudoRandomScorer {
 	private final long seed;
 	private final double scale;
 	private final AdvancedScoringConfigGroup.VariationType distribution;
+	private final AdvancedScoringConfigGroup.PseudoRandomGenerator generator;
 
 	@Inject
 	public PseudoRandomScorer(PseudoRandomTripError tripScore, Config config) {
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class);
 		this.tripScore = tripScore;
-		this.scale = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class).pseudoRamdomScale;
-		this.distribution = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class).pseudoRandomDistribution;
+		this.scale = scoring.pseudoRamdomScale;
+		this.distribution = scoring.pseudoRandomDistribution;
+		this.generator = scoring.pseudoRandomGenerator;
 
 		SplittableRandom rnd = new SplittableRandom(config.global().getRandomSeed());
 		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
@@ -54,6 +57,14 @@ public final class PseudoRandomScorer {
 
 		long tripSeed = tripScore.getSeed(personId, mainMode, trip);
 
+		if (generator == AdvancedScoringConfigGroup.PseudoRandomGenerator.counterBased) {
+			return switch (distribution) {
+				case gumbel -> CounterBasedRandom.sampleGumbel(seed, tripSeed, 0, scale);
+				case normal -> CounterBasedRandom.sampleNormal(seed, tripSeed, 0, scale);
+				default -> throw new IllegalStateException("Unsupported distribution: " + distribution);
+			};
+		}
+
 		// Need to create a new instance because reusing them will also create a lot of intermediate arrays
 		XoRoShiRo128PlusPlus rng = new XoRoShiRo128PlusPlus(seed, tripSeed);
 		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
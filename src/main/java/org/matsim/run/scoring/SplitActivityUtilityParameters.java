@@ -0,0 +1,119 @@
+package org.matsim.run.scoring;
+
+import org.matsim.core.scoring.functions.ActivityUtilityParameters;
+import org.matsim.run.Activities;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Activity utility parameters, where types split by typical duration, e.g. {@code work_3600}, are created on first lookup.
+ * The result is the same as with all split types added to the config by {@link Activities#addScoringParams(org.matsim.core.config.Config, boolean)}.
+ * <p>
+ * Split types are only resolved if their base type is present. Created parameters are cached in one table per base type, indexed by duration.
+ * This class is thread-safe, but not modifiable.
+ */
+final class SplitActivityUtilityParameters extends AbstractMap<String, ActivityUtilityParameters> {
+
+	private static final Map<String, Activities> BASE_TYPES = new HashMap<>();
+
+	static {
+		for (Activities value : Activities.values()) {
+			BASE_TYPES.put(value.name(), value);
+		}
+	}
+
+	private final Map<String, ActivityUtilityParameters> explicit;
+
+	/**
+	 * Split parameters for each base type, indexed by {@code duration / SPLIT_STEP - 1}.
+	 */
+	private final AtomicReferenceArray<ActivityUtilityParameters>[] tables;
+
+	@SuppressWarnings("unchecked")
+	SplitActivityUtilityParameters(Map<String, ActivityUtilityParameters> explicit) {
+		this.explicit = explicit;
+		this.tables = new AtomicReferenceArray[Activities.values().length];
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = new AtomicReferenceArray<>(Activities.SPLIT_MAX / Activities.SPLIT_STEP);
+		}
+	}
+
+	/**
+	 * Parse a positive decimal number without leading zeros.
+	 *
+	 * @return -1 if the string is not such a number
+	 */
+	private static long parseDuration(String type, int start) {
+
+		int n = type.length() - start;
+		if (n <= 0 || n > 9 || type.charAt(start) == '0')
+			return -1;
+
+		long v = 0;
+		for (int i = start; i < type.length(); i++) {
+			char c = type.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+
+			v = v * 10 + (c - '0');
+		}
+
+		return v;
+	}
+
+	@Override
+	public ActivityUtilityParameters get(Object key) {
+
+		ActivityUtilityParameters params = explicit.get(key);
+		if (params != null || !(key instanceof String type))
+			return params;
+
+		int idx = type.lastIndexOf('_');
+		if (idx <= 0)
+			return null;
+
+		Activities base = BASE_TYPES.get(type.substring(0, idx));
+		if (base == null || !explicit.containsKey(base.name()))
+			return null;
+
+		long duration = parseDuration(type, idx + 1);
+		if (duration < Activities.SPLIT_STEP || duration > Activities.SPLIT_MAX || duration % Activities.SPLIT_STEP != 0)
+			return null;
+
+		AtomicReferenceArray<ActivityUtilityParameters> table = tables[base.ordinal()];
+		int i = (int) (duration / Activities.SPLIT_STEP) - 1;
+
+		params = table.get(i);
+		if (params == null) {
+			table.compareAndSet(i, null, new ActivityUtilityParameters.Builder(base.createSplitParams(duration)).build());
+			params = table.get(i);
+		}
+
+		return params;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Contains the explicitly given and the split types that have been created so far.
+	 */
+	@Override
+	public Set<Entry<String, ActivityUtilityParameters>> entrySet() {
+
+		Map<String, ActivityUtilityParameters> all = new LinkedHashMap<>(explicit);
+		for (Activities value : Activities.values()) {
+			AtomicReferenceArray<ActivityUtilityParameters> table = tables[value.ordinal()];
+			for (int i = 0; i < table.length(); i++) {
+				ActivityUtilityParameters params = table.get(i);
+				if (params != null)
+					all.put(value.name() + "_" + (long) (i + 1) * Activities.SPLIT_STEP, params);
+			}
+		}
+
+		return Collections.unmodifiableMap(all).entrySet();
+	}
+}
@@ -0,0 +1,213 @@
+package org.matsim.run.scoring;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Person specific utility deltas, such as {@code car_constant}, stored in the person attribute {@link #ATTRIBUTE}.
+ * Values are stored as array, indexed by a global dictionary of all keys. Instances are immutable and interned,
+ * so that persons with the same deltas share one instance.
+ * <p>
+ * The attribute itself is a plain string in the format {@code key=value|key=value}, so that it is kept by every population reader.
+ * The string is created once per instance, i.e. persons with the same deltas also share the attribute value.
+ */
+public final class UtilDelta {
+
+	/**
+	 * Name of the person attribute.
+	 */
+	public static final String ATTRIBUTE = "utilDelta";
+
+	public static final UtilDelta EMPTY = new UtilDelta(new double[0]);
+
+	private static final Map<String, Integer> KEYS = new ConcurrentHashMap<>();
+
+	/**
+	 * Key for each index. Only replaced as a whole while holding the lock on {@link #KEYS}, before the new key is published.
+	 */
+	private static volatile String[] names = new String[0];
+
+	/**
+	 * Strong references, so that the shared attribute strings do not depend on garbage collection.
+	 * The number of distinct deltas is bounded by the number of persons.
+	 */
+	private static final Interner<UtilDelta> INTERNER = Interners.newStrongInterner();
+
+	/**
+	 * Values by key index, NaN if not present.
+	 */
+	private final double[] values;
+	private final int hash;
+
+	/**
+	 * String representation, created on first use.
+	 */
+	private String string;
+
+	private UtilDelta(double[] values) {
+		this.values = values;
+		this.hash = Arrays.hashCode(values);
+	}
+
+	private static int index(String key) {
+		Integer idx = KEYS.get(key);
+		if (idx != null)
+			return idx;
+
+		// New keys are rare, the lock is only needed to assign consecutive indices
+		synchronized (KEYS) {
+			idx = KEYS.get(key);
+			if (idx == null) {
+				idx = names.length;
+				String[] n = Arrays.copyOf(names, idx + 1);
+				n[idx] = key;
+				names = n;
+				KEYS.put(key, idx);
+			}
+			return idx;
+		}
+	}
+
+	private static int lookup(String key) {
+		return KEYS.getOrDefault(key, -1);
+	}
+
+	/**
+	 * Create interned instance from a map of deltas.
+	 */
+	public static UtilDelta of(Object2DoubleMap<String> deltas) {
+
+		if (deltas.isEmpty())
+			return EMPTY;
+
+		int[] idx = new int[deltas.size()];
+		double[] v = new double[deltas.size()];
+		int n = 0;
+		int max = 0;
+		for (Object2DoubleMap.Entry<String> e : deltas.object2DoubleEntrySet()) {
+			idx[n] = index(e.getKey());
+			v[n] = e.getDoubleValue();
+			max = Math.max(max, idx[n++]);
+		}
+
+		double[] values = new double[max + 1];
+		Arrays.fill(values, Double.NaN);
+		for (int i = 0; i < n; i++) {
+			values[idx[i]] = v[i];
+		}
+
+		return INTERNER.intern(new UtilDelta(values));
+	}
+
+	/**
+	 * Parse the string representation.
+	 */
+	public static UtilDelta parse(String value) {
+
+		if (value.isBlank())
+			return EMPTY;
+
+		Object2DoubleMap<String> deltas = new Object2DoubleOpenHashMap<>();
+		for (String entry : value.split("\\|")) {
+			int sep = entry.indexOf('=');
+			if (sep < 0)
+				throw new IllegalArgumentException("Invalid entry in util delta: " + entry);
+
+			deltas.put(entry.substring(0, sep), Double.parseDouble(entry.substring(sep + 1)));
+		}
+
+		return of(deltas);
+	}
+
+	/**
+	 * Retrieve deltas from an attribute value, which may also be given in the string representation.
+	 *
+	 * @return {@link #EMPTY} if the attribute is not present
+	 */
+	public static UtilDelta fromAttribute(Object attr) {
+		if (attr instanceof UtilDelta d)
+			return d;
+		if (attr instanceof String s)
+			return parse(s);
+		if (attr == null)
+			return EMPTY;
+
+		throw new IllegalArgumentException("Unsupported util delta attribute: " + attr.getClass());
+	}
+
+	/**
+	 * Return the delta for a key.
+	 *
+	 * @return NaN if not present
+	 */
+	public double get(String key) {
+		int idx = lookup(key);
+		return idx >= 0 && idx < values.length ? values[idx] : Double.NaN;
+	}
+
+	/**
+	 * Whether no deltas are stored.
+	 */
+	public boolean isEmpty() {
+		for (double v : values) {
+			if (!Double.isNaN(v))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the deltas into a new mutable map.
+	 */
+	public Object2DoubleMap<String> toMap() {
+		String[] n = names;
+		Object2DoubleMap<String> map = new Object2DoubleOpenHashMap<>();
+		for (int i = 0; i < values.length; i++) {
+			if (!Double.isNaN(values[i]))
+				map.put(n[i], values[i]);
+		}
+		return map;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof UtilDelta other)) return false;
+		return hash == other.hash && Arrays.equals(values, other.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		// Benign race, all threads compute the same string
+		String s = string;
+		if (s != null)
+			return s;
+
+		String[] n = names;
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (Double.isNaN(values[i]))
+				continue;
+
+			if (!b.isEmpty())
+				b.append('|');
+
+			b.append(n[i]).append('=').append(values[i]);
+		}
+
+		s = b.toString();
+		string = s;
+		return s;
+	}
+}
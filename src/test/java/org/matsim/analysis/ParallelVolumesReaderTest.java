@@ -0,0 +1,136 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelVolumesReaderTest {
+
+	private static final List<String> MODES = List.of(TransportMode.car, TransportMode.truck, TransportMode.bike);
+
+	@TempDir
+	private Path dir;
+
+	private static Network createNetwork(int n) {
+		Network network = NetworkUtils.createNetwork();
+		Node prev = NetworkUtils.createAndAddNode(network, Id.createNodeId(0), new Coord(0, 0));
+		for (int i = 1; i <= n; i++) {
+			Node node = NetworkUtils.createAndAddNode(network, Id.createNodeId(i), new Coord(i * 100, 0));
+			NetworkUtils.createAndAddLink(network, Id.createLinkId("l&" + i), prev, node, 100, 10, 1000, 1);
+			prev = node;
+		}
+		return network;
+	}
+
+	/**
+	 * Trips of random vehicles over random links, some vehicles change their mode between trips.
+	 */
+	private static String createEvents(Path dir, Network network, long seed) {
+
+		SplittableRandom rnd = new SplittableRandom(seed);
+		List<Id<Link>> links = new ArrayList<>(network.getLinks().keySet());
+		List<Event> events = new ArrayList<>();
+
+		for (int v = 0; v < 200; v++) {
+			Id<Vehicle> vehicle = Id.createVehicleId("v" + v);
+			double time = rnd.nextDouble(0, 20000);
+
+			int trips = rnd.nextInt(1, 5);
+			for (int t = 0; t < trips; t++) {
+				String mode = MODES.get(rnd.nextInt(MODES.size()));
+				events.add(new VehicleEntersTrafficEvent(time, Id.createPersonId(v), links.get(0), vehicle, mode, 1));
+
+				int n = rnd.nextInt(1, 30);
+				for (int i = 0; i < n; i++) {
+					time += rnd.nextInt(1, 2000);
+					events.add(new LinkEnterEvent(time, vehicle, links.get(rnd.nextInt(links.size()))));
+				}
+				time += rnd.nextInt(1, 5000);
+			}
+		}
+
+		events.sort(Comparator.comparingDouble(Event::getTime));
+
+		String path = dir.resolve("events.xml.gz").toString();
+		EventWriterXML writer = new EventWriterXML(path);
+		events.forEach(writer::handleEvent);
+		writer.closeFile();
+
+		return path;
+	}
+
+	@Test
+	void sameAsVolumesAnalyzer() {
+
+		Network network = createNetwork(20);
+		String events = createEvents(dir, network, 1);
+
+		VolumesAnalyzer expected = new VolumesAnalyzer(3600, 86400, network, true);
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler(expected);
+		manager.initProcessing();
+		EventsUtils.readEvents(manager, events);
+		manager.finishProcessing();
+
+		// Small chunks, so that most link entries need to be resolved with previous chunks
+		ParallelVolumesReader reader = new ParallelVolumesReader(3600, 86400, network, null, 4, 17);
+		reader.read(events);
+
+		int total = 0;
+		for (Id<Link> link : network.getLinks().keySet()) {
+			for (String mode : MODES) {
+				int[] exp = expected.getVolumesForLink(link, mode);
+				int[] actual = reader.getVolumesForLink(link, mode);
+
+				if (exp == null) {
+					assertThat(actual == null ? 0 : Arrays.stream(actual).sum()).isEqualTo(0);
+					continue;
+				}
+
+				total += Arrays.stream(exp).sum();
+
+				assertThat(actual).isNotNull();
+				assertThat(Arrays.stream(actual).sum()).isEqualTo(Arrays.stream(exp).sum());
+				assertThat(Arrays.copyOf(actual, 25)).isEqualTo(Arrays.copyOf(exp, 25));
+			}
+		}
+
+		assertThat(total).isPositive();
+	}
+
+	@Test
+	void observedModes() {
+
+		Network network = createNetwork(5);
+		String events = createEvents(dir, network, 2);
+
+		ParallelVolumesReader all = new ParallelVolumesReader(3600, 86400, network, null, 2, 64);
+		all.read(events);
+
+		ParallelVolumesReader car = new ParallelVolumesReader(3600, 86400, network, Set.of(TransportMode.car), 2, 64);
+		car.read(events);
+
+		for (Id<Link> link : network.getLinks().keySet()) {
+			assertThat(car.getVolumesForLink(link, TransportMode.car)).isEqualTo(all.getVolumesForLink(link, TransportMode.car));
+			assertThat(car.getVolumesForLink(link, TransportMode.truck)).isNull();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.matsim.analysis;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TravelTimeComparisonTest {
+
+	/**
+	 * Grid network with links in both directions and random speeds, so that fastest paths are unique.
+	 */
+	static Network createGrid(int size, SplittableRandom rnd) {
+		Network network = NetworkUtils.createNetwork();
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 200, y * 200));
+			}
+		}
+
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					link(network, nodes[x][y], nodes[x + 1][y], rnd);
+					link(network, nodes[x + 1][y], nodes[x][y], rnd);
+				}
+				if (y + 1 < size) {
+					link(network, nodes[x][y], nodes[x][y + 1], rnd);
+					link(network, nodes[x][y + 1], nodes[x][y], rnd);
+				}
+			}
+		}
+
+		return network;
+	}
+
+	private static void link(Network network, Node from, Node to, SplittableRandom rnd) {
+		Id<Link> id = Id.createLinkId(from.getId() + "-" + to.getId());
+		NetworkUtils.createAndAddLink(network, id, from, to, rnd.nextDouble(150, 250), rnd.nextDouble(5, 20), 1000, 1);
+	}
+
+	/**
+	 * Time-dependent travel times, which differ by hour and link.
+	 */
+	static TravelTime congestion() {
+		return (link, time, person, vehicle) -> {
+			double factor = 1 + ((int) (time / 3600) % 5) * 0.1 * (link.getId().index() % 7) / 7;
+			return link.getLength() / link.getFreespeed() * factor;
+		};
+	}
+
+	@Test
+	void sameAsPerRow() {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		Network network = createGrid(12, rnd);
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+
+		int n = 400;
+		Node[] from = new Node[n];
+		Node[] to = new Node[n];
+		double[] departure = new double[n];
+
+		// Few origins and hours, so that there are groups with several destinations
+		for (int i = 0; i < n; i++) {
+			from[i] = nodes.get(rnd.nextInt(20));
+			to[i] = nodes.get(rnd.nextInt(nodes.size()));
+			departure[i] = rnd.nextInt(6) * 3600;
+		}
+
+		TravelTime tt = congestion();
+		TravelTime fs = new FreeSpeedTravelTime();
+
+		TravelTimeComparison.Speeds speeds = TravelTimeComparison.computeSpeeds(network, tt, from, to, departure, 4);
+
+		// Previous implementation, with one Dijkstra query per row
+		LeastCostPathCalculator congestedRouter = new DijkstraFactory(false).createPathCalculator(network, new OnlyTimeDependentTravelDisutility(tt), tt);
+		LeastCostPathCalculator freeflowRouter = new DijkstraFactory(false).createPathCalculator(network, new OnlyTimeDependentTravelDisutility(fs), fs);
+
+		for (int i = 0; i < n; i++) {
+			LeastCostPathCalculator.Path congested = congestedRouter.calcLeastCostPath(from[i], to[i], departure[i], null, null);
+			LeastCostPathCalculator.Path freeflow = freeflowRouter.calcLeastCostPath(from[i], to[i], departure[i], null, null);
+
+			double expCongested = 3.6 * congested.links.stream().mapToDouble(Link::getLength).sum() / congested.travelTime;
+			double expFreeflow = 3.6 * freeflow.links.stream().mapToDouble(Link::getLength).sum() / freeflow.travelTime;
+
+			if (from[i] == to[i]) {
+				assertThat(speeds.congested()[i]).isNaN();
+				continue;
+			}
+
+			assertThat(speeds.congested()[i]).isCloseTo(expCongested, within(1e-6));
+			assertThat(speeds.freeFlow()[i]).isCloseTo(expFreeflow, within(1e-6));
+		}
+	}
+}
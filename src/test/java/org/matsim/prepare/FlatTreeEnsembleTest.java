@@ -0,0 +1,124 @@
+package org.matsim.prepare;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.prepare.facilities.FacilityAttractionModelOther;
+import org.matsim.prepare.facilities.FacilityAttractionModelWork;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.function.ToDoubleFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FlatTreeEnsembleTest {
+
+	private static final Path SRC = Path.of("src/main/java/org/matsim/prepare/facilities");
+	private static final String WORK = "/org/matsim/prepare/facilities/FacilityAttractionModelWork.bin";
+	private static final String OTHER = "/org/matsim/prepare/facilities/FacilityAttractionModelOther.bin";
+
+	private static final int N = 100_000;
+
+	/**
+	 * Random rows, with many zeros for the indicator features and log-uniform values otherwise.
+	 */
+	private static double[][] randomRows(int n, int features, long seed) {
+		SplittableRandom rnd = new SplittableRandom(seed);
+		double[][] rows = new double[n][features];
+		for (double[] row : rows) {
+			for (int j = 0; j < features; j++) {
+				row[j] = rnd.nextDouble() < 0.3 ? 0 : Math.exp(rnd.nextDouble(Math.log(1e-3), Math.log(1e5)));
+			}
+		}
+		return rows;
+	}
+
+	private static void assertIdentical(FlatTreeEnsemble ensemble, ToDoubleFunction<double[]> generated) {
+
+		double[][] rows = randomRows(N, ensemble.getFeatures().length, 0);
+		double[] batch = ensemble.predict(rows);
+
+		for (int i = 0; i < rows.length; i++) {
+			double expected = generated.applyAsDouble(rows[i]);
+
+			assertThat(Double.doubleToRawLongBits(ensemble.predict(rows[i])))
+				.isEqualTo(Double.doubleToRawLongBits(expected));
+
+			assertThat(Double.doubleToRawLongBits(batch[i]))
+				.isEqualTo(Double.doubleToRawLongBits(expected));
+		}
+	}
+
+	@Test
+	void work() {
+		FlatTreeEnsemble ensemble = FlatTreeEnsemble.load(WORK);
+		assertThat(ensemble.getNumberOfTrees()).isEqualTo(30);
+
+		assertIdentical(ensemble, row -> FacilityAttractionModelWork.score(row, FacilityAttractionModelWork.DEFAULT_PARAMS));
+	}
+
+	@Test
+	void other() {
+		FlatTreeEnsemble ensemble = FlatTreeEnsemble.load(OTHER);
+		assertThat(ensemble.getNumberOfTrees()).isEqualTo(30);
+
+		assertIdentical(ensemble, row -> FacilityAttractionModelOther.score(row, FacilityAttractionModelOther.DEFAULT_PARAMS));
+	}
+
+	@Test
+	void params() {
+		FlatTreeEnsemble ensemble = FlatTreeEnsemble.load(WORK);
+		assertThat(ensemble.getNumberOfParams()).isEqualTo(FacilityAttractionModelWork.DEFAULT_PARAMS.length);
+
+		SplittableRandom rnd = new SplittableRandom(2);
+		double[] params = FacilityAttractionModelWork.DEFAULT_PARAMS.clone();
+		for (int i = 0; i < params.length; i++) {
+			params[i] *= rnd.nextDouble(0.5, 1.5);
+		}
+
+		for (double[] row : randomRows(10_000, ensemble.getFeatures().length, 2)) {
+			assertThat(Double.doubleToRawLongBits(ensemble.predict(row, params)))
+				.isEqualTo(Double.doubleToRawLongBits(FacilityAttractionModelWork.score(row, params)));
+
+			assertThat(Double.doubleToRawLongBits(ensemble.predict(row, FacilityAttractionModelWork.DEFAULT_PARAMS)))
+				.isEqualTo(Double.doubleToRawLongBits(ensemble.predict(row)));
+		}
+
+		assertThatThrownBy(() -> ensemble.predict(new double[ensemble.getFeatures().length], new double[3]))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void exportMatchesResource() throws IOException {
+
+		FlatTreeEnsemble parsed = FlatTreeEnsemble.parseGenerated(SRC.resolve("FacilityAttractionModelWork.java"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		parsed.write(out);
+
+		FlatTreeEnsemble read = FlatTreeEnsemble.read(new ByteArrayInputStream(out.toByteArray()));
+		FlatTreeEnsemble resource = FlatTreeEnsemble.load(WORK);
+
+		assertThat(read.getFeatures()).containsExactly(resource.getFeatures());
+
+		double[][] rows = randomRows(1000, resource.getFeatures().length, 1);
+		assertThat(read.predict(rows)).containsExactly(resource.predict(rows));
+	}
+
+	@Test
+	void invalid() {
+		FlatTreeEnsemble ensemble = FlatTreeEnsemble.load(WORK);
+
+		double[] row = new double[ensemble.getFeatures().length];
+		row[3] = Double.NaN;
+
+		assertThatThrownBy(() -> ensemble.predict(row))
+			.isInstanceOf(IllegalArgumentException.class);
+
+		assertThatThrownBy(() -> ensemble.predict(new double[3]))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,111 @@
+package org.matsim.prepare.choices;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class ComputePlanChoicesTest {
+
+	/**
+	 * More persons than the writer buffers, so that threads have to wait for each other.
+	 */
+	private static final int N = 20_000;
+
+	private static Population createPopulation() {
+
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		for (int i = 0; i < N; i++) {
+			population.addPerson(population.getFactory().createPerson(Id.createPersonId("p" + i)));
+		}
+
+		return population;
+	}
+
+	/**
+	 * Row depending only on the person, with a varying amount of work and persons that are not considered.
+	 */
+	private static List<Object> createRow(Person person) {
+
+		SplittableRandom rnd = new SplittableRandom(person.getId().toString().hashCode());
+
+		if (rnd.nextInt(5) == 0)
+			return null;
+
+		double sum = 0;
+		for (int i = rnd.nextInt(20_000); i > 0; i--) {
+			sum += Math.sqrt(i);
+		}
+
+		List<Object> row = new ArrayList<>();
+		row.add(person.getId());
+		row.add(rnd.nextDouble());
+		row.add(sum > 0);
+		return row;
+	}
+
+	private static String write(Population population, Function<Person, List<Object>> rows, int threads) throws Exception {
+
+		StringWriter out = new StringWriter();
+		try (CSVPrinter csv = new CSVPrinter(out, CSVFormat.DEFAULT)) {
+			long n = ComputePlanChoices.writeRows(population, rows, csv, threads, null);
+
+			assertThat(n).isEqualTo(population.getPersons().values().stream().filter(p -> createRow(p) != null).count());
+		}
+
+		return out.toString();
+	}
+
+	@Test
+	void reproducible() throws Exception {
+
+		Population population = createPopulation();
+
+		String single = write(population, ComputePlanChoicesTest::createRow, 1);
+		String multi = write(population, ComputePlanChoicesTest::createRow, 8);
+
+		assertThat(multi).isEqualTo(single);
+
+		List<String> ids = single.lines().map(l -> l.split(",")[0]).toList();
+		assertThat(ids)
+			.isSortedAccordingTo((a, b) -> Integer.compare(Integer.parseInt(a.substring(1)), Integer.parseInt(b.substring(1))));
+	}
+
+	@Test
+	void failingRow() {
+
+		Population population = createPopulation();
+		Id<Person> failing = Id.createPersonId("p3");
+
+		Function<Person, List<Object>> rows = person -> {
+			if (person.getId().equals(failing))
+				throw new IllegalStateException("Row can not be computed");
+
+			return createRow(person);
+		};
+
+		// Must fail instead of waiting for the missing row
+		assertTimeoutPreemptively(Duration.ofMinutes(1), () -> {
+			assertThatThrownBy(() -> write(population, rows, 1))
+				.isInstanceOf(Exception.class);
+
+			assertThatThrownBy(() -> write(population, rows, 8))
+				.isInstanceOf(Exception.class);
+		});
+	}
+}
@@ -0,0 +1,115 @@
+package org.matsim.prepare.choices;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OrderedRowWriterTest {
+
+	private static final int N = 20_000;
+
+	/**
+	 * Rows depending only on the index, with a varying amount of work and empty blocks.
+	 */
+	private static List<List<Object>> createBlock(int idx) {
+
+		SplittableRandom rnd = new SplittableRandom(idx);
+
+		if (rnd.nextInt(5) == 0)
+			return List.of();
+
+		// simulate different processing times
+		double sum = 0;
+		for (int i = rnd.nextInt(20_000); i > 0; i--) {
+			sum += Math.sqrt(i);
+		}
+
+		List<List<Object>> block = new ArrayList<>();
+		for (int i = rnd.nextInt(1, 3); i > 0; i--) {
+			block.add(List.of("p" + idx, i, rnd.nextDouble(), sum > 0));
+		}
+
+		return block;
+	}
+
+	private static byte[] write(int threads) throws Exception {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AtomicInteger next = new AtomicInteger();
+
+		try (CSVPrinter csv = new CSVPrinter(new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8), CSVFormat.DEFAULT)) {
+
+			csv.printRecord("id", "n", "value", "flag");
+
+			OrderedRowWriter writer = new OrderedRowWriter(csv, N, 64);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+			for (int t = 0; t < threads; t++) {
+				executor.submit(() -> {
+					int idx;
+					while ((idx = next.getAndIncrement()) < N) {
+						writer.add(idx, createBlock(idx));
+					}
+				});
+			}
+
+			executor.shutdown();
+			assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+			long expected = 0;
+			for (int i = 0; i < N; i++) {
+				expected += createBlock(i).size();
+			}
+
+			assertThat(writer.join()).isEqualTo(expected);
+		}
+
+		return out.toByteArray();
+	}
+
+	@Test
+	void reproducible() throws Exception {
+
+		byte[] single = write(1);
+		byte[] multi = write(8);
+
+		assertThat(multi).isEqualTo(single);
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(single)), StandardCharsets.UTF_8))) {
+			List<String> ids = reader.lines().skip(1).map(l -> l.split(",")[0]).distinct().toList();
+
+			assertThat(ids)
+				.isSortedAccordingTo((a, b) -> Integer.compare(Integer.parseInt(a.substring(1)), Integer.parseInt(b.substring(1))));
+		}
+	}
+
+	@Test
+	void duplicateIndex() throws IOException {
+
+		CSVPrinter csv = new CSVPrinter(new StringWriter(), CSVFormat.DEFAULT);
+		OrderedRowWriter writer = new OrderedRowWriter(csv, 10, 4);
+
+		writer.add(1, List.of(List.of("a")));
+
+		assertThatThrownBy(() -> writer.add(1, List.of()))
+			.isInstanceOf(IllegalStateException.class);
+
+		assertThatThrownBy(() -> writer.add(10, List.of()))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,166 @@
+package org.matsim.prepare.facilities;
+
+import com.slimjars.dist.gnu.trove.list.array.TLongArrayList;
+import de.topobyte.osm4j.core.model.iface.EntityType;
+import de.topobyte.osm4j.core.model.impl.*;
+import de.topobyte.osm4j.pbf.seq.PbfWriter;
+import org.geotools.api.data.DataStore;
+import org.geotools.api.data.DataStoreFinder;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geopkg.GeoPkgDataStoreFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExtractFacilityGeoPkgTest {
+
+	private static final double LON = 13.40;
+	private static final double LAT = 52.52;
+
+	private static final int BUILDINGS = 10;
+
+	/**
+	 * Write a small pbf file with buildings, a landuse area, POIs and a multipolygon relation with untagged member way.
+	 */
+	private static void writePbf(Path path) throws IOException {
+
+		List<Node> nodes = new ArrayList<>();
+		List<Way> ways = new ArrayList<>();
+
+		long nodeId = 1;
+		long wayId = 1;
+
+		for (int b = 0; b < BUILDINGS; b++) {
+			double x = LON + b * 0.0005;
+			TLongArrayList ids = new TLongArrayList();
+			double[][] corners = {{x, LAT}, {x + 0.0003, LAT}, {x + 0.0003, LAT + 0.0002}, {x, LAT + 0.0002}};
+			for (double[] c : corners) {
+				nodes.add(new Node(nodeId, c[0], c[1]));
+				ids.add(nodeId++);
+			}
+			ids.add(ids.get(0));
+
+			String type = b % 3 == 0 ? "yes" : b % 3 == 1 ? "retail" : "office";
+			ways.add(new Way(wayId++, ids, List.of(new Tag("building", type))));
+		}
+
+		// Landuse area covering all buildings
+		TLongArrayList landuse = new TLongArrayList();
+		double[][] area = {{LON - 0.001, LAT - 0.001}, {LON + 0.006, LAT - 0.001}, {LON + 0.006, LAT + 0.001}, {LON - 0.001, LAT + 0.001}};
+		for (double[] c : area) {
+			nodes.add(new Node(nodeId, c[0], c[1]));
+			landuse.add(nodeId++);
+		}
+		landuse.add(landuse.get(0));
+		ways.add(new Way(wayId++, landuse, List.of(new Tag("landuse", "residential"))));
+
+		// Untagged outer way, only referenced by the relation
+		TLongArrayList outer = new TLongArrayList();
+		double[][] ring = {{LON, LAT + 0.0005}, {LON + 0.0004, LAT + 0.0005}, {LON + 0.0004, LAT + 0.0008}, {LON, LAT + 0.0008}};
+		for (double[] c : ring) {
+			nodes.add(new Node(nodeId, c[0], c[1]));
+			outer.add(nodeId++);
+		}
+		outer.add(outer.get(0));
+		long outerId = wayId++;
+		ways.add(new Way(outerId, outer, List.of()));
+
+		// POIs
+		nodes.add(new Node(nodeId++, LON + 0.0001, LAT + 0.0001, List.of(new Tag("amenity", "restaurant"))));
+		nodes.add(new Node(nodeId++, LON + 0.0021, LAT + 0.0001, List.of(new Tag("shop", "supermarket"))));
+		nodes.add(new Node(nodeId++, LON + 0.0030, LAT - 0.0005, List.of(new Tag("highway", "bus_stop"))));
+
+		// Not needed at all
+		nodes.add(new Node(nodeId, LON + 0.01, LAT + 0.01, List.of(new Tag("natural", "tree"))));
+
+		Relation relation = new Relation(1, List.of(new RelationMember(outerId, EntityType.Way, "outer")),
+			List.of(new Tag("type", "multipolygon"), new Tag("building", "office")));
+
+		try (OutputStream out = Files.newOutputStream(path)) {
+			PbfWriter writer = new PbfWriter(out, false);
+			for (Node node : nodes) {
+				writer.write(node);
+			}
+			for (Way way : ways) {
+				writer.write(way);
+			}
+			writer.write(relation);
+			writer.complete();
+		}
+	}
+
+	private static List<String> readFeatures(Path gpkg) throws IOException {
+
+		DataStore ds = DataStoreFinder.getDataStore(Map.of(
+			GeoPkgDataStoreFactory.DBTYPE.key, "geopkg",
+			GeoPkgDataStoreFactory.DATABASE.key, gpkg.toString(),
+			GeoPkgDataStoreFactory.READ_ONLY.key, true
+		));
+
+		List<String> rows = new ArrayList<>();
+		try (SimpleFeatureIterator it = ds.getFeatureSource("facilities").getFeatures().features()) {
+			while (it.hasNext()) {
+				rows.add(it.next().getAttributes().toString());
+			}
+		} finally {
+			ds.dispose();
+		}
+
+		return rows;
+	}
+
+	private static String readGzip(Path path) throws IOException {
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void run(Path pbf, Path output, boolean streaming) {
+
+		List<String> args = new ArrayList<>(List.of(
+			"--input", pbf.toString(),
+			"--output", output.toString(),
+			"--activity-mapping", "input/activity_mapping.json"
+		));
+
+		if (streaming)
+			args.add("--streaming");
+
+		int code = new CommandLine(new ExtractFacilityGeoPkg()).execute(args.toArray(String[]::new));
+		assertThat(code).isEqualTo(0);
+	}
+
+	@Test
+	void streamingIdentical(@TempDir Path dir) throws IOException {
+
+		Path pbf = dir.resolve("test.osm.pbf");
+		writePbf(pbf);
+
+		run(pbf, dir.resolve("memory.gpkg"), false);
+		run(pbf, dir.resolve("streaming.gpkg"), true);
+
+		List<String> memory = readFeatures(dir.resolve("memory.gpkg"));
+		List<String> streaming = readFeatures(dir.resolve("streaming.gpkg"));
+
+		// Buildings, relation and landuse, POIs may have been assigned to buildings
+		assertThat(memory).hasSizeGreaterThan(BUILDINGS);
+		assertThat(streaming).containsExactlyElementsOf(memory);
+
+		assertThat(readGzip(dir.resolve("streaming_mapping.csv.gz")))
+			.contains(",relation,")
+			.isEqualTo(readGzip(dir.resolve("memory_mapping.csv.gz")));
+	}
+}
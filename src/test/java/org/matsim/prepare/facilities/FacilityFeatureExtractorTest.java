@@ -0,0 +1,248 @@
+package org.matsim.prepare.facilities;
+
+import com.slimjars.dist.gnu.trove.list.array.TLongArrayList;
+import de.topobyte.osm4j.core.model.iface.OsmEntity;
+import de.topobyte.osm4j.core.model.impl.Node;
+import de.topobyte.osm4j.core.model.impl.Tag;
+import de.topobyte.osm4j.core.model.impl.Way;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.assertj.core.data.Offset;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.referencing.FactoryException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.util.AffineTransformation;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FacilityFeatureExtractorTest {
+
+	private static final List<String> TYPES = List.of("resident", "work", "shop", "leisure", "dining", "parking");
+	private static final List<String> LANDUSE = List.of("residential", "retail", "commercial", "recreation_ground");
+
+	/**
+	 * Side length of the area in meters.
+	 */
+	private static final double AREA = 6000;
+
+	private final GeometryFactory gf = new GeometryFactory();
+	private final SplittableRandom rnd = new SplittableRandom(1);
+
+	private final Object2IntMap<String> types = new Object2IntOpenHashMap<>();
+	private final Long2ObjectMap<Feature> entities = new Long2ObjectLinkedOpenHashMap<>();
+	private final Long2ObjectMap<Feature> pois = new Long2ObjectLinkedOpenHashMap<>();
+	private final Long2ObjectMap<Feature> landuse = new Long2ObjectLinkedOpenHashMap<>();
+
+	private long id = 1;
+
+	/**
+	 * Rectangle with random size and rotation.
+	 */
+	private MultiPolygon rectangle(double x, double y, double minSize, double maxSize) {
+		Polygon p = (Polygon) gf.toGeometry(new Envelope(x, x + rnd.nextDouble(minSize, maxSize), y, y + rnd.nextDouble(minSize, maxSize)));
+		p = (Polygon) AffineTransformation.rotationInstance(rnd.nextDouble(Math.PI), x, y).transform(p);
+		return gf.createMultiPolygon(new Polygon[]{p});
+	}
+
+	private Feature feature(OsmEntity entity, MultiPolygon geom, boolean building, boolean landuse, boolean bus, boolean train) {
+		return new Feature(entity, types, geom, building, false, landuse, bus, train);
+	}
+
+	@BeforeEach
+	void setUp() {
+
+		for (int i = 0; i < TYPES.size(); i++) {
+			types.put(TYPES.get(i), i);
+		}
+
+		for (int i = 0; i < 80; i++) {
+			Way way = new Way(id++, new TLongArrayList(), List.of(new Tag("landuse", LANDUSE.get(rnd.nextInt(LANDUSE.size())))));
+			landuse.put(way.getId(), feature(way, rectangle(rnd.nextDouble(AREA), rnd.nextDouble(AREA), 100, 1200), false, true, false, false));
+		}
+
+		for (int i = 0; i < 300; i++) {
+			double x = rnd.nextDouble(AREA);
+			double y = rnd.nextDouble(AREA);
+
+			Node node = new Node(id++, 0, 0);
+			int kind = rnd.nextInt(4);
+			Feature ft = feature(node, rectangle(x, y, 2, 2.0001), false, false, kind == 0, kind == 1);
+			if (kind >= 2)
+				ft.set(Set.of(TYPES.get(rnd.nextInt(2, TYPES.size()))));
+
+			pois.put(node.getId(), ft);
+		}
+
+		List<Feature> poiList = new ArrayList<>(pois.values());
+		for (int i = 0; i < 800; i++) {
+			Way way = new Way(id++, new TLongArrayList(), List.of(new Tag("building", "yes")));
+			Feature ft = feature(way, rectangle(rnd.nextDouble(AREA), rnd.nextDouble(AREA), 8, i % 50 == 0 ? 400 : 60), true, false, false, false);
+
+			Set<String> acts = new HashSet<>();
+			for (String type : TYPES) {
+				if (rnd.nextInt(3) == 0)
+					acts.add(type);
+			}
+			ft.set(acts);
+
+			if (rnd.nextInt(5) == 0)
+				ft.assign(poiList.get(rnd.nextInt(poiList.size())));
+
+			entities.put(way.getId(), ft);
+		}
+	}
+
+	@Test
+	void sameAsReference() throws FactoryException {
+
+		FacilityFeatureExtractor exc = new FacilityFeatureExtractor("EPSG:25832", types, entities, pois, landuse);
+		Reference ref = new Reference(exc);
+
+		Offset<Double> tol = Offset.offset(2e-4);
+
+		int partial = 0;
+		for (Feature ft : entities.values()) {
+
+			SimpleFeature sf = exc.createFeature(ft);
+
+			assertThat((double) sf.getAttribute("area")).isCloseTo(ref.round(ft.geometry.getArea(), 2), Offset.offset(0.011));
+			assertThat(sf.getAttribute("residential_only")).isEqualTo(ft.isResidentialOnly());
+
+			assertThat((double) sf.getAttribute("landuse_residential_500m")).isCloseTo(ref.calcLanduse("residential", ft, 500), tol);
+			assertThat((double) sf.getAttribute("landuse_residential_1500m")).isCloseTo(ref.calcLanduse("residential", ft, 1500), tol);
+			assertThat((double) sf.getAttribute("landuse_retail_500m")).isCloseTo(ref.calcLanduse("retail", ft, 500), tol);
+			assertThat((double) sf.getAttribute("landuse_retail_1500m")).isCloseTo(ref.calcLanduse("retail", ft, 1500), tol);
+			assertThat((double) sf.getAttribute("landuse_commercial_500m")).isCloseTo(ref.calcLanduse("commercial", ft, 500), tol);
+			assertThat((double) sf.getAttribute("landuse_commercial_1500m")).isCloseTo(ref.calcLanduse("commercial", ft, 1500), tol);
+			assertThat((double) sf.getAttribute("landuse_recreation_1500m")).isCloseTo(ref.calcLanduse("recreation_ground", ft, 1500), tol);
+			assertThat((double) sf.getAttribute("parking_space_500m")).isCloseTo(ref.calcArea("parking", ft, 500), tol);
+
+			assertThat((double) sf.getAttribute("nearest_bus_stop")).isCloseTo(ref.findNearest(ft, f -> f.isBusStop), Offset.offset(1e-6));
+			assertThat((double) sf.getAttribute("nearest_train_station")).isCloseTo(ref.findNearest(ft, f -> f.isTrainStop), Offset.offset(1e-6));
+
+			for (String type : List.of("leisure", "shop", "dining")) {
+				assertThat(sf.getAttribute("poi_" + type + "_250m")).isEqualTo(ref.countPOIs(type, ft, 250));
+			}
+
+			if ((double) sf.getAttribute("landuse_residential_1500m") > 0)
+				partial++;
+		}
+
+		assertThat(partial).isPositive();
+	}
+
+	@Test
+	void rounding() {
+		for (int i = 0; i < 10_000; i++) {
+			double v = rnd.nextDouble(0, 100);
+			assertThat(FacilityFeatureExtractor.round(v, 10_000))
+				.isCloseTo(BigDecimal.valueOf(v).setScale(4, RoundingMode.HALF_EVEN).doubleValue(), Offset.offset(1.1e-4));
+		}
+	}
+
+	/**
+	 * Previous implementation with buffer geometries and full intersections.
+	 */
+	@SuppressWarnings("unchecked")
+	private record Reference(FacilityFeatureExtractor exc) {
+
+		double round(double value, int scale) {
+			return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_EVEN).doubleValue();
+		}
+
+		double calcLanduse(String type, Feature ft, double radius) {
+
+			if (ft.isResidentialOnly())
+				return 0;
+
+			Geometry bbox = ft.geometry.getCentroid().buffer(radius);
+
+			double res = 0;
+			for (Feature q : (List<Feature>) exc.landuse.query(bbox.getEnvelopeInternal())) {
+				if (!q.geomIssues && q.hasLanduse(type))
+					res += q.geometry.intersection(bbox).getArea();
+			}
+
+			return round(res / 1_000_000, 4);
+		}
+
+		double calcArea(String activityType, Feature ft, double radius) {
+
+			if (ft.isResidentialOnly())
+				return 0;
+
+			Geometry bbox = ft.geometry.getCentroid().buffer(radius);
+
+			double res = 0;
+			for (Feature q : (List<Feature>) exc.entities.query(bbox.getEnvelopeInternal())) {
+				if (!q.geomIssues && q.hasType(activityType))
+					res += q.geometry.intersection(bbox).getArea();
+			}
+
+			return round(res / 1_000, 4);
+		}
+
+		double findNearest(Feature ft, Predicate<Feature> filter) {
+
+			if (ft.isResidentialOnly())
+				return 0;
+
+			for (Integer radius : List.of(500, 5000, 20000)) {
+
+				Geometry bbox = ft.geometry.getCentroid().buffer(radius);
+
+				OptionalDouble dist = ((List<Feature>) exc.pois.query(bbox.getEnvelopeInternal())).stream()
+					.filter(filter)
+					.mapToDouble(a -> a.geometry.distance(ft.geometry))
+					.min();
+
+				if (dist.isPresent())
+					return dist.getAsDouble();
+			}
+
+			return 20000;
+		}
+
+		private int countPOIs(String type, Feature ft) {
+
+			int count = 0;
+			if (ft.hasType(type))
+				count++;
+
+			if (ft.members != null) {
+				for (Feature m : ft.members) {
+					if (m.hasType(type))
+						count++;
+				}
+			}
+
+			return count;
+		}
+
+		int countPOIs(String type, Feature ft, double radius) {
+
+			if (ft.isResidentialOnly())
+				return 0;
+
+			int count = countPOIs(type, ft);
+
+			Geometry bbox = ft.geometry.getCentroid().buffer(radius);
+
+			for (Feature q : (List<Feature>) exc.entities.query(bbox.getEnvelopeInternal())) {
+				if (!q.geomIssues && q.geometry.distance(ft.geometry.getCentroid()) < radius && q != ft)
+					count += countPOIs(type, q);
+			}
+
+			return count;
+		}
+	}
+}
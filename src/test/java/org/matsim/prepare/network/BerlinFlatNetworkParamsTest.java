@@ -0,0 +1,141 @@
+package org.matsim.prepare.network;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.junit.jupiter.api.Test;
+import org.matsim.application.prepare.Predictor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BerlinFlatNetworkParamsTest {
+
+	private static final List<String> JUNCTION_TYPES = List.of("traffic_light", "right_before_left", "priority");
+
+	private static final List<String> COUNTS = List.of("num_to_links", "junction_inc_lanes", "num_conns", "num_response",
+		"num_foes", "num_left", "num_right", "num_straight");
+
+	private static final List<String> INDICATORS = List.of("priority_lower", "priority_equal", "priority_higher",
+		"is_secondary_or_higher", "is_primary_or_higher", "is_motorway", "is_link");
+
+	private final BerlinNetworkParams generated = new BerlinNetworkParams();
+	private final BerlinFlatNetworkParams flat = new BerlinFlatNetworkParams();
+
+	/**
+	 * Random link features in the range of the Berlin network.
+	 */
+	private static List<Object2DoubleMap<String>> randomFeatures(int n, long seed) {
+
+		SplittableRandom rnd = new SplittableRandom(seed);
+		List<Object2DoubleMap<String>> result = new ArrayList<>();
+
+		for (int i = 0; i < n; i++) {
+			Object2DoubleMap<String> ft = new Object2DoubleOpenHashMap<>();
+			ft.put("length", rnd.nextDouble(5, 1500));
+			ft.put("speed", rnd.nextInt(4) == 0 ? 8.33 : rnd.nextDouble(3, 36));
+			ft.put("num_lanes", 1 + rnd.nextInt(4));
+			ft.put("change_speed", rnd.nextDouble(-15, 15));
+			ft.put("change_num_lanes", rnd.nextInt(-2, 3));
+
+			for (String c : COUNTS) {
+				ft.put(c, rnd.nextInt(9));
+			}
+
+			for (String c : INDICATORS) {
+				ft.put(c, rnd.nextInt(2));
+			}
+
+			result.add(ft);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Leaf values of the generated model, randomly perturbed.
+	 */
+	private static double[] perturbedParams(Predictor generated) throws ReflectiveOperationException {
+		double[] params = ((double[]) generated.getClass().getField("DEFAULT_PARAMS").get(null)).clone();
+
+		SplittableRandom rnd = new SplittableRandom(params.length);
+		for (int i = 0; i < params.length; i++) {
+			params[i] *= rnd.nextDouble(0.5, 1.5);
+		}
+
+		return params;
+	}
+
+	private static void assertIdentical(Predictor expected, Predictor actual, List<Object2DoubleMap<String>> features) throws ReflectiveOperationException {
+
+		double[] params = perturbedParams(expected);
+
+		for (Object2DoubleMap<String> ft : features) {
+
+			assertThat(Double.doubleToRawLongBits(actual.predict(ft, null)))
+				.isEqualTo(Double.doubleToRawLongBits(expected.predict(ft, null)));
+
+			assertThat(Double.doubleToRawLongBits(actual.predict(ft, null, params)))
+				.isEqualTo(Double.doubleToRawLongBits(expected.predict(ft, null, params)));
+		}
+	}
+
+	@Test
+	void capacity() throws ReflectiveOperationException {
+
+		List<Object2DoubleMap<String>> features = randomFeatures(50_000, 0);
+
+		for (String type : JUNCTION_TYPES) {
+			assertIdentical(generated.capacity(type, null), flat.capacity(type, null), features);
+		}
+	}
+
+	@Test
+	void speedFactor() throws ReflectiveOperationException {
+
+		List<Object2DoubleMap<String>> features = randomFeatures(50_000, 1);
+
+		for (String type : JUNCTION_TYPES) {
+			assertIdentical(generated.speedFactor(type, null), flat.speedFactor(type, null), features);
+		}
+	}
+
+	@Test
+	void batch() throws ReflectiveOperationException {
+
+		List<Object2DoubleMap<String>> features = randomFeatures(20_000, 2);
+
+		for (String type : JUNCTION_TYPES) {
+			assertBatch(generated.capacity(type, null), flat.capacity(type, null), features);
+			assertBatch(generated.speedFactor(type, null), flat.speedFactor(type, null), features);
+		}
+	}
+
+	private static void assertBatch(Predictor expected, FlatTreePredictor actual, List<Object2DoubleMap<String>> features) throws ReflectiveOperationException {
+
+		String[] names = actual.getFeatures();
+		double[][] rows = new double[features.size()][names.length];
+		for (int i = 0; i < rows.length; i++) {
+			for (int j = 0; j < names.length; j++) {
+				rows[i][j] = features.get(i).getDouble(names[j]);
+			}
+		}
+
+		double[] params = perturbedParams(expected);
+		double[] batch = actual.predict(rows);
+		double[] batchParams = actual.predict(rows, params);
+
+		for (int i = 0; i < rows.length; i++) {
+			assertThat(Double.doubleToRawLongBits(batch[i]))
+				.isEqualTo(Double.doubleToRawLongBits(expected.predict(features.get(i), null)));
+
+			assertThat(Double.doubleToRawLongBits(batchParams[i]))
+				.isEqualTo(Double.doubleToRawLongBits(expected.predict(features.get(i), null, params)));
+		}
+
+		// Input rows are not standardized in place
+		assertThat(rows[0][0]).isEqualTo(features.get(0).getDouble(names[0]));
+	}
+}
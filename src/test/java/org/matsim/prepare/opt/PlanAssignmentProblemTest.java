@@ -0,0 +1,88 @@
+package org.matsim.prepare.opt;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class PlanAssignmentProblemTest {
+
+	private static final int COUNTS = 2400;
+
+	/**
+	 * Random problem with persons passing a few count stations per plan.
+	 */
+	static PlanAssignmentProblem createProblem(int n, ErrorMetric metric, long seed) {
+
+		SplittableRandom rnd = new SplittableRandom(seed);
+		PlanCounts.Builder builder = PlanCounts.builder();
+
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < 5; k++) {
+				Int2IntMap plan = new Int2IntOpenHashMap();
+				int entries = rnd.nextInt(4);
+				for (int j = 0; j < entries; j++) {
+					plan.merge(rnd.nextInt(COUNTS), 4, Integer::sum);
+				}
+				builder.addPlan(plan);
+			}
+		}
+
+		PlanCounts plans = builder.build();
+		List<PlanPerson> persons = new ArrayList<>();
+
+		for (int i = 0; i < plans.size() / 5; i++) {
+			persons.add(new PlanPerson(Id.createPersonId(i), 0, plans, i * 5, 5));
+		}
+
+		int[] counts = rnd.ints(COUNTS, 0, 50).toArray();
+		return new PlanAssignmentProblem(5, metric, persons, counts);
+	}
+
+	private static double fullScore(PlanAssignmentProblem problem) {
+		ScoreCalculator calc = new ScoreCalculator();
+		calc.resetWorkingSolution(problem);
+		return calc.calculateScore().score().doubleValue();
+	}
+
+	@Test
+	void incrementalScore() {
+
+		for (ErrorMetric metric : ErrorMetric.values()) {
+
+			PlanAssignmentProblem problem = createProblem(20_000, metric, 0);
+			double initial = fullScore(problem);
+
+			problem.iterate(50, 0.5, 1, 0.5, 4);
+
+			double expected = fullScore(problem);
+
+			assertThat(problem.getScore().score().doubleValue())
+				.isCloseTo(expected, within(1e-6 * Math.abs(expected)))
+				.isNotEqualTo(initial);
+		}
+	}
+
+	@Test
+	void independentOfThreads() {
+
+		PlanAssignmentProblem single = createProblem(10_000, ErrorMetric.log_error, 1);
+		PlanAssignmentProblem multi = createProblem(10_000, ErrorMetric.log_error, 1);
+
+		single.iterate(20, 0.5, 100, 0.5, 1);
+		multi.iterate(20, 0.5, 100, 0.5, 8);
+
+		assertThat(multi.getPersons())
+			.extracting(PlanPerson::getK)
+			.containsExactlyElementsOf(single.getPersons().stream().map(PlanPerson::getK).toList());
+
+		assertThat(multi.getScore()).isEqualTo(single.getScore());
+	}
+}
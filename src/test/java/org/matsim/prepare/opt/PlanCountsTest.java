@@ -0,0 +1,54 @@
+package org.matsim.prepare.opt;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PlanCountsTest {
+
+	@Test
+	void build() {
+
+		PlanCounts.Builder builder = PlanCounts.builder();
+
+		assertThat(builder.addPlan(new Int2IntOpenHashMap(new int[]{7, 2}, new int[]{4, 8})))
+			.isEqualTo(0);
+
+		assertThat(builder.addPlan(new Int2IntOpenHashMap()))
+			.isEqualTo(1);
+
+		assertThat(builder.addPlan(new Int2IntOpenHashMap(new int[]{5}, new int[]{1})))
+			.isEqualTo(2);
+
+		PlanCounts counts = builder.build();
+
+		assertThat(counts.size()).isEqualTo(3);
+		assertThat(counts.entries()).isEqualTo(3);
+
+		assertThat(counts.offsets).containsExactly(0, 2, 2, 3);
+		assertThat(counts.countIdx).containsExactly(2, 7, 5);
+		assertThat(counts.values).containsExactly((short) 8, (short) 4, (short) 1);
+
+		assertThat(counts.impact(0)).isEqualTo(12);
+		assertThat(counts.impact(1)).isEqualTo(0);
+
+		int[] observed = new int[8];
+		counts.addTo(observed, 0, 1);
+		counts.addTo(observed, 2, -1);
+
+		assertThat(observed).containsExactly(0, 0, 8, 0, 0, -1, 0, 4);
+	}
+
+	@Test
+	void overflow() {
+
+		Int2IntMap plan = new Int2IntOpenHashMap();
+		plan.put(0, Short.MAX_VALUE + 1);
+
+		assertThatThrownBy(() -> PlanCounts.builder().addPlan(plan))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,182 @@
+package org.matsim.prepare.population;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
+import org.matsim.facilities.ActivityFacility;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommuterAssignmentTest {
+
+	private static final int ZONES = 10;
+	private static final int PERSONS = 3000;
+	private static final double SAMPLE = 0.25;
+
+	private final GeometryFactory gf = new GeometryFactory();
+
+	@TempDir
+	private Path dir;
+
+	private Long2ObjectMap<SimpleFeature> zones;
+	private Map<Geometry, ActivityFacility> facilities;
+	private Map<String, Integer> commuters;
+	private Path commuterPath;
+	private Path berlinCommuterPath;
+
+	@BeforeEach
+	void setUp() throws IOException {
+
+		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+		typeBuilder.setName("zones");
+		typeBuilder.add("the_geom", Polygon.class);
+		SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+		zones = new Long2ObjectOpenHashMap<>();
+		facilities = new IdentityHashMap<>();
+
+		ActivityFacilitiesFactoryImpl factory = new ActivityFacilitiesFactoryImpl();
+
+		// Zones in a row, 10km wide
+		for (int i = 0; i < ZONES; i++) {
+			Polygon polygon = (Polygon) gf.toGeometry(new Envelope(i * 10_000, (i + 1) * 10_000, 0, 10_000));
+			SimpleFeature ft = SimpleFeatureBuilder.build(type, new Object[]{polygon}, "zone" + i);
+			zones.put(ars(i), ft);
+
+			facilities.put(polygon, factory.createActivityFacility(Id.create("f" + i, ActivityFacility.class), new Coord(i * 10_000 + 5000, 5000)));
+		}
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		commuters = new HashMap<>();
+
+		StringBuilder csv = new StringBuilder("from,to,n\n");
+		for (int i = 0; i < ZONES; i++) {
+			for (int j = 0; j < ZONES; j++) {
+				if (i == j)
+					continue;
+
+				int n = rnd.nextInt(1, 40);
+				commuters.put(ars(i) + "-" + ars(j), n);
+				csv.append(ars(i)).append(",").append(ars(j)).append(",").append(n).append("\n");
+			}
+		}
+
+		commuterPath = dir.resolve("commuter.csv");
+		Files.writeString(commuterPath, csv.toString());
+
+		berlinCommuterPath = dir.resolve("berlin_commuter.csv");
+		Files.writeString(berlinCommuterPath, "home,work,n\n1,2,10\n");
+	}
+
+	private static long ars(int i) {
+		return 1000 + i;
+	}
+
+	/**
+	 * Assign targets in rounds, like {@link InitLocationChoice}.
+	 */
+	private Map<Integer, CommuterAssignment.Proposal> assign(CommuterAssignment commuter, int threads) throws ExecutionException, InterruptedException {
+
+		Map<Integer, CommuterAssignment.Proposal> result = new TreeMap<>();
+		List<Integer> pending = new ArrayList<>();
+		for (int i = 0; i < PERSONS; i++) {
+			pending.add(i);
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			while (!pending.isEmpty()) {
+				Map<Integer, CommuterAssignment.Proposal> proposals = new ConcurrentHashMap<>();
+
+				List<Integer> persons = pending;
+				pool.submit(() -> persons.parallelStream().forEach(p -> {
+
+					// Same seed in each round, like in the location choice
+					SplittableRandom rnd = new SplittableRandom(p);
+					int origin = p % ZONES;
+					Point ref = gf.createPoint(new Coordinate(origin * 10_000 + 5000, 5000));
+
+					// Some zones don't have a suitable facility
+					CommuterAssignment.Proposal proposal = commuter.propose(rnd, ars(origin), 25_000, ref,
+						zone -> rnd.nextDouble() < 0.2 ? null : facilities.get(zone));
+
+					if (proposal != null)
+						proposals.put(p, proposal);
+
+				})).get();
+
+				pending = commuter.resolve(proposals);
+
+				proposals.keySet().removeAll(pending);
+				result.putAll(proposals);
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		return result;
+	}
+
+	@Test
+	void deterministic() throws Exception {
+
+		Map<Integer, CommuterAssignment.Proposal> single = assign(new CommuterAssignment(zones, commuterPath, berlinCommuterPath, SAMPLE), 1);
+		Map<Integer, CommuterAssignment.Proposal> parallel = assign(new CommuterAssignment(zones, commuterPath, berlinCommuterPath, SAMPLE), 16);
+
+		assertThat(single)
+			.isNotEmpty()
+			.isEqualTo(parallel);
+	}
+
+	@Test
+	void quotas() throws Exception {
+
+		CommuterAssignment commuter = new CommuterAssignment(zones, commuterPath, berlinCommuterPath, SAMPLE);
+		Map<Integer, CommuterAssignment.Proposal> result = assign(commuter, 4);
+
+		Map<String, Integer> assigned = new HashMap<>();
+		for (CommuterAssignment.Proposal p : result.values()) {
+			assertThat(p.target()).isNotEqualTo(p.origin());
+			assigned.merge(p.origin() + "-" + p.target(), 1, Integer::sum);
+		}
+
+		// There are more persons than commuters, all reachable relations must be used up
+		for (Map.Entry<String, Integer> e : commuters.entrySet()) {
+
+			int n = assigned.getOrDefault(e.getKey(), 0);
+			String[] split = e.getKey().split("-");
+			double remaining = commuter.getRemaining(Long.parseLong(split[0]), Long.parseLong(split[1]));
+
+			// Each person represents 1 / sample commuters, the last one may exceed the quota
+			assertThat(n).isLessThanOrEqualTo((int) Math.ceil(e.getValue() * SAMPLE));
+			assertThat(n / SAMPLE + remaining).isGreaterThanOrEqualTo(e.getValue());
+
+			long distance = Math.abs(Long.parseLong(split[0]) - Long.parseLong(split[1]));
+			if (distance <= 2)
+				assertThat(remaining).isZero();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.matsim.prepare.population;
+
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.population.PersonUtils;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CreateBerlinPopulationTest {
+
+	@TempDir
+	private Path dir;
+
+	/**
+	 * Square zones in EPSG:25833 and statistics for two years, of which only one is used.
+	 */
+	private Path createInput(Map<String, MultiPolygon> lors) throws IOException {
+
+		GeometryFactory gf = new GeometryFactory();
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		StringBuilder csv = new StringBuilder("Jahr;RaumID;Name;Einwohnerinnen und Einwohner (EW) insgesamt;" +
+			"Anteil der unter 18-Jährigen an Einwohnerinnen und Einwohner (EW) gesamt;" +
+			"Anteil der 65-Jährigen und älter an Einwohnerinnen und Einwohner (EW) gesamt;" +
+			"Geschlechterverteilung;" +
+			"Anteil Arbeitslose nach SGB II und SGB III an Einwohnerinnen und Einwohner (EW) im Alter von 15 bis unter 65 Jahren\n");
+
+		for (int i = 0; i < 40; i++) {
+			String id = String.format("%08d", 1100101 + i);
+			double x = 385000 + (i % 8) * 1000;
+			double y = 5815000 + (i / 8) * 1000;
+
+			Polygon square = (Polygon) gf.toGeometry(new Envelope(x, x + 1000, y, y + 1000));
+			lors.put(id, gf.createMultiPolygon(new Polygon[]{square}));
+
+			for (int year : List.of(2018, 2019)) {
+				csv.append(year).append(";").append(id).append(";Zone ").append(i).append(";")
+					.append(rnd.nextInt(100, 5000)).append(";")
+					.append(rnd.nextInt(5, 30)).append(",").append(rnd.nextInt(10)).append(";")
+					.append(rnd.nextInt(5, 30)).append(",").append(rnd.nextInt(10)).append(";")
+					.append(rnd.nextInt(90, 110)).append(",").append(rnd.nextInt(10)).append(";")
+					.append(i % 10 == 0 ? "" : rnd.nextInt(1, 10) + "," + rnd.nextInt(10)).append("\n");
+			}
+		}
+
+		Path path = dir.resolve("lors.csv");
+		Files.writeString(path, csv.toString(), Charset.forName("windows-1252"));
+		return path;
+	}
+
+	/**
+	 * All generated attributes of each person, ordered by id.
+	 */
+	private static List<String> describe(Population population) {
+		return population.getPersons().values().stream()
+			.sorted(Comparator.comparing(p -> p.getId().toString()))
+			.map(p -> String.join("|", p.getId().toString(), PersonUtils.getSex(p), String.valueOf(PersonUtils.getAge(p)),
+				String.valueOf(PersonUtils.isEmployed(p)), String.valueOf(p.getAttributes().getAttribute(Attributes.LOR)),
+				String.valueOf(p.getAttributes().getAttribute(Attributes.HOME_X)), String.valueOf(p.getAttributes().getAttribute(Attributes.HOME_Y))))
+			.toList();
+	}
+
+	@Test
+	void reproducible() throws IOException {
+
+		Map<String, MultiPolygon> lors = new HashMap<>();
+		List<CSVRecord> rows = CreateBerlinPopulation.readRows(createInput(lors), 2019);
+
+		assertThat(rows).hasSize(40);
+
+		// Zone without geometry
+		lors.remove(rows.get(5).get("RaumID"));
+
+		Population single = new CreateBerlinPopulation(null, 0.25, 1).createPopulation(rows, lors);
+		Population multi = new CreateBerlinPopulation(null, 0.25, 8).createPopulation(rows, lors);
+
+		int expected = IntStream.range(0, rows.size())
+			.filter(i -> i != 5)
+			.map(i -> (int) Math.ceil(Integer.parseInt(rows.get(i).get("Einwohnerinnen und Einwohner (EW) insgesamt")) * 0.25))
+			.sum();
+
+		assertThat(single.getPersons()).hasSize(expected);
+		assertThat(describe(multi)).isEqualTo(describe(single));
+
+		// Independent of the other zones
+		String first = rows.get(0).get("RaumID");
+		Population partial = new CreateBerlinPopulation(null, 0.25, 4).createPopulation(rows, Map.of(first, lors.get(first)));
+
+		assertThat(partial.getPersons()).isNotEmpty();
+		for (Person p : partial.getPersons().values()) {
+			Person other = single.getPersons().get(p.getId());
+			assertThat(other).isNotNull();
+			assertThat(other.getAttributes().getAttribute(Attributes.HOME_X)).isEqualTo(p.getAttributes().getAttribute(Attributes.HOME_X));
+		}
+	}
+
+	@Test
+	void uniqueIds() {
+
+		Set<Id<Person>> ids = new HashSet<>();
+		for (int i = 0; i < 200_000; i++) {
+			ids.add(CreateBerlinPopulation.generateId("berlin", i));
+		}
+
+		assertThat(ids).hasSize(200_000);
+		assertThat(CreateBerlinPopulation.generateId("berlin", 0).toString()).matches("berlin_[0-9a-f]{8}");
+	}
+}
@@ -1,21 +1,29 @@
 package org.matsim.prepare.population;
 
+import org.apache.commons.math3.stat.inference.ChiSquareTest;
 import org.assertj.core.data.Offset;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
-import org.matsim.facilities.ActivityFacilitiesFactory;
-import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
-import org.matsim.facilities.ActivityFacility;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.facilities.*;
 import org.matsim.prepare.facilities.AttributedActivityFacility;
+import org.matsim.run.OpenBerlinScenario;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.SplittableRandom;
+import java.nio.file.Path;
+import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class FacilityIndexTest {
 
+	@TempDir
+	private Path dir;
+
 	private SplittableRandom rnd = new SplittableRandom(0);
 	private ActivityFacilitiesFactory factory = new ActivityFacilitiesFactoryImpl();
 	private AttributedActivityFacility createFacility(double weight) {
@@ -108,4 +116,214 @@ class FacilityIndexTest {
 			.isCloseTo(2.0/7.0, Offset.offset(0.01));
 
 	}
+
+	private AttributedActivityFacility createFacility(double weight, Coord coord, String zone) {
+		ActivityFacility f = factory.createActivityFacility(Id.create(rnd.nextLong(), ActivityFacility.class), coord);
+		f.getAttributes().putAttribute(Attributes.ATTRACTION_WORK, weight);
+		f.getAttributes().putAttribute(Attributes.ATTRACTION_OTHER, weight);
+		if (zone != null)
+			f.getAttributes().putAttribute(Attributes.ZONE, zone);
+		return new AttributedActivityFacility(f);
+	}
+
+	/**
+	 * Asserts that observed frequencies follow the expected weights. Entries with zero weight must never be observed.
+	 */
+	private static void assertDistribution(double[] expected, long[] observed) {
+
+		List<Double> e = new ArrayList<>();
+		List<Long> o = new ArrayList<>();
+
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] == 0)
+				assertThat(observed[i]).isZero();
+			else {
+				e.add(expected[i]);
+				o.add(observed[i]);
+			}
+		}
+
+		double p = new ChiSquareTest().chiSquareTest(e.stream().mapToDouble(d -> d).toArray(), o.stream().mapToLong(l -> l).toArray());
+		assertThat(p).isGreaterThan(0.001);
+	}
+
+	@Test
+	void aliasTable() {
+
+		double[] weights = new double[50];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = i % 7 == 0 ? 0 : rnd.nextDouble(0, 100);
+		}
+
+		AliasTable table = AliasTable.of(weights);
+		long[] observed = new long[weights.length];
+		for (int i = 0; i < 200_000; i++) {
+			observed[table.sample(rnd)]++;
+		}
+
+		assertDistribution(weights, observed);
+
+		assertThatThrownBy(() -> AliasTable.of(new double[]{0, 0}))
+			.isInstanceOf(IllegalArgumentException.class);
+
+		assertThatThrownBy(() -> AliasTable.of(new double[]{1, Double.NaN}))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void rejectionDistribution() {
+
+		List<AttributedActivityFacility> list = new ArrayList<>();
+		double[] expected = new double[40];
+
+		for (int i = 0; i < expected.length; i++) {
+			double w = rnd.nextDouble(0, 100);
+			boolean reject = rnd.nextDouble() < 0.4;
+			list.add(createFacility(w, reject));
+			expected[i] = reject ? 0 : w;
+		}
+
+		long[] observed = new long[expected.length];
+		for (int i = 0; i < 100_000; i++) {
+			ActivityFacility a = FacilityIndex.sampleByWeightWithRejection(list, (af) -> (boolean) af.getAttributes().getAttribute("accept"),
+				AttributedActivityFacility::getWorkAttraction, rnd);
+			observed[list.indexOf(a)]++;
+		}
+
+		assertDistribution(expected, observed);
+
+		// All rejected
+		assertThat(FacilityIndex.sampleByWeightWithRejection(List.of(createFacility(1, true), createFacility(2, true)),
+			(af) -> (boolean) af.getAttributes().getAttribute("accept"), AttributedActivityFacility::getWorkAttraction, rnd))
+			.isNull();
+	}
+
+	@Test
+	void grouping() {
+
+		List<AttributedActivityFacility> list = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			list.add(createFacility(1 + i % 5, new Coord(0, 0), i % 10 == 9 ? null : "z" + i % 3));
+		}
+
+		Map<String, Double> zoneWeight = Map.of("z0", 1.0, "z1", 2.0, "z2", 5.0);
+
+		FacilityIndex.Grouping grouping = FacilityIndex.Grouping.of(list, AttributedActivityFacility::getZone);
+		assertThat(grouping.getGroups()).hasSize(3);
+
+		// Expected probability is the zone share times the facility share within the zone
+		double[] expected = new double[list.size()];
+		for (int i = 0; i < list.size(); i++) {
+			AttributedActivityFacility f = list.get(i);
+			if (f.getZone() == null)
+				continue;
+
+			double zoneTotal = list.stream().filter(o -> f.getZone().equals(o.getZone())).mapToDouble(AttributedActivityFacility::getWorkAttraction).sum();
+			expected[i] = zoneWeight.get(f.getZone()) / 8.0 * f.getWorkAttraction() / zoneTotal;
+		}
+
+		long[] observed = new long[list.size()];
+		for (int i = 0; i < 100_000; i++) {
+			ActivityFacility a = FacilityIndex.sampleByWeightWithGrouping(grouping, e -> zoneWeight.get(e.getKey()),
+				AttributedActivityFacility::getWorkAttraction, rnd);
+			observed[list.indexOf(a)]++;
+		}
+
+		assertDistribution(expected, observed);
+	}
+
+	@Test
+	void ringQuery() {
+
+		STRtree index = new STRtree();
+		List<AttributedActivityFacility> list = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			AttributedActivityFacility f = createFacility(1, new Coord(rnd.nextDouble(0, 10_000), rnd.nextDouble(0, 10_000)), null);
+			index.insert(MGC.coord2Point(f.getCoord()).getEnvelopeInternal(), f);
+			list.add(f);
+		}
+		index.build();
+
+		for (int i = 0; i < 200; i++) {
+			Coord center = new Coord(rnd.nextDouble(0, 10_000), rnd.nextDouble(0, 10_000));
+			double max = rnd.nextDouble(10, 4000);
+			double min = rnd.nextDouble(-500, max);
+
+			// Same as a query with the envelope of a buffer and filtering the distance
+			List<AttributedActivityFacility> query = index.query(MGC.coord2Point(center).buffer(max).getEnvelopeInternal());
+			List<AttributedActivityFacility> expected = query.stream()
+				.filter(f -> CoordUtils.calcEuclideanDistance(center, f.getCoord()) >= min)
+				.filter(f -> CoordUtils.calcEuclideanDistance(center, f.getCoord()) <= max)
+				.toList();
+
+			assertThat(FacilityIndex.query(index, center, min, max))
+				.containsExactlyElementsOf(expected);
+
+			assertThat(FacilityIndex.query(index, center, min, max))
+				.containsExactlyInAnyOrderElementsOf(list.stream()
+					.filter(f -> CoordUtils.calcEuclideanDistance(center, f.getCoord()) >= min)
+					.filter(f -> CoordUtils.calcEuclideanDistance(center, f.getCoord()) <= max)
+					.toList());
+		}
+	}
+
+	@Test
+	void typeAliasTables() {
+
+		ActivityFacilities all = FacilitiesUtils.createActivityFacilities();
+		Map<Id<ActivityFacility>, Double> work = new HashMap<>();
+
+		for (int i = 0; i < 60; i++) {
+			ActivityFacility f = factory.createActivityFacility(Id.create(i, ActivityFacility.class), new Coord(rnd.nextDouble(0, 5000), rnd.nextDouble(0, 5000)));
+			f.addActivityOption(factory.createActivityOption(i % 3 == 0 ? "shop" : "work"));
+
+			double w = i % 7 == 0 ? 0 : rnd.nextDouble(0, 100);
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_WORK, w);
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_OTHER, 0.0);
+			all.addActivityFacility(f);
+
+			if (i % 3 != 0)
+				work.put(f.getId(), w);
+		}
+
+		Path path = dir.resolve("facilities.xml");
+		new FacilitiesWriter(all).write(path.toString());
+		FacilityIndex index = new FacilityIndex(path.toString(), OpenBerlinScenario.CRS);
+
+		List<AttributedActivityFacility> candidates = index.query("work", new Coord(2500, 2500), 0, 10_000);
+		assertThat(candidates).hasSize(work.size());
+
+		// Same distribution as the cumulative sampler over all facilities of the type
+		long[] alias = new long[candidates.size()];
+		long[] cumulative = new long[candidates.size()];
+		Map<Id<ActivityFacility>, Integer> pos = new HashMap<>();
+		for (int i = 0; i < candidates.size(); i++) {
+			pos.put(candidates.get(i).getId(), i);
+		}
+
+		for (int i = 0; i < 200_000; i++) {
+			alias[pos.get(index.sample("work", FacilityIndex.Attraction.work, rnd).getId())]++;
+			cumulative[FacilityIndex.sampleByWeight(candidates, AttributedActivityFacility::getWorkAttraction, rnd)]++;
+		}
+
+		double[] expected = candidates.stream().mapToDouble(f -> work.get(f.getId())).toArray();
+		assertDistribution(expected, alias);
+		assertDistribution(expected, cumulative);
+
+		List<Long> a = new ArrayList<>();
+		List<Long> c = new ArrayList<>();
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] > 0) {
+				a.add(alias[i]);
+				c.add(cumulative[i]);
+			}
+		}
+
+		double p = new ChiSquareTest().chiSquareTestDataSetsComparison(a.stream().mapToLong(l -> l).toArray(), c.stream().mapToLong(l -> l).toArray());
+		assertThat(p).isGreaterThan(0.001);
+
+		// All weights zero, or unknown type
+		assertThat(index.sample("shop", FacilityIndex.Attraction.other, rnd)).isNull();
+		assertThat(index.sample("leisure", FacilityIndex.Attraction.work, rnd)).isNull();
+	}
 }
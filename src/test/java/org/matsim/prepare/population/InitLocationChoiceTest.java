@@ -0,0 +1,220 @@
+package org.matsim.prepare.population;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.facilities.*;
+import org.matsim.run.OpenBerlinScenario;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InitLocationChoiceTest {
+
+	private static final int ZONES = 4;
+
+	/**
+	 * Size of each zone in meters.
+	 */
+	private static final double SIZE = 10_000;
+
+	@TempDir
+	private Path dir;
+
+	private Long2ObjectMap<SimpleFeature> zones;
+	private FacilityIndex facilities;
+	private Network network;
+	private Path commuterPath;
+	private Path berlinCommuterPath;
+
+	@BeforeEach
+	void setUp() throws IOException {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+		typeBuilder.setName("zones");
+		typeBuilder.add("the_geom", Polygon.class);
+		SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+		GeometryFactory gf = new GeometryFactory();
+		zones = new Long2ObjectOpenHashMap<>();
+
+		StringBuilder csv = new StringBuilder("from,to,n\n");
+		for (int i = 0; i < ZONES; i++) {
+			Polygon polygon = (Polygon) gf.toGeometry(new Envelope(i * SIZE, (i + 1) * SIZE, 0, SIZE));
+			zones.put(ars(i), SimpleFeatureBuilder.build(type, new Object[]{polygon}, "zone" + i));
+
+			for (int j = 0; j < ZONES; j++) {
+				if (i != j)
+					csv.append(ars(i)).append(",").append(ars(j)).append(",").append(rnd.nextInt(5, 40)).append("\n");
+			}
+		}
+
+		commuterPath = dir.resolve("commuter.csv");
+		Files.writeString(commuterPath, csv.toString());
+
+		berlinCommuterPath = dir.resolve("berlin_commuter.csv");
+		Files.writeString(berlinCommuterPath, "home,work,n\n1,2,10\n");
+
+		ActivityFacilities all = FacilitiesUtils.createActivityFacilities();
+		ActivityFacilitiesFactory factory = all.getFactory();
+		for (int i = 0; i < 2000; i++) {
+			ActivityFacility f = factory.createActivityFacility(Id.create(i, ActivityFacility.class),
+				new Coord(rnd.nextDouble(0, ZONES * SIZE), rnd.nextDouble(0, SIZE)));
+
+			f.addActivityOption(factory.createActivityOption(i % 2 == 0 ? "work" : "leisure"));
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_WORK, rnd.nextDouble(1, 10));
+			f.getAttributes().putAttribute(Attributes.ATTRACTION_OTHER, rnd.nextDouble(1, 10));
+			all.addActivityFacility(f);
+		}
+
+		Path facilityPath = dir.resolve("facilities.xml");
+		new FacilitiesWriter(all).write(facilityPath.toString());
+		facilities = new FacilityIndex(facilityPath.toString(), OpenBerlinScenario.CRS);
+
+		network = NetworkUtils.createNetwork();
+		List<Node> nodes = new ArrayList<>();
+		for (int x = 0; x <= ZONES * 10; x++) {
+			nodes.add(NetworkUtils.createAndAddNode(network, Id.createNodeId(x), new Coord(x * 1000, SIZE / 2)));
+		}
+		for (int x = 1; x < nodes.size(); x++) {
+			Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(x), nodes.get(x - 1), nodes.get(x), 1000, 10, 1000, 1);
+			NetworkUtils.setType(link, "residential");
+		}
+	}
+
+	private static long ars(int i) {
+		return 1000 + i;
+	}
+
+	/**
+	 * Persons with a home-work-leisure-home plan, where work and leisure locations are unassigned.
+	 */
+	private static Population createPopulation(int n) {
+
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		PopulationFactory f = population.getFactory();
+		SplittableRandom rnd = new SplittableRandom(0);
+
+		for (int i = 0; i < n; i++) {
+			Person person = f.createPerson(Id.createPersonId(i));
+			int zone = i % ZONES;
+			Coord home = new Coord(rnd.nextDouble(zone * SIZE, (zone + 1) * SIZE), rnd.nextDouble(0, SIZE));
+
+			person.getAttributes().putAttribute(Attributes.HOME_X, home.getX());
+			person.getAttributes().putAttribute(Attributes.HOME_Y, home.getY());
+			person.getAttributes().putAttribute(Attributes.ARS, ars(zone));
+
+			Plan plan = f.createPlan();
+			plan.addActivity(f.createActivityFromCoord("home", home));
+			plan.addLeg(f.createLeg("car"));
+			plan.addActivity(unassigned(f, "work", rnd.nextDouble(1, 20)));
+			plan.addLeg(f.createLeg("car"));
+			plan.addActivity(unassigned(f, "leisure", rnd.nextDouble(1, 8)));
+			plan.addLeg(f.createLeg("car"));
+			plan.addActivity(f.createActivityFromCoord("home", home));
+
+			person.addPlan(plan);
+			population.addPerson(person);
+		}
+
+		return population;
+	}
+
+	private static Activity unassigned(PopulationFactory f, String type, double dist) {
+		Activity act = f.createActivityFromLinkId(type, Id.createLinkId("unassigned"));
+		act.getAttributes().putAttribute("orig_dist", dist);
+		return act;
+	}
+
+	private static List<String> locations(Plan plan) {
+		return TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities).stream()
+			.map(a -> a.getFacilityId() != null ? a.getFacilityId().toString() : Objects.toString(a.getCoord()))
+			.toList();
+	}
+
+	@Test
+	void sameAsSeparatePlans() {
+
+		int k = 3;
+		long seed = 4;
+
+		Population population = createPopulation(600);
+		new InitLocationChoice(facilities, zones, network, commuterPath, berlinCommuterPath, k, 0.25, seed, 4)
+			.assignLocations(population);
+
+		int differ = 0;
+
+		// Each plan must be the same as if it was created in a separate run
+		for (int i = 0; i < k; i++) {
+
+			Population single = createPopulation(600);
+			new InitLocationChoice(facilities, zones, network, commuterPath, berlinCommuterPath, 1, 0.25, seed + i, 4)
+				.assignLocations(single);
+
+			for (Person person : population.getPersons().values()) {
+				assertThat(person.getPlans()).hasSize(k);
+
+				List<String> expected = locations(single.getPersons().get(person.getId()).getPlans().get(0));
+				List<String> actual = locations(person.getPlans().get(i));
+
+				assertThat(actual).isEqualTo(expected);
+				assertThat(actual).doesNotContain("null");
+
+				if (i > 0 && !actual.equals(locations(person.getPlans().get(0))))
+					differ++;
+			}
+		}
+
+		// Plans are different variants
+		assertThat(differ).isGreaterThan(population.getPersons().size());
+	}
+
+	@Test
+	void independentOfThreads() {
+
+		int k = 2;
+
+		Population single = createPopulation(1000);
+		new InitLocationChoice(facilities, zones, network, commuterPath, berlinCommuterPath, k, 0.25, 1, 1)
+			.assignLocations(single);
+
+		Population multi = createPopulation(1000);
+		new InitLocationChoice(facilities, zones, network, commuterPath, berlinCommuterPath, k, 0.25, 1, 8)
+			.assignLocations(multi);
+
+		for (Person person : single.getPersons().values()) {
+			Person other = multi.getPersons().get(person.getId());
+			for (int i = 0; i < k; i++) {
+				assertThat(locations(other.getPlans().get(i))).isEqualTo(locations(person.getPlans().get(i)));
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.matsim.prepare.population;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.matsim.prepare.facilities.CreateMATSimFacilities.IGNORED_LINK_TYPES;
+
+class NearestLinkFilterTest {
+
+	@Test
+	void sameAsNearestLink() {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		List<String> types = List.of("residential", "primary", "motorway", "trunk_link");
+
+		int size = 30;
+		Network network = NetworkUtils.createNetwork();
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 300, y * 300));
+			}
+		}
+
+		// Road types are assigned per row and column, so that there are nodes with only allowed, only ignored and mixed links
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					String type = types.get(y % types.size());
+					link(network, nodes[x][y], nodes[x + 1][y], type);
+					link(network, nodes[x + 1][y], nodes[x][y], type);
+				}
+				if (y + 1 < size) {
+					String type = types.get((x + rnd.nextInt(2)) % types.size());
+					link(network, nodes[x][y], nodes[x][y + 1], type);
+					link(network, nodes[x][y + 1], nodes[x][y], type);
+				}
+			}
+		}
+
+		Predicate<Link> filter = link -> !IGNORED_LINK_TYPES.contains(NetworkUtils.getType(link));
+		NearestLinkFilter linkFilter = new NearestLinkFilter(network, filter);
+
+		int accepted = 0;
+		for (int i = 0; i < 20_000; i++) {
+			Coord coord = new Coord(rnd.nextDouble(-500, size * 300 + 500), rnd.nextDouble(-500, size * 300 + 500));
+
+			boolean expected = filter.test(NetworkUtils.getNearestLink(network, coord));
+			assertThat(linkFilter.test(coord)).isEqualTo(expected);
+
+			if (expected)
+				accepted++;
+		}
+
+		assertThat(accepted).isBetween(1000, 19_000);
+	}
+
+	private static void link(Network network, Node from, Node to, String type) {
+		Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(from.getId() + "-" + to.getId()), from, to, 300, 10, 1000, 1);
+		NetworkUtils.setType(link, type);
+	}
+}
@@ -0,0 +1,193 @@
+package org.matsim.prepare.population;
+
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.PopulationUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PersonMatcherTest {
+
+	private static final List<String> EMPLOYMENT = List.of("unemployed", "job_full_time", "job_part_time", "child", "retiree");
+
+	@TempDir
+	private Path dir;
+
+	private PersonMatcher matcher;
+
+	/**
+	 * Reference persons grouped by key, like in the original implementation.
+	 */
+	private Map<PersonMatcher.Key, List<String>> groups;
+
+	private List<Person> persons;
+
+	/**
+	 * Same keys as used by the matcher.
+	 */
+	private static Stream<PersonMatcher.Key> keys(String gender, int age, int regionType, String employment) {
+		if (age < 6)
+			return IntStream.rangeClosed(0, 5).mapToObj(i -> new PersonMatcher.Key(null, i, regionType, null));
+		if (age <= 10)
+			return IntStream.rangeClosed(6, 10).mapToObj(i -> new PersonMatcher.Key(null, i, regionType, null));
+		if (age < 18)
+			return IntStream.rangeClosed(11, 18).mapToObj(i -> new PersonMatcher.Key(gender, i, regionType, null));
+
+		Boolean isEmployed = age > 65 ? null : !employment.equals("unemployed");
+		int min = age > 65 ? Math.max(66, age - 10) : Math.max(18, age - 6);
+		int max = age > 65 ? Math.min(99, age + 10) : Math.min(65, age + 6);
+
+		return IntStream.rangeClosed(min, max).mapToObj(i -> new PersonMatcher.Key(gender, i, regionType, isEmployed));
+	}
+
+	private static PersonMatcher.Key key(Person person) {
+		int age = PersonUtils.getAge(person);
+		String gender = age <= 10 ? null : PersonUtils.getSex(person);
+		Boolean employed = age < 18 || age > 65 ? null : PersonUtils.isEmployed(person);
+		int regionType = (int) person.getAttributes().getAttribute(Attributes.RegioStaR7);
+
+		return new PersonMatcher.Key(gender, age, regionType != 1 ? 3 : regionType, employed);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		StringBuilder csv = new StringBuilder("idx,region_type,gender,employment,age\n");
+		groups = new HashMap<>();
+
+		for (int i = 0; i < 3000; i++) {
+			String idx = "r" + i;
+			int regionType = rnd.nextBoolean() ? 1 : 3;
+			String gender = rnd.nextBoolean() ? "m" : "f";
+			String employment = EMPLOYMENT.get(rnd.nextInt(EMPLOYMENT.size()));
+			int age = rnd.nextInt(0, 95);
+
+			csv.append(idx).append(",").append(regionType).append(",").append(gender).append(",")
+				.append(employment).append(",").append(age).append("\n");
+
+			keys(gender, age, regionType, employment).forEach(k -> groups.computeIfAbsent(k, x -> new ArrayList<>()).add(idx));
+		}
+
+		Path path = dir.resolve("persons.csv");
+		Files.writeString(path, csv.toString());
+		matcher = new PersonMatcher("idx", path);
+
+		PopulationFactory f = PopulationUtils.getFactory();
+		persons = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			Person person = f.createPerson(Id.createPersonId(i));
+			PersonUtils.setAge(person, rnd.nextInt(0, 100));
+			PersonUtils.setSex(person, rnd.nextBoolean() ? "m" : "f");
+			PersonUtils.setEmployed(person, rnd.nextBoolean());
+			person.getAttributes().putAttribute(Attributes.RegioStaR7, rnd.nextInt(1, 8));
+			persons.add(person);
+		}
+	}
+
+	@Test
+	void matchPerson() {
+
+		int matched = 0;
+		for (Person person : persons) {
+
+			List<String> group = groups.get(key(person));
+			long seed = person.getId().index();
+
+			if (group == null) {
+				assertThatThrownBy(() -> matcher.matchPerson(person, new SplittableRandom(seed)))
+					.isInstanceOf(IllegalStateException.class);
+				continue;
+			}
+
+			String expected = group.get(new SplittableRandom(seed).nextInt(group.size()));
+			assertThat(matcher.matchPerson(person, new SplittableRandom(seed)))
+				.isEqualTo(expected);
+
+			matched++;
+		}
+
+		assertThat(matched).isGreaterThan(persons.size() / 2);
+	}
+
+	@Test
+	void matchEntry() {
+
+		SplittableRandom rnd = new SplittableRandom(2);
+
+		int matched = 0;
+		for (Map.Entry<String, CSVRecord> e : matcher) {
+
+			CSVRecord p = e.getValue();
+			Set<PersonMatcher.Key> keys = new HashSet<>(keys(p.get("gender"), Integer.parseInt(p.get("age")),
+				Integer.parseInt(p.get("region_type")), p.get("employment")).toList());
+
+			List<Person> refPersons = persons.subList(0, rnd.nextInt(1, persons.size()));
+			List<Person> candidates = refPersons.stream().filter(person -> keys.contains(key(person))).toList();
+
+			long seed = rnd.nextLong();
+			Person person = matcher.matchEntry(p, matcher.candidates(refPersons), new SplittableRandom(seed));
+
+			if (candidates.isEmpty()) {
+				assertThat(person).isNull();
+				continue;
+			}
+
+			assertThat(person).isSameAs(candidates.get(new SplittableRandom(seed).nextInt(candidates.size())));
+			matched++;
+		}
+
+		assertThat(matched).isPositive();
+	}
+
+	@Test
+	void removeCandidates() {
+
+		PersonMatcher.Candidates candidates = matcher.candidates(persons);
+		List<Person> remaining = new ArrayList<>(persons);
+		SplittableRandom rnd = new SplittableRandom(3);
+
+		int matched = 0;
+		for (Map.Entry<String, CSVRecord> e : matcher) {
+
+			CSVRecord p = e.getValue();
+			Set<PersonMatcher.Key> keys = new HashSet<>(keys(p.get("gender"), Integer.parseInt(p.get("age")),
+				Integer.parseInt(p.get("region_type")), p.get("employment")).toList());
+
+			List<Person> expected = remaining.stream().filter(person -> keys.contains(key(person))).toList();
+
+			long seed = rnd.nextLong();
+			Person person = matcher.matchEntry(p, candidates, new SplittableRandom(seed));
+
+			if (expected.isEmpty()) {
+				assertThat(person).isNull();
+				continue;
+			}
+
+			// Removed persons are never matched again, the remaining ones keep their order
+			assertThat(person).isSameAs(expected.get(new SplittableRandom(seed).nextInt(expected.size())));
+			assertThat(candidates.remove(person)).isTrue();
+			assertThat(candidates.remove(person)).isFalse();
+			remaining.remove(person);
+
+			if (++matched == 500)
+				break;
+		}
+
+		assertThat(candidates.size()).isEqualTo(remaining.size());
+	}
+}
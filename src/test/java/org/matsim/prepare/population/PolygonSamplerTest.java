@@ -0,0 +1,100 @@
+package org.matsim.prepare.population;
+
+import org.apache.commons.math3.stat.inference.ChiSquareTest;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.geotools.MGC;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PolygonSamplerTest {
+
+	/**
+	 * Concave polygon with a hole and a second separate polygon.
+	 */
+	private static final String WKT = "MULTIPOLYGON (((0 0, 1000 0, 1000 400, 400 400, 400 1000, 0 1000, 0 0), (100 100, 300 100, 300 300, 100 300, 100 100))," +
+		" ((1200 600, 1600 600, 1400 1000, 1200 600)))";
+
+	private static final int N = 200_000;
+	private static final int GRID = 10;
+
+	@Test
+	void uniform() throws ParseException {
+
+		Geometry geom = new WKTReader().read(WKT);
+		PolygonSampler sampler = PolygonSampler.of(geom);
+
+		assertThat(sampler.getArea())
+			.isCloseTo(geom.getArea(), Offset.offset(1e-6));
+
+		Envelope bbox = geom.getEnvelopeInternal();
+		double w = bbox.getWidth() / GRID;
+		double h = bbox.getHeight() / GRID;
+
+		SplittableRandom rnd = new SplittableRandom(0);
+		long[] observed = new long[GRID * GRID];
+
+		for (int i = 0; i < N; i++) {
+			Coord coord = sampler.sample(rnd);
+
+			assertThat(geom.covers(MGC.coord2Point(coord)))
+				.isTrue();
+
+			int x = Math.min(GRID - 1, (int) ((coord.getX() - bbox.getMinX()) / w));
+			int y = Math.min(GRID - 1, (int) ((coord.getY() - bbox.getMinY()) / h));
+			observed[x * GRID + y]++;
+		}
+
+		// Expected counts are proportional to the area of each cell within the geometry
+		GeometryFactory gf = new GeometryFactory();
+		double[] expected = new double[GRID * GRID];
+		for (int x = 0; x < GRID; x++) {
+			for (int y = 0; y < GRID; y++) {
+				Envelope cell = new Envelope(bbox.getMinX() + x * w, bbox.getMinX() + (x + 1) * w,
+					bbox.getMinY() + y * h, bbox.getMinY() + (y + 1) * h);
+
+				expected[x * GRID + y] = N * gf.toGeometry(cell).intersection(geom).getArea() / geom.getArea();
+
+				if (expected[x * GRID + y] == 0)
+					assertThat(observed[x * GRID + y]).isZero();
+			}
+		}
+
+		// Cells with only a sliver of the geometry are left out of the test
+		double[] e = new double[expected.length];
+		long[] o = new long[observed.length];
+		int n = 0;
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] >= 5) {
+				e[n] = expected[i];
+				o[n] = observed[i];
+				n++;
+			}
+		}
+
+		double p = new ChiSquareTest().chiSquareTest(Arrays.copyOf(e, n), Arrays.copyOf(o, n));
+		assertThat(p).isGreaterThan(0.001);
+	}
+
+	@Test
+	void deterministic() throws ParseException {
+
+		PolygonSampler sampler = PolygonSampler.of(new WKTReader().read(WKT));
+
+		SplittableRandom a = new SplittableRandom(1);
+		SplittableRandom b = new SplittableRandom(1);
+
+		for (int i = 0; i < 1000; i++) {
+			assertThat(sampler.sample(a)).isEqualTo(sampler.sample(b));
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package org.matsim.prepare.population;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.prepare.RunOpenBerlinCalibration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RunActivitySamplingTest {
+
+	private static final List<String> TYPES = List.of("home", "work", "other", "shop_daily", "leisure", "edu_primary", "personal_business");
+	private static final List<String> MODES = List.of("walk", "bike", "car", "pt", "ride", "other");
+
+	@TempDir
+	private Path dir;
+
+	/**
+	 * Generate a survey activity table with random persons and activities.
+	 */
+	private Path createActivities(int persons) throws IOException {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		StringBuilder csv = new StringBuilder("p_id,n,type,duration,leg_duration,leg_dist,leg_mode\n");
+
+		for (int p = 0; p < persons; p++) {
+			int n = rnd.nextInt(1, 8);
+			for (int i = 0; i < n; i++) {
+				String type = i == 0 && rnd.nextBoolean() ? "home" : TYPES.get(rnd.nextInt(TYPES.size()));
+				int duration = rnd.nextInt(10) == 0 ? 1440 : rnd.nextInt(1, 600);
+
+				csv.append("p").append(p).append(",").append(i).append(",").append(type).append(",")
+					.append(duration).append(".0,")
+					.append(i == 0 ? 0 : rnd.nextInt(1, 90) + rnd.nextInt(4) * 0.25).append(",")
+					.append(i == 0 ? 0 : Math.round(rnd.nextDouble(0.1, 40) * 100) / 100.0).append(",")
+					.append(i == 0 ? "" : MODES.get(rnd.nextInt(MODES.size()))).append("\n");
+			}
+		}
+
+		Path path = dir.resolve("activities.csv");
+		Files.writeString(path, csv.toString());
+		return path;
+	}
+
+	private static Map<String, List<CSVRecord>> readRecords(Path csv) throws IOException {
+		Map<String, List<CSVRecord>> records = new LinkedHashMap<>();
+		try (CSVParser parser = CSVParser.parse(csv, StandardCharsets.UTF_8,
+			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
+			for (CSVRecord r : parser) {
+				records.computeIfAbsent(r.get("p_id"), k -> new ArrayList<>()).add(r);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Reference implementation, creating the plan directly from the csv records.
+	 */
+	private static Plan createPlan(Coord homeCoord, List<CSVRecord> activities, SplittableRandom rnd, PopulationFactory factory) {
+		Plan plan = factory.createPlan();
+
+		Activity a = null;
+		String lastMode = null;
+		double startTime = 0;
+		double homeDist = 0;
+		boolean arrivedHome = false;
+
+		for (int i = 0; i < activities.size(); i++) {
+
+			CSVRecord act = activities.get(i);
+			String actType = act.get("type");
+
+			if (actType.equals("other") && (i == 0 || i == activities.size() - 1))
+				actType = "home";
+
+			int duration = (int) Double.parseDouble(act.get("duration"));
+
+			if (actType.equals("home"))
+				a = factory.createActivityFromCoord("home", homeCoord);
+			else
+				a = factory.createActivityFromLinkId(actType, Id.createLinkId("unassigned"));
+
+			double legDuration = Double.parseDouble(act.get("leg_duration"));
+
+			if (plan.getPlanElements().isEmpty()) {
+				int seconds = RunActivitySampling.randomizeDuration(duration, rnd);
+				a.setEndTime(seconds);
+				startTime += seconds;
+			} else if (duration < 1440) {
+				startTime += legDuration * 60;
+				int seconds = RunActivitySampling.randomizeDuration(duration, rnd);
+
+				if (RunOpenBerlinCalibration.FLEXIBLE_ACTS.contains(actType))
+					a.setMaximumDuration(seconds);
+				else {
+					a.setStartTime(startTime);
+					a.setEndTime(startTime + seconds);
+				}
+
+				startTime += seconds;
+			}
+
+			double legDist = Double.parseDouble(act.get("leg_dist"));
+
+			if (i > 0) {
+				a.getAttributes().putAttribute("orig_dist", legDist);
+				a.getAttributes().putAttribute("orig_duration", legDuration);
+			}
+
+			if (!plan.getPlanElements().isEmpty()) {
+				lastMode = act.get("leg_mode");
+				if (lastMode.equals("other"))
+					lastMode = "walk";
+
+				plan.addLeg(factory.createLeg(lastMode));
+			}
+
+			if (!arrivedHome)
+				homeDist += legDist;
+
+			if (a.getType().equals("home"))
+				arrivedHome = true;
+
+			plan.addActivity(a);
+		}
+
+		((Activity) plan.getPlanElements().get(0)).getAttributes().putAttribute("orig_dist", homeDist);
+
+		if (a != null) {
+			if (!RunOpenBerlinCalibration.FLEXIBLE_ACTS.contains(a.getType())) {
+				a.setEndTimeUndefined();
+				a.setMaximumDurationUndefined();
+			} else {
+				a.setMaximumDuration(30 * 60);
+				plan.addLeg(factory.createLeg(lastMode));
+				plan.addActivity(factory.createActivityFromCoord("home", homeCoord));
+			}
+		}
+
+		return plan;
+	}
+
+	/**
+	 * String representation with all relevant information of a plan.
+	 */
+	private static List<String> describe(Plan plan) {
+		List<String> result = new ArrayList<>();
+		for (PlanElement el : plan.getPlanElements()) {
+			if (el instanceof Activity act) {
+				result.add(String.join("|", act.getType(), Objects.toString(act.getCoord()), Objects.toString(act.getLinkId()),
+					act.getStartTime().toString(), act.getEndTime().toString(), act.getMaximumDuration().toString(),
+					Objects.toString(act.getAttributes().getAttribute("orig_dist")), Objects.toString(act.getAttributes().getAttribute("orig_duration"))));
+			} else if (el instanceof Leg leg) {
+				result.add(leg.getMode());
+			}
+		}
+		return result;
+	}
+
+	@Test
+	void unchangedPlans() throws IOException {
+
+		Path csv = createActivities(2000);
+		Map<String, List<CSVRecord>> records = readRecords(csv);
+
+		ActivityTable table = ActivityTable.read(csv);
+		ActivityTable grouped = ActivityTable.of(records);
+
+		PopulationFactory factory = PopulationUtils.getFactory();
+		Coord home = new Coord(1000, 2000);
+
+		for (Map.Entry<String, List<CSVRecord>> e : records.entrySet()) {
+
+			long seed = e.getKey().hashCode();
+
+			List<String> expected = describe(createPlan(home, e.getValue(), new SplittableRandom(seed), factory));
+
+			assertThat(describe(RunActivitySampling.createPlan(home, table, table.getPerson(e.getKey()), new SplittableRandom(seed), factory)))
+				.isEqualTo(expected);
+
+			assertThat(describe(RunActivitySampling.createPlan(home, grouped, grouped.getPerson(e.getKey()), new SplittableRandom(seed), factory)))
+				.isEqualTo(expected);
+		}
+
+		assertThat(table.getPerson("unknown")).isEqualTo(-1);
+	}
+}
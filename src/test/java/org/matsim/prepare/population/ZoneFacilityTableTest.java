@@ -0,0 +1,212 @@
+package org.matsim.prepare.population;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.facilities.ActivityFacilitiesFactory;
+import org.matsim.facilities.ActivityFacilitiesFactoryImpl;
+import org.matsim.facilities.ActivityFacility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZoneFacilityTableTest {
+
+	private static final List<String> TYPES = List.of("work", "shop", "leisure");
+
+	@TempDir
+	private Path dir;
+
+	private ActivityFacility[] facilities;
+
+	/**
+	 * Zones are cells of 2km, the last km is outside all zones.
+	 */
+	private final Function<Coord, Long> lookup = coord -> coord.getX() >= 9000 ? null :
+		(long) ((int) (coord.getX() / 2000) * 100 + (int) (coord.getY() / 2000));
+
+	@BeforeEach
+	void setUp() {
+
+		ActivityFacilitiesFactory f = new ActivityFacilitiesFactoryImpl();
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		facilities = new ActivityFacility[5000];
+		for (int i = 0; i < facilities.length; i++) {
+			ActivityFacility af = f.createActivityFacility(Id.create(i, ActivityFacility.class), new Coord(rnd.nextDouble(10000), rnd.nextDouble(10000)));
+			for (String type : TYPES) {
+				if (rnd.nextInt(3) == 0)
+					af.addActivityOption(f.createActivityOption(type));
+			}
+
+			facilities[i] = af;
+		}
+	}
+
+	/**
+	 * Facilities of a zone in the original order, optionally filtered by type.
+	 */
+	private List<ActivityFacility> expected(long zone, String type) {
+		return Arrays.stream(facilities)
+			.filter(af -> Objects.equals(lookup.apply(af.getCoord()), zone))
+			.filter(af -> type == null || af.getActivityOptions().containsKey(type))
+			.toList();
+	}
+
+	private static List<ActivityFacility> resolve(ZoneFacilityTable table, int[] idx) {
+		return Arrays.stream(idx).mapToObj(table::getFacility).toList();
+	}
+
+	private void assertTable(ZoneFacilityTable table) {
+		for (int x = 0; x < 5; x++) {
+			for (int y = 0; y < 5; y++) {
+				long zone = x * 100L + y;
+				int z = table.getZone(zone);
+
+				assertThat(resolve(table, table.getFacilities(z))).isEqualTo(expected(zone, null));
+				for (String type : TYPES) {
+					assertThat(resolve(table, table.getFacilities(z, type))).isEqualTo(expected(zone, type));
+				}
+			}
+		}
+
+		assertThat(table.getZone(9999)).isEqualTo(-1);
+		assertThat(table.getFacilities(-1)).isEmpty();
+		assertThat(table.getFacilities(0, "unknown")).isEmpty();
+	}
+
+	@Test
+	void join() {
+		assertTable(ZoneFacilityTable.create(facilities, lookup));
+	}
+
+	@Test
+	void cache() throws IOException {
+
+		ZoneFacilityTable table = ZoneFacilityTable.create(facilities, lookup);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		table.write(out, 42);
+
+		assertTable(ZoneFacilityTable.read(new ByteArrayInputStream(out.toByteArray()), 42, facilities));
+		assertThat(ZoneFacilityTable.read(new ByteArrayInputStream(out.toByteArray()), 43, facilities)).isNull();
+
+		Path cache = dir.resolve("zones.bin");
+		ZoneFacilityTable.create(facilities, lookup, cache, 1);
+
+		// The join is not computed again
+		assertTable(ZoneFacilityTable.create(facilities, coord -> {
+			throw new AssertionError("Cache not used");
+		}, cache, 1));
+
+		// Changed inputs
+		assertTable(ZoneFacilityTable.create(facilities, lookup, cache, 2));
+	}
+
+	/**
+	 * Sampling as implemented with facility lists before.
+	 */
+	private static List<ActivityFacility> sampleReference(List<List<ActivityFacility>> locations, Coord homeCoord, DoubleList dists, SplittableRandom rnd) {
+
+		double err = Double.POSITIVE_INFINITY;
+		List<ActivityFacility> best = null;
+
+		for (int k = 0; k < 100; k++) {
+			List<ActivityFacility> current = new ArrayList<>();
+			for (List<ActivityFacility> locs : locations) {
+				current.add(locs == null ? null : locs.get(rnd.nextInt(locs.size())));
+			}
+
+			double currentErr = 0;
+			for (int i = 1; i < current.size(); i++) {
+				Coord from = current.get(i - 1) == null ? homeCoord : current.get(i - 1).getCoord();
+				Coord to = current.get(i) == null ? homeCoord : current.get(i).getCoord();
+				currentErr += Math.abs(CoordUtils.calcEuclideanDistance(from, to) - dists.getDouble(i));
+			}
+
+			if (currentErr < err || best == null) {
+				err = currentErr;
+				best = current;
+			}
+		}
+
+		double total = dists.doubleStream().sum() / (locations.size() - 1);
+		double perActErr = err / (locations.size() - 1);
+
+		if (perActErr > Math.max(300, total * 0.03))
+			return null;
+
+		return best;
+	}
+
+	@Test
+	void sampling() {
+
+		ZoneFacilityTable table = ZoneFacilityTable.create(facilities, lookup);
+		SplittableRandom rnd = new SplittableRandom(2);
+		Coord home = new Coord(5000, 5000);
+
+		int found = 0;
+		for (int n = 0; n < 500; n++) {
+
+			// Home, followed by activities in random zones and back home
+			int acts = rnd.nextInt(3, 6);
+			int[][] candidates = new int[acts][];
+			List<List<ActivityFacility>> reference = new ArrayList<>();
+			DoubleList dists = new DoubleArrayList();
+
+			// Reference distances are taken from one possible trip chain
+			Coord last = home;
+			for (int i = 0; i < acts; i++) {
+
+				Coord coord = home;
+				if (i == 0 || i == acts - 1) {
+					reference.add(null);
+				} else {
+					long zone = rnd.nextInt(5) * 100L + rnd.nextInt(5);
+					String type = TYPES.get(rnd.nextInt(TYPES.size()));
+
+					candidates[i] = table.getFacilities(table.getZone(zone), type);
+					reference.add(expected(zone, type));
+
+					coord = table.getFacility(candidates[i][rnd.nextInt(candidates[i].length)]).getCoord();
+				}
+
+				dists.add(CoordUtils.calcEuclideanDistance(last, coord));
+				last = coord;
+			}
+
+			long seed = rnd.nextLong();
+			int[] chosen = PlanBuilder.sampleLocation(table, candidates, home, dists, new SplittableRandom(seed));
+			List<ActivityFacility> expected = sampleReference(reference, home, dists, new SplittableRandom(seed));
+
+			// Same seed gives the same result
+			assertThat(PlanBuilder.sampleLocation(table, candidates, home, dists, new SplittableRandom(seed)))
+				.isEqualTo(chosen);
+
+			if (expected == null) {
+				assertThat(chosen).isNull();
+				continue;
+			}
+
+			assertThat(chosen).isNotNull();
+			assertThat(Arrays.stream(chosen).mapToObj(i -> i < 0 ? null : table.getFacility(i)).toList())
+				.isEqualTo(expected);
+
+			found++;
+		}
+
+		assertThat(found).isPositive();
+	}
+}
@@ -1,11 +1,22 @@
 package org.matsim.run;
 
 
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.analysis.QsimTimingModule;
 import org.matsim.application.MATSimApplication;
 import org.matsim.testcases.MatsimTestUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class RunOpenBerlinScenarioTest {
@@ -14,7 +25,7 @@ public class RunOpenBerlinScenarioTest {
 	public MatsimTestUtils utils = new MatsimTestUtils();
 
 	@Test
-	public void pct1() {
+	public void pct1() throws IOException {
 
 		int code = MATSimApplication.execute(OpenBerlinScenario.class,
 			"--1pct",
@@ -27,5 +38,28 @@ public class RunOpenBerlinScenarioTest {
 
 		assertThat(code).isEqualTo(0);
 
+		Path phases;
+		try (Stream<Path> files = Files.list(Path.of(utils.getOutputDirectory()))) {
+			phases = files.filter(f -> f.getFileName().toString().endsWith("runtime_phases.csv")).findFirst().orElseThrow();
+		}
+
+		List<CSVRecord> records;
+		try (CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build().parse(Files.newBufferedReader(phases))) {
+			records = parser.getRecords();
+		}
+
+		// All phases are recorded in order for iterations 0 to 2
+		assertThat(records)
+			.extracting(r -> r.get("iteration") + ":" + r.get("phase"))
+			.containsExactlyElementsOf(IntStream.rangeClosed(0, 2).boxed()
+				.flatMap(i -> QsimTimingModule.PHASES.stream().map(p -> i + ":" + p))
+				.toList());
+
+		assertThat(records)
+			.allSatisfy(r -> {
+				assertThat(Double.parseDouble(r.get("wall_time"))).isNotNegative();
+				assertThat(Double.parseDouble(r.get("cpu_time"))).isNotNegative();
+				assertThat(Double.parseDouble(r.get("alloc_mb"))).isNotNegative();
+			});
 	}
 }
@@ -0,0 +1,110 @@
+package org.matsim.run;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServiceAreaIndexTest {
+
+	private static final GeometryFactory FACTORY = new GeometryFactory();
+
+	/**
+	 * Random star-shaped polygon around a center.
+	 */
+	private static Polygon randomPolygon(SplittableRandom rnd, double cx, double cy, double radius) {
+
+		int n = rnd.nextInt(5, 60);
+		Coordinate[] coords = new Coordinate[n + 1];
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			double r = radius * rnd.nextDouble(0.2, 1);
+			coords[i] = new Coordinate(cx + r * Math.cos(angle), cy + r * Math.sin(angle));
+		}
+		coords[n] = coords[0];
+
+		return FACTORY.createPolygon(coords);
+	}
+
+	private static List<Geometry> randomAreas(long seed) {
+		SplittableRandom rnd = new SplittableRandom(seed);
+
+		List<Geometry> areas = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			Polygon p = randomPolygon(rnd, rnd.nextDouble(0, 10_000), rnd.nextDouble(0, 10_000), rnd.nextDouble(500, 4000));
+
+			// Some areas with holes
+			if (i % 3 == 0) {
+				Point c = p.getInteriorPoint();
+				areas.add(p.difference(c.buffer(200)));
+			} else
+				areas.add(p.buffer(rnd.nextDouble(0, 200)));
+		}
+
+		return areas;
+	}
+
+	private static boolean naive(List<Geometry> areas, double x, double y) {
+		Point p = FACTORY.createPoint(new Coordinate(x, y));
+		return areas.stream().anyMatch(geom -> geom.contains(p));
+	}
+
+	@Test
+	void randomPoints() {
+
+		for (long seed = 0; seed < 5; seed++) {
+
+			List<Geometry> areas = randomAreas(seed);
+			ServiceAreaIndex index = new ServiceAreaIndex(areas, 250);
+
+			assertThat(index.size()).isEqualTo(areas.size());
+
+			SplittableRandom rnd = new SplittableRandom(seed);
+			for (int i = 0; i < 50_000; i++) {
+				double x = rnd.nextDouble(-5000, 15_000);
+				double y = rnd.nextDouble(-5000, 15_000);
+
+				assertThat(index.contains(x, y))
+					.describedAs("Point %f, %f", x, y)
+					.isEqualTo(naive(areas, x, y));
+			}
+		}
+	}
+
+	@Test
+	void verticesAndCellEdges() {
+
+		List<Geometry> areas = randomAreas(42);
+		ServiceAreaIndex index = new ServiceAreaIndex(areas);
+
+		List<Coordinate> points = new ArrayList<>();
+		for (Geometry area : areas) {
+			points.addAll(List.of(area.getCoordinates()));
+		}
+
+		// Points exactly on the grid lines
+		for (int x = -2000; x <= 12_000; x += 125) {
+			for (int y = -2000; y <= 12_000; y += 125) {
+				points.add(new Coordinate(x, y));
+			}
+		}
+
+		for (Coordinate c : points) {
+			assertThat(index.contains(c.x, c.y))
+				.describedAs("Point %s", c)
+				.isEqualTo(naive(areas, c.x, c.y));
+		}
+	}
+
+	@Test
+	void empty() {
+		ServiceAreaIndex index = new ServiceAreaIndex(List.of());
+
+		assertThat(index.size()).isZero();
+		assertThat(index.contains(0, 0)).isFalse();
+	}
+}
@@ -0,0 +1,108 @@
+package org.matsim.run.scoring;
+
+import org.apache.commons.math3.distribution.GumbelDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import org.apache.commons.math3.stat.inference.KolmogorovSmirnovTest;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CounterBasedRandomTest {
+
+	private static final int N = 100_000;
+
+	private static final long SEED = 1234L;
+
+	private final KolmogorovSmirnovTest ks = new KolmogorovSmirnovTest();
+
+	@Test
+	void uniformRange() {
+		for (int i = 0; i < N; i++) {
+			double v = CounterBasedRandom.nextOpenDouble(SEED, i, 0);
+			assertThat(v).isGreaterThan(0).isLessThan(1);
+		}
+	}
+
+	@Test
+	void gumbel() {
+
+		double[] samples = new double[N];
+		for (int i = 0; i < N; i++) {
+			samples[i] = CounterBasedRandom.sampleGumbel(SEED, i, 0, 1);
+		}
+
+		assertThat(ks.kolmogorovSmirnovTest(new GumbelDistribution(0, 1), samples))
+			.isGreaterThan(0.001);
+
+		for (int i = 0; i < N; i++) {
+			samples[i] = CounterBasedRandom.sampleGumbel(SEED, i, 1, 2);
+		}
+
+		assertThat(ks.kolmogorovSmirnovTest(new GumbelDistribution(1, 2), samples))
+			.isGreaterThan(0.001);
+	}
+
+	@Test
+	void normal() {
+
+		double[] samples = new double[N];
+		for (int i = 0; i < N; i++) {
+			samples[i] = CounterBasedRandom.sampleNormal(SEED, i, 0, 1);
+		}
+
+		assertThat(ks.kolmogorovSmirnovTest(new NormalDistribution(0, 1), samples))
+			.isGreaterThan(0.001);
+
+		for (int i = 0; i < N; i++) {
+			samples[i] = CounterBasedRandom.sampleNormal(SEED, i, -1, 0.5);
+		}
+
+		assertThat(ks.kolmogorovSmirnovTest(new NormalDistribution(-1, 0.5), samples))
+			.isGreaterThan(0.001);
+	}
+
+	@Test
+	void deterministic() {
+		assertThat(CounterBasedRandom.sampleNormal(SEED, 42, 0, 1))
+			.isEqualTo(CounterBasedRandom.sampleNormal(SEED, 42, 0, 1));
+
+		assertThat(CounterBasedRandom.sampleGumbel(SEED, 42, 0, 1))
+			.isNotEqualTo(CounterBasedRandom.sampleGumbel(SEED + 1, 42, 0, 1));
+	}
+
+	@Test
+	void neighbouringSeeds() {
+
+		PearsonsCorrelation corr = new PearsonsCorrelation();
+
+		double[] a = new double[N];
+		double[] b = new double[N];
+
+		// Neighbouring trip seeds, as produced by similar person ids and modes
+		for (int i = 0; i < N; i++) {
+			a[i] = CounterBasedRandom.nextOpenDouble(SEED, i, 0);
+			b[i] = CounterBasedRandom.nextOpenDouble(SEED, i + 1, 0);
+		}
+		assertThat(Math.abs(corr.correlation(a, b))).isLessThan(0.02);
+
+		// Neighbouring global seeds
+		for (int i = 0; i < N; i++) {
+			b[i] = CounterBasedRandom.nextOpenDouble(SEED + 1, i, 0);
+		}
+		assertThat(Math.abs(corr.correlation(a, b))).isLessThan(0.02);
+
+		// The two uniforms used for one normal sample
+		for (int i = 0; i < N; i++) {
+			b[i] = CounterBasedRandom.nextOpenDouble(SEED, i, 1);
+		}
+		assertThat(Math.abs(corr.correlation(a, b))).isLessThan(0.02);
+
+		// Upper and lower halves of the trip seed, see DefaultPseudoRandomTripError
+		for (int i = 0; i < N; i++) {
+			a[i] = CounterBasedRandom.nextOpenDouble(SEED, ((long) i << 32) | 7, 0);
+			b[i] = CounterBasedRandom.nextOpenDouble(SEED, ((long) i << 32) | 8, 0);
+		}
+		assertThat(Math.abs(corr.correlation(a, b))).isLessThan(0.02);
+	}
+}
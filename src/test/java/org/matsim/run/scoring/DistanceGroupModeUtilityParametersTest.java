@@ -1,10 +1,15 @@
 package org.matsim.run.scoring;
 
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
 import org.junit.jupiter.api.Test;
 import org.matsim.core.scoring.functions.ModeUtilityParameters;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -85,4 +90,60 @@ class DistanceGroupModeUtilityParametersTest {
 		assertThat(m.calcUtilityDistDelta(2000)).isEqualTo(-2);
 
 	}
+
+	@Test
+	void outsideRange() {
+
+		DistanceGroupModeUtilityParameters m = params(base, List.of(1000, 2000), DoubleList.of(-1d, -3d));
+
+		// Negative distances are extrapolated with the first group
+		assertThat(m.calcUtilityDistDelta(-1000)).isEqualTo(1);
+		assertThat(m.calcUtilityDistDelta(Double.POSITIVE_INFINITY)).isEqualTo(Double.NEGATIVE_INFINITY);
+		assertThat(m.calcUtilityDistDelta(Double.NaN)).isNaN();
+	}
+
+	@RepeatedTest(20)
+	void randomEquivalence(RepetitionInfo info) {
+
+		SplittableRandom rnd = new SplittableRandom(info.getCurrentRepetition());
+
+		int n = rnd.nextInt(1, 12);
+		List<Integer> dists = new ArrayList<>();
+		DoubleList utils = new DoubleArrayList();
+
+		int dist = 0;
+		for (int i = 0; i < n; i++) {
+			dist += rnd.nextInt(1, 20_000);
+			dists.add(dist);
+			utils.add(rnd.nextDouble(-5, 5));
+		}
+
+		DistanceGroup[] groups = IndividualPersonScoringParameters.calcDistanceGroups(dists, utils);
+		DistanceGroupModeUtilityParameters m = params(base, dists, utils);
+
+		for (int i = 0; i < 10_000; i++) {
+			double d = rnd.nextDouble(-1000, dist * 1.5);
+			assertThat(m.calcUtilityDistDelta(d)).isEqualTo(linearScan(groups, d));
+		}
+
+		// Exactly at the breakpoints
+		for (int d : dists) {
+			assertThat(m.calcUtilityDistDelta(d)).isEqualTo(linearScan(groups, d));
+		}
+	}
+
+	/**
+	 * Reference implementation, scanning all groups.
+	 */
+	private static double linearScan(DistanceGroup[] groups, double dist) {
+		DistanceGroup group = groups[0];
+		for (int i = 1; i < groups.length; i++) {
+			if (groups[i].dist() > dist)
+				break;
+
+			group = groups[i];
+		}
+
+		return group.constant() + group.utilPerM() * (dist - group.dist());
+	}
 }
@@ -0,0 +1,121 @@
+package org.matsim.run.scoring;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.functions.ModeUtilityParameters;
+import org.matsim.core.scoring.functions.ScoringParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class IndividualPersonScoringParametersTest {
+
+	private static Scenario createScenario(AdvancedScoringConfigGroup.VariationType variation, double... incomes) {
+
+		Config config = ConfigUtils.createConfig();
+
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class);
+		scoring.distGroups = List.of(1000, 5000);
+
+		AdvancedScoringConfigGroup.ScoringParameters params = new AdvancedScoringConfigGroup.ScoringParameters();
+		scoring.addParameterSet(params);
+
+		AdvancedScoringConfigGroup.ModeParams m = params.getOrCreateModeParams(TransportMode.car);
+		m.deltaConstant = 0.5;
+		m.varConstant = variation;
+		m.deltaDailyConstant = -1;
+		m.deltaPerDistGroup = List.of(-0.1, -0.5);
+
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		for (int i = 0; i < incomes.length; i++) {
+			Person person = scenario.getPopulation().getFactory().createPerson(Id.createPersonId(i));
+			PersonUtils.setIncome(person, incomes[i]);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		return scenario;
+	}
+
+	private static List<ScoringParameters> getParams(Scenario scenario) {
+		IndividualPersonScoringParameters p = new IndividualPersonScoringParameters(scenario);
+		List<ScoringParameters> result = new ArrayList<>();
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			result.add(p.getScoringParameters(person));
+		}
+		return result;
+	}
+
+	@Test
+	void sharedForSameDeltas() {
+
+		Scenario scenario = createScenario(AdvancedScoringConfigGroup.VariationType.fixed, 1000, 1000, 2000);
+		ConfigUtils.addOrGetModule(scenario.getConfig(), AdvancedScoringConfigGroup.class).incomeDependent = AdvancedScoringConfigGroup.IncomeDependentScoring.none;
+
+		List<ScoringParameters> params = getParams(scenario);
+
+		assertThat(params.get(0)).isSameAs(params.get(1)).isSameAs(params.get(2));
+
+		ModeUtilityParameters base = params.get(0).modeParams.get(TransportMode.walk);
+		assertThat(base.constant).isEqualTo(scenario.getConfig().scoring().getModes().get(TransportMode.walk).getConstant());
+	}
+
+	@Test
+	void incomeDependent() {
+
+		Scenario scenario = createScenario(AdvancedScoringConfigGroup.VariationType.fixed, 1000, 1000, 2000);
+		List<ScoringParameters> params = getParams(scenario);
+
+		// The utility of money is person specific, only the mode params are shared
+		assertThat(params.get(0)).isNotSameAs(params.get(1));
+		assertThat(params.get(0).marginalUtilityOfMoney).isEqualTo(params.get(1).marginalUtilityOfMoney);
+		assertThat(params.get(2).marginalUtilityOfMoney).isNotEqualTo(params.get(0).marginalUtilityOfMoney);
+
+		assertThat(params.get(2).modeParams.get(TransportMode.car))
+			.isInstanceOf(DistanceGroupModeUtilityParameters.class)
+			.isSameAs(params.get(0).modeParams.get(TransportMode.car));
+
+		// Mode params without deltas are always shared
+		assertThat(params.get(2).modeParams.get(TransportMode.walk)).isSameAs(params.get(0).modeParams.get(TransportMode.walk));
+		assertThat(params.get(2).utilParams).isSameAs(params.get(0).utilParams);
+	}
+
+	@Test
+	void sameValues() {
+
+		Scenario scenario = createScenario(AdvancedScoringConfigGroup.VariationType.normal, 1000, 1500, 2000, 2500);
+		List<ScoringParameters> params = getParams(scenario);
+
+		Config config = scenario.getConfig();
+		double carConstant = config.scoring().getModes().get(TransportMode.car).getConstant();
+		double carDaily = config.scoring().getModes().get(TransportMode.car).getDailyUtilityConstant();
+		double money = config.scoring().getMarginalUtilityOfMoney();
+
+		List<Person> persons = new ArrayList<>(scenario.getPopulation().getPersons().values());
+		double avgIncome = persons.stream().mapToDouble(PersonUtils::getIncome).average().orElseThrow();
+
+		for (int i = 0; i < persons.size(); i++) {
+			Person person = persons.get(i);
+			ScoringParameters p = params.get(i);
+			UtilDelta delta = UtilDelta.fromAttribute(person.getAttributes().getAttribute(UtilDelta.ATTRIBUTE));
+
+			assertThat(p.modeParams.get(TransportMode.car)).isInstanceOf(DistanceGroupModeUtilityParameters.class);
+			assertThat(p.modeParams.get(TransportMode.car).constant).isEqualTo(carConstant + delta.get("car_constant"));
+			assertThat(p.modeParams.get(TransportMode.car).dailyUtilityConstant).isEqualTo(carDaily + delta.get("car_dailyConstant"));
+			assertThat(p.marginalUtilityOfMoney).isCloseTo(money * avgIncome / PersonUtils.getIncome(person), within(1e-12));
+		}
+
+		// Random deltas are not shared
+		assertThat(params).doesNotHaveDuplicates();
+		assertThat(params.stream().map(p -> p.modeParams.get(TransportMode.car)).toList()).doesNotHaveDuplicates();
+	}
+}
@@ -0,0 +1,94 @@
+package org.matsim.run.scoring;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.functions.CharyparNagelActivityScoring;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.run.Activities;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SplitActivityUtilityParametersTest {
+
+	private static ScoringParameters createParams(boolean lazy) {
+
+		Config config = ConfigUtils.createConfig();
+		Activities.addScoringParams(config, true, lazy);
+
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class);
+		scoring.incomeDependent = AdvancedScoringConfigGroup.IncomeDependentScoring.none;
+
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Person person = scenario.getPopulation().getFactory().createPerson(Id.createPersonId("p"));
+		scenario.getPopulation().addPerson(person);
+
+		return new IndividualPersonScoringParameters(scenario).getScoringParameters(person);
+	}
+
+	private static double score(ScoringParameters params, String type, double start, double end) {
+
+		Activity act = PopulationUtils.createActivityFromCoord(type, new Coord(0, 0));
+		act.setStartTime(start);
+		act.setEndTime(end);
+
+		CharyparNagelActivityScoring scoring = new CharyparNagelActivityScoring(params);
+		scoring.handleActivity(act);
+		scoring.finish();
+
+		return scoring.getScore();
+	}
+
+	@Test
+	void identicalScores() {
+
+		ScoringParameters eager = createParams(false);
+		ScoringParameters lazy = createParams(true);
+
+		SplittableRandom rnd = new SplittableRandom(0);
+
+		for (Activities value : Activities.values()) {
+			for (long d = Activities.SPLIT_STEP; d <= Activities.SPLIT_MAX; d += Activities.SPLIT_STEP) {
+
+				String type = value.name() + "_" + d;
+
+				for (int i = 0; i < 5; i++) {
+					double start = rnd.nextDouble(0, 24 * 3600);
+					double end = start + rnd.nextDouble(60, 12 * 3600);
+
+					assertThat(score(lazy, type, start, end))
+						.describedAs("Score of %s", type)
+						.isEqualTo(score(eager, type, start, end));
+				}
+			}
+		}
+	}
+
+	@Test
+	void onlyValidTypes() {
+
+		ScoringParameters eager = createParams(false);
+		ScoringParameters lazy = createParams(true);
+
+		for (String type : new String[]{"work_3600", "edu_kiga_600", "work_business_97200", "work_03600", "work_3601",
+			"work_97800", "work_0", "work_", "unknown_3600", "commercial_start", "3600"}) {
+
+			assertThat(lazy.utilParams.containsKey(type))
+				.describedAs("Contains %s", type)
+				.isEqualTo(eager.utilParams.containsKey(type));
+		}
+
+		// Same instance is returned for repeated lookups
+		assertThat(lazy.utilParams.get("leisure_1200")).isSameAs(lazy.utilParams.get("leisure_1200"));
+		assertThat(lazy.utilParams.keySet()).contains("home", "leisure_1200");
+	}
+}
@@ -0,0 +1,120 @@
+package org.matsim.run.scoring;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.functions.ScoringParameters;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UtilDeltaTest {
+
+	@Test
+	void parseAndWrite() {
+
+		UtilDelta d = UtilDelta.parse("car_constant=-0.5|pt_dailyConstant=1.25");
+
+		assertThat(d.get("car_constant")).isEqualTo(-0.5);
+		assertThat(d.get("pt_dailyConstant")).isEqualTo(1.25);
+		assertThat(d.get("bike_constant")).isNaN();
+		assertThat(d.get("unknown")).isNaN();
+
+		assertThat(UtilDelta.parse(d.toString())).isSameAs(d);
+		assertThat(d.toString()).isSameAs(d.toString());
+
+		// No loss of precision
+		assertThat(UtilDelta.parse("car_constant=0.1234567891234").get("car_constant")).isEqualTo(0.1234567891234);
+
+		assertThat(UtilDelta.parse("")).isSameAs(UtilDelta.EMPTY);
+		assertThat(UtilDelta.fromAttribute(null)).isSameAs(UtilDelta.EMPTY);
+		assertThat(UtilDelta.fromAttribute(d.toString())).isSameAs(d);
+	}
+
+	@Test
+	void interned() {
+
+		Object2DoubleMap<String> map = new Object2DoubleOpenHashMap<>();
+		map.put("pt_dailyConstant", 1.25);
+		map.put("car_constant", -0.5);
+
+		UtilDelta d = UtilDelta.of(map);
+
+		assertThat(UtilDelta.parse("car_constant=-0.5|pt_dailyConstant=1.25")).isSameAs(d);
+		assertThat(d.toMap()).isEqualTo(map);
+
+		map.put("car_constant", 0.1);
+		assertThat(UtilDelta.of(map)).isNotEqualTo(d);
+	}
+
+	@Test
+	void concurrentKeys() {
+
+		// New keys are added from multiple threads
+		IntStream.range(0, 10_000).parallel().forEach(i -> {
+			String key = "mode" + (i % 500) + "_constant";
+			UtilDelta d = UtilDelta.parse(key + "=" + i + "|car_constant=1.0");
+
+			assertThat(d.get(key)).isEqualTo(i);
+			assertThat(d.get("car_constant")).isEqualTo(1.0);
+			assertThat(d.toMap()).containsOnlyKeys(key, "car_constant");
+		});
+	}
+
+	private static Config createConfig() {
+		Config config = ConfigUtils.createConfig();
+
+		AdvancedScoringConfigGroup scoring = ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class);
+		scoring.incomeDependent = AdvancedScoringConfigGroup.IncomeDependentScoring.none;
+		scoring.distGroups = List.of(1000, 5000);
+
+		AdvancedScoringConfigGroup.ScoringParameters params = new AdvancedScoringConfigGroup.ScoringParameters();
+		scoring.addParameterSet(params);
+
+		AdvancedScoringConfigGroup.ModeParams m = params.getOrCreateModeParams(TransportMode.car);
+		m.deltaConstant = 0.5;
+		m.varConstant = AdvancedScoringConfigGroup.VariationType.normal;
+		m.deltaDailyConstant = 1;
+		m.varDailyConstant = AdvancedScoringConfigGroup.VariationType.truncatedNormal;
+		m.deltaPerDistGroup = List.of(-0.1, -0.5);
+
+		return config;
+	}
+
+	@Test
+	void loadPreferences() {
+
+		Config config = createConfig();
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Person person = scenario.getPopulation().getFactory().createPerson(Id.createPersonId("p"));
+		scenario.getPopulation().addPerson(person);
+
+		ScoringParameters generated = new IndividualPersonScoringParameters(scenario).getScoringParameters(person);
+
+		// Plain string, which is kept by all population readers
+		Object attr = person.getAttributes().getAttribute(UtilDelta.ATTRIBUTE);
+		assertThat(attr).isInstanceOf(String.class);
+
+		// Load again with the stored attribute, as a new string like after reading a plans file
+		ConfigUtils.addOrGetModule(config, AdvancedScoringConfigGroup.class).loadPreferences = AdvancedScoringConfigGroup.LoadPreferences.requireAttribute;
+		person.getAttributes().putAttribute(UtilDelta.ATTRIBUTE, new String((String) attr));
+
+		ScoringParameters loaded = new IndividualPersonScoringParameters(scenario).getScoringParameters(person);
+
+		assertThat(loaded.modeParams.get(TransportMode.car).constant)
+			.isEqualTo(generated.modeParams.get(TransportMode.car).constant);
+		assertThat(loaded.modeParams.get(TransportMode.car).dailyUtilityConstant)
+			.isEqualTo(generated.modeParams.get(TransportMode.car).dailyUtilityConstant);
+
+		assertThat(person.getAttributes().getAttribute(UtilDelta.ATTRIBUTE)).isEqualTo(attr);
+	}
+}